@@ -84,7 +84,18 @@ public interface HoyaKeys extends HoyaXmlConfKeys {
   String SNAPSHOT_CONF_DIR_NAME = "snapshot";
   String DATA_DIR_NAME = "database";
   String HISTORY_DIR_NAME = "history";
+  /**
+   * Suffix of the original JSON history files; these are still read
+   */
   String HISTORY_FILENAME_SUFFIX = "json";
+  /**
+   * Suffix of binary (Avro container) history snapshots
+   */
+  String HISTORY_FILENAME_BINARY_SUFFIX = "avro";
+  /**
+   * Suffix of the delta logs which follow a binary snapshot
+   */
+  String HISTORY_FILENAME_DELTA_SUFFIX = "delta";
   String HISTORY_FILENAME_PREFIX = "rolehistory-";
   
   /**
@@ -93,17 +104,34 @@ public interface HoyaKeys extends HoyaXmlConfKeys {
    * case-sensitive name sort.
    */
   String HISTORY_FILENAME_CREATION_PATTERN = HISTORY_FILENAME_PREFIX +"%016x."+
-                                    HISTORY_FILENAME_SUFFIX;
+                                    HISTORY_FILENAME_BINARY_SUFFIX;
+
+  /**
+   * Filename pattern of the delta log following the snapshot created
+   * with the same timestamp. This sorts after that snapshot.
+   */
+  String HISTORY_DELTA_FILENAME_CREATION_PATTERN = HISTORY_FILENAME_PREFIX +"%016x."+
+                                    HISTORY_FILENAME_DELTA_SUFFIX;
   /**
    * The posix regexp used to locate this 
    */
-  String HISTORY_FILENAME_MATCH_PATTERN = HISTORY_FILENAME_PREFIX +"[0-9a-f]+\\."+
-                                    HISTORY_FILENAME_SUFFIX;
+  String HISTORY_FILENAME_MATCH_PATTERN = HISTORY_FILENAME_PREFIX +"[0-9a-f]+\\.("+
+                                    HISTORY_FILENAME_BINARY_SUFFIX + "|" +
+                                    HISTORY_FILENAME_SUFFIX + ")";
     /**
-   * The posix regexp used to locate this 
+   * The glob pattern used to locate history snapshots, binary or JSON
+   */
+  String HISTORY_FILENAME_GLOB_PATTERN = HISTORY_FILENAME_PREFIX +"*.{"+
+                                    HISTORY_FILENAME_BINARY_SUFFIX + "," +
+                                    HISTORY_FILENAME_SUFFIX + "}";
+
+  /**
+   * The glob pattern used to locate all history files, including deltas
    */
-  String HISTORY_FILENAME_GLOB_PATTERN = HISTORY_FILENAME_PREFIX +"*."+
-                                    HISTORY_FILENAME_SUFFIX;
+  String HISTORY_FILENAME_ALL_GLOB_PATTERN = HISTORY_FILENAME_PREFIX +"*.{"+
+                                    HISTORY_FILENAME_BINARY_SUFFIX + "," +
+                                    HISTORY_FILENAME_SUFFIX + "," +
+                                    HISTORY_FILENAME_DELTA_SUFFIX + "}";
   
   String CLUSTER_SPECIFICATION_FILE = "cluster.json";
 
@@ -115,6 +143,41 @@ public interface HoyaKeys extends HoyaXmlConfKeys {
 
   String CLUSTER_DIRECTORY = "cluster";
 
+  /**
+   * Directory under the Hoya base path of the shared JAR cache: {@value}
+   */
+  String JAR_CACHE_DIRECTORY = "jarcache";
+
+  /**
+   * File in the cluster directory holding the fingerprint of the
+   * specification and configuration of the last full launch: {@value}
+   */
+  String LAUNCH_FINGERPRINT_FILE = "launch.fingerprint";
+
+  /**
+   * Environment variable of the AM: the time in millis the client took
+   * to prepare the launch: {@value}
+   */
+  String ENV_LAUNCH_PREPARE_MILLIS = "HOYA_LAUNCH_PREPARE_MILLIS";
+
+  /**
+   * Environment variable of the AM: the client time at which the
+   * application was submitted: {@value}
+   */
+  String ENV_LAUNCH_SUBMIT_TIME = "HOYA_LAUNCH_SUBMIT_TIME";
+
+  /**
+   * Environment variable of the AM: "true" if the client took the
+   * fast path: {@value}
+   */
+  String ENV_LAUNCH_FAST_PATH = "HOYA_LAUNCH_FASTPATH";
+
+  /**
+   * Environment variable of the AM: the comma separated directories of
+   * the JAR cache entries it was launched with: {@value}
+   */
+  String ENV_JAR_CACHE_ENTRIES = "HOYA_JAR_CACHE_ENTRIES";
+
   /**
    * JVM property to define the hoya configuration directory;
    * this is set by the hoya script: {@value}
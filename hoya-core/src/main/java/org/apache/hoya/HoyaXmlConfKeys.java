@@ -122,4 +122,59 @@ public interface HoyaXmlConfKeys {
    * Default value for the data directory permissions: {@value}
    */
   String DEFAULT_HOYA_DATA_DIRECTORY_PERMISSIONS = "750";
+
+  /**
+   * Number of lines of recent output of a forked process to keep
+   * for failure reports: {@value}
+   */
+  String KEY_PROCESS_RECENT_LINE_LIMIT = "hoya.process.output.recent.lines";
+
+  /**
+   * Maximum length of a line of output of a forked process;
+   * longer lines are split: {@value}
+   */
+  String KEY_PROCESS_LINE_LENGTH_LIMIT = "hoya.process.output.line.length";
+
+  /**
+   * Number of clusters whose status the client fetches at the same
+   * time when listing the status of many clusters: {@value}
+   */
+  String KEY_CLIENT_STATUS_PARALLELISM = "hoya.client.status.parallelism";
+  int DEFAULT_CLIENT_STATUS_PARALLELISM = 16;
+
+  /**
+   * Time in millis allowed to connect to a cluster and fetch its status
+   * when listing the status of many clusters: {@value}
+   */
+  String KEY_CLIENT_STATUS_TIMEOUT = "hoya.client.status.timeout";
+  int DEFAULT_CLIENT_STATUS_TIMEOUT = 15000;
+
+  /**
+   * Flag to upload JARs to a cache shared by all launches rather than
+   * to the temporary directory of each launch: {@value}
+   */
+  String KEY_JAR_CACHE_ENABLED = "hoya.jar.cache.enabled";
+  boolean DEFAULT_JAR_CACHE_ENABLED = true;
+
+  /**
+   * Visibility of the JARs in the cache once localized: one of
+   * public, private or application: {@value}
+   */
+  String KEY_JAR_CACHE_VISIBILITY = "hoya.jar.cache.visibility";
+  String DEFAULT_JAR_CACHE_VISIBILITY = "application";
+
+  /**
+   * Time in seconds after which an unused JAR is deleted from the
+   * cache: {@value}
+   */
+  String KEY_JAR_CACHE_MAX_AGE = "hoya.jar.cache.max.age";
+  long DEFAULT_JAR_CACHE_MAX_AGE = 30 * 24 * 60 * 60;
+
+  /**
+   * Flag to skip the validation and configuration generation when
+   * thawing a cluster whose specification and configuration are unchanged
+   * since its last launch: {@value}
+   */
+  String KEY_THAW_FAST_PATH = "hoya.thaw.fastpath";
+  boolean DEFAULT_THAW_FAST_PATH = true;
 }
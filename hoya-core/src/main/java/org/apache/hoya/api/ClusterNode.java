@@ -67,6 +67,22 @@ public class ClusterNode {
   public boolean released;
   public String host;
   public String hostUrl;
+
+  /**
+   * Time in milliseconds the last successful health probe took;
+   * -1 if the node has not been probed successfully
+   */
+  public long probeLatency = -1;
+
+  /**
+   * Time of the last health probe; 0 if it has not been probed
+   */
+  public long lastProbeTime;
+
+  /**
+   * Number of consecutive failed health probes
+   */
+  public int probeFailures;
   
   
   /**
@@ -198,6 +214,9 @@ public class ClusterNode {
     node.createTime = message.getCreateTime();
     node.startTime = message.getStartTime();
     node.released = message.getReleased();
+    node.probeLatency = message.getProbeLatency();
+    node.lastProbeTime = message.getLastProbeTime();
+    node.probeFailures = message.getProbeFailures();
     return node;
   }
 }
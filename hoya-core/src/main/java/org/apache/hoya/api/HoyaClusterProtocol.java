@@ -90,6 +90,42 @@ public interface HoyaClusterProtocol extends VersionedProtocol {
    */
   Messages.GetClusterNodesResponseProto getClusterNodes(Messages.GetClusterNodesRequestProto request) throws IOException, YarnException;
 
+  /**
+   * Get the details of all live nodes matching an optional role, state
+   * and host filter, in order of their UUIDs. The request may ask for a
+   * page of the results; the response includes the total number of matches.
+   * @param request request
+   * @return the matching nodes
+   * @throws IOException
+   * @throws YarnException
+   */
+  Messages.ListClusterNodesResponseProto listClusterNodes(Messages.ListClusterNodesRequestProto request) throws IOException, YarnException;
+
+  /**
+   * Get the changes to the live role instances and the role counters
+   * since a previous call. If the epoch and sequence of the previous
+   * response are not passed in, or the changes since then are no longer
+   * known, the full status is returned.
+   * @param request request containing the epoch and sequence number of
+   * the caller's last response
+   * @return the changes
+   * @throws IOException
+   * @throws YarnException
+   */
+  Messages.GetClusterStatusDeltaResponseProto getClusterStatusDelta(Messages.GetClusterStatusDeltaRequestProto request) throws IOException, YarnException;
+
+  /**
+   * Block until a role has a number of live instances, the application
+   * state changes from a given version, or the timeout passes.
+   * The AM limits how long a single call may block, and the number of
+   * callers blocked at once; callers must be prepared to call again.
+   * @param request request
+   * @return the state at the end of the wait
+   * @throws IOException
+   * @throws YarnException
+   */
+  Messages.WaitForClusterStateResponseProto waitForClusterState(Messages.WaitForClusterStateRequestProto request) throws IOException, YarnException;
+
   /**
    * Echo back the submitted text (after logging it).
    * Useful for adding information to the log, and for testing round trip
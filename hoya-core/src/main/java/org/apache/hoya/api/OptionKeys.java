@@ -111,4 +111,61 @@ public interface OptionKeys {
 
   boolean AM_MONITORING_ENABLED_DEFAULT = true;
 
+  /**
+   * Maximum age in milliseconds of a cached cluster status snapshot
+   * before it is rebuilt even if the application state is unchanged,
+   * so that provider-supplied status is picked up: {@value}
+   */
+  String STATUS_SNAPSHOT_MAX_AGE = "hoya.am.status.snapshot.max.age";
+
+  /**
+   * Default maximum snapshot age: {@value}
+   */
+  int DEFAULT_STATUS_SNAPSHOT_MAX_AGE = 5000;
+
+  /**
+   * Number of node entry changes appended to the delta log of a role
+   * history snapshot before a new snapshot is saved: {@value}
+   */
+  String ROLE_HISTORY_DELTAS_BEFORE_COMPACTION =
+    "hoya.am.history.deltas.before.compaction";
+
+  /**
+   * Default number of delta records before compaction: {@value}
+   */
+  int DEFAULT_ROLE_HISTORY_DELTAS_BEFORE_COMPACTION = 1000;
+
+  /**
+   * Minimum time in milliseconds between writes of the role history
+   * by the AM; changes made in between are coalesced: {@value}
+   */
+  String ROLE_HISTORY_SAVE_INTERVAL = "hoya.am.history.save.interval";
+
+  /**
+   * Default role history save interval: {@value}
+   */
+  int DEFAULT_ROLE_HISTORY_SAVE_INTERVAL = 1000;
+
+  /**
+   * Maximum number of containers the AM launches concurrently;
+   * further launches are queued: {@value}
+   */
+  String LAUNCHER_THREADS = "hoya.am.launcher.threads";
+
+  /**
+   * Default number of launcher threads: {@value}
+   */
+  int DEFAULT_LAUNCHER_THREADS = 10;
+
+  /**
+   * Maximum number of role instance health probes the AM has in
+   * progress at any time: {@value}
+   */
+  String INSTANCE_PROBE_CONCURRENCY = "hoya.am.probe.concurrency";
+
+  /**
+   * Default instance probe concurrency: {@value}
+   */
+  int DEFAULT_INSTANCE_PROBE_CONCURRENCY = 64;
+
 }
@@ -148,4 +148,82 @@ public interface RoleKeys {
    * placement policy
    */
   String ROLE_PLACEMENT_POLICY = "role.placement.policy";
+
+  /**
+   * Maximum number of container requests of a role which may be
+   * outstanding at any time while it is flexed up; 0 for no limit: {@value}
+   */
+  String ROLE_RAMP_MAX_OUTSTANDING = "role.ramp.max.outstanding";
+
+  /**
+   * Maximum number of containers of a role being requested or launched
+   * at any time while it is flexed up; 0 for no limit: {@value}
+   */
+  String ROLE_RAMP_MAX_LAUNCHING = "role.ramp.max.launching";
+
+  /**
+   * Minimum time in milliseconds between successive container requests
+   * of a role while it is flexed up; 0 for no limit: {@value}
+   */
+  String ROLE_RAMP_STEP_INTERVAL = "role.ramp.step.interval";
+
+  /**
+   * Default for the ramp options: no limit
+   */
+  int DEFAULT_ROLE_RAMP_LIMIT = 0;
+
+  /**
+   * Port on the host of each instance of a role to which the AM makes
+   * TCP connections to check the instance's health; 0 for none: {@value}
+   */
+  String ROLE_PROBE_PORT = "role.probe.port";
+
+  /**
+   * Port on the host of each instance of a role to which the AM makes
+   * HTTP requests to check the instance's health; 0 for none: {@value}
+   */
+  String ROLE_PROBE_HTTP_PORT = "role.probe.http.port";
+
+  /**
+   * Path of the HTTP health probe; any response from 200 to 399 is
+   * healthy: {@value}
+   */
+  String ROLE_PROBE_HTTP_PATH = "role.probe.http.path";
+
+  /** {@value} */
+  String DEFAULT_ROLE_PROBE_HTTP_PATH = "/";
+
+  /**
+   * Interval in milliseconds between health probes of an instance: {@value}
+   */
+  String ROLE_PROBE_INTERVAL = "role.probe.interval";
+
+  /** {@value} */
+  int DEFAULT_ROLE_PROBE_INTERVAL = 10000;
+
+  /**
+   * Timeout in milliseconds of a health probe: {@value}
+   */
+  String ROLE_PROBE_TIMEOUT = "role.probe.timeout";
+
+  /** {@value} */
+  int DEFAULT_ROLE_PROBE_TIMEOUT = 5000;
+
+  /**
+   * Time in milliseconds after an instance has started before it is
+   * first probed: {@value}
+   */
+  String ROLE_PROBE_STARTUP_DELAY = "role.probe.startup.delay";
+
+  /** {@value} */
+  int DEFAULT_ROLE_PROBE_STARTUP_DELAY = 60000;
+
+  /**
+   * Number of consecutive failed health probes after which an instance
+   * is considered hung, and its container is replaced: {@value}
+   */
+  String ROLE_PROBE_FAILURE_THRESHOLD = "role.probe.failure.threshold";
+
+  /** {@value} */
+  int DEFAULT_ROLE_PROBE_FAILURE_THRESHOLD = 3;
 }
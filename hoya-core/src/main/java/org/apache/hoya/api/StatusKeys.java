@@ -50,6 +50,85 @@ public interface StatusKeys {
       "containers.surplus";
   String STATISTICS_CONTAINERS_UNKNOWN_COMPLETED =
       "containers.unknown.completed";
+  /**
+   * Containers allocated and queued for launch but not yet submitted
+   */
+  String STATISTICS_CONTAINERS_QUEUED = "containers.queued";
+  /**
+   * Containers submitted to their node managers but not yet started
+   */
+  String STATISTICS_CONTAINERS_STARTING = "containers.starting";
+  /**
+   * Containers not yet requested because of the ramp limits of the role
+   */
+  String STATISTICS_CONTAINERS_RAMP_DEFERRED = "containers.ramp.deferred";
+
+  String STATISTICS_HISTORY_SNAPSHOTS = "history.snapshots";
+  String STATISTICS_HISTORY_DELTA_BATCHES = "history.delta.batches";
+  String STATISTICS_HISTORY_DELTA_RECORDS = "history.delta.records";
+  /**
+   * Node entry changes queued for saving; more than the records written
+   * if changes were coalesced
+   */
+  String STATISTICS_HISTORY_CHANGES = "history.changes";
+  String STATISTICS_HISTORY_SAVE_FAILURES = "history.save.failures";
+  String STATISTICS_HISTORY_QUEUE_LENGTH = "history.queue.length";
+  String STATISTICS_HISTORY_LAST_SAVE_MILLIS = "history.save.last.millis";
+  String STATISTICS_HISTORY_MAX_SAVE_MILLIS = "history.save.max.millis";
+
+  String STATISTICS_LAUNCHER_QUEUE_LENGTH = "launcher.queue.length";
+  String STATISTICS_LAUNCHER_ACTIVE = "launcher.active";
+  String STATISTICS_LAUNCHER_COMPLETED = "launcher.completed";
+  String STATISTICS_LAUNCHER_FAILED = "launcher.failed";
+  String STATISTICS_LAUNCHER_CANCELED = "launcher.canceled";
+  /**
+   * Prefix for the launch latency histogram buckets, which are
+   * named by their bound in milliseconds, e.g. "launcher.latency.le.100"
+   */
+  String STATISTICS_LAUNCHER_LATENCY_PREFIX = "launcher.latency.";
+
+  String STATISTICS_EVENTS_QUEUE_LENGTH = "events.queue.length";
+  String STATISTICS_EVENTS_PROCESSED = "events.processed";
+  String STATISTICS_EVENTS_FAILED = "events.failed";
+  String STATISTICS_EVENTS_DISCARDED = "events.discarded";
+  /**
+   * Longest time an app state event has waited to be applied
+   */
+  String STATISTICS_EVENTS_MAX_QUEUE_MILLIS = "events.queue.max.millis";
+  String STATISTICS_PROBES_IN_FLIGHT = "probes.inflight";
+  String STATISTICS_PROBES_SUCCEEDED = "probes.succeeded";
+  String STATISTICS_PROBES_FAILED = "probes.failed";
+  /**
+   * Instances released because they failed their health probes
+   */
+  String STATISTICS_PROBES_UNHEALTHY = "probes.unhealthy";
+  /**
+   * Probes held back because the concurrency limit was reached
+   */
+  String STATISTICS_PROBES_DEFERRED = "probes.deferred";
+  /**
+   * Time in millis the client took to prepare the launch of the cluster
+   */
+  String STATISTICS_LAUNCH_PREPARE_MILLIS = "launch.prepare.millis";
+  /**
+   * Time in millis from the client submitting the application to the AM
+   * process starting
+   */
+  String STATISTICS_LAUNCH_SUBMIT_MILLIS = "launch.submit.millis";
+  /**
+   * Time in millis from the AM process starting to its registration
+   */
+  String STATISTICS_LAUNCH_AM_START_MILLIS = "launch.am.start.millis";
+  /**
+   * Time in millis from the AM registering to the first container
+   * being live
+   */
+  String STATISTICS_LAUNCH_FIRST_LIVE_MILLIS = "launch.first.live.millis";
+  /**
+   * 1 if the client skipped the validation and configuration generation
+   * of an unchanged cluster, else 0
+   */
+  String STATISTICS_LAUNCH_FAST_PATH = "launch.fastpath";
   /**
    * No of containers provided on AM restart
    */
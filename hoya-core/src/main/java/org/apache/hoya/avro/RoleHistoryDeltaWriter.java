@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.avro;
+
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hoya.tools.HoyaUtils;
+import org.apache.hoya.yarn.appmaster.state.NodeEntry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Append-only log of changes to node entries made since a history
+ * snapshot was saved.
+ *
+ * The log is an Avro container file of {@link RoleHistoryRecord}s:
+ * a header whose save time is that of the base snapshot, followed by
+ * one {@link NodeEntryRecord} per change. Every batch of records is
+ * flushed as its own block, so a reader sees every batch which was
+ * appended before a failure. There is no footer; a log is never complete.
+ *
+ * Not synchronized: the {@link org.apache.hoya.yarn.appmaster.state.RoleHistory}
+ * owning the log must serialize access.
+ */
+public class RoleHistoryDeltaWriter implements Closeable {
+  private final Path path;
+  private final FSDataOutputStream out;
+  private final DataFileWriter<RoleHistoryRecord> writer;
+  private long count;
+
+  /**
+   * Create a delta log, writing its header
+   * @param fs filesystem
+   * @param path path of the log
+   * @param codec compression codec
+   * @param roles number of roles in the history
+   * @param snapshotTime save time of the snapshot the deltas apply to
+   * @throws IOException IO failures
+   */
+  public RoleHistoryDeltaWriter(FileSystem fs,
+                                Path path,
+                                CodecFactory codec,
+                                int roles,
+                                long snapshotTime) throws IOException {
+    this.path = path;
+    out = fs.create(path, true);
+    writer = new DataFileWriter<RoleHistoryRecord>(
+      new SpecificDatumWriter<RoleHistoryRecord>(RoleHistoryRecord.class));
+    writer.setCodec(codec);
+    try {
+      writer.create(RoleHistoryRecord.getClassSchema(), out);
+      RoleHistoryHeader header = new RoleHistoryHeader();
+      header.setVersion(RoleHistoryWriter.ROLE_HISTORY_VERSION);
+      header.setSaved(snapshotTime);
+      header.setSavedx(Long.toHexString(snapshotTime));
+      header.setSavedate(HoyaUtils.toGMTString(snapshotTime));
+      header.setRoles(roles);
+      append(new RoleHistoryRecord(header));
+    } catch (IOException e) {
+      writer.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Log the current state of a node entry.
+   * @param hostname host
+   * @param role role ID
+   * @param entry the entry
+   * @param now current time
+   * @throws IOException IO failures
+   */
+  public void append(String hostname, int role, NodeEntry entry, long now)
+    throws IOException {
+    appendAll(Collections.singletonList(buildRecord(hostname, role, entry, now)));
+  }
+
+  /**
+   * Log a batch of entry records as a single block
+   * @param records records to append
+   * @throws IOException IO failures
+   */
+  public void appendAll(Collection<NodeEntryRecord> records) throws IOException {
+    for (NodeEntryRecord record : records) {
+      writer.append(new RoleHistoryRecord(record));
+    }
+    flush();
+    count += records.size();
+  }
+
+  /**
+   * Build the delta record of a node entry.
+   * An entry in use is recorded with the current time as its last used time,
+   * as that is the last time it is known to have been in use
+   * @param hostname host
+   * @param role role ID
+   * @param entry the entry
+   * @param now current time
+   * @return the record
+   */
+  public static NodeEntryRecord buildRecord(String hostname,
+                                            int role,
+                                            NodeEntry entry,
+                                            long now) {
+    boolean active = entry.getLive() > 0;
+    return new NodeEntryRecord(hostname, role, active,
+                               active ? now : entry.getLastUsed());
+  }
+
+  private void append(RoleHistoryRecord record) throws IOException {
+    writer.append(record);
+    flush();
+  }
+
+  /**
+   * Write out the current block and make it visible to readers
+   * @throws IOException IO failures
+   */
+  private void flush() throws IOException {
+    writer.flush();
+    out.hflush();
+  }
+
+  /**
+   * Get the number of entry records written
+   * @return the count
+   */
+  public long getCount() {
+    return count;
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  @Override
+  public void close() throws IOException {
+    writer.close();
+  }
+
+  @Override
+  public String toString() {
+    return "RoleHistoryDeltaWriter{" + path + ", count=" + count + '}';
+  }
+}
@@ -19,8 +19,13 @@
 package org.apache.hoya.avro;
 
 import com.google.common.annotations.VisibleForTesting;
+import org.apache.avro.AvroRuntimeException;
 import org.apache.avro.AvroTypeException;
 import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileConstants;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.file.DataFileWriter;
 import org.apache.avro.io.DatumReader;
 import org.apache.avro.io.DatumWriter;
 import org.apache.avro.io.Decoder;
@@ -46,6 +51,7 @@ import org.apache.hoya.yarn.appmaster.state.RoleHistory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
@@ -55,6 +61,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -63,7 +70,15 @@ import java.util.ListIterator;
 import java.util.Locale;
 
 /**
- * Write out the role history to an output stream
+ * Write out the role history to an output stream.
+ *
+ * Histories are saved as binary Avro container files; the
+ * older JSON-encoded files can still be written and read. The format
+ * of a file is determined from its contents when it is read.
+ *
+ * A binary snapshot may be followed by a delta log of changes,
+ * written by a {@link RoleHistoryDeltaWriter}; when a snapshot is loaded
+ * from a history directory its delta log is replayed on top of it.
  */
 public class RoleHistoryWriter {
   protected static final Logger log =
@@ -76,9 +91,62 @@ public class RoleHistoryWriter {
    * parser or get rejected outright.
    */
   public static final int ROLE_HISTORY_VERSION = 0x01;
-  
+
+  /**
+   * Deflate level used for binary files by default: {@value}
+   */
+  public static final int DEFAULT_DEFLATE_LEVEL = 6;
+
+  /**
+   * Codec for binary files
+   */
+  private final CodecFactory codec;
+
+  public RoleHistoryWriter() {
+    this(CodecFactory.deflateCodec(DEFAULT_DEFLATE_LEVEL));
+  }
+
+  /**
+   * Create a writer using a specific codec for binary files
+   * @param codec codec
+   */
+  public RoleHistoryWriter(CodecFactory codec) {
+    this.codec = codec;
+  }
+
+  public CodecFactory getCodec() {
+    return codec;
+  }
+
+  /**
+   * Something which records are written to
+   */
+  private interface RecordSink {
+    void write(RoleHistoryRecord record) throws IOException;
+  }
+
   /**
-   * Write out the history.
+   * Something which records are read from
+   */
+  private interface RecordSource {
+    /**
+     * Read the next record
+     * @return the record
+     * @throws EOFException at the end of the data
+     * @throws IOException IO problems
+     */
+    RoleHistoryRecord next() throws IOException;
+
+    /**
+     * Is there any data after the last record read?
+     * @return true if there is unread data
+     * @throws IOException IO problems
+     */
+    boolean hasTrailingData() throws IOException;
+  }
+
+  /**
+   * Write out the history as a binary Avro container file.
    * This does not update the history's dirty/savetime fields
    *
    * @param out outstream
@@ -89,48 +157,111 @@ public class RoleHistoryWriter {
    */
   public long write(OutputStream out, RoleHistory history, long savetime)
     throws IOException {
+    return write(out, history.getRoleSize(), history.snapshotEntries(),
+                 savetime);
+  }
+
+  /**
+   * Write out a copy of the entries of a history as a binary Avro
+   * container file. The history itself is not accessed, so this
+   * can be done without holding any locks on it.
+   *
+   * @param out outstream
+   * @param roles number of roles in the history
+   * @param entries the entry records, as from
+   * {@link RoleHistory#snapshotEntries()}
+   * @param savetime time in millis for the save time to go in as a record
+   * @return no of records written
+   * @throws IOException IO failures
+   */
+  public long write(OutputStream out,
+                    int roles,
+                    Collection<NodeEntryRecord> entries,
+                    long savetime)
+    throws IOException {
     try {
-      DatumWriter<RoleHistoryRecord> writer =
-        new SpecificDatumWriter<RoleHistoryRecord>(RoleHistoryRecord.class);
+      final DataFileWriter<RoleHistoryRecord> writer =
+        new DataFileWriter<RoleHistoryRecord>(
+          new SpecificDatumWriter<RoleHistoryRecord>(RoleHistoryRecord.class));
+      writer.setCodec(codec);
+      writer.create(RoleHistoryRecord.getClassSchema(), out);
+      long count = writeRecords(new RecordSink() {
+        @Override
+        public void write(RoleHistoryRecord record) throws IOException {
+          writer.append(record);
+        }
+      }, roles, entries, savetime);
+      writer.close();
+      return count;
+    } finally {
+      out.close();
+    }
+  }
 
-      int roles = history.getRoleSize();
-      RoleHistoryHeader header = new RoleHistoryHeader();
-      header.setVersion(ROLE_HISTORY_VERSION);
-      header.setSaved(savetime);
-      header.setSavedx(Long.toHexString(savetime));
-      header.setSavedate(HoyaUtils.toGMTString(savetime));
-      header.setRoles(roles);
-      RoleHistoryRecord record = new RoleHistoryRecord(header);
-      Schema schema = record.getSchema();
-      Encoder encoder = EncoderFactory.get().jsonEncoder(schema, out);
-      writer.write(record, encoder);
-      long count = 0;
-      //now for every role history entry, write out its record
-      Collection<NodeInstance> instances = history.cloneNodemap().values();
-      for (NodeInstance instance : instances) {
-        for (int role = 0; role < roles; role++) {
-          NodeEntry nodeEntry = instance.get(role);
-
-          if (nodeEntry != null) {
-            NodeEntryRecord ner = build(nodeEntry, role, instance.hostname);
-            record = new RoleHistoryRecord(ner);
-            writer.write(record, encoder);
-            count++;
-          }
+  /**
+   * Write out the history in the original JSON format.
+   * This does not update the history's dirty/savetime fields
+   *
+   * @param out outstream
+   * @param history history
+   * @param savetime time in millis for the save time to go in as a record
+   * @return no of records written
+   * @throws IOException IO failures
+   */
+  public long writeJson(OutputStream out, RoleHistory history, long savetime)
+    throws IOException {
+    try {
+      final DatumWriter<RoleHistoryRecord> writer =
+        new SpecificDatumWriter<RoleHistoryRecord>(RoleHistoryRecord.class);
+      Schema schema = RoleHistoryRecord.getClassSchema();
+      final Encoder encoder = EncoderFactory.get().jsonEncoder(schema, out);
+      long count = writeRecords(new RecordSink() {
+        @Override
+        public void write(RoleHistoryRecord record) throws IOException {
+          writer.write(record, encoder);
         }
-      }
-      // footer
-      RoleHistoryFooter footer = new RoleHistoryFooter();
-      footer.setCount(count);
-      writer.write(new RoleHistoryRecord(footer), encoder);
+      }, history.getRoleSize(), history.snapshotEntries(), savetime);
       encoder.flush();
-      out.close();
       return count;
     } finally {
       out.close();
     }
   }
 
+  /**
+   * Write the header, entries and footer of a history
+   * @param sink destination
+   * @param roles number of roles
+   * @param entries entry records
+   * @param savetime time in millis for the save time to go in as a record
+   * @return no of entry records written
+   * @throws IOException IO failures
+   */
+  private long writeRecords(RecordSink sink,
+                            int roles,
+                            Collection<NodeEntryRecord> entries,
+                            long savetime)
+    throws IOException {
+    RoleHistoryHeader header = new RoleHistoryHeader();
+    header.setVersion(ROLE_HISTORY_VERSION);
+    header.setSaved(savetime);
+    header.setSavedx(Long.toHexString(savetime));
+    header.setSavedate(HoyaUtils.toGMTString(savetime));
+    header.setRoles(roles);
+    sink.write(new RoleHistoryRecord(header));
+    long count = 0;
+    //now for every role history entry, write out its record
+    for (NodeEntryRecord ner : entries) {
+      sink.write(new RoleHistoryRecord(ner));
+      count++;
+    }
+    // footer
+    RoleHistoryFooter footer = new RoleHistoryFooter();
+    footer.setCount(count);
+    sink.write(new RoleHistoryRecord(footer));
+    return count;
+  }
+
   /**
    * Write write the file
    *
@@ -162,17 +293,141 @@ public class RoleHistoryWriter {
     Path path = new Path(historyPath, filename);
     return path;
   }
+
+  /**
+   * Create the filename for the delta log following a snapshot
+   * @param historyPath history directory
+   * @param time time value of the snapshot
+   * @return a filename which sorts after that of the snapshot
+   */
+  public Path createDeltaFilename(Path historyPath, long time) {
+    String filename = String.format(Locale.ENGLISH,
+                                    HoyaKeys.HISTORY_DELTA_FILENAME_CREATION_PATTERN,
+                                    time);
+    return new Path(historyPath, filename);
+  }
+
+  /**
+   * Get the path of the delta log which would follow a snapshot
+   * @param snapshot snapshot path
+   * @return the delta log path
+   */
+  public Path deltaPathOf(Path snapshot) {
+    String name = snapshot.getName();
+    int dot = name.lastIndexOf('.');
+    String base = dot >= 0 ? name.substring(0, dot) : name;
+    return new Path(snapshot.getParent(),
+                    base + "." + HoyaKeys.HISTORY_FILENAME_DELTA_SUFFIX);
+  }
+
+  /**
+   * Open a delta log to follow a snapshot
+   * @param fs filesystem
+   * @param snapshot snapshot the deltas apply to
+   * @param roles number of roles
+   * @param snapshotTime save time of the snapshot
+   * @return a delta writer
+   * @throws IOException IO failures
+   */
+  public RoleHistoryDeltaWriter createDeltaWriter(FileSystem fs,
+                                                  Path snapshot,
+                                                  int roles,
+                                                  long snapshotTime) throws
+                                                                     IOException {
+    return new RoleHistoryDeltaWriter(fs, deltaPathOf(snapshot), codec, roles,
+                                      snapshotTime);
+  }
   
-  private NodeEntryRecord build(NodeEntry entry, int role, String hostname) {
+  /**
+   * Build the record of a node entry for a snapshot
+   * @param entry entry
+   * @param role role ID
+   * @param hostname host
+   * @return a record
+   */
+  public static NodeEntryRecord build(NodeEntry entry, int role, String hostname) {
     NodeEntryRecord record = new NodeEntryRecord(
       hostname, role, entry.getLive() > 0, entry.getLastUsed()
     );
     return record;
   }
 
+  /**
+   * Is a stream the start of an Avro container file? The stream
+   * must support mark/reset; it is reset to where it was
+   * @param in input stream
+   * @return true if the stream starts with the Avro magic number
+   * @throws IOException IO problems
+   */
+  private boolean isBinary(InputStream in) throws IOException {
+    byte[] magic = DataFileConstants.MAGIC;
+    byte[] start = new byte[magic.length];
+    in.mark(magic.length);
+    int read = 0;
+    while (read < start.length) {
+      int r = in.read(start, read, start.length - read);
+      if (r < 0) {
+        break;
+      }
+      read += r;
+    }
+    in.reset();
+    return read == magic.length && Arrays.equals(magic, start);
+  }
+
+  /**
+   * Create a record source for a stream, binary or JSON
+   * @param in input stream
+   * @return a record source
+   * @throws IOException IO problems
+   */
+  private RecordSource createRecordSource(final InputStream in) throws
+                                                               IOException {
+    final DatumReader<RoleHistoryRecord> reader =
+      new SpecificDatumReader<RoleHistoryRecord>(RoleHistoryRecord.class);
+    if (isBinary(in)) {
+      final DataFileStream<RoleHistoryRecord> stream =
+        new DataFileStream<RoleHistoryRecord>(in, reader);
+      return new RecordSource() {
+        @Override
+        public RoleHistoryRecord next() throws IOException {
+          try {
+            if (!stream.hasNext()) {
+              throw new EOFException();
+            }
+            return stream.next();
+          } catch (AvroRuntimeException e) {
+            // raised on a truncated or corrupt block
+            throw new HoyaIOException(e, "Failed to read record: %s", e);
+          }
+        }
+
+        @Override
+        public boolean hasTrailingData() throws IOException {
+          return stream.hasNext();
+        }
+      };
+    } else {
+      final Decoder decoder =
+        DecoderFactory.get().jsonDecoder(RoleHistoryRecord.getClassSchema(),
+                                         in);
+      return new RecordSource() {
+        @Override
+        public RoleHistoryRecord next() throws IOException {
+          return reader.read(null, decoder);
+        }
+
+        @Override
+        public boolean hasTrailingData() throws IOException {
+          return in.read() > 0;
+        }
+      };
+    }
+  }
+
   /**
    * Read a history, returning one that is ready to have its onThaw() 
-   * method called
+   * method called. The history may be in binary or JSON form.
    * @param in input source
    * @param history a history set up with the expected roles; 
    * this will be built up with a node map configured with the node instances
@@ -183,15 +438,14 @@ public class RoleHistoryWriter {
   public int read(InputStream in, RoleHistory history) throws
                                                        IOException,
                                                        BadConfigException {
+    if (!in.markSupported()) {
+      in = new BufferedInputStream(in);
+    }
     try {
-      DatumReader<RoleHistoryRecord> reader =
-        new SpecificDatumReader<RoleHistoryRecord>(RoleHistoryRecord.class);
-      Decoder decoder =
-        DecoderFactory.get().jsonDecoder(RoleHistoryRecord.getClassSchema(),
-                                         in);
+      RecordSource source = createRecordSource(in);
 
       //read header : no entry -> EOF
-      RoleHistoryRecord record = reader.read(null, decoder);
+      RoleHistoryRecord record = source.next();
       Object entry = record.getEntry();
       if (!(entry instanceof RoleHistoryHeader)) {
         throw new IOException("Role History Header not found at start of file");
@@ -210,7 +464,7 @@ public class RoleHistoryWriter {
       //go through reading data
       try {
         while (true) {
-          record = reader.read(null, decoder);
+          record = source.next();
           entry = record.getEntry();
 
           if (entry instanceof RoleHistoryHeader) {
@@ -223,18 +477,11 @@ public class RoleHistoryWriter {
           }
           records++;
           NodeEntryRecord nodeEntryRecord = (NodeEntryRecord) entry;
-          Integer roleId = nodeEntryRecord.getRole();
-          NodeEntry nodeEntry = new NodeEntry(roleId);
-          nodeEntry.setLastUsed(nodeEntryRecord.getLastUsed());
-          if (nodeEntryRecord.getActive()) {
+          long lastUsed = nodeEntryRecord.getActive()
             //if active at the time of save, make the last used time the save time
-            nodeEntry.setLastUsed(saved);
-          }
-
-          String hostname =
-            HoyaUtils.sequenceToString(nodeEntryRecord.getHost());
-          NodeInstance instance = history.getOrCreateNodeInstance(hostname);
-          instance.set(roleId, nodeEntry);
+            ? saved
+            : nodeEntryRecord.getLastUsed();
+          applyRecord(history, nodeEntryRecord, lastUsed);
         }
       } catch (EOFException e) {
         EOFException ex = new EOFException(
@@ -243,7 +490,7 @@ public class RoleHistoryWriter {
         throw ex;
       }
       //at this point there should be no data left. 
-      if (in.read() > 0) {
+      if (source.hasTrailingData()) {
         // footer is in stream before the last record
         throw new EOFException(
           "File footer reached before end of file -after " + records +
@@ -260,6 +507,97 @@ public class RoleHistoryWriter {
 
   }
 
+  /**
+   * Set a node entry from a record
+   * @param history history to update
+   * @param record record
+   * @param lastUsed last used time to set
+   */
+  private void applyRecord(RoleHistory history,
+                           NodeEntryRecord record,
+                           long lastUsed) {
+    Integer roleId = record.getRole();
+    String hostname = HoyaUtils.sequenceToString(record.getHost());
+    NodeInstance instance = history.getOrCreateNodeInstance(hostname);
+    instance.getOrCreate(roleId).setLastUsed(lastUsed);
+  }
+
+  /**
+   * Replay a delta log on top of a history which has just been read
+   * from the snapshot the log follows.
+   * A log which ends part way through a record is not an error: every
+   * record before the failure is applied.
+   * @param in input source
+   * @param history history to update
+   * @param snapshotTime save time of the snapshot which was read
+   * @return no. of entries applied
+   * @throws IOException if the log does not belong to the snapshot
+   * or could not be opened
+   */
+  public int readDeltas(InputStream in, RoleHistory history, long snapshotTime)
+    throws IOException {
+    if (!in.markSupported()) {
+      in = new BufferedInputStream(in);
+    }
+    int records = 0;
+    try {
+      if (!isBinary(in)) {
+        throw new HoyaIOException("Delta log is not an Avro container file");
+      }
+      RecordSource source = createRecordSource(in);
+      Object entry = source.next().getEntry();
+      if (!(entry instanceof RoleHistoryHeader)) {
+        throw new IOException("Role History Header not found at start of delta log");
+      }
+      RoleHistoryHeader header = (RoleHistoryHeader) entry;
+      if (header.getVersion() != ROLE_HISTORY_VERSION
+          || header.getRoles() != history.getRoleSize()
+          || header.getSaved() != snapshotTime) {
+        throw new HoyaIOException(
+          "Delta log version %04x, %d roles, snapshot time %d does not match" +
+          " snapshot time %d",
+          header.getVersion(), header.getRoles(), header.getSaved(),
+          snapshotTime);
+      }
+      try {
+        while (true) {
+          entry = source.next().getEntry();
+          if (!(entry instanceof NodeEntryRecord)) {
+            throw new HoyaIOException("Unexpected record in delta log: %s",
+                                      entry);
+          }
+          NodeEntryRecord nodeEntryRecord = (NodeEntryRecord) entry;
+          applyRecord(history, nodeEntryRecord, nodeEntryRecord.getLastUsed());
+          records++;
+        }
+      } catch (EOFException ignored) {
+        // end of the log
+      } catch (IOException e) {
+        log.warn("Delta log truncated after {} records: {}", records, e.toString());
+      }
+      return records;
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Replay the delta log following a snapshot, if there is one
+   * @param fs filesystem
+   * @param snapshot snapshot which has just been read
+   * @param history history to update
+   * @return no. of entries applied
+   * @throws IOException if the log could not be read
+   */
+  public int readDeltas(FileSystem fs, Path snapshot, RoleHistory history)
+    throws IOException {
+    Path deltas = deltaPathOf(snapshot);
+    if (!fs.isFile(deltas)) {
+      return 0;
+    }
+    return readDeltas(fs.open(deltas), history, history.getThawedDataTime());
+  }
+
   /**
    * Read a role history from a path in a filesystem
    * @param fs filesystem
@@ -335,7 +673,24 @@ public class RoleHistoryWriter {
       throw new FileNotFoundException("Not a directory " + dir.toString());
     }
     
-    PathFilter filter = new GlobFilter(HoyaKeys.HISTORY_FILENAME_GLOB_PATTERN);
+    return findHistoryFiles(fs, dir, includeEmptyFiles,
+                            HoyaKeys.HISTORY_FILENAME_GLOB_PATTERN);
+  }
+
+  /**
+   * Find all history files matching a glob pattern, newest first
+   * @param fs filesystem
+   * @param dir dir to scan
+   * @param includeEmptyFiles should empty files be included in the result?
+   * @param glob glob pattern
+   * @return a possibly empty list
+   * @throws IOException IO problems
+   */
+  private List<Path> findHistoryFiles(FileSystem fs,
+                                      Path dir,
+                                      boolean includeEmptyFiles,
+                                      String glob) throws IOException {
+    PathFilter filter = new GlobFilter(glob);
     FileStatus[] stats = fs.listStatus(dir, filter);
     List<Path> paths = new ArrayList<Path>(stats.length);
     for (FileStatus stat : stats) {
@@ -395,7 +750,16 @@ public class RoleHistoryWriter {
                                                           BadConfigException {
     assert fs != null: "null filesystem";
     List<Path> entries = findAllHistoryEntries(fs, dir, false);
-    return attemptToReadHistory(roleHistory, fs, entries);
+    Path loaded = attemptToReadHistory(roleHistory, fs, entries);
+    if (loaded != null) {
+      try {
+        int deltas = readDeltas(fs, loaded, roleHistory);
+        log.debug("Applied {} delta records to {}", deltas, loaded);
+      } catch (IOException e) {
+        log.warn("Failed to read delta log of {}", loaded, e);
+      }
+    }
+    return loaded;
   }
 
   /**
@@ -416,7 +780,8 @@ public class RoleHistoryWriter {
     }
     Path dir = keep.getParent();
     log.debug("Purging entries in {} up to {}", dir, keep);
-    List<Path> paths = findAllHistoryEntries(fileSystem, dir, true);
+    List<Path> paths = findHistoryFiles(fileSystem, dir, true,
+                                        HoyaKeys.HISTORY_FILENAME_ALL_GLOB_PATTERN);
     Collections.sort(paths, new OlderFilesFirst());
     int deleteCount = 0;
     for (Path path : paths) {
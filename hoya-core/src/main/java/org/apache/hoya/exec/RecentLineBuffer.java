@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.hoya.exec;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A fixed size ring buffer of the most recent lines of output.
+ * Adding a line when the buffer is full overwrites the oldest one.
+ * This class is thread safe.
+ */
+public class RecentLineBuffer {
+
+  private final String[] lines;
+  private int next;
+  private int size;
+  private long total;
+
+  /**
+   * Create a buffer
+   * @param limit maximum number of lines to keep; must be positive
+   */
+  public RecentLineBuffer(int limit) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("Invalid line limit " + limit);
+    }
+    lines = new String[limit];
+  }
+
+  /**
+   * Add a line, replacing the oldest one if the buffer is full
+   * @param line line to add
+   */
+  public synchronized void add(String line) {
+    lines[next] = line;
+    next = (next + 1) % lines.length;
+    if (size < lines.length) {
+      size++;
+    }
+    total++;
+  }
+
+  /**
+   * Get the recent lines
+   * @return a new list of the lines, oldest first
+   */
+  public synchronized List<String> getLines() {
+    List<String> result = new ArrayList<String>(size);
+    int start = (next - size + lines.length) % lines.length;
+    for (int i = 0; i < size; i++) {
+      result.add(lines[(start + i) % lines.length]);
+    }
+    return result;
+  }
+
+  public int getLimit() {
+    return lines.length;
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Get the total number of lines added
+   * @return a count of all lines, including those overwritten
+   */
+  public synchronized long getTotal() {
+    return total;
+  }
+}
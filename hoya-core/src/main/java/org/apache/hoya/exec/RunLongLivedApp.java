@@ -18,18 +18,14 @@
 
 package org.apache.hoya.exec;
 
-import org.apache.hadoop.io.IOUtils;
 import org.apache.hoya.exceptions.HoyaException;
 import org.apache.hoya.exceptions.HoyaInternalStateException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -41,8 +37,15 @@ import java.util.Set;
  * a short lived application: 
  */
 public class RunLongLivedApp implements Runnable {
-  public static final int STREAM_READER_SLEEP_TIME = 200;
+  /**
+   * Default number of lines of recent output to keep: {@value}
+   */
   public static final int RECENT_LINE_LOG_LIMIT = 64;
+  /**
+   * Default maximum length of a line of output; longer lines are split:
+   * {@value}
+   */
+  public static final int LINE_LENGTH_LIMIT = 256;
   /**
    * Class log
    */
@@ -57,11 +60,12 @@ public class RunLongLivedApp implements Runnable {
   private Integer exitCode = null;
   volatile boolean done;
   private Thread execThread;
-  private Thread logThread;
-  private ProcessStreamReader processStreamReader;
-  //list of recent lines, recorded for extraction into reports
-  private final List<String> recentLines = new LinkedList<String>();
-  private final int recentLineLimit = RECENT_LINE_LOG_LIMIT;
+  private Thread outThread;
+  private Thread errThread;
+  //ring buffer of recent lines, recorded for extraction into reports
+  private RecentLineBuffer recentLines =
+    new RecentLineBuffer(RECENT_LINE_LOG_LIMIT);
+  private int lineLengthLimit = LINE_LENGTH_LIMIT;
 
   private ApplicationEventHandler applicationEventHandler;
 
@@ -93,6 +97,24 @@ public class RunLongLivedApp implements Runnable {
     this.applicationEventHandler = applicationEventHandler;
   }
 
+  /**
+   * Set the number of lines of recent output to keep.
+   * This must be called before the application is spawned
+   * @param limit line limit
+   */
+  public void setRecentLineLimit(int limit) {
+    recentLines = new RecentLineBuffer(limit);
+  }
+
+  /**
+   * Set the maximum length of a line of output; longer lines are split.
+   * This must be called before the application is spawned
+   * @param limit line length limit
+   */
+  public void setLineLengthLimit(int limit) {
+    lineLengthLimit = limit;
+  }
+
   /**
    * Add an entry to the environment
    * @param key key -must not be null
@@ -243,7 +265,9 @@ public class RunLongLivedApp implements Runnable {
         applicationEventHandler.onApplicationExited(this, exitCode);
       }
       try {
-        logThread.join();
+        //wait for the output to be drained
+        errThread.join();
+        outThread.join();
       } catch (InterruptedException ignored) {
         //ignored
       }
@@ -268,11 +292,19 @@ public class RunLongLivedApp implements Runnable {
    */
   public void spawnApplication() throws IOException, HoyaException {
     execThread = spawnIntoThread();
+    //the pumps are created before the exec thread is started,
+    //as it joins them when the process exits
+    errThread = new Thread(new StreamPump(process.getErrorStream(),
+                                          processLog, true,
+                                          recentLines, lineLengthLimit),
+                           "IO-err");
+    outThread = new Thread(new StreamPump(process.getInputStream(),
+                                          processLog, false,
+                                          recentLines, lineLengthLimit),
+                           "IO-out");
+    errThread.start();
+    outThread.start();
     execThread.start();
-    processStreamReader =
-      new ProcessStreamReader(processLog, STREAM_READER_SLEEP_TIME);
-    logThread = new Thread(processStreamReader, "IO");
-    logThread.start();
   }
 
   /**
@@ -280,160 +312,7 @@ public class RunLongLivedApp implements Runnable {
    * @return the last few lines of output; an empty list if there are none
    * or the process is not actually running
    */
-  public synchronized List<String> getRecentOutput() {
-    return new ArrayList<String>(recentLines);
-  }
-
-
-  /**
-   * add the recent line to the list of recent lines; deleting
-   * an earlier on if the limit is reached.
-   *
-   * Implementation note: yes, a circular array would be more
-   * efficient, especially with some power of two as the modulo,
-   * but is it worth the complexity and risk of errors for
-   * something that is only called once per line of IO?
-   * @param line line to record
-   * @param isErrorStream is the line from the error stream
-   */
-  private synchronized void recordRecentLine(String line,
-                                             boolean isErrorStream) {
-    if (line == null) {
-      return;
-    }
-    String entry = (isErrorStream ? "[ERR] " : "[OUT] ") + line;
-    recentLines.add(entry);
-    if (recentLines.size() > recentLineLimit) {
-      recentLines.remove(0);
-    }
-  }
-
-  /**
-   * Class to read data from the two process streams, and, when run in a thread
-   * to keep running until the <code>done</code> flag is set. 
-   * Lines are fetched from stdout and stderr and logged at info and error
-   * respectively.
-   */
-
-  private class ProcessStreamReader implements Runnable {
-    private final Logger streamLog;
-    private final int sleepTime;
-
-    private ProcessStreamReader(Logger streamLog, int sleepTime) {
-      this.streamLog = streamLog;
-      this.sleepTime = sleepTime;
-    }
-
-    private int readCharNonBlocking(BufferedReader reader) throws IOException {
-      if (reader.ready()) {
-        return reader.read();
-      } else {
-        return -1;
-      }
-    }
-
-    /**
-     * Read in a line, or, if the limit has been reached, the buffer
-     * so far
-     * @param reader source of data
-     * @param line line to build
-     * @param limit limit of line length
-     * @return true if the line can be printed
-     * @throws IOException IO trouble
-     */
-    private boolean readAnyLine(BufferedReader reader,
-                                StringBuilder line,
-                                int limit)
-      throws IOException {
-      int next;
-      while ((-1 != (next = readCharNonBlocking(reader)))) {
-        if (next != '\n') {
-          line.append((char) next);
-          limit--;
-          if (line.length() > limit) {
-            //enough has been read in to print it any
-            return true;
-          }
-        } else {
-          //line end return flag to say so
-          return true;
-        }
-      }
-      //here the end of the stream is hit, or the limit
-      return false;
-    }
-
-
-    @Override //Runnable
-    @SuppressWarnings("IOResourceOpenedButNotSafelyClosed")
-    public void run() {
-      BufferedReader errReader = null;
-      BufferedReader outReader = null;
-      StringBuilder outLine = new StringBuilder(256);
-      StringBuilder errorLine = new StringBuilder(256);
-      try {
-        errReader = new BufferedReader(new InputStreamReader(process
-                                                               .getErrorStream()));
-        outReader = new BufferedReader(new InputStreamReader(process
-                                                               .getInputStream()));
-        while (!done) {
-          boolean processed = false;
-          if (readAnyLine(errReader, errorLine, 256)) {
-            String line = errorLine.toString();
-            recordRecentLine(line, true);
-            streamLog.warn(line);
-            errorLine.setLength(0);
-            processed = true;
-          }
-          if (readAnyLine(outReader, outLine, 256)) {
-            String line = outLine.toString();
-            recordRecentLine(line, false);
-            streamLog.info(line);
-            outLine.setLength(0);
-            processed |= true;
-          }
-          if (!processed) {
-            //nothing processed: wait a bit for data.
-            try {
-              Thread.sleep(sleepTime);
-            } catch (InterruptedException e) {
-              //ignore this, rely on the done flag
-              LOG.debug("Ignoring ", e);
-            }
-          }
-        }
-        //get here, done time
-
-        //print the current error line then stream through the rest
-        streamLog.error(errorLine.toString());
-        String line = errReader.readLine();
-        while (line != null) {
-          streamLog.error(line);
-          if (Thread.interrupted()) {
-            break;
-          }
-          line = errReader.readLine();
-          recordRecentLine(line, true);
-        }
-        //now do the info line
-        streamLog.info(outLine.toString());
-        line = outReader.readLine();
-        while (line != null) {
-          streamLog.info(line);
-          if (Thread.interrupted()) {
-            break;
-          }
-          line = outReader.readLine();
-          recordRecentLine(line, false);
-        }
-
-      } catch (Exception ignored) {
-        LOG.warn("encountered ", ignored);
-        //process connection has been torn down
-      } finally {
-        IOUtils.closeStream(errReader);
-        IOUtils.closeStream(outReader);
-      }
-    }
+  public List<String> getRecentOutput() {
+    return recentLines.getLines();
   }
 }
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.hoya.exec;
+
+import org.apache.hadoop.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+/**
+ * Pump the output of one stream of a process into a log, until the end
+ * of the stream is reached.
+ *
+ * The stream is read in blocks, blocking until data is available, and
+ * split into lines. Lines longer than the line length limit are split.
+ * Every line is logged -at warn for an error stream, at info otherwise-
+ * and recorded in a buffer of recent output.
+ */
+public class StreamPump implements Runnable {
+
+  static final Logger LOG = LoggerFactory.getLogger(StreamPump.class);
+
+  /**
+   * Size of the blocks read from the stream: {@value}
+   */
+  public static final int BUFFER_SIZE = 8192;
+
+  private final InputStream stream;
+  private final Logger streamLog;
+  private final boolean isErrorStream;
+  private final RecentLineBuffer recentLines;
+  private final int lineLengthLimit;
+  private final String prefix;
+  private long linesPumped;
+  private long charsPumped;
+
+  /**
+   * Create a pump
+   * @param stream stream to read
+   * @param streamLog log for the lines
+   * @param isErrorStream is this the error stream of the process
+   * @param recentLines buffer for recent output
+   * @param lineLengthLimit maximum length of a line
+   */
+  public StreamPump(InputStream stream,
+                    Logger streamLog,
+                    boolean isErrorStream,
+                    RecentLineBuffer recentLines,
+                    int lineLengthLimit) {
+    if (lineLengthLimit <= 0) {
+      throw new IllegalArgumentException(
+        "Invalid line length limit " + lineLengthLimit);
+    }
+    this.stream = stream;
+    this.streamLog = streamLog;
+    this.isErrorStream = isErrorStream;
+    this.recentLines = recentLines;
+    this.lineLengthLimit = lineLengthLimit;
+    prefix = isErrorStream ? "[ERR] " : "[OUT] ";
+  }
+
+  @Override //Runnable
+  @SuppressWarnings("IOResourceOpenedButNotSafelyClosed")
+  public void run() {
+    Reader reader = new InputStreamReader(stream);
+    char[] buffer = new char[BUFFER_SIZE];
+    StringBuilder line = new StringBuilder(lineLengthLimit);
+    try {
+      int read;
+      while ((read = reader.read(buffer)) >= 0) {
+        charsPumped += read;
+        int start = 0;
+        for (int i = 0; i < read; i++) {
+          if (buffer[i] == '\n') {
+            line.append(buffer, start, i - start);
+            emit(line);
+            start = i + 1;
+          } else if (line.length() + i - start == lineLengthLimit) {
+            //this character would exceed the limit: print the line first
+            line.append(buffer, start, i - start);
+            emit(line);
+            start = i;
+          }
+        }
+        line.append(buffer, start, read - start);
+      }
+    } catch (IOException e) {
+      //process connection has been torn down
+      LOG.debug("Stream closed: {}", e.toString());
+    } finally {
+      if (line.length() > 0) {
+        emit(line);
+      }
+      IOUtils.closeStream(reader);
+    }
+  }
+
+  private void emit(StringBuilder line) {
+    String text = line.toString();
+    line.setLength(0);
+    linesPumped++;
+    if (isErrorStream) {
+      streamLog.warn(text);
+    } else {
+      streamLog.info(text);
+    }
+    if (recentLines != null) {
+      recentLines.add(prefix + text);
+    }
+  }
+
+  /**
+   * Get the number of lines pumped. Only valid once the pump has finished
+   * @return the line count
+   */
+  public long getLinesPumped() {
+    return linesPumped;
+  }
+
+  /**
+   * Get the number of characters read. Only valid once the pump has
+   * finished
+   * @return the character count
+   */
+  public long getCharsPumped() {
+    return charsPumped;
+  }
+}
@@ -22,14 +22,18 @@ import org.apache.hoya.api.StatusKeys;
 import java.util.Collections;
 import java.net.URL;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.Abortable;
 import org.apache.hadoop.service.Service;
+import org.apache.hadoop.yarn.api.records.ContainerId;
+import org.apache.hadoop.yarn.api.records.LocalResource;
 import org.apache.hadoop.yarn.service.launcher.ExitCodeProvider;
 import org.apache.hoya.HoyaKeys;
 import org.apache.hoya.api.ClusterDescription;
 import org.apache.hoya.exceptions.BadCommandArgumentsException;
 import org.apache.hoya.exceptions.HoyaException;
 import org.apache.hoya.tools.ConfigHelper;
+import org.apache.hoya.tools.HoyaFileSystem;
 import org.apache.hoya.tools.HoyaUtils;
 import org.apache.hoya.yarn.service.ForkedProcessService;
 import org.apache.hoya.yarn.service.Parent;
@@ -38,11 +42,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The base class for provider services. It lets the implementations
@@ -57,7 +68,15 @@ public abstract class AbstractProviderService
                             ProviderService {
   private static final Logger log =
     LoggerFactory.getLogger(AbstractProviderService.class);
-  
+
+  /**
+   * The local resources of each role's launch context, built once
+   * and copied for every container of that role
+   */
+  private final ConcurrentMap<String, LaunchTemplate> launchTemplates =
+    new ConcurrentHashMap<String, LaunchTemplate>();
+  private final AtomicInteger launchTemplatesBuilt = new AtomicInteger();
+
   public AbstractProviderService(String name) {
     super(name);
   }
@@ -137,6 +156,176 @@ public abstract class AbstractProviderService
     return false;
   }
   
+  /**
+   * Get the local resources for a container of a role: the files of the
+   * generated configuration directory and the image, if there is one.
+   *
+   * Listing and stat-ing these takes a filesystem RPC per file, so the
+   * resources are looked up on the first launch of a role and the result
+   * kept as a template. Every call returns a new copy of the template,
+   * as the records are not thread safe. The template is rebuilt if the
+   * configuration directory or the image path of the cluster changes.
+   *
+   * No lock is held while a template is built: the first launcher of
+   * a role builds it, and any other launchers of the same role wait for
+   * the result. A failed build is discarded so that the next launch
+   * retries it.
+   * @param role role name
+   * @param hoyaFileSystem filesystem
+   * @param generatedConfPath generated configuration directory
+   * @param clusterSpec cluster specification
+   * @return a map of local resources which the caller may modify
+   * @throws IOException IO problems
+   */
+  protected Map<String, LocalResource> buildRoleLocalResources(
+    final String role,
+    final HoyaFileSystem hoyaFileSystem,
+    final Path generatedConfPath,
+    final ClusterDescription clusterSpec) throws IOException {
+    String fingerprint = generatedConfPath + "#" + clusterSpec.getImagePath();
+    LaunchTemplate template = launchTemplates.get(role);
+    while (template == null || !template.fingerprint.equals(fingerprint)) {
+      LaunchTemplate candidate = new LaunchTemplate(fingerprint,
+        new Callable<Map<String, LocalResource>>() {
+          @Override
+          public Map<String, LocalResource> call() throws Exception {
+            return lookupRoleLocalResources(role, hoyaFileSystem,
+                                            generatedConfPath, clusterSpec);
+          }
+        });
+      boolean installed = template == null
+                          ? launchTemplates.putIfAbsent(role, candidate) == null
+                          : launchTemplates.replace(role, template, candidate);
+      if (installed) {
+        template = candidate;
+        template.build.run();
+      } else {
+        template = launchTemplates.get(role);
+      }
+    }
+    try {
+      return template.copyResources();
+    } catch (IOException e) {
+      launchTemplates.remove(role, template);
+      throw e;
+    }
+  }
+
+  /**
+   * Look up the local resources of a role in the filesystem
+   * @param role role name
+   * @param hoyaFileSystem filesystem
+   * @param generatedConfPath generated configuration directory
+   * @param clusterSpec cluster specification
+   * @return the local resources
+   * @throws IOException IO problems
+   */
+  private Map<String, LocalResource> lookupRoleLocalResources(
+    String role,
+    HoyaFileSystem hoyaFileSystem,
+    Path generatedConfPath,
+    ClusterDescription clusterSpec) throws IOException {
+    Map<String, LocalResource> localResources =
+      new HashMap<String, LocalResource>();
+    localResources.putAll(hoyaFileSystem.submitDirectory(
+      generatedConfPath,
+      HoyaKeys.PROPAGATED_CONF_DIR_NAME));
+    //now add the image if it was set
+    if (clusterSpec.isImagePathSet()) {
+      Path imagePath = new Path(clusterSpec.getImagePath());
+      log.info("using image path {}", imagePath);
+      hoyaFileSystem.maybeAddImagePath(localResources, imagePath);
+    }
+    launchTemplatesBuilt.incrementAndGet();
+    log.debug("Built launch template for role {} with {} resources",
+              role, localResources.size());
+    return localResources;
+  }
+
+  /**
+   * Discard all launch templates, so the next launch of every role
+   * looks up its resources again.
+   * {@inheritDoc}
+   */
+  @Override
+  public void invalidateLaunchTemplates() {
+    launchTemplates.clear();
+  }
+
+  /**
+   * Nothing is staged per container by default.
+   * {@inheritDoc}
+   */
+  @Override
+  public void notifyContainerCompleted(ContainerId containerId) {
+  }
+
+  /**
+   * Get the number of times a launch template has been built
+   * @return the count of template builds
+   */
+  public int getLaunchTemplatesBuilt() {
+    return launchTemplatesBuilt.get();
+  }
+
+  /**
+   * The launch resources of a role, and the fingerprint of the
+   * cluster state from which they were built. The resources are
+   * built by whichever thread installed the template.
+   */
+  private static class LaunchTemplate {
+    private final String fingerprint;
+    private final FutureTask<Map<String, LocalResource>> build;
+
+    private LaunchTemplate(String fingerprint,
+                           Callable<Map<String, LocalResource>> builder) {
+      this.fingerprint = fingerprint;
+      this.build = new FutureTask<Map<String, LocalResource>>(builder);
+    }
+
+    /**
+     * Wait for the resources to be built, then copy them. The URL records
+     * are copied too, as they are as mutable as the resources.
+     * @return a copy of the resources
+     * @throws IOException if the build failed or was interrupted
+     */
+    private Map<String, LocalResource> copyResources() throws IOException {
+      Map<String, LocalResource> localResources;
+      try {
+        localResources = build.get();
+      } catch (InterruptedException e) {
+        throw (InterruptedIOException)
+          new InterruptedIOException("Interrupted building launch template")
+            .initCause(e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+        throw new IOException(cause.toString(), cause);
+      }
+      Map<String, LocalResource> copy =
+        new HashMap<String, LocalResource>(localResources.size());
+      for (Map.Entry<String, LocalResource> entry : localResources.entrySet()) {
+        LocalResource resource = entry.getValue();
+        org.apache.hadoop.yarn.api.records.URL url = resource.getResource();
+        org.apache.hadoop.yarn.api.records.URL urlCopy =
+          org.apache.hadoop.yarn.api.records.URL.newInstance(url.getScheme(),
+                                                             url.getHost(),
+                                                             url.getPort(),
+                                                             url.getFile());
+        urlCopy.setUserInfo(url.getUserInfo());
+        copy.put(entry.getKey(),
+                 LocalResource.newInstance(urlCopy,
+                                           resource.getType(),
+                                           resource.getVisibility(),
+                                           resource.getSize(),
+                                           resource.getTimestamp()));
+      }
+      return copy;
+    }
+  }
+
   @SuppressWarnings("ThrowableResultOfMethodCallIgnored")
   @Override // ExitCodeProvider
   public int getExitCode() {
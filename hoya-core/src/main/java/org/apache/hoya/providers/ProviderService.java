@@ -25,6 +25,7 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.service.Service;
 import org.apache.hadoop.yarn.api.records.Container;
+import org.apache.hadoop.yarn.api.records.ContainerId;
 import org.apache.hadoop.yarn.api.records.ContainerLaunchContext;
 import org.apache.hadoop.yarn.service.launcher.ExitCodeProvider;
 import org.apache.hoya.api.ClusterDescription;
@@ -61,6 +62,18 @@ public interface ProviderService extends ProviderCore, Service,
                                                                     IOException,
                                                                     HoyaException;
 
+  /**
+   * Discard any cached launch context state, such as the local resources
+   * of each role. This is called when the cluster specification changes.
+   */
+  void invalidateLaunchTemplates();
+
+  /**
+   * A container has completed: release anything staged for its launch
+   * @param containerId the container
+   */
+  void notifyContainerCompleted(ContainerId containerId);
+
   int getDefaultMasterInfoPort();
 
   /**
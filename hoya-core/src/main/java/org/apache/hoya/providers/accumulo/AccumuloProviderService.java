@@ -28,9 +28,12 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import org.apache.accumulo.core.Constants;
 import org.apache.accumulo.core.zookeeper.ZooUtil;
-import org.apache.accumulo.fate.zookeeper.ZooCache;
 import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
@@ -61,6 +64,8 @@ import org.apache.hoya.yarn.service.EventCallback;
 import org.apache.hoya.yarn.service.EventNotifyingService;
 import org.apache.hoya.yarn.service.ForkedProcessService;
 import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
 import org.apache.zookeeper.ZooKeeper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -77,11 +82,38 @@ public class AccumuloProviderService extends AbstractProviderService implements
     LoggerFactory.getLogger(AccumuloClientProvider.class);
   private AccumuloClientProvider clientProvider;
   private static final ProviderUtils providerUtils = new ProviderUtils(log);
+
+  /**
+   * Delay before trying again to watch the addresses after a failure: {@value}
+   */
+  public static final int WATCH_RETRY_DELAY = 30000;
+
+  /**
+   * Timeout of the ZooKeeper connection made to watch the addresses: {@value}
+   */
+  public static final int WATCH_CONNECT_TIMEOUT = 5000;
   
-  private String masterAddress = null, monitorAddress = null;
+  /**
+   * Addresses maintained by the ZooKeeper watches; read without locking
+   * when building the status
+   */
+  private volatile String masterAddress = null, monitorAddress = null;
   private HoyaFileSystem hoyaFileSystem = null;
   private ClusterDescription clusterSpec = null;
-  private ZooCache zooCache = null;
+  private String zkQuorum = null;
+  private ZooKeeper zookeeper = null;
+  /**
+   * The instance ID, resolved from the filesystem once the cluster
+   * has been initialized
+   */
+  private String instanceId = null;
+  private AddressWatcher addressWatcher = null;
+  /**
+   * Sets the watches, off the launch path and the ZooKeeper event thread
+   */
+  private ScheduledExecutorService watchScheduler = null;
+  private boolean watchScheduled = false;
+  private boolean stopped = false;
   
   public AccumuloProviderService() {
     super("accumulo");
@@ -133,8 +165,13 @@ public class AccumuloProviderService extends AbstractProviderService implements
                                           Path containerTmpDirPath) throws
                                            IOException,
                                            BadConfigException {
-    this.hoyaFileSystem = hoyaFileSystem;
-    this.clusterSpec = clusterSpec;
+    synchronized (this) {
+      this.hoyaFileSystem = hoyaFileSystem;
+      this.clusterSpec = clusterSpec;
+    }
+    //the cluster is initialized before any container is launched;
+    //the watches are set asynchronously, so the launch does no remote I/O
+    requestAddressWatch();
     
     // Set the environment
     Map<String, String> env = HoyaUtils.buildEnvMap(roleOptions);
@@ -153,24 +190,11 @@ public class AccumuloProviderService extends AbstractProviderService implements
               HoyaKeys.PROPAGATED_CONF_DIR_NAME));
     env.put(ZOOKEEPER_HOME, clusterSpec.getMandatoryOption(OPTION_ZK_HOME));
 
-    //local resources
+    //local resources: the configuration files and any image,
+    //copied from the role's launch template
     Map<String, LocalResource> localResources =
-      new HashMap<String, LocalResource>();
-
-    //add the configuration resources
-    Map<String, LocalResource> confResources;
-    confResources = hoyaFileSystem.submitDirectory(
-            generatedConfPath,
-            HoyaKeys.PROPAGATED_CONF_DIR_NAME);
-    localResources.putAll(confResources);
-
-    //Add binaries
-    //now add the image if it was set
-    if (clusterSpec.isImagePathSet()) {
-      Path imagePath = new Path(clusterSpec.getImagePath());
-      log.info("using image path {}", imagePath);
-      hoyaFileSystem.maybeAddImagePath(localResources, imagePath);
-    }
+      buildRoleLocalResources(role, hoyaFileSystem, generatedConfPath,
+                              clusterSpec);
     ctx.setLocalResources(localResources);
 
     List<String> commands = new ArrayList<String>();
@@ -285,7 +309,7 @@ public class AccumuloProviderService extends AbstractProviderService implements
     File siteXML = new File(confDir, SITE_XML);
     Configuration accumuloSite = ConfigHelper.loadConfFromFile(
       siteXML);
-    String zkQuorum =
+    zkQuorum =
       accumuloSite.get(AccumuloConfigFileOptions.ZOOKEEPER_HOST);
     if (zkQuorum == null) {
       throw new BadConfigException("Accumulo site.xml %s does not contain %s",
@@ -364,13 +388,65 @@ public class AccumuloProviderService extends AbstractProviderService implements
                                                                  KeeperException,
                                                                  InterruptedException {
 
+    ZooKeeper zk = connectZookeeper(zkQuorum, timeout);
+
+    //keep the connection for the address watches
+    synchronized (this) {
+      closeZookeeper();
+      zookeeper = zk;
+    }
+  }
+
+  /**
+   * Connect to ZooKeeper and wait for the connection
+   * @param zkQuorum quorum
+   * @param timeout timeout in milliseconds
+   * @return the connection
+   */
+  private ZooKeeper connectZookeeper(String zkQuorum, int timeout) throws
+                                                                   IOException,
+                                                                   KeeperException,
+                                                                   InterruptedException {
     BlockingZKWatcher watcher = new BlockingZKWatcher();
-    ZooKeeper zookeeper = new ZooKeeper(zkQuorum, 10000, watcher, true);
-    zookeeper.getChildren("/", watcher);
+    ZooKeeper zk = new ZooKeeper(zkQuorum, 10000, watcher, true);
+    try {
+      zk.getChildren("/", watcher);
+      watcher.waitForZKConnection(timeout);
+    } catch (KeeperException e) {
+      zk.close();
+      throw e;
+    } catch (InterruptedException e) {
+      zk.close();
+      throw e;
+    }
+    return zk;
+  }
 
-    watcher.waitForZKConnection(timeout);
-    
-    zooCache = ZooCache.getInstance(zkQuorum, 5 * 1000);
+  /**
+   * Close the ZooKeeper connection, if open; its watches go with it.
+   */
+  private synchronized void closeZookeeper() {
+    addressWatcher = null;
+    if (zookeeper != null) {
+      try {
+        zookeeper.close();
+      } catch (InterruptedException e) {
+        log.debug("Interrupted while closing the ZooKeeper connection", e);
+      }
+      zookeeper = null;
+    }
+  }
+
+  @Override
+  protected void serviceStop() throws Exception {
+    synchronized (this) {
+      stopped = true;
+      if (watchScheduler != null) {
+        watchScheduler.shutdownNow();
+      }
+    }
+    closeZookeeper();
+    super.serviceStop();
   }
 
   @Override
@@ -381,10 +457,13 @@ public class AccumuloProviderService extends AbstractProviderService implements
     return new ArrayList<Probe>(0);
   }
   
+  /**
+   * Build the status from the addresses cached by the ZooKeeper watches;
+   * there is no remote I/O here.
+   * @return the master and monitor addresses, null if not yet known
+   */
   @Override
   public Map<String, String> buildProviderStatus() {
-    updateAccumuloInfo();
-    
     Map<String,String> status = new HashMap<String, String>();
     
     status.put(AccumuloKeys.MASTER_ADDRESS, this.masterAddress);
@@ -396,33 +475,118 @@ public class AccumuloProviderService extends AbstractProviderService implements
 
   @Override
   public boolean initMonitoring() {
-    updateAccumuloInfo();
+    requestAddressWatch();
     return true;
   }
-  
-  private void updateAccumuloInfo() {
-    if (null == hoyaFileSystem || null == clusterSpec || null == zooCache) {
-      // Wait a while, the AM hasn't fully initialized things
-      return;
+
+  /**
+   * Schedule the watches on the master lock and monitor address to be set,
+   * if they are not set already. Once the watches are set they keep the
+   * addresses current; if the session expires or a watch cannot be set
+   * again, they are set again from here.
+   */
+  private synchronized void requestAddressWatch() {
+    if (addressWatcher == null) {
+      scheduleWatch(0);
     }
-    
-    String zkInstancePath;
-    try {
-      zkInstancePath = ZooUtil.getRoot(getInstanceId(hoyaFileSystem, clusterSpec));
-    } catch (IOException e) {
-      log.warn("Could not determine instanceID for Accumulo cluster {}", clusterSpec.name);
+  }
+
+  /**
+   * Schedule {@link #watchAddresses()}, unless it is already scheduled
+   * @param delay delay in milliseconds
+   */
+  private synchronized void scheduleWatch(long delay) {
+    if (watchScheduled || stopped) {
       return;
-    }      
-    
-    byte[] masterData = ZooUtil.getLockData(zooCache, zkInstancePath + Constants.ZMASTER_LOCK);
-    if (null != masterData) {
-      this.masterAddress = new String(masterData, Constants.UTF8);
     }
+    if (watchScheduler == null) {
+      watchScheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "AccumuloAddressWatch");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    watchScheduled = true;
+    watchScheduler.schedule(new Runnable() {
+      @Override
+      public void run() {
+        watchAddresses();
+      }
+    }, delay, TimeUnit.MILLISECONDS);
+  }
 
-    // TODO constant will exist in >=1.5.1
-    byte[] monitorData = zooCache.get(zkInstancePath + "/monitor/http_addr");
-    if (null != monitorData) {
-      this.monitorAddress = new String(monitorData, Constants.UTF8);
+  /**
+   * Resolve the instance ID, connect to ZooKeeper if there is no session,
+   * and set the watches on the master lock and monitor address.
+   * The filesystem and ZooKeeper are only called without the lock held.
+   * On failure this is scheduled again after {@link #WATCH_RETRY_DELAY}.
+   */
+  private void watchAddresses() {
+    HoyaFileSystem fs;
+    ClusterDescription cd;
+    String quorum;
+    String id;
+    ZooKeeper zk;
+    synchronized (this) {
+      watchScheduled = false;
+      if (addressWatcher != null || stopped) {
+        return;
+      }
+      fs = hoyaFileSystem;
+      cd = clusterSpec;
+      quorum = zkQuorum;
+      id = instanceId;
+      zk = zookeeper;
+    }
+    if (null == fs || null == cd || null == quorum) {
+      // Wait a while, the AM hasn't fully initialized things;
+      // the next launch asks again
+      return;
+    }
+    if (id == null) {
+      try {
+        id = getInstanceId(fs, cd);
+      } catch (IOException e) {
+        log.warn("Could not determine instanceID for Accumulo cluster {}: {}",
+                 cd.name, e.toString());
+        scheduleWatch(WATCH_RETRY_DELAY);
+        return;
+      }
+    }
+    AddressWatcher watcher;
+    try {
+      if (zk == null) {
+        // the session expired: reconnect
+        zk = connectZookeeper(quorum, WATCH_CONNECT_TIMEOUT);
+      }
+      watcher = new AddressWatcher(zk, ZooUtil.getRoot(id));
+      synchronized (this) {
+        instanceId = id;
+        if (stopped) {
+          if (zookeeper != zk) {
+            zk.close();
+          }
+          return;
+        }
+        if (zookeeper != zk) {
+          closeZookeeper();
+          zookeeper = zk;
+        }
+        addressWatcher = watcher;
+      }
+      watcher.refreshMaster();
+      watcher.refreshMonitor();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      log.warn("Failed to watch the addresses of Accumulo cluster {}: {}",
+               cd.name, e.toString());
+      log.debug("Failure", e);
+      closeZookeeper();
+      scheduleWatch(WATCH_RETRY_DELAY);
     }
   }
   
@@ -436,6 +600,108 @@ public class AccumuloProviderService extends AbstractProviderService implements
     
     return children[0].getPath().getName();
   }
+
+  /**
+   * Watches the master lock and monitor address of an instance, and
+   * updates the cached addresses from the ZooKeeper event thread whenever
+   * they change.
+   */
+  private class AddressWatcher implements Watcher {
+    private final ZooKeeper zk;
+    private final String lockPath;
+    // TODO constant will exist in >=1.5.1
+    private final String monitorPath;
+
+    AddressWatcher(ZooKeeper zk, String zkInstancePath) {
+      this.zk = zk;
+      this.lockPath = zkInstancePath + Constants.ZMASTER_LOCK;
+      this.monitorPath = zkInstancePath + "/monitor/http_addr";
+    }
+
+    @Override
+    public void process(WatchedEvent event) {
+      if (event.getType() == Event.EventType.None) {
+        if (event.getState() == Event.KeeperState.Expired) {
+          log.info("ZooKeeper session expired; reconnecting to watch" +
+                   " the addresses");
+          synchronized (AccumuloProviderService.this) {
+            if (zookeeper == zk) {
+              closeZookeeper();
+              scheduleWatch(0);
+            }
+          }
+        }
+        return;
+      }
+      try {
+        if (monitorPath.equals(event.getPath())) {
+          refreshMonitor();
+        } else {
+          refreshMaster();
+        }
+      } catch (KeeperException e) {
+        log.warn("Failed to read an Accumulo address from {}: {}",
+                 event.getPath(), e.toString());
+        // the watch may not have been set again: set all of them again
+        // after a delay
+        synchronized (AccumuloProviderService.this) {
+          if (addressWatcher == this) {
+            addressWatcher = null;
+            scheduleWatch(WATCH_RETRY_DELAY);
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    /**
+     * Read the holder of the master lock, which is the lowest sequenced
+     * child of the lock node, and watch the lock for changes.
+     */
+    void refreshMaster() throws KeeperException, InterruptedException {
+      List<String> children;
+      try {
+        children = zk.getChildren(lockPath, this);
+      } catch (KeeperException.NoNodeException e) {
+        // watch for the creation of the lock node
+        if (zk.exists(lockPath, this) != null) {
+          refreshMaster();
+        }
+        return;
+      }
+      if (children.isEmpty()) {
+        return;
+      }
+      Collections.sort(children);
+      try {
+        byte[] masterData = zk.getData(lockPath + "/" + children.get(0),
+                                       false, null);
+        if (null != masterData) {
+          masterAddress = new String(masterData, Constants.UTF8);
+        }
+      } catch (KeeperException.NoNodeException e) {
+        // the lock was released between the calls; the child watch fires
+      }
+    }
+
+    /**
+     * Read the monitor address and watch it for changes.
+     */
+    void refreshMonitor() throws KeeperException, InterruptedException {
+      if (zk.exists(monitorPath, this) == null) {
+        return;
+      }
+      try {
+        byte[] monitorData = zk.getData(monitorPath, false, null);
+        if (null != monitorData) {
+          monitorAddress = new String(monitorData, Constants.UTF8);
+        }
+      } catch (KeeperException.NoNodeException e) {
+        // deleted between the calls; the exists watch fires
+      }
+    }
+  }
   
   /* non-javadoc
    * @see org.apache.hoya.providers.ProviderService#buildMonitorDetails()
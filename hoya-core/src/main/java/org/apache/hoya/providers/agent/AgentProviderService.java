@@ -22,8 +22,10 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.yarn.api.ApplicationConstants;
 import org.apache.hadoop.yarn.api.records.Container;
+import org.apache.hadoop.yarn.api.records.ContainerId;
 import org.apache.hadoop.yarn.api.records.ContainerLaunchContext;
 import org.apache.hadoop.yarn.api.records.LocalResource;
+import org.apache.hadoop.yarn.api.records.LocalResourceType;
 import org.apache.hoya.HoyaKeys;
 import org.apache.hoya.api.ClusterDescription;
 import org.apache.hoya.exceptions.BadCommandArgumentsException;
@@ -42,9 +44,11 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class implements the server-side aspects
@@ -61,6 +65,11 @@ public class AgentProviderService extends AbstractProviderService implements
   protected static final String NAME = "agent";
   private static final ProviderUtils providerUtils = new ProviderUtils(log);
   private AgentClientProvider clientProvider;
+  /**
+   * Directories of the containers whose configuration has been patched
+   */
+  private final Map<ContainerId, StagedDirectory> stagedContainerDirs =
+      new ConcurrentHashMap<ContainerId, StagedDirectory>();
 
   public AgentProviderService() {
     super("AgentProviderService");
@@ -77,6 +86,84 @@ public class AgentProviderService extends AbstractProviderService implements
     clientProvider = new AgentClientProvider(conf);
   }
 
+  /**
+   * Get the files of the generated configuration which must be replaced
+   * for a single container.
+   * @param container container
+   * @param role role
+   * @param clusterSpec cluster specification
+   * @return a map of file name to contents; empty if the shared
+   * configuration can be used as is
+   */
+  protected Map<String, String> buildContainerConfPatches(Container container,
+                                                          String role,
+                                                          ClusterDescription clusterSpec) {
+    //TODO: PATCH THE CONFIG FOR THE TARGET
+    return Collections.emptyMap();
+  }
+
+  /**
+   * Write the patched configuration files of a container to its own
+   * directory, to be deleted when the container completes.
+   * @param hoyaFileSystem filesystem
+   * @param containerId container
+   * @param containerTmpDirPath directory for the files of the container
+   * @param patches file name to contents
+   * @return the local resources of the patched files, which replace those
+   * of the shared configuration
+   * @throws IOException IO problems
+   */
+  protected Map<String, LocalResource> stageContainerConf(
+      HoyaFileSystem hoyaFileSystem,
+      ContainerId containerId,
+      Path containerTmpDirPath,
+      Map<String, String> patches) throws IOException {
+    stagedContainerDirs.put(containerId,
+        new StagedDirectory(hoyaFileSystem, containerTmpDirPath));
+    Map<String, LocalResource> resources =
+        new HashMap<String, LocalResource>(patches.size());
+    for (Map.Entry<String, String> patch : patches.entrySet()) {
+      Path path = new Path(containerTmpDirPath, patch.getKey());
+      hoyaFileSystem.cat(path, patch.getValue());
+      resources.put(HoyaKeys.PROPAGATED_CONF_DIR_NAME + "/" + patch.getKey(),
+          hoyaFileSystem.createAmResource(path, LocalResourceType.FILE));
+    }
+    log.debug("Staged {} patched configuration files for {} in {}",
+        patches.size(), containerId, containerTmpDirPath);
+    return resources;
+  }
+
+  /**
+   * Delete the patched configuration of a completed container, if
+   * one was staged.
+   * {@inheritDoc}
+   */
+  @Override
+  public void notifyContainerCompleted(ContainerId containerId) {
+    StagedDirectory staged = stagedContainerDirs.remove(containerId);
+    if (staged != null) {
+      try {
+        staged.fs.getFileSystem().delete(staged.path, true);
+      } catch (IOException e) {
+        log.warn("Failed to delete the staged configuration {} of {}",
+            staged.path, containerId, e);
+      }
+    }
+  }
+
+  /**
+   * A directory staged for a container, and the filesystem it is on
+   */
+  private static final class StagedDirectory {
+    final HoyaFileSystem fs;
+    final Path path;
+
+    StagedDirectory(HoyaFileSystem fs, Path path) {
+      this.fs = fs;
+      this.path = path;
+    }
+  }
+
   @Override
   public int getDefaultMasterInfoPort() {
     return 0;
@@ -112,31 +199,23 @@ public class AgentProviderService extends AbstractProviderService implements
     // Set the environment
     Map<String, String> env = HoyaUtils.buildEnvMap(roleOptions);
 
-    HoyaUtils.copyDirectory(getConf(), generatedConfPath, containerTmpDirPath,
-                            null);
-    Path targetConfDir = containerTmpDirPath;
-    //TODO: PATCH THE CONFIG FOR THE TARGET
-
-
     String propagatedConfDir = ApplicationConstants.Environment.PWD.$() + "/" +
         HoyaKeys.PROPAGATED_CONF_DIR_NAME;
     env.put("PROPAGATED_CONFDIR", propagatedConfDir);
-    //local resources
+
+    //local resources: the configuration files and any image, shared by
+    //every container of the role through its launch template
     Map<String, LocalResource> localResources =
-        new HashMap<String, LocalResource>();
-
-    //add the configuration resources
-    Map<String, LocalResource> confResources;
-    confResources = hoyaFileSystem.submitDirectory(
-        targetConfDir,
-        HoyaKeys.PROPAGATED_CONF_DIR_NAME);
-    localResources.putAll(confResources);
-    //Add binaries
-    //now add the image if it was set
-    if (clusterSpec.isImagePathSet()) {
-      Path imagePath = new Path(clusterSpec.getImagePath());
-      log.info("using image path {}", imagePath);
-      hoyaFileSystem.maybeAddImagePath(localResources, imagePath);
+        buildRoleLocalResources(role, hoyaFileSystem, generatedConfPath,
+                                clusterSpec);
+    //only the files patched for this container are staged for it
+    Map<String, String> patches =
+        buildContainerConfPatches(container, role, clusterSpec);
+    if (!patches.isEmpty()) {
+      localResources.putAll(stageContainerConf(hoyaFileSystem,
+                                               container.getId(),
+                                               containerTmpDirPath,
+                                               patches));
     }
     ctx.setLocalResources(localResources);
     List<String> commandList = new ArrayList<String>();
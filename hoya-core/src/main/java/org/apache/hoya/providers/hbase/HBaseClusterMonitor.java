@@ -0,0 +1,276 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.providers.hbase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.ClusterStatus;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.client.HConnection;
+import org.apache.hadoop.hbase.client.HConnectionManager;
+import org.apache.hadoop.hbase.zookeeper.MasterAddressTracker;
+import org.apache.hadoop.hbase.zookeeper.ZKUtil;
+import org.apache.hadoop.hbase.zookeeper.ZooKeeperListener;
+import org.apache.hadoop.hbase.zookeeper.ZooKeeperWatcher;
+import org.apache.hoya.HostAndPort;
+import org.apache.hoya.providers.AbstractProviderService;
+import org.apache.zookeeper.KeeperException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks the state of an HBase cluster through ZooKeeper, so that
+ * the provider status can be built without any remote calls.
+ *
+ * The master address is updated from the watch on the master znode.
+ * The dead servers are fetched from the master over a connection
+ * which is created on first use and then reused; the list is cached
+ * until the watch on the region server znodes or the master znode fires.
+ * The region server znode may not exist when the monitor starts; its
+ * creation is watched for, and its children are watched once it exists.
+ */
+public class HBaseClusterMonitor extends ZooKeeperListener {
+  protected static final Logger log =
+    LoggerFactory.getLogger(HBaseClusterMonitor.class);
+
+  private final Configuration siteConf;
+  private final MasterAddressTracker masterTracker;
+  private volatile HostAndPort masterAddress;
+  private final DeadServers deadServers = new DeadServers();
+  private HConnection connection;
+  private HBaseAdmin admin;
+
+  /**
+   * Connect to the ZooKeeper quorum of the cluster
+   * @param siteConf the HBase site configuration
+   * @throws IOException if the ZooKeeper connection cannot be created
+   */
+  public HBaseClusterMonitor(Configuration siteConf) throws IOException {
+    super(new ZooKeeperWatcher(siteConf, "HBaseClient",
+                               new AbstractProviderService.ProviderAbortable()));
+    this.siteConf = siteConf;
+    masterTracker = new MasterAddressTracker(watcher, watcher);
+  }
+
+  /**
+   * Set the watches and read the initial state
+   */
+  public void start() {
+    // the tracker is registered first, so it has updated its copy
+    // of the master znode before this listener is called
+    masterTracker.start();
+    watcher.registerListener(this);
+    updateMasterAddress();
+    watchRegionServers();
+  }
+
+  /**
+   * Get the master address, as of the last watch event
+   * @return the address, or null if there is no active master
+   */
+  public HostAndPort getMasterAddress() {
+    return masterAddress;
+  }
+
+  /**
+   * List the dead servers. The list is only fetched from the master
+   * if the cluster has changed since it was last fetched.
+   * @return the dead servers
+   * @throws IOException failure to talk to the master
+   */
+  public Collection<HostAndPort> listDeadServers() throws IOException {
+    Collection<HostAndPort> servers = deadServers.get();
+    if (servers == null) {
+      synchronized (this) {
+        servers = deadServers.get();
+        if (servers == null) {
+          long generation = deadServers.getGeneration();
+          ClusterStatus cs = getAdmin().getClusterStatus();
+          servers = toHostAndPorts(cs.getDeadServerNames());
+          // not cached if the cluster changed while it was fetched
+          deadServers.store(generation, servers);
+        }
+      }
+    }
+    return servers;
+  }
+
+  /**
+   * Get the admin, creating it and its connection on first use or if
+   * the connection has been closed
+   * @return the admin
+   * @throws IOException failure to connect
+   */
+  private synchronized HBaseAdmin getAdmin() throws IOException {
+    if (connection == null || connection.isClosed() ||
+        connection.isAborted()) {
+      closeConnection();
+      connection = HConnectionManager.createConnection(siteConf);
+      admin = new HBaseAdmin(connection);
+    }
+    return admin;
+  }
+
+  private synchronized void closeConnection() {
+    try {
+      if (admin != null) {
+        admin.close();
+      }
+      if (connection != null) {
+        connection.close();
+      }
+    } catch (IOException e) {
+      log.debug("Failed to close the HBase connection", e);
+    }
+    admin = null;
+    connection = null;
+  }
+
+  /**
+   * Close the connection to the master and to ZooKeeper
+   */
+  public void close() {
+    closeConnection();
+    masterTracker.stop();
+    watcher.close();
+  }
+
+  @Override
+  public void nodeCreated(String path) {
+    if (path.equals(watcher.rsZNode)) {
+      deadServers.invalidate();
+      watchRegionServers();
+    } else {
+      nodeDataChanged(path);
+    }
+  }
+
+  @Override
+  public void nodeDeleted(String path) {
+    nodeCreated(path);
+  }
+
+  @Override
+  public void nodeDataChanged(String path) {
+    if (path.equals(watcher.getMasterAddressZNode())) {
+      updateMasterAddress();
+      deadServers.invalidate();
+    }
+  }
+
+  @Override
+  public void nodeChildrenChanged(String path) {
+    if (path.equals(watcher.rsZNode)) {
+      deadServers.invalidate();
+      watchRegionServers();
+    }
+  }
+
+  private void updateMasterAddress() {
+    ServerName sn = masterTracker.getMasterAddress(false);
+    HostAndPort address = sn == null ? null
+                          : new HostAndPort(sn.getHostname(), sn.getPort());
+    log.debug("HBase master address is {}", address);
+    masterAddress = address;
+  }
+
+  /**
+   * Set a watch on the region server znodes; it is cleared when it fires.
+   * If the parent znode does not exist yet, watch for its creation instead.
+   */
+  private void watchRegionServers() {
+    try {
+      if (ZKUtil.watchAndCheckExists(watcher, watcher.rsZNode)) {
+        if (ZKUtil.listChildrenAndWatchForNewChildren(watcher,
+            watcher.rsZNode) == null) {
+          // deleted between the calls: the exists watch fires
+          log.debug("{} was deleted while being watched", watcher.rsZNode);
+        }
+      } else {
+        log.debug("Waiting for the creation of {}", watcher.rsZNode);
+      }
+    } catch (KeeperException e) {
+      log.warn("Failed to watch the region servers in {}", watcher.rsZNode, e);
+    }
+  }
+
+  /**
+   * The cached list of dead servers. Every invalidation starts a new
+   * generation; a list fetched during an earlier generation than the
+   * current one is out of date and is not stored.
+   */
+  static final class DeadServers {
+    private long generation;
+    private Collection<HostAndPort> servers;
+
+    /**
+     * Get the current generation, to be passed to {@link #store}
+     * @return the generation
+     */
+    synchronized long getGeneration() {
+      return generation;
+    }
+
+    /**
+     * Get the list
+     * @return the list, or null if it is not cached
+     */
+    synchronized Collection<HostAndPort> get() {
+      return servers;
+    }
+
+    /**
+     * Store a list, unless it has been invalidated since it was fetched
+     * @param fetchedGeneration generation when the fetch began
+     * @param fetched the list
+     * @return true if the list was stored
+     */
+    synchronized boolean store(long fetchedGeneration,
+                               Collection<HostAndPort> fetched) {
+      if (fetchedGeneration != generation) {
+        return false;
+      }
+      servers = fetched;
+      return true;
+    }
+
+    /**
+     * Discard the list and start a new generation
+     */
+    synchronized void invalidate() {
+      generation++;
+      servers = null;
+    }
+  }
+
+  static Collection<HostAndPort> toHostAndPorts(Collection<ServerName> servers) {
+    if (servers == null || servers.isEmpty()) {
+      return Collections.emptyList();
+    }
+    Collection<HostAndPort> col = new ArrayList<HostAndPort>(servers.size());
+    for (ServerName sn : servers) {
+      col.add(new HostAndPort(sn.getHostname(), sn.getPort()));
+    }
+    return Collections.unmodifiableCollection(col);
+  }
+}
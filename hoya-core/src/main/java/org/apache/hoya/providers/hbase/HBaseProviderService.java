@@ -29,20 +29,13 @@ import java.net.URL;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.hbase.Abortable;
-import org.apache.hadoop.hbase.ClusterStatus;
-import org.apache.hadoop.hbase.ServerName;
-import org.apache.hadoop.hbase.client.HBaseAdmin;
-import org.apache.hadoop.hbase.client.HConnection;
-import org.apache.hadoop.hbase.client.HConnectionManager;
-import org.apache.hadoop.hbase.zookeeper.MasterAddressTracker;
-import org.apache.hadoop.hbase.zookeeper.ZooKeeperWatcher;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.hadoop.yarn.api.ApplicationConstants;
 import org.apache.hadoop.yarn.api.records.Container;
@@ -80,7 +73,7 @@ public class HBaseProviderService extends AbstractProviderService implements
                                                                   HBaseKeys,
                                                                   HoyaKeys {
 
-  private MasterAddressTracker masterTracker = null;
+  private volatile HBaseClusterMonitor clusterMonitor = null;
 
   public static final String ERROR_UNKNOWN_ROLE = "Unknown role ";
   protected static final Logger log =
@@ -159,23 +152,11 @@ public class HBaseProviderService extends AbstractProviderService implements
                                   HoyaKeys.PROPAGATED_CONF_DIR_NAME);
 
 
-    //local resources
+    //local resources: the configuration files and any image,
+    //copied from the role's launch template
     Map<String, LocalResource> localResources =
-      new HashMap<String, LocalResource>();
-
-    //add the configuration resources
-    Map<String, LocalResource> confResources;
-    confResources = hoyaFileSystem.submitDirectory(
-            generatedConfPath,
-            HoyaKeys.PROPAGATED_CONF_DIR_NAME);
-    localResources.putAll(confResources);
-    //Add binaries
-    //now add the image if it was set
-    if (clusterSpec.isImagePathSet()) {
-      Path imagePath = new Path(clusterSpec.getImagePath());
-      log.info("using image path {}", imagePath);
-      hoyaFileSystem.maybeAddImagePath(localResources, imagePath);
-    }
+      buildRoleLocalResources(role, hoyaFileSystem, generatedConfPath,
+                              clusterSpec);
     ctx.setLocalResources(localResources);
     List<String> commands = new ArrayList<String>();
 
@@ -298,18 +279,33 @@ public class HBaseProviderService extends AbstractProviderService implements
     return true;
   }
 
-  private void startZKWatcher() {
+  private synchronized void startZKWatcher() {
     Preconditions.checkNotNull(siteConf);
+    if (clusterMonitor != null) {
+      return;
+    }
     try {
-      Abortable abortable = new ProviderAbortable();
-      ZooKeeperWatcher zkw =
-        new ZooKeeperWatcher(siteConf, "HBaseClient", abortable);
-      masterTracker = new MasterAddressTracker(zkw, abortable);
+      HBaseClusterMonitor monitor = new HBaseClusterMonitor(siteConf);
+      monitor.start();
+      clusterMonitor = monitor;
+      log.info("Watching HBase cluster, quorum={}",
+               siteConf.get(HBaseConfigFileOptions.KEY_ZOOKEEPER_QUORUM));
     } catch (IOException ioe) {
       log.error("Couldn't instantiate ZooKeeperWatcher", ioe);
     }
   }
 
+  @Override
+  protected void serviceStop() throws Exception {
+    synchronized (this) {
+      if (clusterMonitor != null) {
+        clusterMonitor.close();
+        clusterMonitor = null;
+      }
+    }
+    super.serviceStop();
+  }
+
 
   @Override
   public List<Probe> createProbes(ClusterDescription clusterSpec, String urlStr,
@@ -360,49 +356,34 @@ public class HBaseProviderService extends AbstractProviderService implements
   }
 
   /**
-   * Build the provider status, can be empty
+   * Build the provider status, can be empty. The master address is
+   * the one cached by the cluster monitor, so this makes no remote calls.
    * @return the provider status - map of entries to add to the info section
    */
   public Map<String, String> buildProviderStatus() {
     Map<String, String> stats = new HashMap<String, String>();
-    try {
-      if (siteConf != null && masterTracker != null) {
-        ServerName sn = masterTracker.getMasterAddress(true);
-        log.info("getMasterAddress " + sn + ", quorum="
-                  + siteConf.get(HBaseConfigFileOptions.KEY_ZOOKEEPER_QUORUM));
-        if (sn == null) {
-          return stats;
-        }
-        HostAndPort hostAndPort = new HostAndPort(sn.getHostname(), sn.getPort());
+    HBaseClusterMonitor monitor = clusterMonitor;
+    if (monitor != null) {
+      HostAndPort hostAndPort = monitor.getMasterAddress();
+      if (hostAndPort != null) {
         stats.put(StatusKeys.INFO_MASTER_ADDRESS, hostAndPort.toString());
       }
-    } catch (Exception e) {
-      log.warn("Failed to retrieve master ports", e);
     }
     return stats;
   }
 
-  public Collection<HostAndPort> listDeadServers(Configuration conf) throws
-                                                                     IOException {
-    HConnection hbaseConnection = HConnectionManager.createConnection(conf);
-    HBaseAdmin hBaseAdmin = new HBaseAdmin(hbaseConnection);
-    try {
-      ClusterStatus cs = hBaseAdmin.getClusterStatus();
-      return serverNameToHostAndPort(cs.getDeadServerNames());
-    } finally {
-      hBaseAdmin.close();
-      hbaseConnection.close();
-    }
-  }
-
-
-  private Collection<HostAndPort> serverNameToHostAndPort(Collection<ServerName> servers) {
-    Collection<HostAndPort> col = new ArrayList<HostAndPort>();
-    if (servers == null || servers.isEmpty()) return col;
-    for (ServerName sn : servers) {
-      col.add(new HostAndPort(sn.getHostname(), sn.getPort()));
+  /**
+   * List the dead servers of the cluster, over a connection
+   * which is reused across calls
+   * @return the dead servers; empty if monitoring has not started
+   * @throws IOException failure to talk to the master
+   */
+  public Collection<HostAndPort> listDeadServers() throws IOException {
+    HBaseClusterMonitor monitor = clusterMonitor;
+    if (monitor == null) {
+      return Collections.emptyList();
     }
-    return col;
+    return monitor.listDeadServers();
   }
   
   /* non-javadoc
@@ -23,8 +23,17 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
 import java.net.URL;
 
+/**
+ * Probe for an HTTP endpoint returning a response code in a given range.
+ *
+ * When run through a {@link ProbeSelector}, plain HTTP URLs are probed
+ * with a non-blocking GET of which only the status line is read.
+ * Redirects are not followed on that path: a redirect outside the
+ * expected range is retried with a blocking fetch which follows it.
+ */
 public class HttpProbe extends Probe {
   protected static final Logger log = LoggerFactory.getLogger(HttpProbe.class);
 
@@ -79,4 +88,102 @@ public class HttpProbe extends Probe {
     return status;
   }
 
+  @Override
+  public boolean isNonBlocking() {
+    return "http".equals(url.getProtocol());
+  }
+
+  @Override
+  public void ping(final boolean livePing,
+                   ProbeSelector selector,
+                   final ProbeCallback callback) {
+    if (!isNonBlocking()) {
+      super.ping(livePing, selector, callback);
+      return;
+    }
+    int port = url.getPort() >= 0 ? url.getPort() : url.getDefaultPort();
+    InetSocketAddress address = new InetSocketAddress(url.getHost(), port);
+    selector.exchange(address, buildRequest(url), timeout,
+                      new ProbeSelector.ExchangeCallback() {
+      @Override
+      public void exchangeCompleted(String response, IOException failure) {
+        ProbeStatus status;
+        if (failure != null) {
+          status = new ProbeStatus();
+          String error = "Probe " + url + " failed: " + failure;
+          log.info(error, failure);
+          status.fail(HttpProbe.this, new IOException(error, failure));
+        } else {
+          int rc = parseResponseCode(response);
+          if (rc >= 300 && rc < 400 && (rc < min || rc > max)) {
+            //a redirect: follow it the slow way
+            status = ping(livePing);
+          } else {
+            status = checkResponseCode(rc, response);
+          }
+        }
+        callback.probeCompleted(status);
+      }
+    });
+  }
+
+  private ProbeStatus checkResponseCode(int rc, String response) {
+    ProbeStatus status = new ProbeStatus();
+    if (rc < min || rc > max) {
+      String error = rc < 0
+                     ? "Probe " + url + " invalid response: " + response
+                     : "Probe " + url + " error code: " + rc;
+      log.info(error);
+      status.fail(this, new IOException(error));
+    } else {
+      status.succeed(this);
+    }
+    return status;
+  }
+
+  /**
+   * Build the GET request for a URL
+   * @param url URL
+   * @return the request bytes
+   */
+  static byte[] buildRequest(URL url) {
+    String file = url.getFile();
+    if (file == null || file.isEmpty()) {
+      file = "/";
+    }
+    String host = url.getPort() >= 0
+                  ? url.getHost() + ":" + url.getPort()
+                  : url.getHost();
+    String request = "GET " + file + " HTTP/1.1\r\n"
+                     + "Host: " + host + "\r\n"
+                     + "Connection: close\r\n"
+                     + "\r\n";
+    try {
+      return request.getBytes("ISO-8859-1");
+    } catch (IOException e) {
+      //cannot happen
+      return request.getBytes();
+    }
+  }
+
+  /**
+   * Parse the response code of an HTTP status line
+   * @param statusLine status line, such as "HTTP/1.1 200 OK"
+   * @return the response code, or -1 if the line is not a status line
+   */
+  static int parseResponseCode(String statusLine) {
+    if (statusLine == null || !statusLine.startsWith("HTTP/")) {
+      return -1;
+    }
+    String[] parts = statusLine.split(" +");
+    if (parts.length < 2) {
+      return -1;
+    }
+    try {
+      return Integer.parseInt(parts[1]);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
 }
@@ -104,4 +104,38 @@ public class PortProbe extends Probe {
     return status;
 
   }
+
+  @Override
+  public boolean isNonBlocking() {
+    return true;
+  }
+
+  /**
+   * Start a non-blocking connect to the (host,port); a failure to connect
+   * within the specified timeout is a failure
+   * @param livePing is the ping live: true for live; false for boot time
+   * @param selector selector for the connection
+   * @param callback callback for the status
+   */
+  @Override
+  public void ping(boolean livePing,
+                   ProbeSelector selector,
+                   final ProbeCallback callback) {
+    final InetSocketAddress sockAddr = new InetSocketAddress(host, port);
+    selector.exchange(sockAddr, null, timeout,
+                      new ProbeSelector.ExchangeCallback() {
+      @Override
+      public void exchangeCompleted(String response, IOException failure) {
+        ProbeStatus status = new ProbeStatus();
+        if (failure == null) {
+          status.succeed(PortProbe.this);
+        } else {
+          String error = "Probe " + sockAddr + " failed: " + failure;
+          log.debug(error, failure);
+          status.fail(PortProbe.this, new IOException(error, failure));
+        }
+        callback.probeCompleted(status);
+      }
+    });
+  }
 }
@@ -42,6 +42,10 @@ public abstract class Probe implements MonitorKeys {
 
   // =======================================================
 
+  private int interval = -1;
+  private int timeout = -1;
+  private int jitter = -1;
+
   /**
    * Create a probe of a specific name
    *
@@ -72,6 +76,36 @@ public abstract class Probe implements MonitorKeys {
            '}';
   }
 
+  /**
+   * Set the schedule of this probe when it is run by a
+   * {@link ProbeScheduler}. A negative value means "use the scheduler's
+   * default".
+   * @param interval milliseconds between the end of one ping and the start
+   * of the next
+   * @param timeout milliseconds a ping may take before it is a failure
+   * @param jitter upper bound in milliseconds of a random delay added to
+   * every interval
+   * @return this probe
+   */
+  public Probe withSchedule(int interval, int timeout, int jitter) {
+    this.interval = interval;
+    this.timeout = timeout;
+    this.jitter = jitter;
+    return this;
+  }
+
+  public int getInterval() {
+    return interval;
+  }
+
+  public int getTimeout() {
+    return timeout;
+  }
+
+  public int getJitter() {
+    return jitter;
+  }
+
   /**
    * perform any prelaunch initialization
    */
@@ -88,6 +122,30 @@ public abstract class Probe implements MonitorKeys {
    */
   public abstract ProbeStatus ping(boolean livePing);
 
+  /**
+   * Can this probe be pinged through a {@link ProbeSelector} without
+   * blocking the calling thread?
+   * @return true if {@link #ping(boolean, ProbeSelector, ProbeCallback)}
+   * does not block
+   */
+  public boolean isNonBlocking() {
+    return false;
+  }
+
+  /**
+   * Ping the endpoint, passing the outcome to the callback.
+   * This implementation calls {@link #ping(boolean)} in the current thread;
+   * probes which can use non-blocking IO override it.
+   * @param livePing is the ping live: true for live; false for boot time
+   * @param selector selector for non-blocking IO
+   * @param callback callback for the status
+   */
+  public void ping(boolean livePing,
+                   ProbeSelector selector,
+                   ProbeCallback callback) {
+    callback.probeCompleted(ping(livePing));
+  }
+
   public void beginBootstrap() {
     bootstrapStarted = System.currentTimeMillis();
   }
@@ -0,0 +1,411 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.servicemonitor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A probe worker which runs its monitor probes concurrently, each on its
+ * own schedule, instead of one after the other in a single thread.
+ *
+ * Every probe has an interval, a timeout and a jitter: its next ping
+ * is scheduled an interval plus a random delay of up to the jitter after
+ * the last one finished, and a ping which has not finished within the
+ * timeout is reported through
+ * {@link ProbeReportHandler#probeTimedOut(ProbePhase, Probe, ProbeStatus, long)}
+ * and treated as a failure. Probes which do not set their own schedule
+ * use the scheduler's.
+ *
+ * Port and HTTP probes connect through a shared {@link ProbeSelector},
+ * so a slow endpoint holds up neither a thread nor the other probes.
+ * Other probes run in a small thread pool.
+ *
+ * The phases and the reporting are those of {@link ProbeWorker}:
+ * dependency probes are checked first, sequentially; while bootstrapping
+ * the failures of probes which have not yet booted are reported as
+ * successes; once live, every failure is a {@link ProbeFailedException}.
+ * A live cycle is complete once every probe has succeeded since the last
+ * one was.
+ */
+public class ProbeScheduler extends ProbeWorker {
+  protected static final Logger log =
+    LoggerFactory.getLogger(ProbeScheduler.class);
+
+  /**
+   * Default number of threads for running probes: {@value}
+   */
+  public static final int DEFAULT_THREADS = 4;
+
+  /**
+   * Divisor of the interval to get the default jitter: {@value}
+   */
+  public static final int DEFAULT_JITTER_DIVISOR = 10;
+
+  /**
+   * Interval in milliseconds between checks for pings which have timed
+   * out: {@value}
+   */
+  public static final int TIMEOUT_CHECK_INTERVAL = 100;
+
+  private final int probeTimeout;
+  private final int jitter;
+  private final ScheduledThreadPoolExecutor executor;
+  private final ProbeSelector selector;
+  private final List<ScheduledProbe> scheduled =
+    new CopyOnWriteArrayList<ScheduledProbe>();
+  private final Set<Probe> cycleSuccesses = new HashSet<Probe>();
+  private final CountDownLatch exitLatch = new CountDownLatch(1);
+  private final Random random = new Random();
+  private int bootedProbes;
+
+  /**
+   * Create a probe scheduler with the default jitter and thread count
+   * @param monitorProbes list of probes that must boot and then go live
+   * @param dependencyProbes list of dependency probes; may be null
+   * @param interval default probe interval in milliseconds
+   * @param probeTimeout default probe timeout in milliseconds
+   * @param bootstrapTimeout timeout for bootstrap in milliseconds
+   */
+  public ProbeScheduler(List<Probe> monitorProbes,
+                        List<Probe> dependencyProbes,
+                        int interval,
+                        int probeTimeout,
+                        int bootstrapTimeout) {
+    this(monitorProbes, dependencyProbes, interval, probeTimeout,
+         interval / DEFAULT_JITTER_DIVISOR, bootstrapTimeout, DEFAULT_THREADS);
+  }
+
+  /**
+   * Create a probe scheduler
+   * @param monitorProbes list of probes that must boot and then go live
+   * @param dependencyProbes list of dependency probes; may be null
+   * @param interval default probe interval in milliseconds
+   * @param probeTimeout default probe timeout in milliseconds
+   * @param jitter default jitter in milliseconds
+   * @param bootstrapTimeout timeout for bootstrap in milliseconds
+   * @param threads number of threads for running probes
+   */
+  public ProbeScheduler(List<Probe> monitorProbes,
+                        List<Probe> dependencyProbes,
+                        int interval,
+                        int probeTimeout,
+                        int jitter,
+                        int bootstrapTimeout,
+                        int threads) {
+    super(monitorProbes, dependencyProbes, interval, bootstrapTimeout);
+    this.probeTimeout = probeTimeout;
+    this.jitter = jitter;
+    final AtomicInteger threadCount = new AtomicInteger();
+    executor = new ScheduledThreadPoolExecutor(threads, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "probe scheduler "
+                                      + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    selector = new ProbeSelector(executor);
+  }
+
+  @Override
+  public void init() throws IOException {
+    super.init();
+    selector.start();
+  }
+
+  @Override
+  public void setMustExit() {
+    super.setMustExit();
+    exitLatch.countDown();
+  }
+
+  /**
+   * Get the probe whose ping has been in progress longest
+   * @return the probe, or null if there are no pings in progress
+   */
+  @Override
+  public Probe getCurrentProbe() {
+    Probe current = null;
+    long oldest = Long.MAX_VALUE;
+    for (ScheduledProbe probe : scheduled) {
+      long started = probe.pingStarted;
+      if (started > 0 && started < oldest) {
+        oldest = started;
+        current = probe.probe;
+      }
+    }
+    return current;
+  }
+
+  @Override
+  public void run() {
+    List<Probe> probes = getMonitorProbes();
+    int size = probes.size();
+    log.info("Probe Scheduler Starting; " + size + " probe"
+             + MonitorUtils.toPlural(size));
+    enterProbePhase(ProbePhase.DEPENDENCY_CHECKING);
+    try {
+      while (!checkAndReportDependencyProbes()) {
+        Thread.sleep(interval);
+      }
+      synchronized (this) {
+        if (getBootstrapTimeout() > 0) {
+          enterProbePhase(ProbePhase.BOOTSTRAPPING);
+          beginBootstrapProbes();
+        } else {
+          enterProbePhase(ProbePhase.LIVE);
+        }
+        for (Probe probe : probes) {
+          ScheduledProbe sp = new ScheduledProbe(probe);
+          scheduled.add(sp);
+          sp.scheduleNext();
+        }
+      }
+      executor.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          checkTimeouts();
+        }
+      }, TIMEOUT_CHECK_INTERVAL, TIMEOUT_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+      exitLatch.await();
+    } catch (InterruptedException interrupted) {
+      //exit
+    } catch (ProbeInterruptedException e) {
+      //exit raised
+    } finally {
+      selector.close();
+      executor.shutdownNow();
+    }
+    log.info("Probe Scheduler Exiting");
+    enterProbePhase(ProbePhase.TERMINATING);
+  }
+
+  /**
+   * Check every probe for a ping which has timed out
+   */
+  private void checkTimeouts() {
+    long now = now();
+    for (ScheduledProbe probe : scheduled) {
+      probe.checkTimeout(now);
+    }
+  }
+
+  /**
+   * Process the outcome of a ping
+   * @param probe probe
+   * @param status its status
+   */
+  private synchronized void processResult(Probe probe, ProbeStatus status) {
+    if (isMustExit()) {
+      return;
+    }
+    try {
+      switch (getProbePhase()) {
+        case BOOTSTRAPPING:
+          bootstrapResult(probe, status);
+          break;
+        case LIVE:
+          liveResult(probe, status);
+          break;
+        default:
+          //nothing to report
+          break;
+      }
+    } catch (ProbeFailedException e) {
+      probeFailed(e);
+    }
+  }
+
+  private void bootstrapResult(Probe probe, ProbeStatus status)
+    throws ProbeFailedException {
+    verifyBootstrapHasNotTimedOut();
+    if (status.isSuccess()) {
+      if (!probe.isBooted()) {
+        if (log.isDebugEnabled()) {
+          log.debug("Booting probe is now live: " + probe);
+        }
+        probe.endBootstrap();
+        bootedProbes++;
+        getReportHandler().probeBooted(status);
+      }
+      reportProbeStatus(status);
+      probe.successCount++;
+      if (bootedProbes == getMonitorProbes().size()) {
+        enterProbePhase(ProbePhase.LIVE);
+      }
+    } else {
+      lastFailingBootstrapProbe = status;
+      probe.failureCount++;
+      if (!probe.isBooted()) {
+        //during boot, a failure of a probe that hasn't booted is still
+        //reported as a success
+        status.markAsSuccessful();
+        reportProbeStatus(status);
+      } else {
+        reportProbeStatus(status);
+        throw raiseProbeFailure(status,
+                                FAILURE_OF_A_LIVE_PROBE_DURING_BOOTSTRAPPING);
+      }
+    }
+  }
+
+  private void liveResult(Probe probe, ProbeStatus status)
+    throws ProbeFailedException {
+    reportProbeStatus(status);
+    if (!status.isSuccess()) {
+      probe.failureCount++;
+      cycleSuccesses.clear();
+      throw raiseProbeFailure(status, "Failure of probe in \"live\" monitor");
+    }
+    probe.successCount++;
+    cycleSuccesses.add(probe);
+    if (cycleSuccesses.size() == getMonitorProbes().size()) {
+      cycleSuccesses.clear();
+      getReportHandler().liveProbeCycleCompleted();
+    }
+  }
+
+  private long now() {
+    return System.currentTimeMillis();
+  }
+
+  private int randomDelay(int bound) {
+    return bound > 0 ? random.nextInt(bound) : 0;
+  }
+
+  /**
+   * A probe and its schedule. At most one ping of a probe is in progress
+   * at a time; the next one is scheduled when it finishes.
+   */
+  private final class ScheduledProbe implements Runnable {
+    private final Probe probe;
+    private final int probeInterval;
+    private final int timeout;
+    private final int probeJitter;
+    private volatile long pingStarted;
+    private int generation;
+    private boolean timedOut;
+
+    private ScheduledProbe(Probe probe) {
+      this.probe = probe;
+      probeInterval = probe.getInterval() >= 0 ? probe.getInterval()
+                                               : interval;
+      timeout = probe.getTimeout() >= 0 ? probe.getTimeout() : probeTimeout;
+      probeJitter = probe.getJitter() >= 0 ? probe.getJitter() : jitter;
+    }
+
+    /**
+     * Start a ping
+     */
+    @Override
+    public void run() {
+      if (isMustExit()) {
+        return;
+      }
+      final int thisPing;
+      synchronized (this) {
+        thisPing = ++generation;
+        timedOut = false;
+        pingStarted = now();
+      }
+      ProbeCallback callback = new ProbeCallback() {
+        @Override
+        public void probeCompleted(ProbeStatus status) {
+          pingCompleted(thisPing, status);
+        }
+      };
+      if (log.isDebugEnabled()) {
+        log.debug("Executing " + probe);
+      }
+      try {
+        probe.ping(getProbePhase() == ProbePhase.LIVE, selector, callback);
+      } catch (RuntimeException e) {
+        ProbeStatus status = new ProbeStatus();
+        status.fail(probe, e);
+        callback.probeCompleted(status);
+      }
+    }
+
+    private void pingCompleted(int ping, ProbeStatus status) {
+      boolean report;
+      synchronized (this) {
+        if (ping != generation || pingStarted == 0) {
+          return;
+        }
+        pingStarted = 0;
+        report = !timedOut;
+      }
+      if (report) {
+        processResult(probe, status);
+      }
+      scheduleNext();
+    }
+
+    /**
+     * If the ping in progress has not finished in time, report it as
+     * timed out and failed. The next ping is not scheduled until it does
+     * finish, so a hung probe never has more than one ping outstanding.
+     * @param now current time
+     */
+    private void checkTimeout(long now) {
+      synchronized (this) {
+        if (timeout <= 0 || pingStarted == 0 || timedOut
+            || now - pingStarted < timeout) {
+          return;
+        }
+        timedOut = true;
+      }
+      log.info("Probe timed out: " + probe);
+      getReportHandler().probeTimedOut(getProbePhase(), probe,
+                                       getLastStatus(), now);
+      ProbeStatus status = new ProbeStatus();
+      status.fail(probe, new SocketTimeoutException(
+        "Probe timed out after " + MonitorUtils.millisToHumanTime(timeout)));
+      processResult(probe, status);
+    }
+
+    private void scheduleNext() {
+      if (isMustExit()) {
+        return;
+      }
+      try {
+        executor.schedule(this, probeInterval + randomDelay(probeJitter),
+                          TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        //shutting down
+      }
+    }
+  }
+}
@@ -0,0 +1,358 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.servicemonitor;
+
+import org.apache.hadoop.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A single thread multiplexing the sockets of all in-progress port and
+ * HTTP probes, so that probing many endpoints needs neither a thread per
+ * endpoint nor one endpoint to wait for another.
+ *
+ * An exchange connects to an address, optionally writes a request and
+ * then reads the first line of the response. Its outcome is passed to
+ * the callback through the executor supplied at construction time, so
+ * callbacks may block without stalling the other exchanges.
+ */
+public class ProbeSelector implements Closeable {
+  protected static final Logger log =
+    LoggerFactory.getLogger(ProbeSelector.class);
+
+  /**
+   * Maximum length of a response line: {@value}
+   */
+  public static final int RESPONSE_LINE_LIMIT = 1024;
+
+  /**
+   * Callback for the outcome of an exchange
+   */
+  public interface ExchangeCallback {
+
+    /**
+     * The exchange has finished
+     * @param response the first line of the response; null if there was
+     * no request, or if the exchange failed
+     * @param failure the reason for failure, or null for success
+     */
+    void exchangeCompleted(String response, IOException failure);
+  }
+
+  private final Executor callbackExecutor;
+  private final Queue<Exchange> pending = new ConcurrentLinkedQueue<Exchange>();
+  private volatile Selector selector;
+  private Thread selectorThread;
+  private volatile boolean mustExit;
+
+  /**
+   * Create the selector
+   * @param callbackExecutor executor for the exchange callbacks
+   */
+  public ProbeSelector(Executor callbackExecutor) {
+    this.callbackExecutor = callbackExecutor;
+  }
+
+  /**
+   * Start the selector thread
+   * @throws IOException if the selector could not be opened
+   */
+  public synchronized void start() throws IOException {
+    if (selector != null) {
+      return;
+    }
+    selector = Selector.open();
+    selectorThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        selectLoop();
+      }
+    }, "probe selector");
+    selectorThread.setDaemon(true);
+    selectorThread.start();
+  }
+
+  /**
+   * Stop the selector; any exchanges in progress fail
+   */
+  @Override
+  public synchronized void close() {
+    mustExit = true;
+    if (selector != null) {
+      selector.wakeup();
+    }
+  }
+
+  /**
+   * Begin an exchange. This does not block.
+   * @param address address to connect to; must be resolved
+   * @param request request to write once connected; null for none, in
+   * which case the exchange is complete once the connection is made
+   * @param timeout timeout in milliseconds for the whole exchange
+   * @param callback callback for the outcome
+   */
+  public void exchange(InetSocketAddress address,
+                       byte[] request,
+                       int timeout,
+                       ExchangeCallback callback) {
+    Exchange exchange = new Exchange(address, request, timeout, callback);
+    if (mustExit || selector == null) {
+      exchange.fail(new IOException("Probe selector is not running"));
+      return;
+    }
+    if (address.isUnresolved()) {
+      exchange.fail(new IOException("Unresolved address " + address));
+      return;
+    }
+    try {
+      exchange.channel = SocketChannel.open();
+      exchange.channel.configureBlocking(false);
+      exchange.channel.connect(address);
+    } catch (IOException e) {
+      exchange.fail(e);
+      return;
+    }
+    //the channel is registered in the selector thread, as registration
+    //blocks while a select is in progress
+    pending.add(exchange);
+    selector.wakeup();
+  }
+
+  private void selectLoop() {
+    try {
+      while (!mustExit) {
+        registerPending();
+        long wait = expireExchanges(System.currentTimeMillis());
+        selector.select(wait);
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          process(key);
+        }
+      }
+    } catch (IOException e) {
+      log.warn("Probe selector failed: " + e, e);
+    } finally {
+      shutdown();
+    }
+  }
+
+  private void registerPending() {
+    Exchange exchange;
+    while ((exchange = pending.poll()) != null) {
+      try {
+        int ops = exchange.channel.isConnectionPending()
+                  ? SelectionKey.OP_CONNECT
+                  : connected(exchange);
+        if (ops != 0) {
+          exchange.channel.register(selector, ops, exchange);
+        }
+      } catch (IOException e) {
+        exchange.fail(e);
+      }
+    }
+  }
+
+  /**
+   * Fail every exchange whose time has run out
+   * @param now current time
+   * @return how long to wait for the next deadline; 0 for indefinitely
+   */
+  private long expireExchanges(long now) {
+    long wait = 0;
+    for (SelectionKey key : selector.keys()) {
+      Exchange exchange = (Exchange) key.attachment();
+      if (exchange == null) {
+        continue;
+      }
+      long remaining = exchange.deadline - now;
+      if (remaining <= 0) {
+        exchange.fail(new SocketTimeoutException(
+          "Probe " + exchange.address + " timed out after "
+          + MonitorUtils.millisToHumanTime(exchange.timeout)));
+      } else if (wait == 0 || remaining < wait) {
+        wait = remaining;
+      }
+    }
+    return wait;
+  }
+
+  private void process(SelectionKey key) {
+    Exchange exchange = (Exchange) key.attachment();
+    try {
+      if (!key.isValid()) {
+        return;
+      }
+      if (key.isConnectable()) {
+        if (exchange.channel.finishConnect()) {
+          int ops = connected(exchange);
+          if (ops != 0) {
+            key.interestOps(ops);
+          }
+        }
+      } else if (key.isWritable()) {
+        exchange.channel.write(exchange.request);
+        if (!exchange.request.hasRemaining()) {
+          key.interestOps(SelectionKey.OP_READ);
+        }
+      } else if (key.isReadable()) {
+        read(exchange);
+      }
+    } catch (IOException e) {
+      exchange.fail(e);
+    }
+  }
+
+  /**
+   * The connection has been made: either complete the exchange or
+   * move on to the request
+   * @param exchange exchange
+   * @return the next interest ops, or 0 if the exchange is complete
+   */
+  private int connected(Exchange exchange) {
+    if (exchange.request == null) {
+      exchange.complete(null, null);
+      return 0;
+    }
+    return SelectionKey.OP_WRITE;
+  }
+
+  private void read(Exchange exchange) throws IOException {
+    ByteBuffer buffer = exchange.response;
+    int read = exchange.channel.read(buffer);
+    for (int i = buffer.position() - Math.max(read, 0);
+         i < buffer.position(); i++) {
+      if (buffer.get(i) == '\n') {
+        exchange.complete(responseLine(buffer, i), null);
+        return;
+      }
+    }
+    if (read < 0 || !buffer.hasRemaining()) {
+      //end of stream or an over-long line: whatever came in is the response
+      exchange.complete(responseLine(buffer, buffer.position()), null);
+    }
+  }
+
+  private static String responseLine(ByteBuffer buffer, int end) {
+    byte[] bytes = new byte[end];
+    for (int i = 0; i < end; i++) {
+      bytes[i] = buffer.get(i);
+    }
+    try {
+      return new String(bytes, "ISO-8859-1").trim();
+    } catch (IOException e) {
+      //cannot happen
+      return new String(bytes).trim();
+    }
+  }
+
+  private void shutdown() {
+    List<Exchange> unfinished = new ArrayList<Exchange>();
+    for (SelectionKey key : selector.keys()) {
+      if (key.attachment() != null) {
+        unfinished.add((Exchange) key.attachment());
+      }
+    }
+    Exchange exchange;
+    while ((exchange = pending.poll()) != null) {
+      unfinished.add(exchange);
+    }
+    for (Exchange e : unfinished) {
+      e.fail(new IOException("Probe selector closed"));
+    }
+    try {
+      selector.close();
+    } catch (IOException e) {
+      log.debug("Closing the selector: {}", e.toString());
+    }
+  }
+
+  /**
+   * A single exchange
+   */
+  private final class Exchange {
+    private final InetSocketAddress address;
+    private final ByteBuffer request;
+    private final ByteBuffer response;
+    private final int timeout;
+    private final long deadline;
+    private final ExchangeCallback callback;
+    private SocketChannel channel;
+    private boolean finished;
+
+    private Exchange(InetSocketAddress address,
+                     byte[] request,
+                     int timeout,
+                     ExchangeCallback callback) {
+      this.address = address;
+      this.request = request != null ? ByteBuffer.wrap(request) : null;
+      this.response = request != null
+                      ? ByteBuffer.allocate(RESPONSE_LINE_LIMIT) : null;
+      this.timeout = timeout;
+      this.deadline = System.currentTimeMillis() + timeout;
+      this.callback = callback;
+    }
+
+    private void fail(IOException e) {
+      complete(null, e);
+    }
+
+    private void complete(final String line, final IOException failure) {
+      if (finished) {
+        return;
+      }
+      finished = true;
+      if (channel != null) {
+        SelectionKey key = selector != null ? channel.keyFor(selector) : null;
+        if (key != null) {
+          key.attach(null);
+          key.cancel();
+        }
+        IOUtils.closeStream(channel);
+      }
+      try {
+        callbackExecutor.execute(new Runnable() {
+          @Override
+          public void run() {
+            callback.exchangeCompleted(line, failure);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        log.debug("Discarding the outcome of a probe of {}", address);
+      }
+    }
+  }
+}
@@ -90,6 +90,18 @@ public class ProbeWorker implements Runnable {
     this.reportHandler = reportHandler;
   }
 
+  protected ProbeReportHandler getReportHandler() {
+    return reportHandler;
+  }
+
+  protected List<Probe> getMonitorProbes() {
+    return monitorProbes;
+  }
+
+  protected boolean isMustExit() {
+    return mustExit;
+  }
+
   public void setMustExit() {
     this.mustExit = true;
   }
@@ -112,7 +124,7 @@ public class ProbeWorker implements Runnable {
    * invocation at the same time.
    * @param status the new process status
    */
-  private synchronized void enterProbePhase(ProbePhase status) {
+  protected synchronized void enterProbePhase(ProbePhase status) {
     this.probePhase = status;
     if (reportHandler != null) {
       reportHandler.probeProcessStateChange(status);
@@ -125,7 +137,7 @@ public class ProbeWorker implements Runnable {
    * The value is also stored in the {@link #lastStatus} field
    * @param status the new status
    */
-  private void reportProbeStatus(ProbeStatus status) {
+  protected void reportProbeStatus(ProbeStatus status) {
     ProbePhase phase = getProbePhase();
     status.setProbePhase(phase);
     lastStatus = status;
@@ -214,7 +226,7 @@ public class ProbeWorker implements Runnable {
    * This sets the timeouts up, as well as permits any other set-up actions
    * to begin.
    */
-  private void beginBootstrapProbes() {
+  protected void beginBootstrapProbes() {
     synchronized (this) {
       bootstrapEndtime = now() + bootstrapTimeout;
     }
@@ -405,7 +417,7 @@ public class ProbeWorker implements Runnable {
    * @param text optional text -null or "" means "none"
    * @return an exception ready to throw
    */
-  private ProbeFailedException raiseProbeFailure(ProbeStatus status, String text) {
+  protected ProbeFailedException raiseProbeFailure(ProbeStatus status, String text) {
     status.setProbePhase(probePhase);
     log.info("Probe failed: " + status);
     return new ProbeFailedException(text, status);
@@ -48,7 +48,8 @@ public final class ReportingLoop implements Runnable, ProbeReportHandler, Monito
                        int bootstrapTimeout) throws IOException {
     this(name,
          reporter,
-         new ProbeWorker(probes, dependencyProbes, probeInterval, bootstrapTimeout),
+         new ProbeScheduler(probes, dependencyProbes, probeInterval,
+                            probeTimeout, bootstrapTimeout),
          reportInterval,
          probeTimeout);
   }
@@ -174,6 +175,7 @@ public final class ReportingLoop implements Runnable, ProbeReportHandler, Monito
   @Override
   public void probeTimedOut(ProbePhase currentPhase, Probe probe, ProbeStatus lastStatus,
       long currentTime) {
+    reporter.probeTimedOut(currentPhase, probe, lastStatus, currentTime);
   }
 
   @Override
@@ -50,6 +50,18 @@ public class Duration {
     return limit >= 0 && ((System.currentTimeMillis() - start) > limit);
   }
 
+  /**
+   * Get the time left before the limit is reached
+   * @return the remaining millis; 0 if the limit has been exceeded;
+   * {@link Long#MAX_VALUE} if there is no limit
+   */
+  public long getRemaining() {
+    if (limit < 0) {
+      return Long.MAX_VALUE;
+    }
+    return Math.max(0, limit - (System.currentTimeMillis() - start));
+  }
+
   @Override
   public String toString() {
     return "Duration " +
@@ -21,6 +21,7 @@ package org.apache.hoya.tools;
 import com.google.common.base.Preconditions;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
@@ -37,6 +38,7 @@ import org.apache.hoya.HoyaKeys;
 import org.apache.hoya.HoyaXmlConfKeys;
 import org.apache.hoya.api.ClusterDescription;
 import org.apache.hoya.exceptions.BadClusterStateException;
+import org.apache.hoya.exceptions.BadConfigException;
 import org.apache.hoya.exceptions.ErrorStrings;
 import org.apache.hoya.exceptions.HoyaException;
 import org.slf4j.Logger;
@@ -47,6 +49,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 
 public class HoyaFileSystem {
@@ -55,6 +58,7 @@ public class HoyaFileSystem {
 
   private final FileSystem fileSystem;
   private final Configuration configuration;
+  private JarCache jarCache;
 
   public HoyaFileSystem(FileSystem fileSystem, Configuration configuration) {
     Preconditions.checkNotNull(fileSystem, "Cannot create a HoyaFileSystem with a null FileSystem");
@@ -298,6 +302,53 @@ public class HoyaFileSystem {
     return fileSystem.getHomeDirectory();
   }
 
+  /**
+   * Get the JAR cache
+   * @return the cache, or null if it is disabled by
+   * {@value HoyaXmlConfKeys#KEY_JAR_CACHE_ENABLED}
+   * @throws BadConfigException if the cache visibility is invalid
+   */
+  public synchronized JarCache getJarCache() throws BadConfigException {
+    if (jarCache == null &&
+        configuration.getBoolean(HoyaXmlConfKeys.KEY_JAR_CACHE_ENABLED,
+                                 HoyaXmlConfKeys.DEFAULT_JAR_CACHE_ENABLED)) {
+      String visibility =
+        configuration.getTrimmed(HoyaXmlConfKeys.KEY_JAR_CACHE_VISIBILITY,
+                                 HoyaXmlConfKeys.DEFAULT_JAR_CACHE_VISIBILITY);
+      LocalResourceVisibility resourceVisibility;
+      try {
+        resourceVisibility =
+          LocalResourceVisibility.valueOf(visibility.toUpperCase(Locale.ENGLISH));
+      } catch (IllegalArgumentException e) {
+        throw new BadConfigException("Invalid value of %s: \"%s\"",
+                                     HoyaXmlConfKeys.KEY_JAR_CACHE_VISIBILITY,
+                                     visibility);
+      }
+      jarCache = new JarCache(fileSystem,
+                              new Path(getBaseHoyaPath(),
+                                       HoyaKeys.JAR_CACHE_DIRECTORY),
+                              resourceVisibility);
+    }
+    return jarCache;
+  }
+
+  /**
+   * Delete the JARs in the cache which have not been used for longer than
+   * {@value HoyaXmlConfKeys#KEY_JAR_CACHE_MAX_AGE} seconds
+   * @return the number of JARs deleted
+   * @throws IOException IO problems
+   * @throws BadConfigException if the cache visibility is invalid
+   */
+  public int pruneJarCache() throws IOException, BadConfigException {
+    JarCache cache = getJarCache();
+    if (cache == null) {
+      return 0;
+    }
+    long maxAge = configuration.getLong(HoyaXmlConfKeys.KEY_JAR_CACHE_MAX_AGE,
+                                        HoyaXmlConfKeys.DEFAULT_JAR_CACHE_MAX_AGE);
+    return cache.prune(maxAge * 1000);
+  }
+
   /**
    * Overwrite a cluster specification. This code
    * attempts to do this atomically by writing the updated specification
@@ -470,7 +521,8 @@ public class HoyaFileSystem {
 
   /**
    * Submit a JAR containing a specific class, returning
-   * the resource to be mapped in
+   * the resource to be mapped in. If the JAR cache is enabled the JAR is
+   * taken from the cache, and only uploaded if it is not already there.
    *
    * @param clazz   class to look for
    * @param subdir  subdirectory (expected to end in a "/")
@@ -485,6 +537,10 @@ public class HoyaFileSystem {
       throw new FileNotFoundException("Could not find JAR containing " + clazz);
     }
 
+    JarCache cache = getJarCache();
+    if (cache != null) {
+      return cache.submit(localFile, jarName);
+    }
     LocalResource resource = submitFile(localFile, tempPath, subdir, jarName);
     return resource;
   }
@@ -532,6 +588,48 @@ public class HoyaFileSystem {
     return builder.toString();
   }
 
+  /**
+   * Load the fingerprint of the last full launch of a cluster
+   * @param clusterDirectory cluster directory
+   * @return the fingerprint, or null if there is none
+   * @throws IOException IO problems
+   */
+  public String loadLaunchFingerprint(Path clusterDirectory) throws
+                                                             IOException {
+    Path path = new Path(clusterDirectory, HoyaKeys.LAUNCH_FINGERPRINT_FILE);
+    FSDataInputStream in;
+    try {
+      in = fileSystem.open(path);
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+    try {
+      return in.readUTF();
+    } catch (IOException e) {
+      log.debug("Unreadable launch fingerprint {}: {}", path, e.toString());
+      return null;
+    } finally {
+      IOUtils.closeStream(in);
+    }
+  }
+
+  /**
+   * Save the fingerprint of a full launch of a cluster
+   * @param clusterDirectory cluster directory
+   * @param fingerprint fingerprint
+   * @throws IOException IO problems
+   */
+  public void saveLaunchFingerprint(Path clusterDirectory,
+                                    String fingerprint) throws IOException {
+    Path path = new Path(clusterDirectory, HoyaKeys.LAUNCH_FINGERPRINT_FILE);
+    FSDataOutputStream out = fileSystem.create(path, true);
+    try {
+      out.writeUTF(fingerprint);
+    } finally {
+      IOUtils.closeStream(out);
+    }
+  }
+
   public void touch(Path path) throws IOException {
     FSDataOutputStream out = fileSystem.create(path);
     out.close();
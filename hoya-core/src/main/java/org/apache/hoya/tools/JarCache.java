@@ -0,0 +1,315 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.tools;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.util.StringUtils;
+import org.apache.hadoop.yarn.api.records.LocalResource;
+import org.apache.hadoop.yarn.api.records.LocalResourceType;
+import org.apache.hadoop.yarn.api.records.LocalResourceVisibility;
+import org.apache.hadoop.yarn.util.ConverterUtils;
+import org.apache.hadoop.yarn.util.Records;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A cache of JARs in the cluster filesystem, shared by every launch of
+ * every cluster of a user.
+ *
+ * Each JAR is stored under the SHA-1 hash of its contents, so a JAR is
+ * only uploaded the first time it is seen; later launches reference the
+ * copy already there. Uploads are written to a temporary file then
+ * renamed into place, so a partly written entry is never visible.
+ *
+ * The cached files are never rewritten, as the timestamp of a resource
+ * is checked by the NodeManagers when localizing it. The last use of
+ * an entry is recorded by touching a marker file alongside it, and
+ * {@link #prune(long)} deletes the entries unused for longer than a
+ * given age. A running application may need its entries long after it
+ * was submitted -to restart its AM- so the AM keeps touching the markers
+ * of the entries it was launched with through
+ * {@link #markInUse(FileSystem, Collection)}.
+ *
+ * Layout: <code>cachedir/hash/name.jar</code> and
+ * <code>cachedir/hash/.used</code>.
+ */
+public class JarCache {
+  private static final Logger log = LoggerFactory.getLogger(JarCache.class);
+
+  /**
+   * Name of the marker file touched on every use of an entry: {@value}
+   */
+  public static final String USED_MARKER = ".used";
+
+  /**
+   * Hashes of local files, keyed by path, length and modification time,
+   * so a JAR is only read once per process
+   */
+  private static final ConcurrentMap<String, String> localHashes =
+    new ConcurrentHashMap<String, String>();
+
+  private final FileSystem fileSystem;
+  private final Path cacheDir;
+  private final LocalResourceVisibility visibility;
+
+  /**
+   * Create a cache
+   * @param fileSystem filesystem of the cache
+   * @param cacheDir directory of the cache
+   * @param visibility visibility of the resources handed out. If this is
+   * {@link LocalResourceVisibility#PUBLIC} the entries are made world
+   * readable; the parent directories must be world readable too.
+   */
+  public JarCache(FileSystem fileSystem,
+                  Path cacheDir,
+                  LocalResourceVisibility visibility) {
+    this.fileSystem = fileSystem;
+    this.cacheDir = cacheDir;
+    this.visibility = visibility;
+  }
+
+  public Path getCacheDir() {
+    return cacheDir;
+  }
+
+  /**
+   * Get the resource for a local JAR, uploading it if it is not
+   * already in the cache
+   * @param localFile local file
+   * @param jarName name of the cached copy
+   * @return a resource referring to the cached copy
+   * @throws IOException IO problems
+   */
+  public LocalResource submit(File localFile, String jarName) throws
+                                                              IOException {
+    if (!localFile.isFile()) {
+      throw new FileNotFoundException("Not a file: " + localFile);
+    }
+    String hash = hashOf(localFile);
+    Path entryDir = new Path(cacheDir, hash);
+    Path entry = new Path(entryDir, jarName);
+    FileStatus status = getStatus(entry);
+    if (status != null && status.getLen() != localFile.length()) {
+      //cannot happen unless the cache has been tampered with
+      log.warn("Replacing cached {}: length {} instead of {}",
+               entry, status.getLen(), localFile.length());
+      fileSystem.delete(entry, false);
+      status = null;
+    }
+    if (status == null) {
+      status = upload(localFile, entryDir, entry);
+    } else {
+      log.debug("Using cached copy of {} at {}", localFile, entry);
+    }
+    markUsed(fileSystem, entryDir);
+    if (getStatus(entry) == null) {
+      //pruned between the lookup and the marking; the fresh marker
+      //keeps the new copy from being pruned
+      log.info("Cached {} was pruned while in use", entry);
+      status = upload(localFile, entryDir, entry);
+    }
+    return createResource(status);
+  }
+
+  /**
+   * Upload a file into an entry
+   * @return the status of the entry
+   */
+  private FileStatus upload(File localFile, Path entryDir, Path entry) throws
+                                                                      IOException {
+    log.info("Uploading {} to the JAR cache at {}", localFile, entry);
+    fileSystem.mkdirs(entryDir);
+    Path temp = new Path(entryDir, "." + entry.getName() + "." +
+                                   UUID.randomUUID() + ".tmp");
+    fileSystem.copyFromLocalFile(false, true, new Path(localFile.toString()),
+                                 temp);
+    if (visibility == LocalResourceVisibility.PUBLIC) {
+      fileSystem.setPermission(entryDir, new FsPermission((short) 0755));
+      fileSystem.setPermission(temp, new FsPermission((short) 0644));
+    }
+    FileStatus status = fileSystem.getFileStatus(temp);
+    if (status.getLen() != localFile.length()) {
+      fileSystem.delete(temp, false);
+      throw new IOException("Upload of " + localFile + " to " + temp +
+                            " is " + status.getLen() + " bytes instead of "
+                            + localFile.length());
+    }
+    if (!fileSystem.rename(temp, entry)) {
+      // another client got there first; its copy has the same contents
+      fileSystem.delete(temp, false);
+    }
+    return fileSystem.getFileStatus(entry);
+  }
+
+  private FileStatus getStatus(Path path) throws IOException {
+    try {
+      return fileSystem.getFileStatus(path);
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Record the use of an entry
+   * @param fileSystem filesystem of the cache
+   * @param entryDir the entry's directory
+   */
+  private static void markUsed(FileSystem fileSystem, Path entryDir) throws
+                                                                   IOException {
+    fileSystem.create(new Path(entryDir, USED_MARKER), true).close();
+  }
+
+  /**
+   * Get the directories of the cache entries which resources refer to
+   * @param resources resources
+   * @return the entry directories, in the order of the resources
+   */
+  public List<Path> getEntries(Collection<LocalResource> resources) {
+    Path qualifiedCacheDir = fileSystem.makeQualified(cacheDir);
+    Set<Path> entries = new LinkedHashSet<Path>();
+    for (LocalResource resource : resources) {
+      Path path;
+      try {
+        path = ConverterUtils.getPathFromYarnURL(resource.getResource());
+      } catch (URISyntaxException e) {
+        continue;
+      }
+      Path entryDir = path.getParent();
+      if (entryDir != null && qualifiedCacheDir.equals(entryDir.getParent())) {
+        entries.add(entryDir);
+      }
+    }
+    return new ArrayList<Path>(entries);
+  }
+
+  /**
+   * Record the use of entries by a running application, so that they are
+   * not pruned while it may still need them. Entries which have been
+   * deleted are not recreated.
+   * @param fileSystem filesystem of the cache
+   * @param entryDirs the directories of the entries
+   * @return the number of entries marked
+   * @throws IOException IO problems
+   */
+  public static int markInUse(FileSystem fileSystem,
+                              Collection<Path> entryDirs) throws IOException {
+    int marked = 0;
+    for (Path entryDir : entryDirs) {
+      if (fileSystem.exists(entryDir)) {
+        markUsed(fileSystem, entryDir);
+        marked++;
+      } else {
+        log.warn("JAR cache entry {} has been deleted", entryDir);
+      }
+    }
+    return marked;
+  }
+
+  private LocalResource createResource(FileStatus status) {
+    LocalResource resource = Records.newRecord(LocalResource.class);
+    resource.setType(LocalResourceType.FILE);
+    resource.setVisibility(visibility);
+    resource.setResource(ConverterUtils.getYarnUrlFromPath(status.getPath()));
+    resource.setTimestamp(status.getModificationTime());
+    resource.setSize(status.getLen());
+    return resource;
+  }
+
+  /**
+   * Delete every entry which has not been used for a while. Entries
+   * whose use cannot be determined are left alone.
+   * @param maxAge age in millis beyond which unused entries are deleted
+   * @return the number of entries deleted
+   * @throws IOException IO problems
+   */
+  public int prune(long maxAge) throws IOException {
+    if (!fileSystem.exists(cacheDir)) {
+      return 0;
+    }
+    long cutoff = System.currentTimeMillis() - maxAge;
+    int deleted = 0;
+    for (FileStatus entryDir : fileSystem.listStatus(cacheDir)) {
+      if (!entryDir.isDirectory()) {
+        continue;
+      }
+      FileStatus used = getStatus(new Path(entryDir.getPath(), USED_MARKER));
+      if (used != null && used.getModificationTime() < cutoff) {
+        log.info("Deleting unused JAR cache entry {}", entryDir.getPath());
+        if (fileSystem.delete(entryDir.getPath(), true)) {
+          deleted++;
+        }
+      }
+    }
+    return deleted;
+  }
+
+  /**
+   * Get the hex SHA-1 hash of the contents of a local file
+   * @param file file
+   * @return the hash
+   * @throws IOException IO problems
+   */
+  public static String hashOf(File file) throws IOException {
+    String key = file.getAbsolutePath() + ":" + file.length() + ":" +
+                 file.lastModified();
+    String hash = localHashes.get(key);
+    if (hash == null) {
+      MessageDigest digest;
+      try {
+        digest = MessageDigest.getInstance("SHA-1");
+      } catch (NoSuchAlgorithmException e) {
+        throw new IOException(e);
+      }
+      InputStream in = new FileInputStream(file);
+      try {
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+          digest.update(buffer, 0, read);
+        }
+      } finally {
+        IOUtils.closeStream(in);
+      }
+      hash = StringUtils.byteToHexString(digest.digest());
+      localHashes.put(key, hash);
+    }
+    return hash;
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.tools;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.StringUtils;
+import org.apache.hoya.api.ClusterDescription;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Builds a fingerprint of everything which goes into the launch of a
+ * cluster: its specification, the client configuration and the
+ * configuration directories. If the fingerprint of a cluster is the same
+ * as at its last launch, nothing has changed which would need the
+ * launch to be validated or its configuration regenerated.
+ *
+ * The original configuration directory is fingerprinted by the names,
+ * lengths and modification times of its files. The generated one is
+ * rewritten on every launch, so only the names and lengths of its files
+ * are used; its contents are derived from the other inputs.
+ */
+public class LaunchFingerprint {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final MessageDigest digest;
+
+  /**
+   * The fingerprint, once {@link #finish()} has been called
+   */
+  private String fingerprint;
+
+  public LaunchFingerprint() {
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Add a string
+   * @param text text; may be null
+   * @return this
+   */
+  public LaunchFingerprint add(String text) {
+    if (fingerprint != null) {
+      throw new IllegalStateException("Fingerprint already finished");
+    }
+    digest.update(String.valueOf(text).getBytes(UTF8));
+    digest.update((byte) 0);
+    return this;
+  }
+
+  /**
+   * Add a cluster specification
+   * @param clusterSpec specification
+   * @return this
+   * @throws IOException if it cannot be converted to JSON
+   */
+  public LaunchFingerprint add(ClusterDescription clusterSpec) throws
+                                                               IOException {
+    return add(clusterSpec.toJsonString());
+  }
+
+  /**
+   * Add every entry of a configuration, in key order
+   * @param conf configuration
+   * @return this
+   */
+  public LaunchFingerprint add(Configuration conf) {
+    TreeMap<String, String> sorted = new TreeMap<String, String>();
+    for (Map.Entry<String, String> entry : conf) {
+      sorted.put(entry.getKey(), entry.getValue());
+    }
+    for (Map.Entry<String, String> entry : sorted.entrySet()) {
+      add(entry.getKey()).add(entry.getValue());
+    }
+    return this;
+  }
+
+  /**
+   * Add the listing of a directory. A missing directory is added
+   * as such.
+   * @param fs filesystem
+   * @param dir directory
+   * @param includeTimes include the modification times of the files
+   * @return this
+   * @throws IOException IO problems
+   */
+  public LaunchFingerprint add(FileSystem fs, Path dir, boolean includeTimes)
+    throws IOException {
+    add(dir.toString());
+    FileStatus[] listing;
+    try {
+      listing = fs.listStatus(dir);
+    } catch (FileNotFoundException e) {
+      listing = null;
+    }
+    if (listing == null) {
+      return add("missing");
+    }
+    TreeMap<String, FileStatus> sorted = new TreeMap<String, FileStatus>();
+    for (FileStatus status : listing) {
+      sorted.put(status.getPath().getName(), status);
+    }
+    for (FileStatus status : sorted.values()) {
+      add(status.getPath().getName()).add(Long.toString(status.getLen()));
+      if (includeTimes) {
+        add(Long.toString(status.getModificationTime()));
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Build the fingerprint of a cluster launch
+   * @param fs filesystem
+   * @param clusterSpec cluster specification
+   * @param inputDigest the {@link #digestOf(ClusterDescription, Configuration)}
+   * of the specification and client configuration, taken before the
+   * launch modified either
+   * @return the fingerprint
+   * @throws IOException IO problems
+   */
+  public static String build(FileSystem fs,
+                             ClusterDescription clusterSpec,
+                             String inputDigest) throws IOException {
+    LaunchFingerprint fingerprint = new LaunchFingerprint();
+    fingerprint.add(inputDigest);
+    fingerprint.add(fs, new Path(clusterSpec.originConfigurationPath), true);
+    fingerprint.add(fs, new Path(clusterSpec.generatedConfigurationPath),
+                    false);
+    return fingerprint.finish();
+  }
+
+  /**
+   * Get the digest of a cluster specification and configuration
+   * @param clusterSpec cluster specification
+   * @param conf configuration
+   * @return the digest
+   * @throws IOException if the specification cannot be converted to JSON
+   */
+  public static String digestOf(ClusterDescription clusterSpec,
+                                Configuration conf) throws IOException {
+    return new LaunchFingerprint().add(clusterSpec).add(conf).finish();
+  }
+
+  /**
+   * Finish the fingerprint; nothing more can be added after this.
+   * It may be called more than once.
+   * @return the fingerprint in hex
+   */
+  public String finish() {
+    if (fingerprint == null) {
+      fingerprint = StringUtils.byteToHexString(digest.digest());
+    }
+    return fingerprint;
+  }
+
+  @Override
+  public String toString() {
+    return "LaunchFingerprint{" +
+           (fingerprint != null ? fingerprint : "unfinished") +
+           '}';
+  }
+}
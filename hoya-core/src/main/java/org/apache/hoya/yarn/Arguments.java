@@ -68,6 +68,7 @@ public interface Arguments {
   String ARG_ROLE = "--role";
   String ARG_SYSPROP = "-S";
   String ARG_ROLEOPT = "--roleopt";
+  String ARG_STATUS = "--status";
   String ARG_WAIT = "--wait";
   String ARG_ZKPORT = "--zkport";
   String ARG_ZKHOSTS = "--zkhosts";
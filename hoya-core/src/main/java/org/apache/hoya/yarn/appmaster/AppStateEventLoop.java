@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.appmaster;
+
+import org.apache.hadoop.service.AbstractService;
+import org.apache.hoya.api.StatusKeys;
+import org.apache.hoya.yarn.appmaster.state.StatisticsSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single thread which applies all events that change the application
+ * state: container allocations and completions, container starts and
+ * start failures, and flex requests.
+ *
+ * The callback threads of the RM and NM clients only queue their events,
+ * so they are never blocked behind status queries or each other. As
+ * there is only one writer, the app state locks it takes are
+ * uncontended except by the readers which still need them.
+ *
+ * Events are applied in the order they are posted. An event which fails
+ * is logged and counted; the loop carries on with the next.
+ * When the service stops, events already queued are still applied;
+ * only those posted after the stop are discarded, and
+ * {@link #post(String, Runnable)} tells the caller so.
+ */
+public class AppStateEventLoop extends AbstractService
+    implements StatisticsSource {
+  protected static final Logger log =
+    LoggerFactory.getLogger(AppStateEventLoop.class);
+
+  /**
+   * How long to wait for the queued events to be applied on shutdown:
+   * {@value}
+   */
+  public static final int EVENT_THREAD_SHUTDOWN_TIME = 10000;
+
+  private final ThreadPoolExecutor executor;
+
+  private volatile Thread eventThread;
+
+  private final AtomicLong eventsProcessed = new AtomicLong();
+  private final AtomicLong eventsFailed = new AtomicLong();
+  private final AtomicInteger eventsDiscarded = new AtomicInteger();
+  private volatile long maxQueueTime;
+
+  /**
+   * Create the event loop
+   */
+  public AppStateEventLoop() {
+    super("AppStateEventLoop");
+    executor = new ThreadPoolExecutor(1, 1,
+                                      0, TimeUnit.MILLISECONDS,
+                                      new LinkedBlockingQueue<Runnable>(),
+                                      new ThreadFactory() {
+                                        @Override
+                                        public Thread newThread(Runnable r) {
+                                          Thread thread =
+                                            new Thread(r, "AppStateEvents");
+                                          thread.setDaemon(true);
+                                          eventThread = thread;
+                                          return thread;
+                                        }
+                                      });
+  }
+
+  @Override
+  protected void serviceStop() throws Exception {
+    //refuse new events, but apply those already queued: their updates
+    //to the app state and role history must not be lost
+    executor.shutdown();
+    int queued = executor.getQueue().size();
+    if (queued > 0) {
+      log.info("Applying {} queued events before stopping", queued);
+    }
+    if (!isEventThread()
+        && !executor.awaitTermination(EVENT_THREAD_SHUTDOWN_TIME,
+                                      TimeUnit.MILLISECONDS)) {
+      List<Runnable> pending = executor.shutdownNow();
+      log.warn("Discarding {} events still queued after {} millis",
+               pending.size(), EVENT_THREAD_SHUTDOWN_TIME);
+      eventsDiscarded.addAndGet(pending.size());
+      for (Runnable event : pending) {
+        if (event instanceof Future) {
+          ((Future<?>) event).cancel(false);
+        }
+      }
+    }
+    super.serviceStop();
+  }
+
+  /**
+   * Is the caller running in the event thread?
+   * @return true if the current thread is the event thread
+   */
+  public boolean isEventThread() {
+    return Thread.currentThread() == eventThread;
+  }
+
+  /**
+   * Queue an event. If the loop has been stopped the event is discarded.
+   * @param name name of the event, for logging
+   * @param event the event
+   * @return true if the event was queued; false if it was discarded
+   */
+  public boolean post(final String name, final Runnable event) {
+    final long queued = now();
+    try {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          noteQueueTime(queued);
+          try {
+            event.run();
+          } catch (Throwable t) {
+            eventsFailed.incrementAndGet();
+            log.error("Event {} failed: {}", name, t, t);
+          } finally {
+            eventsProcessed.incrementAndGet();
+          }
+        }
+      });
+      return true;
+    } catch (RejectedExecutionException e) {
+      log.debug("Discarding event {} posted after shutdown", name);
+      eventsDiscarded.incrementAndGet();
+      return false;
+    }
+  }
+
+  /**
+   * Queue an event and wait for its result. If this is called from
+   * the event thread the event is run directly.
+   * @param name name of the event, for logging
+   * @param event the event
+   * @param <T> type of the result
+   * @return the result of the event
+   * @throws IOException any IOException raised by the event, or if the
+   * loop has been stopped
+   * @throws Exception any other exception raised by the event
+   */
+  public <T> T call(String name, Callable<T> event) throws Exception {
+    if (isEventThread()) {
+      return event.call();
+    }
+    final long queued = now();
+    final Callable<T> inner = event;
+    FutureTask<T> task = new FutureTask<T>(new Callable<T>() {
+      @Override
+      public T call() throws Exception {
+        noteQueueTime(queued);
+        try {
+          return inner.call();
+        } finally {
+          eventsProcessed.incrementAndGet();
+        }
+      }
+    });
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      eventsDiscarded.incrementAndGet();
+      throw new IOException("Event " + name + " rejected: AM is stopping");
+    }
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      task.cancel(false);
+      throw (InterruptedIOException)
+        new InterruptedIOException("Interrupted waiting for " + name)
+          .initCause(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+      throw e;
+    }
+  }
+
+  private void noteQueueTime(long queued) {
+    long queueTime = now() - queued;
+    if (queueTime > maxQueueTime) {
+      maxQueueTime = queueTime;
+    }
+  }
+
+  /**
+   * Get the number of events waiting to be applied
+   * @return the queue length
+   */
+  public int getQueueLength() {
+    return executor.getQueue().size();
+  }
+
+  public long getEventsProcessed() {
+    return eventsProcessed.get();
+  }
+
+  public long getEventsFailed() {
+    return eventsFailed.get();
+  }
+
+  @Override
+  public Map<String, Integer> buildStatistics() {
+    Map<String, Integer> stats = new HashMap<String, Integer>();
+    stats.put(StatusKeys.STATISTICS_EVENTS_QUEUE_LENGTH, getQueueLength());
+    stats.put(StatusKeys.STATISTICS_EVENTS_PROCESSED,
+              (int) eventsProcessed.get());
+    stats.put(StatusKeys.STATISTICS_EVENTS_FAILED, (int) eventsFailed.get());
+    stats.put(StatusKeys.STATISTICS_EVENTS_DISCARDED, eventsDiscarded.get());
+    stats.put(StatusKeys.STATISTICS_EVENTS_MAX_QUEUE_MILLIS,
+              (int) maxQueueTime);
+    return stats;
+  }
+
+  protected long now() {
+    return System.currentTimeMillis();
+  }
+}
@@ -37,4 +37,12 @@ public interface ContainerStartOperation {
   void startContainer(Container container,
                       ContainerLaunchContext ctx,
                       RoleInstance instance) ;
+
+  /**
+   * The launch of a container was canceled, or it failed before the
+   * container start was submitted. The container has been allocated,
+   * so it must be released.
+   * @param container container
+   */
+  void containerLaunchCanceled(Container container);
 }
@@ -21,6 +21,7 @@ package org.apache.hoya.yarn.appmaster;
 import com.google.protobuf.BlockingService;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.io.DataOutputBuffer;
@@ -58,6 +59,7 @@ import org.apache.hadoop.yarn.util.ConverterUtils;
 import org.apache.hadoop.yarn.webapp.WebApps;
 import org.apache.hoya.HoyaExitCodes;
 import org.apache.hoya.HoyaKeys;
+import org.apache.hoya.HoyaXmlConfKeys;
 import org.apache.hoya.api.ClusterDescription;
 import org.apache.hoya.api.HoyaClusterProtocol;
 import org.apache.hoya.api.OptionKeys;
@@ -85,15 +87,18 @@ import org.apache.hoya.tools.ConfigHelper;
 import org.apache.hoya.tools.HoyaFileSystem;
 import org.apache.hoya.tools.HoyaUtils;
 import org.apache.hoya.tools.HoyaVersionInfo;
+import org.apache.hoya.tools.JarCache;
 import org.apache.hoya.yarn.HoyaActions;
 import org.apache.hoya.yarn.appmaster.rpc.HoyaAMPolicyProvider;
 import org.apache.hoya.yarn.appmaster.rpc.HoyaClusterProtocolPBImpl;
 import org.apache.hoya.yarn.appmaster.rpc.RpcBinder;
 import org.apache.hoya.yarn.appmaster.state.AbstractRMOperation;
 import org.apache.hoya.yarn.appmaster.state.AppState;
+import org.apache.hoya.yarn.appmaster.state.ClusterStatusSnapshot;
 import org.apache.hoya.yarn.appmaster.state.ContainerAssignment;
 import org.apache.hoya.yarn.appmaster.state.ContainerReleaseOperation;
 import org.apache.hoya.yarn.appmaster.state.RMOperationHandler;
+import org.apache.hoya.yarn.appmaster.state.RoleHistorySaver;
 import org.apache.hoya.yarn.appmaster.state.RoleInstance;
 import org.apache.hoya.yarn.appmaster.state.RoleStatus;
 import org.apache.hoya.yarn.appmaster.web.HoyaAMWebApp;
@@ -112,6 +117,8 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.nio.ByteBuffer;
@@ -122,6 +129,10 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
@@ -140,7 +151,8 @@ public class HoyaAppMaster extends CompoundLaunchedService
              RoleKeys,
              EventCallback,
              ContainerStartOperation,
-             ProbeReportHandler {
+             ProbeReportHandler,
+             InstanceHealthMonitor.UnhealthyInstanceHandler {
   protected static final Logger log =
     LoggerFactory.getLogger(HoyaAppMaster.class);
 
@@ -158,10 +170,35 @@ public class HoyaAppMaster extends CompoundLaunchedService
   public static final int TERMINATION_SIGNAL_PROPAGATION_DELAY = 1000;
 
   public static final int HEARTBEAT_INTERVAL = 1000;
-  public static final int NUM_RPC_HANDLERS = 5;
+  public static final int NUM_RPC_HANDLERS = 16;
+
+  /**
+   * Maximum number of RPC handlers which may be blocked in
+   * waitForClusterState at the same time, so that there are always
+   * handlers free for other calls: {@value}
+   */
+  public static final int MAX_BLOCKED_STATE_WAITS = 12;
+
+  /**
+   * Longest time a single waitForClusterState call will block, in
+   * millis; callers wanting to wait longer must call again: {@value}
+   */
+  public static final int MAX_STATE_WAIT_TIME = 60000;
+
+  /**
+   * Shortest interval in millis between the markings of the JAR cache
+   * entries in use: {@value}
+   */
+  public static final long JAR_CACHE_MIN_REFRESH_INTERVAL = 60000;
   public static final String SERVICE_CLASSNAME =
     "org.apache.hoya.yarn.appmaster.HoyaAppMaster";
 
+  /**
+   * Permits for callers blocked in waitForClusterState
+   */
+  private final Semaphore stateWaitPermits =
+    new Semaphore(MAX_BLOCKED_STATE_WAITS);
+
   /** YARN RPC to communicate with the Resource Manager or Node Manager */
   private YarnRPC yarnRPC;
 
@@ -228,6 +265,21 @@ public class HoyaAppMaster extends CompoundLaunchedService
 
   private volatile boolean success = true;
 
+  /**
+   * Timer for reviews of requests deferred by the role ramp step intervals
+   */
+  private final Timer rampTimer = new Timer("RoleRampReview", true);
+
+  /**
+   * Timer touching the JAR cache entries which the AM was launched with
+   */
+  private final Timer jarCacheTimer = new Timer("JarCacheRefresh", true);
+
+  /**
+   * Flag set while a ramp review is scheduled
+   */
+  private final AtomicBoolean rampReviewScheduled = new AtomicBoolean(false);
+
   /**
    * Flag to set if the process exit code was set before shutdown started
    */
@@ -260,6 +312,17 @@ public class HoyaAppMaster extends CompoundLaunchedService
   private String amCompletionReason;
 
   private RoleLaunchService launchService;
+
+  /**
+   * Thread applying all events which change the app state
+   */
+  private final AppStateEventLoop eventLoop = new AppStateEventLoop();
+
+  /**
+   * Time taken by each phase of the launch of the cluster
+   */
+  private final LaunchTimings launchTimings = LaunchTimings.fromEnvironment(
+    System.getenv(), ManagementFactory.getRuntimeMXBean().getStartTime());
   
   //username -null if it is not known/not to be set
   private String hoyaUsername;
@@ -389,6 +452,7 @@ public class HoyaAppMaster extends CompoundLaunchedService
                                                clusterSpecPath);
 
     ClusterDescription clusterSpec = ClusterDescription.load(fs.getFileSystem(), clusterSpecPath);
+    scheduleJarCacheRefresh(fs.getFileSystem());
 
     log.info("Deploying cluster from {}:", clusterSpecPath);
     log.info(clusterSpec.toString());
@@ -488,6 +552,10 @@ public class HoyaAppMaster extends CompoundLaunchedService
     synchronized (appState) {
       int heartbeatInterval = HEARTBEAT_INTERVAL;
 
+      //the event loop must be live before any callbacks arrive
+      runChildService(eventLoop);
+      appState.addStatisticsSource(eventLoop);
+
       //add the RM client -this brings the callbacks in
       asyncRMClient = AMRMClientAsync.createAMRMClientAsync(heartbeatInterval,
                                                             this);
@@ -540,6 +608,8 @@ public class HoyaAppMaster extends CompoundLaunchedService
         .registerApplicationMaster(appMasterHostname,
                                    appMasterRpcPort,
                                    appMasterTrackingUrl);
+      launchTimings.registered(System.currentTimeMillis());
+      appState.addStatisticsSource(launchTimings);
       Resource maxResources =
         response.getMaximumResourceCapability();
       containerMaxMemory = maxResources.getMemory();
@@ -607,9 +677,34 @@ public class HoyaAppMaster extends CompoundLaunchedService
                                           providerService,
                                           fs,
                                           new Path(getDFSConfDir()),
-                                          envVars, launcherTmpDirPath);
+                                          envVars, launcherTmpDirPath,
+                                          clusterSpec.getOptionInt(
+                                            OptionKeys.LAUNCHER_THREADS,
+                                            OptionKeys.DEFAULT_LAUNCHER_THREADS));
 
     runChildService(launchService);
+    appState.addStatisticsSource(launchService);
+
+    //role history saver; moves history IO out of the event handlers
+    RoleHistorySaver historySaver =
+      new RoleHistorySaver(appState.getRoleHistory(),
+                           clusterSpec.getOptionInt(
+                             OptionKeys.ROLE_HISTORY_SAVE_INTERVAL,
+                             OptionKeys.DEFAULT_ROLE_HISTORY_SAVE_INTERVAL));
+    runChildService(historySaver);
+    appState.addStatisticsSource(historySaver);
+
+    //health probes of the role instances
+    if (clusterSpec.getOptionBool(OptionKeys.AM_MONITORING_ENABLED,
+                                  OptionKeys.AM_MONITORING_ENABLED_DEFAULT)) {
+      InstanceHealthMonitor healthMonitor =
+        new InstanceHealthMonitor(appState, this,
+                                  clusterSpec.getOptionInt(
+                                    OptionKeys.INSTANCE_PROBE_CONCURRENCY,
+                                    OptionKeys.DEFAULT_INSTANCE_PROBE_CONCURRENCY));
+      runChildService(healthMonitor);
+      appState.addStatisticsSource(healthMonitor);
+    }
 
     appState.noteAMLaunched();
 
@@ -624,6 +719,9 @@ public class HoyaAppMaster extends CompoundLaunchedService
       waitForAMCompletionSignal();
       //shutdown time
     } finally {
+      //apply the queued events; this is done before finish() as
+      //the events may need the AM lock
+      eventLoop.stop();
       finish();
     }
 
@@ -739,6 +837,8 @@ public class HoyaAppMaster extends CompoundLaunchedService
 
     //stop any launches in progress
     launchService.stop();
+    rampTimer.cancel();
+    jarCacheTimer.cancel();
 
 
     //now release all containers
@@ -817,10 +917,24 @@ public class HoyaAppMaster extends CompoundLaunchedService
    * @param allocatedContainers list of containers that are now ready to be
    * given work.
    */
-  @SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
   @Override //AMRMClientAsync
-  public void onContainersAllocated(List<Container> allocatedContainers) {
+  public void onContainersAllocated(
+    final List<Container> allocatedContainers) {
     LOG_YARN.info("onContainersAllocated({})", allocatedContainers.size());
+    eventLoop.post("containers allocated", new Runnable() {
+      @Override
+      public void run() {
+        processContainersAllocated(allocatedContainers);
+      }
+    });
+  }
+
+  /**
+   * Apply a container allocation to the app state and launch the
+   * assigned containers. Runs in the event loop.
+   * @param allocatedContainers the newly allocated containers
+   */
+  private void processContainersAllocated(List<Container> allocatedContainers) {
     List<ContainerAssignment> assignments = new ArrayList<ContainerAssignment>();
     List<AbstractRMOperation> operations = new ArrayList<AbstractRMOperation>();
     
@@ -837,11 +951,28 @@ public class HoyaAppMaster extends CompoundLaunchedService
     //for all the operations, exec them
     rmOperationHandler.execute(operations);
     log.info("Diagnostics: " + getContainerDiagnosticInfo());
+    reviewRampDeferredRequests();
   }
 
   @Override //AMRMClientAsync
-  public synchronized void onContainersCompleted(List<ContainerStatus> completedContainers) {
+  public void onContainersCompleted(
+    final List<ContainerStatus> completedContainers) {
     LOG_YARN.info("onContainersCompleted([{}]", completedContainers.size());
+    eventLoop.post("containers completed", new Runnable() {
+      @Override
+      public void run() {
+        processContainersCompleted(completedContainers);
+      }
+    });
+  }
+
+  /**
+   * Apply container completions to the app state, then review
+   * the cluster size. Runs in the event loop.
+   * @param completedContainers the completed containers
+   */
+  private void processContainersCompleted(
+    List<ContainerStatus> completedContainers) {
     for (ContainerStatus status : completedContainers) {
       ContainerId containerId = status.getContainerId();
       LOG_YARN.info("Container Completion for" +
@@ -856,6 +987,7 @@ public class HoyaAppMaster extends CompoundLaunchedService
       // non complete containers should not be here
       assert (status.getState() == ContainerState.COMPLETE);
       AppState.NodeCompletionResult result = appState.onCompletedNode(conf, status);
+      providerService.notifyContainerCompleted(containerId);
       if (result.containerFailed) {
         RoleInstance ri = result.roleInstance;
         log.error("Role instance {} failed ", ri);
@@ -876,10 +1008,35 @@ public class HoyaAppMaster extends CompoundLaunchedService
     }
   }
 
+  @Override //UnhealthyInstanceHandler
+  public void instanceUnhealthy(RoleInstance instance, final String message) {
+    final ContainerId containerId = instance.getContainerId();
+    eventLoop.post("instance unhealthy", new Runnable() {
+      @Override
+      public void run() {
+        processInstanceUnhealthy(containerId, message);
+      }
+    });
+  }
+
+  /**
+   * Release the container of an instance which has failed its health
+   * probes; it is replaced once the release completes. Runs in the
+   * event loop.
+   * @param containerId container of the instance
+   * @param message diagnostics message
+   */
+  private void processInstanceUnhealthy(ContainerId containerId,
+                                        String message) {
+    List<AbstractRMOperation> operations =
+      appState.onInstanceUnhealthy(containerId, message);
+    rmOperationHandler.execute(operations);
+  }
+
   /**
    * Implementation of cluster flexing.
-   * This is synchronized so that it doesn't get confused by other requests coming
-   * in.
+   * This is only run in the event loop, so that it doesn't get confused
+   * by other requests coming in.
    * It should be the only way that anything -even the AM itself on startup-
    * asks for nodes. 
    * @param workers #of workers to add
@@ -897,15 +1054,40 @@ public class HoyaAppMaster extends CompoundLaunchedService
       throw new IOException("Invalid cluster specification " + e, e);
     }
     appState.updateClusterSpec(updated);
+    // launches of new containers must pick up any changed resources
+    providerService.invalidateLaunchTemplates();
 
     // ask for more containers if needed
     return reviewRequestAndReleaseNodes();
   }
 
   /**
-   * Look at where the current node state is -and whether it should be changed
+   * Flex the cluster in the event loop, waiting for the outcome
+   * @param updated updated cluster specification
+   * @return true if the number of workers changed
+   * @throws IOException on a failure of the flex
    */
-  private synchronized boolean reviewRequestAndReleaseNodes()
+  private boolean flexInEventLoop(final ClusterDescription updated)
+      throws IOException {
+    try {
+      return eventLoop.call("flex", new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          return flexCluster(updated);
+        }
+      });
+    } catch (IOException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException("Failed to flex cluster: " + e, e);
+    }
+  }
+
+  /**
+   * Look at where the current node state is -and whether it should be changed.
+   * This is only run in the event loop.
+   */
+  private boolean reviewRequestAndReleaseNodes()
       throws HoyaInternalStateException {
     log.debug("in reviewRequestAndReleaseNodes()");
     if (amCompletionFlag.get()) {
@@ -916,6 +1098,7 @@ public class HoyaAppMaster extends CompoundLaunchedService
       List<AbstractRMOperation> allOperations = appState.reviewRequestAndReleaseNodes();
       //now apply the operations
       rmOperationHandler.execute(allOperations);
+      scheduleRampReview(appState.getRampReviewDelay());
       return !allOperations.isEmpty();
     } catch (TriggerClusterTeardownException e) {
 
@@ -926,6 +1109,87 @@ public class HoyaAppMaster extends CompoundLaunchedService
     }
   }
   
+  /**
+   * If any role has container requests held back by its ramp limits,
+   * review the requests again; a container event may have freed up room.
+   */
+  private void reviewRampDeferredRequests() {
+    if (appState.hasRampDeferredRequests()) {
+      try {
+        reviewRequestAndReleaseNodes();
+      } catch (HoyaInternalStateException e) {
+        log.warn("Exception while flexing nodes", e);
+      }
+    }
+  }
+
+  /**
+   * Keep the JAR cache entries which the AM was launched with from being
+   * pruned while the cluster runs: the client only marks them when it
+   * submits, but they are needed to restart the AM. The markers are
+   * touched well within the maximum age of the cache.
+   * @param fileSystem filesystem of the cache
+   */
+  private void scheduleJarCacheRefresh(final FileSystem fileSystem) {
+    String entries = System.getenv(HoyaKeys.ENV_JAR_CACHE_ENTRIES);
+    if (entries == null || entries.isEmpty()) {
+      return;
+    }
+    final List<Path> entryDirs = new ArrayList<Path>();
+    for (String entry : entries.split(",")) {
+      if (!entry.isEmpty()) {
+        entryDirs.add(new Path(entry));
+      }
+    }
+    long maxAge =
+      getConfig().getLong(HoyaXmlConfKeys.KEY_JAR_CACHE_MAX_AGE,
+                          HoyaXmlConfKeys.DEFAULT_JAR_CACHE_MAX_AGE) * 1000;
+    long period = Math.max(maxAge / 4, JAR_CACHE_MIN_REFRESH_INTERVAL);
+    log.debug("Marking {} JAR cache entries in use every {} millis",
+              entryDirs.size(), period);
+    jarCacheTimer.schedule(new TimerTask() {
+      @Override
+      public void run() {
+        try {
+          JarCache.markInUse(fileSystem, entryDirs);
+        } catch (IOException e) {
+          log.warn("Failed to mark the JAR cache entries in use: {}",
+                   e.toString());
+          log.debug("JAR cache marking failure", e);
+        }
+      }
+    }, 0, period);
+  }
+
+  /**
+   * Schedule a review of requests deferred by a role ramp step interval,
+   * unless one is already scheduled
+   * @param delay delay in millis; no review is scheduled if this is 0
+   */
+  private void scheduleRampReview(long delay) {
+    if (delay <= 0 || amCompletionFlag.get()
+        || !rampReviewScheduled.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      rampTimer.schedule(new TimerTask() {
+        @Override
+        public void run() {
+          rampReviewScheduled.set(false);
+          eventLoop.post("ramp review", new Runnable() {
+            @Override
+            public void run() {
+              reviewRampDeferredRequests();
+            }
+          });
+        }
+      }, delay);
+    } catch (IllegalStateException e) {
+      //timer canceled during shutdown
+      rampReviewScheduled.set(false);
+    }
+  }
+
   /**
    * Shutdown operation: release all containers
    */
@@ -1014,7 +1278,7 @@ public class HoyaAppMaster extends CompoundLaunchedService
 
     ClusterDescription updated =
       ClusterDescription.fromJson(request.getClusterSpec());
-    boolean flexed = flexCluster(updated);
+    boolean flexed = flexInEventLoop(updated);
     return Messages.FlexClusterResponseProto.newBuilder().setResponse(flexed).build();
   }
 
@@ -1024,29 +1288,21 @@ public class HoyaAppMaster extends CompoundLaunchedService
                                                        IOException,
                                                        YarnException {
     HoyaUtils.getCurrentUser();
-    String result;
-    //quick update
-    //query and json-ify
-    ClusterDescription cd;
-    cd = getCurrentClusterStatus();
-    result = cd.toJsonString();
-    String stat = result;
+    //the JSON is cached with the snapshot; it is only rebuilt on a change
+    String stat = updateClusterStatus().getJson();
     return Messages.GetJSONClusterStatusResponseProto.newBuilder()
       .setClusterSpec(stat)
       .build();
   }
 
   /**
-   * Get the current cluster status, including any provider-specific info
+   * Get the current cluster status, including any provider-specific info.
+   * The result is shared with other callers and must not be modified.
    * @return a status document
+   * @throws IOException if the status could not be built
    */
-  public ClusterDescription getCurrentClusterStatus() {
-    ClusterDescription cd;
-    synchronized (this) {
-      updateClusterStatus();
-      cd = getClusterDescription();
-    }
-    return cd;
+  public ClusterDescription getCurrentClusterStatus() throws IOException {
+    return updateClusterStatus().getStatus();
   }
 
   @Override //HoyaClusterProtocol
@@ -1092,6 +1348,75 @@ public class HoyaAppMaster extends CompoundLaunchedService
     return builder.build();
   }
 
+  @Override //HoyaClusterProtocol
+  public Messages.ListClusterNodesResponseProto listClusterNodes(
+    Messages.ListClusterNodesRequestProto request) throws
+                                                   IOException,
+                                                   YarnException {
+    HoyaUtils.getCurrentUser();
+    List<RoleInstance> matches =
+      appState.findLiveInstances(request.getRole(), request.getState(),
+                                 request.getHost());
+    int total = matches.size();
+    //offset and limit are uint32 fields, so read them as unsigned
+    long offset = request.getOffset() & 0xffffffffL;
+    long limit = request.getLimit() & 0xffffffffL;
+    int from = (int) Math.min(offset, total);
+    int to = limit > 0
+             ? (int) Math.min(from + limit, total)
+             : total;
+    Messages.ListClusterNodesResponseProto.Builder builder =
+      Messages.ListClusterNodesResponseProto.newBuilder();
+    for (RoleInstance node : matches.subList(from, to)) {
+      builder.addClusterNode(node.toProtobuf());
+    }
+    return builder.setTotal(total).build();
+  }
+
+  @Override //HoyaClusterProtocol
+  public Messages.GetClusterStatusDeltaResponseProto getClusterStatusDelta(
+    Messages.GetClusterStatusDeltaRequestProto request) throws
+                                                        IOException,
+                                                        YarnException {
+    HoyaUtils.getCurrentUser();
+    return appState.getStatusDelta(request.getEpoch(), request.getSince());
+  }
+
+  @Override //HoyaClusterProtocol
+  public Messages.WaitForClusterStateResponseProto waitForClusterState(
+    Messages.WaitForClusterStateRequestProto request) throws
+                                                      IOException,
+                                                      YarnException {
+    HoyaUtils.getCurrentUser();
+    String role = request.hasRole() ? request.getRole() : null;
+    int count = request.getCount();
+    long since = request.getStateVersion();
+    long version;
+    boolean busy = !stateWaitPermits.tryAcquire();
+    try {
+      long timeout = busy ? 0
+                          : Math.min(request.getTimeout(), MAX_STATE_WAIT_TIME);
+      version = appState.awaitStateChange(role, count, since, timeout);
+    } catch (InterruptedException e) {
+      throw (IOException) new InterruptedIOException(
+        "Interrupted while waiting for the cluster state").initCause(e);
+    } finally {
+      if (!busy) {
+        stateWaitPermits.release();
+      }
+    }
+    int live = role != null
+               ? appState.getLiveInstancesView().getInstancesInRole(role).size()
+               : 0;
+    return Messages.WaitForClusterStateResponseProto.newBuilder()
+                   .setSatisfied((role != null && live >= count)
+                                 || (since >= 0 && version != since))
+                   .setLive(live)
+                   .setStateVersion(version)
+                   .setBusy(busy)
+                   .build();
+  }
+
   @Override
   public Messages.EchoResponseProto echo(Messages.EchoRequestProto request) throws
                                                                             IOException,
@@ -1147,12 +1472,14 @@ public class HoyaAppMaster extends CompoundLaunchedService
 /* =================================================================== */
 
   /**
-   * Update the cluster description with anything interesting
+   * Update the cluster description with anything interesting.
+   * This only rebuilds the status if the application state has
+   * changed since the last snapshot, or that snapshot has expired.
+   * @return a current status snapshot
+   * @throws IOException if the status could not be built
    */
-  public synchronized void updateClusterStatus() {
-    Map<String, String> providerStatus = providerService.buildProviderStatus();
-    assert providerStatus != null : "null provider status";
-    appState.refreshClusterStatus(providerStatus);
+  public ClusterStatusSnapshot updateClusterStatus() throws IOException {
+    return appState.getStatusSnapshot(providerService);
   }
 
   /**
@@ -1292,15 +1619,21 @@ public class HoyaAppMaster extends CompoundLaunchedService
   public void eventCallbackEvent() {
     // signalled that the child process is up.
     appState.noteAMLive();
-    // now ask for the cluster nodes
-    try {
-      flexCluster(getClusterSpec());
-    } catch (Exception e) {
-      //this may happen in a separate thread, so the ability to act is limited
-      log.error("Failed to flex cluster nodes", e);
-      //declare a failure
-      finish();
-    }
+    // now ask for the cluster nodes. This is queued rather than waited
+    // for, as the caller may hold the AM lock
+    eventLoop.post("initial flex", new Runnable() {
+      @Override
+      public void run() {
+        try {
+          flexCluster(getClusterSpec());
+        } catch (Exception e) {
+          log.error("Failed to flex cluster nodes", e);
+          //declare a failure
+          signalAMComplete(EXIT_EXCEPTION_THROWN,
+                           "Failed to flex cluster nodes: " + e);
+        }
+      }
+    });
   }
 
   /* =================================================================== */
@@ -1355,15 +1688,18 @@ public class HoyaAppMaster extends CompoundLaunchedService
   }
 
   /**
-   *  Async start container request
+   *  Async start container request.
+   *  This is called in a launcher thread; the submission is applied to the
+   *  app state in the event loop. It is posted before the NM is asked to
+   *  start the container, so it is applied before any start event.
    * @param container container
    * @param ctx context
    * @param instance node details
    */
   @Override // ContainerStartOperation
-  public void startContainer(Container container,
+  public void startContainer(final Container container,
                              ContainerLaunchContext ctx,
-                             RoleInstance instance) {
+                             final RoleInstance instance) {
     // Set up tokens for the container too. Today, for normal shell commands,
     // the container in distribute-shell doesn't need any tokens. We are
     // populating them mainly for NodeManagers to be able to download any
@@ -1371,10 +1707,45 @@ public class HoyaAppMaster extends CompoundLaunchedService
     // useful in cases, for e.g., when one is running a "hadoop dfs" command
     // inside the distributed shell.
     ctx.setTokens(allTokens.duplicate());
-    appState.containerStartSubmitted(container, instance);
+    Runnable submitted = new Runnable() {
+      @Override
+      public void run() {
+        appState.containerStartSubmitted(container, instance);
+      }
+    };
+    if (!eventLoop.post("container start submitted", submitted)) {
+      submitted.run();
+    }
     nmClientAsync.startContainerAsync(container, ctx);
   }
 
+  /**
+   * Undo the assignment of a container whose launch was canceled and
+   * release it. Once the event loop has been stopped -as it is when the
+   * launchers are shut down- this is done in the calling thread.
+   * @param container container
+   */
+  @Override // ContainerStartOperation
+  public void containerLaunchCanceled(final Container container) {
+    Runnable cancel = new Runnable() {
+      @Override
+      public void run() {
+        processContainerLaunchCanceled(container);
+      }
+    };
+    if (!eventLoop.post("container launch canceled", cancel)) {
+      cancel.run();
+    }
+  }
+
+  private void processContainerLaunchCanceled(Container container) {
+    appState.onContainerLaunchCanceled(container);
+    List<AbstractRMOperation> operations =
+      new ArrayList<AbstractRMOperation>(1);
+    operations.add(new ContainerReleaseOperation(container.getId()));
+    rmOperationHandler.execute(operations);
+  }
+
   @Override //  NMClientAsync.CallbackHandler 
   public void onContainerStopped(ContainerId containerId) {
     // do nothing but log: container events from the AM
@@ -1383,15 +1754,30 @@ public class HoyaAppMaster extends CompoundLaunchedService
   }
 
   @Override //  NMClientAsync.CallbackHandler 
-  public void onContainerStarted(ContainerId containerId,
+  public void onContainerStarted(final ContainerId containerId,
                                  Map<String, ByteBuffer> allServiceResponse) {
     LOG_YARN.info("Started Container {} ", containerId);
+    eventLoop.post("container started", new Runnable() {
+      @Override
+      public void run() {
+        processContainerStarted(containerId);
+      }
+    });
+  }
+
+  /**
+   * A container has started: mark it as live. Runs in the event loop.
+   * @param containerId container ID
+   */
+  private void processContainerStarted(ContainerId containerId) {
     RoleInstance cinfo = appState.onNodeManagerContainerStarted(containerId);
     if (cinfo != null) {
       LOG_YARN.info("Deployed instance of role {}", cinfo.role);
+      launchTimings.containerLive(System.currentTimeMillis());
       //trigger an async container status
       nmClientAsync.getContainerStatusAsync(containerId,
                                             cinfo.container.getNodeId());
+      reviewRampDeferredRequests();
     } else {
       //this is a hypothetical path not seen. We react by warning
       log.error("Notified of started container that isn't pending {} - releasing",
@@ -1402,9 +1788,16 @@ public class HoyaAppMaster extends CompoundLaunchedService
   }
 
   @Override //  NMClientAsync.CallbackHandler 
-  public void onStartContainerError(ContainerId containerId, Throwable t) {
+  public void onStartContainerError(final ContainerId containerId,
+                                    final Throwable t) {
     LOG_YARN.error("Failed to start Container " + containerId, t);
-    appState.onNodeManagerContainerStartFailed(containerId, t);
+    eventLoop.post("container start failed", new Runnable() {
+      @Override
+      public void run() {
+        appState.onNodeManagerContainerStartFailed(containerId, t);
+        reviewRampDeferredRequests();
+      }
+    });
   }
 
   @Override //  NMClientAsync.CallbackHandler 
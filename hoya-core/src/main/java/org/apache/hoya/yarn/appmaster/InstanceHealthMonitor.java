@@ -0,0 +1,312 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.appmaster;
+
+import org.apache.hadoop.service.AbstractService;
+import org.apache.hoya.api.ClusterDescription;
+import org.apache.hoya.api.StatusKeys;
+import org.apache.hoya.servicemonitor.HttpProbe;
+import org.apache.hoya.servicemonitor.PortProbe;
+import org.apache.hoya.servicemonitor.Probe;
+import org.apache.hoya.servicemonitor.ProbeCallback;
+import org.apache.hoya.servicemonitor.ProbeSelector;
+import org.apache.hoya.servicemonitor.ProbeStatus;
+import org.apache.hoya.yarn.appmaster.state.AppState;
+import org.apache.hoya.yarn.appmaster.state.InstanceProbePolicy;
+import org.apache.hoya.yarn.appmaster.state.RoleInstance;
+import org.apache.hoya.yarn.appmaster.state.RoleStatus;
+import org.apache.hoya.yarn.appmaster.state.StatisticsSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Probes the health of the live role instances, so that an instance
+ * which is still running but has stopped serving is noticed without
+ * waiting for YARN to report its container as completed.
+ *
+ * The probes of a role -a TCP connection to a port and/or an HTTP GET
+ * on the instance's host- are set by its {@link InstanceProbePolicy}.
+ * All instances share one {@link ProbeSelector}, and no more than the
+ * concurrency limit of probes are in progress at a time; due probes
+ * beyond that wait for the next check.
+ *
+ * The latency of each successful probe, and the count of consecutive
+ * failures, are recorded in the {@link RoleInstance}. An instance which
+ * reaches the failure threshold of its role is passed to the
+ * {@link UnhealthyInstanceHandler}, once.
+ */
+public class InstanceHealthMonitor extends AbstractService
+    implements StatisticsSource {
+  protected static final Logger log =
+    LoggerFactory.getLogger(InstanceHealthMonitor.class);
+
+  /**
+   * Interval in milliseconds between checks for instances which are
+   * due to be probed: {@value}
+   */
+  public static final int CHECK_INTERVAL = 250;
+
+  /**
+   * Number of threads for checking and for probe outcomes: {@value}
+   */
+  public static final int THREADS = 2;
+
+  /**
+   * Callback for instances which have failed their health probes
+   */
+  public interface UnhealthyInstanceHandler {
+
+    /**
+     * An instance has failed the failure threshold of consecutive probes
+     * @param instance the instance
+     * @param message diagnostics message
+     */
+    void instanceUnhealthy(RoleInstance instance, String message);
+  }
+
+  private final AppState appState;
+  private final UnhealthyInstanceHandler handler;
+  private final int concurrency;
+  private final Map<String, InstanceProbes> probed =
+    new ConcurrentHashMap<String, InstanceProbes>();
+  private ScheduledThreadPoolExecutor executor;
+  private ProbeSelector selector;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicLong succeeded = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong unhealthy = new AtomicLong();
+  private final AtomicLong deferred = new AtomicLong();
+
+  /**
+   * Create the monitor
+   * @param appState application state
+   * @param handler handler for unhealthy instances
+   * @param concurrency maximum number of probes in progress
+   */
+  public InstanceHealthMonitor(AppState appState,
+                               UnhealthyInstanceHandler handler,
+                               int concurrency) {
+    super("InstanceHealthMonitor");
+    this.appState = appState;
+    this.handler = handler;
+    this.concurrency = Math.max(concurrency, 1);
+  }
+
+  @Override
+  protected void serviceStart() throws Exception {
+    super.serviceStart();
+    final AtomicInteger threadCount = new AtomicInteger();
+    executor = new ScheduledThreadPoolExecutor(THREADS, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "InstanceHealth-"
+                                      + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    selector = new ProbeSelector(executor);
+    selector.start();
+    executor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          checkInstances(System.currentTimeMillis());
+        } catch (RuntimeException e) {
+          //an exception would cancel the schedule
+          log.warn("Failed to check instance health: " + e, e);
+        }
+      }
+    }, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  protected void serviceStop() throws Exception {
+    if (selector != null) {
+      selector.close();
+    }
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    super.serviceStop();
+  }
+
+  /**
+   * Start the probes of every live instance which is due to be probed,
+   * up to the concurrency limit, and forget instances which are no
+   * longer live.
+   * @param now current time
+   */
+  void checkInstances(long now) {
+    Set<String> live = new HashSet<String>();
+    for (RoleInstance instance : appState.getLiveInstancesView()
+                                         .getInstances()) {
+      RoleStatus role = appState.getRoleStatusMap().get(instance.roleId);
+      if (role == null || instance.released || instance.host == null
+          || instance.state != ClusterDescription.STATE_LIVE) {
+        //not a probed role, or not (or no longer) serving
+        continue;
+      }
+      InstanceProbePolicy policy = role.getProbePolicy();
+      if (!policy.isEnabled()) {
+        continue;
+      }
+      live.add(instance.id);
+      InstanceProbes probes = probed.get(instance.id);
+      if (probes == null || !probes.policy.equals(policy)) {
+        try {
+          probes = new InstanceProbes(instance, policy);
+        } catch (IOException e) {
+          log.warn("Cannot probe {}: {}", instance.id, e.toString());
+          continue;
+        }
+        probed.put(instance.id, probes);
+      }
+      if (probes.isDue(now)) {
+        if (inFlight.get() >= concurrency) {
+          deferred.incrementAndGet();
+        } else {
+          probes.start(now);
+        }
+      }
+    }
+    probed.keySet().retainAll(live);
+  }
+
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  @Override
+  public Map<String, Integer> buildStatistics() {
+    Map<String, Integer> stats = new HashMap<String, Integer>();
+    stats.put(StatusKeys.STATISTICS_PROBES_IN_FLIGHT, inFlight.get());
+    stats.put(StatusKeys.STATISTICS_PROBES_SUCCEEDED, (int) succeeded.get());
+    stats.put(StatusKeys.STATISTICS_PROBES_FAILED, (int) failed.get());
+    stats.put(StatusKeys.STATISTICS_PROBES_UNHEALTHY, (int) unhealthy.get());
+    stats.put(StatusKeys.STATISTICS_PROBES_DEFERRED, (int) deferred.get());
+    return stats;
+  }
+
+  /**
+   * The probes of one instance. They are run one after the other; the
+   * first failure ends the round.
+   */
+  private final class InstanceProbes {
+    private final RoleInstance instance;
+    private final InstanceProbePolicy policy;
+    private final List<Probe> probes = new ArrayList<Probe>(2);
+    private long nextProbe;
+    private long started;
+    private boolean inProgress;
+    private boolean reported;
+
+    private InstanceProbes(RoleInstance instance, InstanceProbePolicy policy)
+      throws IOException {
+      this.instance = instance;
+      this.policy = policy;
+      int timeout = policy.getTimeout();
+      if (policy.getPort() > 0) {
+        probes.add(new PortProbe(instance.host, policy.getPort(), timeout,
+                                 instance.id, getConfig()));
+      }
+      if (policy.getHttpPort() > 0) {
+        URL url = new URL("http", instance.host, policy.getHttpPort(),
+                          policy.getHttpPath());
+        probes.add(new HttpProbe(url, timeout, 200, 399, getConfig()));
+      }
+      nextProbe = instance.startTime + policy.getStartupDelay();
+    }
+
+    private synchronized boolean isDue(long now) {
+      return !inProgress && !reported && instance.startTime > 0
+             && now >= nextProbe;
+    }
+
+    private void start(long now) {
+      synchronized (this) {
+        inProgress = true;
+        started = now;
+      }
+      inFlight.incrementAndGet();
+      ping(0);
+    }
+
+    private void ping(final int index) {
+      probes.get(index).ping(true, selector, new ProbeCallback() {
+        @Override
+        public void probeCompleted(ProbeStatus status) {
+          if (status.isSuccess() && index + 1 < probes.size()) {
+            ping(index + 1);
+          } else {
+            finished(status);
+          }
+        }
+      });
+    }
+
+    private void finished(ProbeStatus status) {
+      long now = System.currentTimeMillis();
+      inFlight.decrementAndGet();
+      instance.lastProbeTime = now;
+      String message = null;
+      synchronized (this) {
+        if (status.isSuccess()) {
+          succeeded.incrementAndGet();
+          instance.probeLatency = now - started;
+          instance.probeFailures = 0;
+        } else {
+          failed.incrementAndGet();
+          int failures = ++instance.probeFailures;
+          log.info("Health probe {} of {} failed: {}", failures, instance.id,
+                   status.getThrown());
+          if (failures >= policy.getFailureThreshold()) {
+            reported = true;
+            message = "Failed " + failures
+                      + " consecutive health probes; last: "
+                      + status.getThrown();
+          }
+        }
+        nextProbe = now + policy.getInterval();
+        inProgress = false;
+      }
+      if (message != null) {
+        unhealthy.incrementAndGet();
+        log.warn("Instance {} is unhealthy: {}", instance.id, message);
+        handler.instanceUnhealthy(instance, message);
+      }
+    }
+  }
+}
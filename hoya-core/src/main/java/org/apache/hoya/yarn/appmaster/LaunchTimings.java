@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.appmaster;
+
+import org.apache.hoya.HoyaKeys;
+import org.apache.hoya.api.StatusKeys;
+import org.apache.hoya.yarn.appmaster.state.StatisticsSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The time taken by each phase of the launch of a cluster:
+ * <ol>
+ *   <li>prepare: the client preparing the launch</li>
+ *   <li>submit: from the client submitting the application to the AM
+ *   process starting. As this spans two hosts it is subject to clock
+ *   skew.</li>
+ *   <li>AM start: from the AM process starting to its registration
+ *   with the RM</li>
+ *   <li>first live: from the AM registering to the first container
+ *   being live</li>
+ * </ol>
+ * Phases which are unknown or not yet complete are reported as -1.
+ */
+public class LaunchTimings implements StatisticsSource {
+  protected static final Logger log =
+    LoggerFactory.getLogger(LaunchTimings.class);
+
+  private final long prepareTime;
+  private final long submitTime;
+  private final long processStartTime;
+  private final boolean fastPath;
+  private volatile long registeredTime;
+  private volatile long firstLiveTime;
+
+  /**
+   * Create the timings
+   * @param prepareTime time the client took to prepare, or -1
+   * @param submitTime client time at which the application was
+   * submitted, or -1
+   * @param processStartTime time the AM process started
+   * @param fastPath did the client take the fast path
+   */
+  public LaunchTimings(long prepareTime,
+                       long submitTime,
+                       long processStartTime,
+                       boolean fastPath) {
+    this.prepareTime = prepareTime;
+    this.submitTime = submitTime;
+    this.processStartTime = processStartTime;
+    this.fastPath = fastPath;
+  }
+
+  /**
+   * Create the timings from the environment set up by the client
+   * @param env the environment
+   * @param processStartTime time the AM process started
+   * @return the timings
+   */
+  public static LaunchTimings fromEnvironment(Map<String, String> env,
+                                              long processStartTime) {
+    return new LaunchTimings(
+      parseTime(env.get(HoyaKeys.ENV_LAUNCH_PREPARE_MILLIS)),
+      parseTime(env.get(HoyaKeys.ENV_LAUNCH_SUBMIT_TIME)),
+      processStartTime,
+      Boolean.parseBoolean(env.get(HoyaKeys.ENV_LAUNCH_FAST_PATH)));
+  }
+
+  private static long parseTime(String value) {
+    if (value == null) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      log.warn("Ignoring invalid launch time \"{}\"", value);
+      return -1;
+    }
+  }
+
+  /**
+   * The AM has registered with the RM
+   * @param now current time
+   */
+  public void registered(long now) {
+    registeredTime = now;
+  }
+
+  /**
+   * A container is live. Only the first call is recorded.
+   * @param now current time
+   */
+  public void containerLive(long now) {
+    if (firstLiveTime == 0) {
+      firstLiveTime = now;
+      log.info("First container live: {}", this);
+    }
+  }
+
+  public long getPrepareMillis() {
+    return prepareTime;
+  }
+
+  public long getSubmitMillis() {
+    return submitTime > 0 ? Math.max(0, processStartTime - submitTime) : -1;
+  }
+
+  public long getAMStartMillis() {
+    long registered = registeredTime;
+    return registered > 0 ? registered - processStartTime : -1;
+  }
+
+  public long getFirstLiveMillis() {
+    long registered = registeredTime;
+    long firstLive = firstLiveTime;
+    return registered > 0 && firstLive > 0
+           ? Math.max(0, firstLive - registered) : -1;
+  }
+
+  public boolean isFastPath() {
+    return fastPath;
+  }
+
+  @Override
+  public String toString() {
+    return "LaunchTimings{prepare=" + getPrepareMillis() +
+           ", submit=" + getSubmitMillis() +
+           ", AM start=" + getAMStartMillis() +
+           ", first live=" + getFirstLiveMillis() +
+           ", fast path=" + fastPath +
+           '}';
+  }
+
+  @Override
+  public Map<String, Integer> buildStatistics() {
+    Map<String, Integer> stats = new HashMap<String, Integer>();
+    stats.put(StatusKeys.STATISTICS_LAUNCH_PREPARE_MILLIS,
+              (int) getPrepareMillis());
+    stats.put(StatusKeys.STATISTICS_LAUNCH_SUBMIT_MILLIS,
+              (int) getSubmitMillis());
+    stats.put(StatusKeys.STATISTICS_LAUNCH_AM_START_MILLIS,
+              (int) getAMStartMillis());
+    stats.put(StatusKeys.STATISTICS_LAUNCH_FIRST_LIVE_MILLIS,
+              (int) getFirstLiveMillis());
+    stats.put(StatusKeys.STATISTICS_LAUNCH_FAST_PATH, fastPath ? 1 : 0);
+    return stats;
+  }
+}
@@ -30,12 +30,14 @@ import org.apache.hadoop.yarn.security.ContainerTokenIdentifier;
 import org.apache.hadoop.yarn.util.ConverterUtils;
 import org.apache.hadoop.yarn.util.Records;
 import org.apache.hoya.api.ClusterDescription;
+import org.apache.hoya.api.StatusKeys;
 import org.apache.hoya.providers.ProviderRole;
 import org.apache.hoya.providers.ProviderService;
 import org.apache.hoya.tools.HoyaFileSystem;
 import org.apache.hoya.tools.HoyaUtils;
 import org.apache.hoya.yarn.appmaster.state.RoleInstance;
 import org.apache.hoya.yarn.appmaster.state.RoleStatus;
+import org.apache.hoya.yarn.appmaster.state.StatisticsSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,11 +46,25 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
- * A service for launching containers
+ * A service for launching containers.
+ *
+ * Launches are queued for a fixed size pool of launcher threads, so that
+ * a large allocation does not create a thread per container.
+ * On shutdown, queued launches are canceled; those in progress are
+ * given time to complete. The containers of canceled launches are
+ * handed back through {@link ContainerStartOperation#containerLaunchCanceled(Container)}.
  */
-public class RoleLaunchService extends AbstractService {
+public class RoleLaunchService extends AbstractService
+    implements StatisticsSource {
   protected static final Logger log =
     LoggerFactory.getLogger(RoleLaunchService.class);
   /**
@@ -56,18 +72,33 @@ public class RoleLaunchService extends AbstractService {
    * {@value}
    */
   public static final int LAUNCHER_THREAD_SHUTDOWN_TIME = 10000;
+
   /**
-   * Map of launched threads.
-   * These are retained so that at shutdown time the AM can signal
-   * all threads to stop.
-   *
-   * However, we don't want to run out of memory even if many containers
-   * get launched over time, so the AM tries to purge this
-   * of the latest launched thread when the RoleLauncher signals
-   * the AM that it has finished
+   * How long an idle launcher thread is kept: {@value}
    */
-  private final Map<RoleLauncher, Thread> launchThreads =
-    new HashMap<RoleLauncher, Thread>();
+  public static final int LAUNCHER_THREAD_KEEPALIVE_TIME = 60000;
+
+  /**
+   * Upper bounds in milliseconds of the buckets of the launch latency
+   * histogram; there is a final bucket for longer launches
+   */
+  public static final int[] LATENCY_BUCKETS = {10, 100, 1000, 10000};
+
+  /**
+   * Executor running the launches
+   */
+  private final ThreadPoolExecutor launcherPool;
+
+  private final AtomicInteger launchesCompleted = new AtomicInteger();
+  private final AtomicInteger launchesFailed = new AtomicInteger();
+  private final AtomicInteger launchesCanceled = new AtomicInteger();
+
+  /**
+   * Histogram of launch latency: time from queueing a launch to its
+   * completion
+   */
+  private final AtomicLongArray latencyHistogram =
+    new AtomicLongArray(LATENCY_BUCKETS.length + 1);
 
   /**
    * Callback to whatever has the task of actually running the container
@@ -99,6 +130,8 @@ public class RoleLaunchService extends AbstractService {
    */
   private final ThreadGroup launcherThreadGroup = new ThreadGroup("launcher");
 
+  private final AtomicInteger launcherThreadCount = new AtomicInteger();
+
   private Map<String, String> envVars;
 
   /**
@@ -109,12 +142,15 @@ public class RoleLaunchService extends AbstractService {
    * @param generatedConfDirPath path in the FS for the generated dir
    * @param envVars
    * @param launcherTmpDirPath
+   * @param launcherThreads maximum number of concurrent launches
    */
   public RoleLaunchService(ContainerStartOperation startOperation,
                            ProviderService provider,
                            HoyaFileSystem fs,
                            Path generatedConfDirPath,
-                           Map<String, String> envVars, Path launcherTmpDirPath) {
+                           Map<String, String> envVars,
+                           Path launcherTmpDirPath,
+                           int launcherThreads) {
     super("RoleLaunchService");
     containerStarter = startOperation;
     this.fs = fs;
@@ -122,11 +158,18 @@ public class RoleLaunchService extends AbstractService {
     this.launcherTmpDirPath = launcherTmpDirPath;
     this.provider = provider;
     this.envVars = envVars;
+    launcherPool = new ThreadPoolExecutor(launcherThreads,
+                                          launcherThreads,
+                                          LAUNCHER_THREAD_KEEPALIVE_TIME,
+                                          TimeUnit.MILLISECONDS,
+                                          new LinkedBlockingQueue<Runnable>(),
+                                          new LauncherThreadFactory());
+    launcherPool.allowCoreThreadTimeOut(true);
   }
 
   @Override
   protected void serviceStop() throws Exception {
-    joinAllLaunchedThreads();
+    shutdownLaunchers();
     super.serviceStop();
   }
 
@@ -147,66 +190,155 @@ public class RoleLaunchService extends AbstractService {
                                          role.getProviderRole(),
                                          clusterSpec,
                                          clusterSpec.getOrAddRole(roleName));
-    launchThread(launcher,
-                 String.format("%s on %s:%d", roleName,
-                               container.getNodeId()
-                                        .getHost(),
-                               container.getNodeId()
-                                        .getPort()));
+    queueLaunch(launcher);
   }
 
+  /**
+   * Queue a launch.
+   * The launch is run in the launcher pool to keep the calling thread
+   * unblocked, as all containers may not be allocated at one go.
+   * @param launcher launcher
+   */
+  private void queueLaunch(RoleLauncher launcher) {
+    try {
+      launcherPool.execute(launcher);
+    } catch (RejectedExecutionException e) {
+      log.info("Not launching {}: service is stopped", launcher);
+      cancelLaunch(launcher);
+    }
+  }
 
-  public void launchThread(RoleLauncher launcher, String name) {
-    Thread launchThread = new Thread(launcherThreadGroup,
-                                     launcher,
-                                     name);
+  /**
+   * Cancel a launch which has not been run, handing its container back
+   * @param launcher launcher
+   */
+  private void cancelLaunch(RoleLauncher launcher) {
+    launchesCanceled.incrementAndGet();
+    containerStarter.containerLaunchCanceled(launcher.container);
+  }
 
-    // launch and start the container on a separate thread to keep
-    // the main thread unblocked
-    // as all containers may not be allocated at one go.
-    synchronized (launchThreads) {
-      launchThreads.put(launcher, launchThread);
+  /**
+   * Cancel all the launches in a list of unrun tasks
+   * @param launches launches taken from the queue
+   */
+  private void cancelLaunches(List<Runnable> launches) {
+    if (!launches.isEmpty()) {
+      log.info("Canceled {} queued launches", launches.size());
+    }
+    for (Runnable launch : launches) {
+      cancelLaunch((RoleLauncher) launch);
     }
-    launchThread.start();
   }
 
   /**
-   * Method called by a launcher thread when it has completed;
-   * this removes the launcher of the map of active
-   * launching threads.
+   * Method called by a launcher when it has completed;
+   * updates the statistics
    * @param launcher launcher that completed
    * @param ex any exception raised
    */
-  public void launchedThreadCompleted(RoleLauncher launcher, Exception ex) {
-    log.debug("Launched thread {} completed", launcher, ex);
-    synchronized (launchThreads) {
-      launchThreads.remove(launcher);
+  private void launchCompleted(RoleLauncher launcher, Exception ex) {
+    log.debug("Launch {} completed", launcher, ex);
+    if (ex == null) {
+      launchesCompleted.incrementAndGet();
+    } else {
+      launchesFailed.incrementAndGet();
+    }
+    long latency = System.currentTimeMillis() - launcher.queueTime;
+    int bucket = 0;
+    while (bucket < LATENCY_BUCKETS.length
+           && latency > LATENCY_BUCKETS[bucket]) {
+      bucket++;
     }
+    latencyHistogram.incrementAndGet(bucket);
   }
 
   /**
-   Join all launched threads
-   needed for when we time out
-   and we need to release containers
+   * Stop the launchers: queued launches are canceled, and those
+   * in progress are given time to complete
    */
-  private void joinAllLaunchedThreads() {
+  private void shutdownLaunchers() {
+    List<Runnable> queued = new ArrayList<Runnable>();
+    launcherPool.getQueue().drainTo(queued);
+    launcherPool.shutdown();
+    cancelLaunches(queued);
+    int active = launcherPool.getActiveCount();
+    if (active > 0) {
+      log.info("Waiting for the completion of {} launches", active);
+    }
+    try {
+      if (!launcherPool.awaitTermination(LAUNCHER_THREAD_SHUTDOWN_TIME,
+                                         TimeUnit.MILLISECONDS)) {
+        log.warn("Launches still in progress after {} millis",
+                 LAUNCHER_THREAD_SHUTDOWN_TIME);
+        cancelLaunches(launcherPool.shutdownNow());
+      }
+    } catch (InterruptedException e) {
+      log.info("Interrupted waiting for launches to complete");
+      cancelLaunches(launcherPool.shutdownNow());
+    }
+  }
+
+  /**
+   * Get the number of launches waiting for a launcher thread
+   * @return the queue length
+   */
+  public int getQueueLength() {
+    return launcherPool.getQueue().size();
+  }
+
+  /**
+   * Get the number of launches in progress
+   * @return the number of active launcher threads
+   */
+  public int getActiveLaunches() {
+    return launcherPool.getActiveCount();
+  }
 
+  /**
+   * Get the launch latency histogram
+   * @return the count of launches in each bucket of {@link #LATENCY_BUCKETS},
+   * followed by the count of longer launches
+   */
+  public long[] getLatencyHistogram() {
+    long[] counts = new long[latencyHistogram.length()];
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = latencyHistogram.get(i);
+    }
+    return counts;
+  }
 
-    //first: take a snapshot of the thread list
-    List<Thread> liveThreads;
-    synchronized (launchThreads) {
-      liveThreads = new ArrayList<Thread>(launchThreads.values());
+  @Override
+  public Map<String, Integer> buildStatistics() {
+    Map<String, Integer> stats = new HashMap<String, Integer>();
+    stats.put(StatusKeys.STATISTICS_LAUNCHER_QUEUE_LENGTH, getQueueLength());
+    stats.put(StatusKeys.STATISTICS_LAUNCHER_ACTIVE, getActiveLaunches());
+    stats.put(StatusKeys.STATISTICS_LAUNCHER_COMPLETED,
+              launchesCompleted.get());
+    stats.put(StatusKeys.STATISTICS_LAUNCHER_FAILED, launchesFailed.get());
+    stats.put(StatusKeys.STATISTICS_LAUNCHER_CANCELED, launchesCanceled.get());
+    long[] histogram = getLatencyHistogram();
+    for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+      stats.put(StatusKeys.STATISTICS_LAUNCHER_LATENCY_PREFIX
+                + "le." + LATENCY_BUCKETS[i],
+                (int) histogram[i]);
     }
-    int size = liveThreads.size();
-    if (size > 0) {
-      log.info("Waiting for the completion of {} threads", size);
-      for (Thread launchThread : liveThreads) {
-        try {
-          launchThread.join(LAUNCHER_THREAD_SHUTDOWN_TIME);
-        } catch (InterruptedException e) {
-          log.info("Exception thrown in thread join: " + e, e);
-        }
-      }
+    stats.put(StatusKeys.STATISTICS_LAUNCHER_LATENCY_PREFIX
+              + "gt." + LATENCY_BUCKETS[LATENCY_BUCKETS.length - 1],
+              (int) histogram[LATENCY_BUCKETS.length]);
+    return stats;
+  }
+
+  /**
+   * Creates the launcher threads, in the launcher thread group
+   */
+  private class LauncherThreadFactory implements ThreadFactory {
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(launcherThreadGroup, r,
+                                 "launcher-" +
+                                 launcherThreadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
     }
   }
 
@@ -222,6 +354,7 @@ public class RoleLaunchService extends AbstractService {
     private final Map<String, String> roleOptions;
     private final ClusterDescription clusterSpec;
     public final ProviderRole role;
+    private final long queueTime = System.currentTimeMillis();
 
     public RoleLauncher(Container container,
                         ProviderRole role,
@@ -248,6 +381,7 @@ public class RoleLaunchService extends AbstractService {
     @Override
     public void run() {
       Exception ex = null;
+      boolean submitted = false;
       try {
         UserGroupInformation user =
           UserGroupInformation.createRemoteUser(container.getId().toString());
@@ -312,14 +446,18 @@ public class RoleLaunchService extends AbstractService {
         instance.role = containerRole;
         instance.roleId = role.id;
         instance.environment = nodeEnv.toArray(new String[nodeEnv.size()]);
+        submitted = true;
         containerStarter.startContainer(container, ctx, instance);
       } catch (Exception e) {
         log.error(
           "Exception thrown while trying to start " + containerRole + ": " + e,
           e);
         ex = e;
+        if (!submitted) {
+          containerStarter.containerLaunchCanceled(container);
+        }
       } finally {
-        launchedThreadCompleted(this, ex);
+        launchCompleted(this, ex);
       }
     }
 
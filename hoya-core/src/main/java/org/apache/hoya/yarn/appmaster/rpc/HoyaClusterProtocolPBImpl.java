@@ -111,6 +111,39 @@ public class HoyaClusterProtocolPBImpl implements HoyaClusterProtocolPB {
     }
   }
 
+  @Override
+  public Messages.ListClusterNodesResponseProto listClusterNodes(
+    RpcController controller,
+    Messages.ListClusterNodesRequestProto request) throws ServiceException {
+    try {
+      return real.listClusterNodes(request);
+    } catch (Exception e) {
+      throw wrap(e);
+    }
+  }
+
+  @Override
+  public Messages.GetClusterStatusDeltaResponseProto getClusterStatusDelta(
+    RpcController controller,
+    Messages.GetClusterStatusDeltaRequestProto request) throws ServiceException {
+    try {
+      return real.getClusterStatusDelta(request);
+    } catch (Exception e) {
+      throw wrap(e);
+    }
+  }
+
+  @Override
+  public Messages.WaitForClusterStateResponseProto waitForClusterState(
+    RpcController controller,
+    Messages.WaitForClusterStateRequestProto request) throws ServiceException {
+    try {
+      return real.waitForClusterState(request);
+    } catch (Exception e) {
+      throw wrap(e);
+    }
+  }
+
   @Override
   public Messages.EchoResponseProto echo(RpcController controller,
                                          Messages.EchoRequestProto request) throws
@@ -41,9 +41,11 @@ import org.apache.hadoop.yarn.exceptions.YarnException;
 import org.apache.hoya.api.HoyaClusterProtocol;
 import org.apache.hoya.api.proto.Messages;
 
+import java.io.Closeable;
 import java.io.IOException;
 
-public class HoyaClusterProtocolProxy implements HoyaClusterProtocol {
+public class HoyaClusterProtocolProxy implements HoyaClusterProtocol,
+                                                 Closeable {
 
   final HoyaClusterProtocolPB endpoint;
   private static final RpcController NULL_CONTROLLER = null;
@@ -55,6 +57,14 @@ public class HoyaClusterProtocolProxy implements HoyaClusterProtocol {
   private IOException convert(ServiceException se) {
     return ProtobufHelper.getRemoteException(se);
   }
+
+  /**
+   * Stop the underlying RPC proxy, closing its connection to the AM
+   */
+  @Override
+  public void close() {
+    RPC.stopProxy(endpoint);
+  }
   
   @Override
   public Messages.StopClusterResponseProto stopCluster(Messages.StopClusterRequestProto request) throws
@@ -123,6 +133,41 @@ public class HoyaClusterProtocolProxy implements HoyaClusterProtocol {
     }
   }
 
+  @Override
+  public Messages.ListClusterNodesResponseProto listClusterNodes(
+    Messages.ListClusterNodesRequestProto request) throws
+                                                   IOException,
+                                                   YarnException {
+    try {
+      return endpoint.listClusterNodes(NULL_CONTROLLER, request);
+    } catch (ServiceException e) {
+      throw convert(e);
+    }
+  }
+
+  @Override
+  public Messages.GetClusterStatusDeltaResponseProto getClusterStatusDelta(
+    Messages.GetClusterStatusDeltaRequestProto request) throws
+                                                        IOException,
+                                                        YarnException {
+    try {
+      return endpoint.getClusterStatusDelta(NULL_CONTROLLER, request);
+    } catch (ServiceException e) {
+      throw convert(e);
+    }
+  }
+
+  @Override
+  public Messages.WaitForClusterStateResponseProto waitForClusterState(
+    Messages.WaitForClusterStateRequestProto request) throws
+                                                      IOException,
+                                                      YarnException {
+    try {
+      return endpoint.waitForClusterState(NULL_CONTROLLER, request);
+    } catch (ServiceException e) {
+      throw convert(e);
+    }
+  }
 
   @Override
   public Messages.EchoResponseProto echo(Messages.EchoRequestProto request) throws
@@ -48,6 +48,7 @@ import org.apache.hoya.exceptions.HoyaRuntimeException;
 import org.apache.hoya.exceptions.NoSuchNodeException;
 import org.apache.hoya.exceptions.TriggerClusterTeardownException;
 import org.apache.hoya.providers.ProviderRole;
+import org.apache.hoya.providers.ProviderService;
 import org.apache.hoya.tools.ConfigHelper;
 import org.apache.hoya.tools.HoyaUtils;
 import org.slf4j.Logger;
@@ -59,12 +60,15 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.apache.hoya.api.RoleKeys.DEF_YARN_CORES;
 import static org.apache.hoya.api.RoleKeys.DEF_YARN_MEMORY;
@@ -104,8 +108,12 @@ public class AppState {
    */
   public ClusterDescription clusterDescription = new ClusterDescription();
 
+  /**
+   * Role status by priority. This is concurrent so that it can be
+   * scanned by readers of the progress without the app state lock.
+   */
   private final Map<Integer, RoleStatus> roleStatusMap =
-    new HashMap<Integer, RoleStatus>();
+    new ConcurrentHashMap<Integer, RoleStatus>();
 
   private final Map<String, ProviderRole> roles =
     new HashMap<String, ProviderRole>();
@@ -192,11 +200,30 @@ public class AppState {
    */
   private final Map<ContainerId, RoleInstance> liveNodes =
     new ConcurrentHashMap<ContainerId, RoleInstance>();
+
+  /**
+   * Version of the live node set; incremented on every change to it
+   */
+  private final AtomicLong liveNodesVersion = new AtomicLong();
+
+  /**
+   * The last published view of the live nodes; read without locking
+   */
+  private volatile LiveInstancesView liveInstancesView;
   private final AtomicInteger completionOfNodeNotInLiveListEvent =
     new AtomicInteger();
   private final AtomicInteger completionOfUnknownContainerEvent =
     new AtomicInteger();
 
+  /**
+   * Index of hostname -> role ID -> the active role instances on that host
+   * which are not being released. This is used when flexing down to
+   * select containers without scanning the whole active container list.
+   * Access to this must be synchronized on the app state.
+   */
+  private final Map<String, Map<Integer, Set<RoleInstance>>> releasableInstancesByHost =
+    new HashMap<String, Map<Integer, Set<RoleInstance>>>();
+
 
   /**
    * Record of the max no. of cores allowed in this cluster
@@ -214,14 +241,128 @@ public class AppState {
   
   private int failureThreshold = 10;
 
+  /**
+   * Version of the application state; incremented on every
+   * change which would be visible in the cluster status
+   */
+  private final AtomicLong stateVersion = new AtomicLong();
+
+  /**
+   * Monitor notified on every change of the state version or the live
+   * node set, for callers waiting for the state to change. It is
+   * acquired after the app state lock, never before it.
+   */
+  private final Object stateChangeMonitor = new Object();
+
+  /**
+   * The last published status snapshot; read without locking
+   */
+  private volatile ClusterStatusSnapshot statusSnapshot;
+
+  /**
+   * Lock held while a new status snapshot is built, so that
+   * concurrent status queries wait for one rebuild rather than each
+   * doing their own
+   */
+  private final Object statusSnapshotLock = new Object();
+
+  /**
+   * Journal of the status changes, for clients which only want
+   * what has changed since their last query
+   */
+  private final ClusterStatusJournal statusJournal =
+    new ClusterStatusJournal(System.currentTimeMillis(),
+                             ClusterStatusJournal.REMOVALS_RETAINED);
+
+  /**
+   * Maximum age of a status snapshot in millis
+   */
+  private long statusSnapshotMaxAge = OptionKeys.DEFAULT_STATUS_SNAPSHOT_MAX_AGE;
+
+  /**
+   * Sources of statistics added to those of the AM
+   */
+  private final List<StatisticsSource> statisticsSources =
+    new CopyOnWriteArrayList<StatisticsSource>();
+
   public AppState(AbstractRecordFactory recordFactory) {
     this.recordFactory = recordFactory;
   }
 
+  /**
+   * Add a source of statistics to include in the AM statistics
+   * of the cluster status
+   * @param source source
+   */
+  public void addStatisticsSource(StatisticsSource source) {
+    statisticsSources.add(source);
+  }
+
   public int getFailedCountainerCount() {
     return failedContainerCount.get();
   }
 
+  /**
+   * Get the current version of the application state
+   * @return a counter which changes whenever the cluster status would
+   */
+  public long getStateVersion() {
+    return stateVersion.get();
+  }
+
+  /**
+   * Note that the application state has changed
+   * @return the new version
+   */
+  public long incStateVersion() {
+    long version = stateVersion.incrementAndGet();
+    notifyStateWaiters();
+    return version;
+  }
+
+  /**
+   * Wake up all callers of {@link #awaitStateChange(String, int, long, long)}
+   * so they can re-check their conditions
+   */
+  private void notifyStateWaiters() {
+    synchronized (stateChangeMonitor) {
+      stateChangeMonitor.notifyAll();
+    }
+  }
+
+  /**
+   * Block until a role has a number of live instances, the application
+   * state version differs from the one given, or a timeout.
+   * This must not be called while holding the app state lock.
+   * @param role role to count the live instances of; null for none
+   * @param count number of live instances to wait for
+   * @param version version to wait for a change from; -1 for any
+   * @param timeout time to wait in millis
+   * @return the application state version at the end of the wait
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public long awaitStateChange(String role,
+                               int count,
+                               long version,
+                               long timeout) throws InterruptedException {
+    long end = now() + timeout;
+    synchronized (stateChangeMonitor) {
+      while (true) {
+        long current = getStateVersion();
+        if ((version >= 0 && current != version)
+            || (role != null && getLiveInstancesView().getInstancesInRole(role)
+                                                      .size() >= count)) {
+          return current;
+        }
+        long remaining = end - now();
+        if (remaining <= 0) {
+          return current;
+        }
+        stateChangeMonitor.wait(remaining);
+      }
+    }
+  }
+
   /**
    * Increment the count and return the new value
    * @return the latest failed container count
@@ -291,6 +432,47 @@ public class AppState {
     return liveNodes;
   }
 
+  /**
+   * Add a node to the live set
+   * @param id container ID
+   * @param node node
+   */
+  private void addLiveNode(ContainerId id, RoleInstance node) {
+    liveNodes.put(id, node);
+    liveNodesVersion.incrementAndGet();
+    notifyStateWaiters();
+  }
+
+  /**
+   * Remove a node from the live set
+   * @param id container ID
+   * @return the node, or null if it was not live
+   */
+  private RoleInstance removeLiveNode(ContainerId id) {
+    RoleInstance node = liveNodes.remove(id);
+    liveNodesVersion.incrementAndGet();
+    notifyStateWaiters();
+    return node;
+  }
+
+  /**
+   * Get a view of the live nodes. This does not take the app state lock:
+   * if the live node set has changed since the last view was published,
+   * a new one is built from the concurrent map of live nodes.
+   * The version is read before the copy, so a concurrent change
+   * will cause the next call to build another view.
+   * @return a current view
+   */
+  public LiveInstancesView getLiveInstancesView() {
+    LiveInstancesView view = liveInstancesView;
+    long version = liveNodesVersion.get();
+    if (view == null || view.getVersion() != version) {
+      view = new LiveInstancesView(version, liveNodes.values());
+      liveInstancesView = view;
+    }
+    return view;
+  }
+
   /**
    * Get the desired cluster state
    * @return the specification of the cluter
@@ -404,6 +586,10 @@ public class AppState {
     failureThreshold = cd.getOptionInt(
       OptionKeys.CONTAINER_FAILURE_THRESHOLD,
       OptionKeys.DEFAULT_CONTAINER_FAILURE_THRESHOLD);
+
+    statusSnapshotMaxAge = cd.getOptionInt(
+      OptionKeys.STATUS_SNAPSHOT_MAX_AGE,
+      OptionKeys.DEFAULT_STATUS_SNAPSHOT_MAX_AGE);
     
     clusterStatus.state = ClusterDescription.STATE_CREATED;
     long now = now();
@@ -423,6 +609,9 @@ public class AppState {
     
     // add the roles
     roleHistory = new RoleHistory(providerRoles);
+    roleHistory.setDeltasBeforeCompaction(cd.getOptionInt(
+      OptionKeys.ROLE_HISTORY_DELTAS_BEFORE_COMPACTION,
+      OptionKeys.DEFAULT_ROLE_HISTORY_DELTAS_BEFORE_COMPACTION));
     roleHistory.onStart(fs, historyDir);
     
     //rebuild any live containers
@@ -467,6 +656,7 @@ public class AppState {
     getClusterDescription().roles = HoyaUtils.deepClone(newroles);
     getClusterDescription().updateTime = now();
     buildRoleRequirementsFromClusterSpec();
+    incStateVersion();
   }
 
   /**
@@ -502,6 +692,19 @@ public class AppState {
         roleHistory.addNewProviderRole(dynamicRole);
       }
     }
+    //and the ramp and probe policies of every role
+    for (RoleStatus roleStatus : getRoleStatusMap().values()) {
+      String role = roleStatus.getName();
+      roleStatus.setProbePolicy(
+        InstanceProbePolicy.fromRoleOptions(specification, role));
+      roleStatus.setRampPolicy(
+        specification.getRoleOptInt(role, RoleKeys.ROLE_RAMP_MAX_OUTSTANDING,
+                                    RoleKeys.DEFAULT_ROLE_RAMP_LIMIT),
+        specification.getRoleOptInt(role, RoleKeys.ROLE_RAMP_MAX_LAUNCHING,
+                                    RoleKeys.DEFAULT_ROLE_RAMP_LIMIT),
+        specification.getRoleOptInt(role, RoleKeys.ROLE_RAMP_STEP_INTERVAL,
+                                    RoleKeys.DEFAULT_ROLE_RAMP_LIMIT));
+    }
   }
 
   /**
@@ -544,7 +747,7 @@ public class AppState {
     am.role = HoyaKeys.ROLE_HOYA_AM;
     appMasterNode = am;
     //it is also added to the set of live nodes
-    getLiveNodes().put(containerId, am);
+    addLiveNode(containerId, am);
   }
 
   /**
@@ -555,7 +758,8 @@ public class AppState {
    * and it will just cause confusion
    */
   public void noteAMLaunched() {
-    getLiveNodes().put(appMasterNode.getContainerId(), appMasterNode);
+    addLiveNode(appMasterNode.getContainerId(), appMasterNode);
+    incStateVersion();
   }
 
   /**
@@ -565,6 +769,7 @@ public class AppState {
    */
   public void noteAMLive() {
     appMasterNode.state = ClusterDescription.STATE_LIVE;
+    incStateVersion();
   }
 
   public RoleInstance getAppMasterNode() {
@@ -618,7 +823,7 @@ public class AppState {
    * @return the active containers at the time
    * the call was made
    */
-  public synchronized List<RoleInstance> cloneActiveContainerList() {
+  public List<RoleInstance> cloneActiveContainerList() {
     Collection<RoleInstance> values = activeContainers.values();
     return new ArrayList<RoleInstance>(values);
   }
@@ -644,11 +849,8 @@ public class AppState {
    * Create a clone of the list of live cluster nodes.
    * @return the list of nodes, may be empty
    */
-  public synchronized List<RoleInstance> cloneLiveContainerInfoList() {
-    List<RoleInstance> allRoleInstances;
-    Collection<RoleInstance> values = getLiveNodes().values();
-    allRoleInstances = new ArrayList<RoleInstance>(values);
-    return allRoleInstances;
+  public List<RoleInstance> cloneLiveContainerInfoList() {
+    return new ArrayList<RoleInstance>(getLiveInstancesView().getInstances());
   }
 
 
@@ -658,16 +860,13 @@ public class AppState {
    * @return null if there is no such node
    * @throws NoSuchNodeException if the node cannot be found
    */
-  public synchronized RoleInstance getLiveInstanceByUUID(String uuid)
+  public RoleInstance getLiveInstanceByUUID(String uuid)
     throws NoSuchNodeException {
-    Collection<RoleInstance> nodes = getLiveNodes().values();
-    for (RoleInstance node : nodes) {
-      if (uuid.equals(node.id)) {
-        return node;
-      }
+    RoleInstance node = getLiveInstancesView().getInstance(uuid);
+    if (node == null) {
+      throw new NoSuchNodeException(uuid);
     }
-    //at this point: no node
-    throw new NoSuchNodeException(uuid);
+    return node;
   }
 
   /**
@@ -691,13 +890,13 @@ public class AppState {
    * @return list of instances
    */
   public List<RoleInstance> getLiveContainerInfosByUUID(Collection<String> uuids) {
-    //first, a hashmap of those uuids is built up
+    //eliminate duplicates, then look each one up in the view's index
     Set<String> uuidSet = new HashSet<String>(uuids);
     List<RoleInstance> nodes = new ArrayList<RoleInstance>(uuidSet.size());
-    Collection<RoleInstance> clusterNodes = getLiveNodes().values();
-
-    for (RoleInstance node : clusterNodes) {
-      if (uuidSet.contains(node.id)) {
+    LiveInstancesView view = getLiveInstancesView();
+    for (String uuid : uuidSet) {
+      RoleInstance node = view.getInstance(uuid);
+      if (node != null) {
         nodes.add(node);
       }
     }
@@ -706,21 +905,41 @@ public class AppState {
   }
 
   /**
-   * Enum all nodes by role. 
-   * @param role role, or "" for all roles
-   * @return a list of nodes, may be empty
+   * Find the live instances matching a filter, in order of their IDs
+   * @param role role, or "" or null for all roles
+   * @param state state to match, or -1 for any
+   * @param host host to match, or "" or null for any
+   * @return a possibly empty list of instances
    */
-  public synchronized List<RoleInstance> enumLiveNodesInRole(String role) {
-    List<RoleInstance> nodes = new ArrayList<RoleInstance>();
-    Collection<RoleInstance> allRoleInstances = getLiveNodes().values();
-    for (RoleInstance node : allRoleInstances) {
-      if (role.isEmpty() || role.equals(node.role)) {
+  public List<RoleInstance> findLiveInstances(String role, int state, String host) {
+    LiveInstancesView view = getLiveInstancesView();
+    Collection<RoleInstance> candidates = role == null || role.isEmpty()
+                                          ? view.getInstances()
+                                          : view.getInstancesInRole(role);
+    boolean anyHost = host == null || host.isEmpty();
+    List<RoleInstance> nodes = new ArrayList<RoleInstance>(candidates.size());
+    for (RoleInstance node : candidates) {
+      if ((state < 0 || node.state == state)
+          && (anyHost || host.equals(node.host))) {
         nodes.add(node);
       }
     }
     return nodes;
   }
 
+  /**
+   * Enum all nodes by role. 
+   * @param role role, or "" for all roles
+   * @return a list of nodes, may be empty
+   */
+  public List<RoleInstance> enumLiveNodesInRole(String role) {
+    LiveInstancesView view = getLiveInstancesView();
+    if (role.isEmpty()) {
+      return new ArrayList<RoleInstance>(view.getInstances());
+    }
+    return new ArrayList<RoleInstance>(view.getInstancesInRole(role));
+  }
+
 
   /**
    * Build an instance map.
@@ -771,8 +990,30 @@ public class AppState {
     instance.container = container;
     instance.createTime = now();
     getStartingNodes().put(container.getId(), instance);
+    RoleStatus role = lookupRoleStatus(instance.roleId);
+    role.decQueued();
+    role.incStarting();
     activeContainers.put(container.getId(), instance);
+    addReleasableInstance(instance);
     roleHistory.onContainerStartSubmitted(container, instance);
+    incStateVersion();
+  }
+
+  /**
+   * The launch of an assigned container was canceled, or it failed before
+   * the container start was submitted. The assignment is undone and the
+   * container is treated as a surplus one, which the caller must release.
+   * @param container container
+   */
+  public synchronized void onContainerLaunchCanceled(Container container) {
+    incStateVersion();
+    RoleStatus role = lookupRoleStatus(container);
+    log.info("Launch of container {} for role {} canceled",
+             container.getId(), role.getName());
+    role.decQueued();
+    role.decActual();
+    surplusNodes.add(container.getId());
+    roleHistory.onContainerLaunchCanceled(container);
   }
 
   /**
@@ -800,9 +1041,11 @@ public class AppState {
     }
     info.released = true;
     containersBeingReleased.put(id, info.container);
+    removeReleasableInstance(info);
     RoleStatus role = lookupRoleStatus(info.roleId);
     role.incReleasing();
     roleHistory.onContainerReleaseSubmitted(container);
+    incStateVersion();
   }
 
 
@@ -823,6 +1066,34 @@ public class AppState {
     return  containerRequest;
   }
 
+  /**
+   * Build the requests for a number of instances of a role.
+   * The resource requirements are worked out once; the asks are
+   * then grouped by location, so that all the instances which can go
+   * anywhere are asked for in a single operation.
+   * The role request count is increased by <code>count</code>
+   * @param role role
+   * @param count number of instances
+   * @return the request operations
+   */
+  public List<ContainerRequestOperation> buildContainerRequests(RoleStatus role,
+                                                                int count) {
+    Resource capability = recordFactory.newResource();
+    buildResourceRequirements(role, capability);
+    if (capability.getMemory() > this.containerMaxMemory) {
+      log.warn("Memory requested: " + capability.getMemory() +
+               " > " + this.containerMaxMemory);
+    }
+    List<ContainerRequestOperation> requests =
+      roleHistory.requestNodes(role, capability, count);
+    for (ContainerRequestOperation request : requests) {
+      log.info("Container ask is {} x {}", request.getCount(),
+               request.getRequest());
+      role.incRequested(request.getCount());
+    }
+    return requests;
+  }
+
   /**
    * Create a container request.
    * Update internal state, such as the role request count
@@ -876,7 +1147,7 @@ public class AppState {
       throw new HoyaRuntimeException(
         "Unknown role for node %s", node);
     }
-    getLiveNodes().put(node.getContainerId(), node);
+    addLiveNode(node.getContainerId(), node);
     //tell role history
     roleHistory.onContainerStarted(container);
   }
@@ -887,6 +1158,7 @@ public class AppState {
    * @return the role instance, or null if there was a problem
    */
   public synchronized RoleInstance onNodeManagerContainerStarted(ContainerId containerId) {
+    incStateVersion();
     try {
       return innerOnNodeManagerContainerStarted(containerId);
     } catch (YarnRuntimeException e) {
@@ -925,6 +1197,7 @@ public class AppState {
     }
     instance.state = ClusterDescription.STATE_LIVE;
     RoleStatus roleStatus = lookupRoleStatus(instance.roleId);
+    roleStatus.decStarting();
     roleStatus.incStarted();
     Container container = instance.container;
     addLaunchedContainer(container, instance);
@@ -943,7 +1216,11 @@ public class AppState {
    */
   public synchronized void onNodeManagerContainerStartFailed(ContainerId containerId,
                                                              Throwable thrown) {
-    activeContainers.remove(containerId);
+    incStateVersion();
+    RoleInstance active = activeContainers.remove(containerId);
+    if (active != null) {
+      removeReleasableInstance(active);
+    }
     incFailedCountainerCount();
     incStartFailedCountainerCount();
     RoleInstance instance = getStartingNodes().remove(containerId);
@@ -952,6 +1229,7 @@ public class AppState {
       if (null != thrown) {
         instance.diagnostics = HoyaUtils.stringify(thrown);
       }
+      roleStatus.decStarting();
       roleStatus.noteFailed(null);
       roleStatus.incStartFailed(); 
       getFailedNodes().put(containerId, instance);
@@ -1028,10 +1306,17 @@ public class AppState {
    */
   public synchronized NodeCompletionResult onCompletedNode(YarnConfiguration amConf,
       ContainerStatus status) {
+    incStateVersion();
     ContainerId containerId = status.getContainerId();
     NodeCompletionResult result = new NodeCompletionResult();
     RoleInstance roleInstance;
 
+    RoleInstance starting = getStartingNodes().remove(containerId);
+    if (starting != null) {
+      //completed before it was reported as started
+      lookupRoleStatus(starting.roleId).decStarting();
+    }
+
     if (containersBeingReleased.containsKey(containerId)) {
       log.info("Container was queued for release");
       Container container = containersBeingReleased.remove(containerId);
@@ -1051,6 +1336,7 @@ public class AppState {
       roleInstance = activeContainers.remove(containerId);
       if (roleInstance != null) {
         //it was active, move it to failed 
+        removeReleasableInstance(roleInstance);
         incFailedCountainerCount();
         failedNodes.put(containerId, roleInstance);
       } else {
@@ -1119,7 +1405,7 @@ public class AppState {
     //record the complete node's details; this pulls it from the livenode set 
     //remove the node
     ContainerId id = status.getContainerId();
-    RoleInstance node = getLiveNodes().remove(id);
+    RoleInstance node = removeLiveNode(id);
     if (node == null) {
       log.warn("Received notification of completion of unknown node {}", id);
       completionOfNodeNotInLiveListEvent.incrementAndGet();
@@ -1137,10 +1423,11 @@ public class AppState {
 
   /**
    * Return the percentage done that Hoya is to have YARN display in its
-   * Web UI
+   * Web UI. This is called on every RM heartbeat, and does not take
+   * the app state lock.
    * @return an number from 0 to 100
    */
-  public synchronized float getApplicationProgressPercentage() {
+  public float getApplicationProgressPercentage() {
     float percentage;
     int desired = 0;
     float actual = 0;
@@ -1211,10 +1498,96 @@ public class AppState {
     hoyastats.put(StatusKeys.STATISTICS_CONTAINERS_SURPLUS, surplusContainers.get());
     hoyastats.put(StatusKeys.STATISTICS_CONTAINERS_UNKNOWN_COMPLETED,
                   completionOfUnknownContainerEvent.get());
+    for (StatisticsSource source : statisticsSources) {
+      hoyastats.putAll(source.buildStatistics());
+    }
     cd.statistics.put(HoyaKeys.ROLE_HOYA_AM, hoyastats);
     
   }
 
+  /**
+   * Get the last published status snapshot if it is still current.
+   * This does not acquire any locks.
+   * @return the snapshot, or null if there is none or it is out of date
+   */
+  public ClusterStatusSnapshot getCurrentStatusSnapshot() {
+    ClusterStatusSnapshot snapshot = statusSnapshot;
+    if (snapshot != null
+        && snapshot.isCurrent(getStateVersion(), now(), statusSnapshotMaxAge)) {
+      return snapshot;
+    }
+    return null;
+  }
+
+  /**
+   * Get a current status snapshot, rebuilding it if the application
+   * state has changed since the last one was published.
+   * Only one caller rebuilds the snapshot; the others wait for it.
+   * @param providerService provider to ask for provider-specific status;
+   * may be null
+   * @return the snapshot
+   * @throws IOException if the status could not be serialized
+   */
+  public ClusterStatusSnapshot getStatusSnapshot(ProviderService providerService)
+      throws IOException {
+    ClusterStatusSnapshot snapshot = getCurrentStatusSnapshot();
+    if (snapshot != null) {
+      return snapshot;
+    }
+    synchronized (statusSnapshotLock) {
+      //another thread may have just rebuilt it
+      snapshot = getCurrentStatusSnapshot();
+      if (snapshot == null) {
+        Map<String, String> providerStatus = providerService != null
+            ? providerService.buildProviderStatus()
+            : null;
+        snapshot = publishStatusSnapshot(providerStatus);
+      }
+    }
+    return snapshot;
+  }
+
+  /**
+   * Refresh the cluster status and publish a new snapshot of it.
+   * The version is read before the refresh, so any change made
+   * concurrently will cause the next query to rebuild the snapshot.
+   * @param providerStatus status from the provider for the cluster info section
+   * @return the new snapshot
+   * @throws IOException if the status could not be serialized
+   */
+  public synchronized ClusterStatusSnapshot publishStatusSnapshot(
+      Map<String, String> providerStatus) throws IOException {
+    long version = getStateVersion();
+    refreshClusterStatus(providerStatus);
+    ClusterStatusSnapshot snapshot =
+      new ClusterStatusSnapshot(version, now(), getClusterDescription());
+    statusSnapshot = snapshot;
+    return snapshot;
+  }
+
+  /**
+   * Get the changes to the live instances and role counters since a
+   * client's last query. The journal is only refreshed if the application
+   * state has changed since its last refresh, or that refresh has expired.
+   * This does not acquire the app state lock.
+   * @param epoch epoch of the client's last response; 0 for none
+   * @param since sequence number of the client's last response
+   * @return the changes, or the full status if a delta cannot be built
+   */
+  public Messages.GetClusterStatusDeltaResponseProto getStatusDelta(long epoch,
+                                                                    long since) {
+    synchronized (statusJournal) {
+      long version = getStateVersion();
+      long now = now();
+      if (!statusJournal.isCurrent(version, now, statusSnapshotMaxAge)) {
+        statusJournal.refresh(version, now,
+                              getLiveInstancesView().getInstances(),
+                              getRoleStatusMap().values());
+      }
+      return statusJournal.buildDelta(epoch, since);
+    }
+  }
+
   /**
    * Look at where the current node state is -and whether it should be changed
    */
@@ -1229,9 +1602,44 @@ public class AppState {
         allOperations.addAll(operations);
       }
     }
+    if (!allOperations.isEmpty()) {
+      incStateVersion();
+    }
     return allOperations;
   }
   
+  /**
+   * Are any container requests being held back by ramp limits?
+   * If so, the next review may request more
+   * @return true if there are deferred requests
+   */
+  public synchronized boolean hasRampDeferredRequests() {
+    for (RoleStatus roleStatus : getRoleStatusMap().values()) {
+      if (roleStatus.getRampDeferred() > 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Get the time until the next review which may request containers
+   * held back by the ramp step interval of a role.
+   * Other deferrals are re-evaluated on container events.
+   * @return the delay in millis, or 0 if no review needs scheduling
+   */
+  public synchronized long getRampReviewDelay() {
+    long now = now();
+    long delay = 0;
+    for (RoleStatus roleStatus : getRoleStatusMap().values()) {
+      long roleDelay = roleStatus.getRampStepDelay(now);
+      if (roleDelay > 0 && (delay == 0 || roleDelay < delay)) {
+        delay = roleDelay;
+      }
+    }
+    return delay;
+  }
+
   public void checkFailureThreshold(RoleStatus role) throws
                                                         TriggerClusterTeardownException {
     int failures = role.getFailed();
@@ -1274,23 +1682,19 @@ public class AppState {
     log.info(details);
     checkFailureThreshold(role);
     
+    //apply the ramp limits; this also clears any deferral
+    //once no more containers are needed
+    int ask = role.rampLimit(delta, now());
     if (delta > 0) {
-      log.info("{}: Asking for {} more nodes(s) for a total of {} ", name,
-               delta, expected);
-      //more workers needed than we have -ask for more
-      for (int i = 0; i < delta; i++) {
-        Resource capability = recordFactory.newResource();
-        AMRMClient.ContainerRequest containerAsk =
-          buildContainerResourceAndRequest(role, capability);
-        log.info("Container ask is {}", containerAsk);
-        if (containerAsk.getCapability().getMemory() >
-            this.containerMaxMemory) {
-          log.warn(
-            "Memory requested: " + containerAsk.getCapability().getMemory() +
-            " > " +
-            this.containerMaxMemory);
-        }
-        operations.add(new ContainerRequestOperation(containerAsk));
+      //more workers needed than we have -ask for as many as the ramp allows
+      if (ask < delta) {
+        log.info("{}: ramp limits defer {} of {} requests", name,
+                 delta - ask, delta);
+      }
+      if (ask > 0) {
+        log.info("{}: Asking for {} more nodes(s) for a total of {} ", name,
+                 ask, expected);
+        operations.addAll(buildContainerRequests(role, ask));
       }
     } else if (delta < 0) {
       log.info("{}: Asking for {} fewer node(s) for a total of {}", name,
@@ -1325,26 +1729,134 @@ public class AppState {
 
   /**
    * Find a container running on a specific host -looking
-   * into the node ID to determine this.
+   * up the host in the index of releasable instances.
    *
    * @param node node
    * @param roleId role the container must be in
    * @return a container or null if there are no containers on this host
    * that can be released.
    */
-  private RoleInstance findRoleInstanceOnHost(NodeInstance node, int roleId) {
-    Collection<RoleInstance> targets = cloneActiveContainerList();
-    String hostname = node.hostname;
-    for (RoleInstance ri : targets) {
-      if (hostname.equals(RoleHistoryUtils.hostnameOf(ri.container))
-                         && ri.roleId == roleId
-        && containersBeingReleased.get(ri.getContainerId()) == null) {
-        return ri;
+  @VisibleForTesting
+  public synchronized RoleInstance findRoleInstanceOnHost(NodeInstance node,
+                                                          int roleId) {
+    Set<RoleInstance> instances =
+      getReleasableInstances(node.hostname, roleId, false);
+    if (instances == null || instances.isEmpty()) {
+      return null;
+    }
+    return instances.iterator().next();
+  }
+
+  /**
+   * Get the count of instances of a role on a host which could be
+   * released
+   * @param hostname hostname
+   * @param roleId role ID
+   * @return the number of live, not-released instances in the index
+   */
+  @VisibleForTesting
+  public synchronized int getReleasableInstanceCount(String hostname,
+                                                     int roleId) {
+    Set<RoleInstance> instances =
+      getReleasableInstances(hostname, roleId, false);
+    return instances != null ? instances.size() : 0;
+  }
+
+  /**
+   * Get the set of releasable instances of a role on a host
+   * @param hostname hostname
+   * @param roleId role ID
+   * @param create create the entries if they are absent
+   * @return the set, or null if it was not found and create==false
+   */
+  private Set<RoleInstance> getReleasableInstances(String hostname,
+                                                   int roleId,
+                                                   boolean create) {
+    Map<Integer, Set<RoleInstance>> roleMap =
+      releasableInstancesByHost.get(hostname);
+    if (roleMap == null) {
+      if (!create) {
+        return null;
+      }
+      roleMap = new HashMap<Integer, Set<RoleInstance>>();
+      releasableInstancesByHost.put(hostname, roleMap);
+    }
+    Set<RoleInstance> instances = roleMap.get(roleId);
+    if (instances == null && create) {
+      instances = new LinkedHashSet<RoleInstance>();
+      roleMap.put(roleId, instances);
+    }
+    return instances;
+  }
+
+  /**
+   * Add a role instance to the index of releasable instances
+   * @param instance instance with a container
+   */
+  private synchronized void addReleasableInstance(RoleInstance instance) {
+    String hostname = RoleHistoryUtils.hostnameOf(instance.container);
+    getReleasableInstances(hostname, instance.roleId, true).add(instance);
+  }
+
+  /**
+   * Remove a role instance from the index of releasable instances;
+   * empty entries are purged so the index does not grow with the
+   * history of the cluster.
+   * @param instance instance with a container
+   */
+  private synchronized void removeReleasableInstance(RoleInstance instance) {
+    String hostname = RoleHistoryUtils.hostnameOf(instance.container);
+    Map<Integer, Set<RoleInstance>> roleMap =
+      releasableInstancesByHost.get(hostname);
+    if (roleMap == null) {
+      return;
+    }
+    Set<RoleInstance> instances = roleMap.get(instance.roleId);
+    if (instances != null) {
+      instances.remove(instance);
+      if (instances.isEmpty()) {
+        roleMap.remove(instance.roleId);
+        if (roleMap.isEmpty()) {
+          releasableInstancesByHost.remove(hostname);
+        }
       }
     }
-    return null;
   }
   
+  /**
+   * An instance has failed its health probes: it is still running, but
+   * it is not serving. Note the failure against its role and release
+   * its container, so that the next review replaces it.
+   * @param containerId container of the instance
+   * @param message diagnostics message
+   * @return the release operation; empty if the container is no longer
+   * active or is already being released
+   */
+  public synchronized List<AbstractRMOperation> onInstanceUnhealthy(
+      ContainerId containerId, String message) {
+    List<AbstractRMOperation> operations =
+      new ArrayList<AbstractRMOperation>(1);
+    RoleInstance instance = getActiveContainer(containerId);
+    if (instance == null || instance.released) {
+      log.debug("Ignoring health probe failure of inactive container {}",
+                containerId);
+      return operations;
+    }
+    log.warn("Releasing unhealthy container {}: {}", containerId, message);
+    instance.diagnostics = message;
+    RoleStatus roleStatus = lookupRoleStatus(instance.roleId);
+    roleStatus.noteFailed(message);
+    incFailedCountainerCount();
+    try {
+      containerReleaseSubmitted(instance.container);
+    } catch (HoyaInternalStateException e) {
+      log.warn("when releasing container {} :", containerId, e);
+      return operations;
+    }
+    operations.add(new ContainerReleaseOperation(containerId));
+    return operations;
+  }
+
   /**
    * Release all containers.
    * @return a list of operations to execute
@@ -1381,6 +1893,7 @@ public class AppState {
   public synchronized void onContainersAllocated(List<Container> allocatedContainers,
                                     List<ContainerAssignment> assignments,
                                     List<AbstractRMOperation> releaseOperations) {
+    incStateVersion();
     assignments.clear();
     releaseOperations.clear();
     List<Container> ordered = roleHistory.prepareAllocationList(allocatedContainers);
@@ -1428,6 +1941,8 @@ public class AppState {
                 );
 
         assignments.add(new ContainerAssignment(container, role));
+        //it counts against the ramp until it is submitted for launch
+        role.incQueued();
         //add to the history
         roleHistory.onContainerAssigned(container);
       }
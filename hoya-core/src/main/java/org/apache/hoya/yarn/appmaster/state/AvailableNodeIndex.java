@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.appmaster.state;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The nodes available for data-local placement of a single role,
+ * ordered by most recently used first.
+ *
+ * The ordering key is the role's <code>lastUsed</code> time at the moment
+ * the node was added; if that time changes the node must be re-added to
+ * be repositioned. Insertion and removal are O(log n).
+ *
+ * Only nodes with no active instances of the role are indexed: a node
+ * must be removed when an instance starts on it, and added again when
+ * the role is released from it. The head is then normally eligible, so
+ * taking it is O(log n) too.
+ *
+ * Not synchronized: the {@link RoleHistory} owning the index must
+ * serialize access.
+ */
+public class AvailableNodeIndex {
+
+  /**
+   * Role index
+   */
+  private final int role;
+
+  /**
+   * Ordered view of the nodes
+   */
+  private final TreeMap<Key, NodeInstance> ordered =
+    new TreeMap<Key, NodeInstance>();
+
+  /**
+   * hostname -> key of that host in the ordered map
+   */
+  private final Map<String, Key> keys = new HashMap<String, Key>();
+
+  public AvailableNodeIndex(int role) {
+    this.role = role;
+  }
+
+  public int getRole() {
+    return role;
+  }
+
+  /**
+   * Add a node, or reposition it if it is already present.
+   * A node with active instances of the role is not added
+   * @param node node to add
+   * @return true if the node was added
+   */
+  public boolean add(NodeInstance node) {
+    remove(node);
+    if (node.getActiveRoleInstances(role) != 0) {
+      return false;
+    }
+    Key key = new Key(node.getLastUsed(role), node.hostname);
+    keys.put(node.hostname, key);
+    ordered.put(key, node);
+    return true;
+  }
+
+  /**
+   * Add all nodes in a collection
+   * @param nodes nodes to add
+   */
+  public void addAll(Iterable<NodeInstance> nodes) {
+    for (NodeInstance node : nodes) {
+      add(node);
+    }
+  }
+
+  /**
+   * Remove a node
+   * @param node node to remove
+   * @return true if the node was in the index
+   */
+  public boolean remove(NodeInstance node) {
+    Key key = keys.remove(node.hostname);
+    if (key == null) {
+      return false;
+    }
+    ordered.remove(key);
+    return true;
+  }
+
+  public boolean contains(NodeInstance node) {
+    return keys.containsKey(node.hostname);
+  }
+
+  public int size() {
+    return keys.size();
+  }
+
+  public boolean isEmpty() {
+    return keys.isEmpty();
+  }
+
+  /**
+   * Take the most recently used node with no active instances of the
+   * role, removing it from the index. Nodes which became active without
+   * being removed are skipped, but stay in the index.
+   * @return the node or null if there is none
+   */
+  public NodeInstance takeMostRecentInactive() {
+    Iterator<Map.Entry<Key, NodeInstance>> entries =
+      ordered.entrySet().iterator();
+    while (entries.hasNext()) {
+      NodeInstance node = entries.next().getValue();
+      if (node.getActiveRoleInstances(role) == 0) {
+        entries.remove();
+        keys.remove(node.hostname);
+        return node;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Get the nodes in order
+   * @return a new list of the nodes, most recently used first
+   */
+  public List<NodeInstance> toList() {
+    return new ArrayList<NodeInstance>(ordered.values());
+  }
+
+  @Override
+  public String toString() {
+    return "AvailableNodeIndex{role=" + role + ", size=" + size() + '}';
+  }
+
+  /**
+   * Ordering key: newer last-used times first, with the hostname used
+   * to break ties
+   */
+  private static final class Key implements Comparable<Key> {
+    private final long lastUsed;
+    private final String hostname;
+
+    private Key(long lastUsed, String hostname) {
+      this.lastUsed = lastUsed;
+      this.hostname = hostname;
+    }
+
+    @Override
+    public int compareTo(Key that) {
+      if (lastUsed > that.lastUsed) {
+        return -1;
+      } else if (lastUsed < that.lastUsed) {
+        return 1;
+      }
+      return hostname.compareTo(that.hostname);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Key that = (Key) o;
+      return lastUsed == that.lastUsed && hostname.equals(that.hostname);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * hostname.hashCode() + (int) (lastUsed ^ (lastUsed >>> 32));
+    }
+  }
+}
@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.appmaster.state;
+
+import org.apache.hoya.api.proto.Messages;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A journal of the changes to the live role instances and the role
+ * counters, from which clients can be sent only what has changed since
+ * their last query.
+ *
+ * Every refresh compares the current wire form of each live instance and
+ * role with the last one recorded; anything which differs is tagged with
+ * a new sequence number. Instances which have gone are kept as a bounded
+ * list of removals; a client whose last sequence number predates the
+ * oldest retained removal is sent the full status instead.
+ *
+ * The epoch identifies this journal, so that a client of a restarted AM
+ * is sent the full status rather than a delta against the wrong history.
+ *
+ * The probe latency and probe time of an instance change with every
+ * probe; on their own they do not count as a change.
+ */
+public class ClusterStatusJournal {
+
+  /**
+   * Number of removals retained: {@value}
+   */
+  public static final int REMOVALS_RETAINED = 1024;
+
+  private final long epoch;
+  private final int removalsRetained;
+  private final Map<String, Entry<Messages.RoleInstanceState>> instances =
+    new HashMap<String, Entry<Messages.RoleInstanceState>>();
+  private final Map<String, Entry<Messages.RoleStatusState>> roles =
+    new HashMap<String, Entry<Messages.RoleStatusState>>();
+
+  /**
+   * Removed instance names to the sequence number of their removal,
+   * oldest first
+   */
+  private final LinkedHashMap<String, Long> removals =
+    new LinkedHashMap<String, Long>();
+
+  private long sequence;
+
+  /**
+   * Sequence number of the last removal to be discarded; deltas from
+   * before this cannot be built
+   */
+  private long discardedSequence;
+
+  private long refreshedVersion = -1;
+  private long refreshedTime;
+
+  /**
+   * Create a journal
+   * @param epoch the epoch; should differ across AM instances
+   * @param removalsRetained number of removals to retain
+   */
+  public ClusterStatusJournal(long epoch, int removalsRetained) {
+    this.epoch = epoch;
+    this.removalsRetained = removalsRetained;
+  }
+
+  public long getEpoch() {
+    return epoch;
+  }
+
+  public synchronized long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * Is the journal current?
+   * @param version current app state version
+   * @param now current time
+   * @param maxAge maximum age of the last refresh in millis; 0 means no limit
+   * @return true if there is no need to refresh it
+   */
+  public synchronized boolean isCurrent(long version, long now, long maxAge) {
+    return refreshedVersion == version
+           && (maxAge <= 0 || now - refreshedTime < maxAge);
+  }
+
+  /**
+   * Refresh the journal from the current state
+   * @param version app state version of the state
+   * @param now current time
+   * @param liveInstances the live instances
+   * @param roleStatuses the role statuses
+   */
+  public synchronized void refresh(long version,
+                                   long now,
+                                   Collection<RoleInstance> liveInstances,
+                                   Collection<RoleStatus> roleStatuses) {
+    long next = sequence + 1;
+    boolean changed = false;
+    Set<String> seen = new HashSet<String>(liveInstances.size());
+    for (RoleInstance instance : liveInstances) {
+      Messages.RoleInstanceState state = instance.toProtobuf();
+      String name = state.getName();
+      seen.add(name);
+      Entry<Messages.RoleInstanceState> entry = instances.get(name);
+      if (entry == null || !sameInstanceState(entry.state, state)) {
+        instances.put(name, new Entry<Messages.RoleInstanceState>(next, state));
+        removals.remove(name);
+        changed = true;
+      } else {
+        //pick up the latest probe data without it counting as a change
+        entry.state = state;
+      }
+    }
+    Iterator<Map.Entry<String, Entry<Messages.RoleInstanceState>>> it =
+      instances.entrySet().iterator();
+    while (it.hasNext()) {
+      String name = it.next().getKey();
+      if (!seen.contains(name)) {
+        it.remove();
+        removals.put(name, next);
+        changed = true;
+      }
+    }
+    while (removals.size() > removalsRetained) {
+      Iterator<Map.Entry<String, Long>> oldest = removals.entrySet().iterator();
+      discardedSequence = oldest.next().getValue();
+      oldest.remove();
+    }
+    for (RoleStatus roleStatus : roleStatuses) {
+      Messages.RoleStatusState state = roleStatus.toProtobuf();
+      Entry<Messages.RoleStatusState> entry = roles.get(state.getName());
+      if (entry == null || !entry.state.equals(state)) {
+        roles.put(state.getName(), new Entry<Messages.RoleStatusState>(next, state));
+        changed = true;
+      }
+    }
+    if (changed) {
+      sequence = next;
+    }
+    refreshedVersion = version;
+    refreshedTime = now;
+  }
+
+  /**
+   * Compare two instance states, ignoring the probe timings
+   */
+  private static boolean sameInstanceState(Messages.RoleInstanceState s1,
+                                           Messages.RoleInstanceState s2) {
+    return s1.toBuilder().clearProbeLatency().clearLastProbeTime().build()
+             .equals(s2.toBuilder()
+                       .clearProbeLatency()
+                       .clearLastProbeTime()
+                       .build());
+  }
+
+  /**
+   * Build the changes since a sequence number of this or an earlier journal
+   * @param clientEpoch epoch of the client's last response; 0 for none
+   * @param since sequence number of the client's last response
+   * @return the response; a full one if a delta cannot be built
+   */
+  public synchronized Messages.GetClusterStatusDeltaResponseProto buildDelta(
+      long clientEpoch, long since) {
+    boolean full = clientEpoch != epoch
+                   || since <= 0
+                   || since < discardedSequence
+                   || since > sequence;
+    Messages.GetClusterStatusDeltaResponseProto.Builder builder =
+      Messages.GetClusterStatusDeltaResponseProto.newBuilder()
+              .setEpoch(epoch)
+              .setSequence(sequence)
+              .setFull(full);
+    for (Entry<Messages.RoleInstanceState> entry : instances.values()) {
+      if (full || entry.sequence > since) {
+        builder.addUpdated(entry.state);
+      }
+    }
+    if (!full) {
+      for (Map.Entry<String, Long> removal : removals.entrySet()) {
+        if (removal.getValue() > since) {
+          builder.addRemoved(removal.getKey());
+        }
+      }
+    }
+    for (Entry<Messages.RoleStatusState> entry : roles.values()) {
+      if (full || entry.sequence > since) {
+        builder.addRoles(entry.state);
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * The last recorded state of an instance or role, and the sequence
+   * number at which it last changed
+   */
+  private static final class Entry<T> {
+    private final long sequence;
+    private T state;
+
+    private Entry(long sequence, T state) {
+      this.sequence = sequence;
+      this.state = state;
+    }
+  }
+}
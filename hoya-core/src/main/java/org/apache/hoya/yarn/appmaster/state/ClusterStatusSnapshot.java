@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.appmaster.state;
+
+import org.apache.hoya.api.ClusterDescription;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * A published snapshot of the cluster status, tagged with the
+ * {@link AppState} version it was built from.
+ *
+ * The JSON form is built when the snapshot is created, and the status
+ * document is parsed back from it, so the snapshot is a private copy of
+ * the live cluster description and can be handed out without holding
+ * any locks. Callers must treat it as read-only: it is shared between
+ * all readers of the snapshot.
+ */
+public final class ClusterStatusSnapshot {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final long version;
+  private final long timestamp;
+  private final ClusterDescription status;
+  private final String json;
+  private final byte[] jsonBytes;
+
+  /**
+   * Create a snapshot of the cluster status. The status is copied,
+   * so the caller must hold whatever lock guards it.
+   * @param version app state version the status was built from
+   * @param timestamp time the status was built
+   * @param status the live cluster status
+   * @throws IOException if the status cannot be serialized
+   */
+  public ClusterStatusSnapshot(long version,
+                               long timestamp,
+                               ClusterDescription status) throws IOException {
+    this.version = version;
+    this.timestamp = timestamp;
+    json = status.toJsonString();
+    jsonBytes = json.getBytes(UTF8);
+    this.status = ClusterDescription.fromJson(json);
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * Get the status as JSON
+   * @return the JSON text
+   */
+  public String getJson() {
+    return json;
+  }
+
+  /**
+   * Get the status as UTF-8 encoded JSON.
+   * The array is shared: do not modify it.
+   * @return the JSON bytes
+   */
+  public byte[] getJsonBytes() {
+    return jsonBytes;
+  }
+
+  /**
+   * Get the status document. This is shared: do not modify it.
+   * @return the cluster status
+   */
+  public ClusterDescription getStatus() {
+    return status;
+  }
+
+  /**
+   * Is this snapshot still current?
+   * @param currentVersion the current app state version
+   * @param now current time
+   * @param maxAge maximum age in millis; 0 or less means no age limit
+   * @return true if the state is unchanged and the snapshot is not too old
+   */
+  public boolean isCurrent(long currentVersion, long now, long maxAge) {
+    return version == currentVersion
+           && (maxAge <= 0 || now - timestamp < maxAge);
+  }
+
+  @Override
+  public String toString() {
+    return "ClusterStatusSnapshot{version=" + version +
+           ", timestamp=" + timestamp +
+           '}';
+  }
+}
@@ -20,25 +20,50 @@ package org.apache.hoya.yarn.appmaster.state;
 
 import org.apache.hadoop.yarn.client.api.AMRMClient;
 
+/**
+ * Ask for one or more containers matching the same request:
+ * same role, resource and location.
+ */
 public class ContainerRequestOperation extends AbstractRMOperation {
 
   private final AMRMClient.ContainerRequest request;
+  private final int count;
 
   public ContainerRequestOperation(AMRMClient.ContainerRequest request) {
+    this(request, 1);
+  }
+
+  /**
+   * Create an aggregate request
+   * @param request request to raise
+   * @param count number of containers to ask for; must be 1 or more
+   */
+  public ContainerRequestOperation(AMRMClient.ContainerRequest request,
+                                   int count) {
+    assert count > 0 : "count";
     this.request = request;
+    this.count = count;
   }
 
   public AMRMClient.ContainerRequest getRequest() {
     return request;
   }
 
+  /**
+   * Get the number of containers asked for
+   * @return the count
+   */
+  public int getCount() {
+    return count;
+  }
+
   @Override
   public void execute(RMOperationHandler handler) {
-    handler.addContainerRequest(request);
+    handler.addContainerRequests(request, count);
   }
 
   @Override
   public String toString() {
-    return "request container ";
+    return "request " + count + " container(s) ";
   }
 }
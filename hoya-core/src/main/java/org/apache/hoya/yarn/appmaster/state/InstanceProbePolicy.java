@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.appmaster.state;
+
+import org.apache.hoya.api.ClusterDescription;
+import org.apache.hoya.api.RoleKeys;
+
+/**
+ * The health probing policy of the instances of a role, built from
+ * the role options of the cluster specification. Immutable.
+ *
+ * An instance is probed once it has been live for the startup delay,
+ * then every interval; an instance which fails the failure threshold
+ * of consecutive probes is unhealthy, and is replaced.
+ */
+public final class InstanceProbePolicy {
+
+  /**
+   * Policy of roles which are not probed
+   */
+  public static final InstanceProbePolicy NONE =
+    new InstanceProbePolicy(0, 0, RoleKeys.DEFAULT_ROLE_PROBE_HTTP_PATH,
+                            RoleKeys.DEFAULT_ROLE_PROBE_INTERVAL,
+                            RoleKeys.DEFAULT_ROLE_PROBE_TIMEOUT,
+                            RoleKeys.DEFAULT_ROLE_PROBE_STARTUP_DELAY,
+                            RoleKeys.DEFAULT_ROLE_PROBE_FAILURE_THRESHOLD);
+
+  private final int port;
+  private final int httpPort;
+  private final String httpPath;
+  private final int interval;
+  private final int timeout;
+  private final int startupDelay;
+  private final int failureThreshold;
+
+  public InstanceProbePolicy(int port,
+                             int httpPort,
+                             String httpPath,
+                             int interval,
+                             int timeout,
+                             int startupDelay,
+                             int failureThreshold) {
+    this.port = port;
+    this.httpPort = httpPort;
+    this.httpPath = httpPath.startsWith("/") ? httpPath : "/" + httpPath;
+    this.interval = interval;
+    this.timeout = timeout;
+    this.startupDelay = startupDelay;
+    this.failureThreshold = Math.max(failureThreshold, 1);
+  }
+
+  /**
+   * Build the policy of a role from its options
+   * @param spec cluster specification
+   * @param role role name
+   * @return the policy
+   */
+  public static InstanceProbePolicy fromRoleOptions(ClusterDescription spec,
+                                                    String role) {
+    return new InstanceProbePolicy(
+      spec.getRoleOptInt(role, RoleKeys.ROLE_PROBE_PORT, 0),
+      spec.getRoleOptInt(role, RoleKeys.ROLE_PROBE_HTTP_PORT, 0),
+      spec.getRoleOpt(role, RoleKeys.ROLE_PROBE_HTTP_PATH,
+                      RoleKeys.DEFAULT_ROLE_PROBE_HTTP_PATH),
+      spec.getRoleOptInt(role, RoleKeys.ROLE_PROBE_INTERVAL,
+                         RoleKeys.DEFAULT_ROLE_PROBE_INTERVAL),
+      spec.getRoleOptInt(role, RoleKeys.ROLE_PROBE_TIMEOUT,
+                         RoleKeys.DEFAULT_ROLE_PROBE_TIMEOUT),
+      spec.getRoleOptInt(role, RoleKeys.ROLE_PROBE_STARTUP_DELAY,
+                         RoleKeys.DEFAULT_ROLE_PROBE_STARTUP_DELAY),
+      spec.getRoleOptInt(role, RoleKeys.ROLE_PROBE_FAILURE_THRESHOLD,
+                         RoleKeys.DEFAULT_ROLE_PROBE_FAILURE_THRESHOLD));
+  }
+
+  /**
+   * Are the instances of the role probed at all?
+   * @return true if there is a port or an HTTP port to probe
+   */
+  public boolean isEnabled() {
+    return port > 0 || httpPort > 0;
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  public int getHttpPort() {
+    return httpPort;
+  }
+
+  public String getHttpPath() {
+    return httpPath;
+  }
+
+  public int getInterval() {
+    return interval;
+  }
+
+  public int getTimeout() {
+    return timeout;
+  }
+
+  public int getStartupDelay() {
+    return startupDelay;
+  }
+
+  public int getFailureThreshold() {
+    return failureThreshold;
+  }
+
+  /**
+   * Equality is on all the fields, so that a policy rebuilt from
+   * unchanged role options equals the previous one
+   * @param o other
+   * @return true on a match
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    InstanceProbePolicy that = (InstanceProbePolicy) o;
+
+    return port == that.port
+           && httpPort == that.httpPort
+           && interval == that.interval
+           && timeout == that.timeout
+           && startupDelay == that.startupDelay
+           && failureThreshold == that.failureThreshold
+           && httpPath.equals(that.httpPath);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = port;
+    result = 31 * result + httpPort;
+    result = 31 * result + httpPath.hashCode();
+    result = 31 * result + interval;
+    result = 31 * result + timeout;
+    result = 31 * result + startupDelay;
+    result = 31 * result + failureThreshold;
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "InstanceProbePolicy{" +
+           "port=" + port +
+           ", httpPort=" + httpPort +
+           ", httpPath='" + httpPath + '\'' +
+           ", interval=" + interval +
+           ", timeout=" + timeout +
+           ", startupDelay=" + startupDelay +
+           ", failureThreshold=" + failureThreshold +
+           '}';
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.appmaster.state;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable view of the live role instances, published by the
+ * {@link AppState} so that queries can be served without its lock.
+ *
+ * The lists are fixed when the view is built; the instances in them
+ * are the live objects, and are shared with the app state.
+ * The lists are sorted by instance ID, so they can be paged through.
+ */
+public final class LiveInstancesView {
+
+  private static final Comparator<RoleInstance> BY_ID =
+    new Comparator<RoleInstance>() {
+      @Override
+      public int compare(RoleInstance i1, RoleInstance i2) {
+        return i1.id.compareTo(i2.id);
+      }
+    };
+
+  private final long version;
+  private final List<RoleInstance> instances;
+  private final Map<String, List<RoleInstance>> instancesByRole;
+  private final Map<String, RoleInstance> instancesById;
+
+  /**
+   * Build a view
+   * @param version version of the live node set the view was built from
+   * @param liveNodes the live nodes
+   */
+  public LiveInstancesView(long version, Collection<RoleInstance> liveNodes) {
+    this.version = version;
+    List<RoleInstance> list = new ArrayList<RoleInstance>(liveNodes);
+    Collections.sort(list, BY_ID);
+    Map<String, List<RoleInstance>> byRole =
+      new HashMap<String, List<RoleInstance>>();
+    Map<String, RoleInstance> byId =
+      new HashMap<String, RoleInstance>(list.size() * 2);
+    for (RoleInstance instance : list) {
+      byId.put(instance.id, instance);
+      List<RoleInstance> roleInstances = byRole.get(instance.role);
+      if (roleInstances == null) {
+        roleInstances = new ArrayList<RoleInstance>();
+        byRole.put(instance.role, roleInstances);
+      }
+      roleInstances.add(instance);
+    }
+    for (Map.Entry<String, List<RoleInstance>> entry : byRole.entrySet()) {
+      entry.setValue(Collections.unmodifiableList(entry.getValue()));
+    }
+    this.instances = Collections.unmodifiableList(list);
+    this.instancesByRole = byRole;
+    this.instancesById = byId;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Get all live instances
+   * @return an unmodifiable list
+   */
+  public List<RoleInstance> getInstances() {
+    return instances;
+  }
+
+  /**
+   * Get the live instances of a role
+   * @param role role name
+   * @return an unmodifiable list, empty if the role has no instances
+   */
+  public List<RoleInstance> getInstancesInRole(String role) {
+    List<RoleInstance> roleInstances = instancesByRole.get(role);
+    if (roleInstances == null) {
+      return Collections.emptyList();
+    }
+    return roleInstances;
+  }
+
+  /**
+   * Look up a live instance by its ID
+   * @param id instance ID
+   * @return the instance, or null if there is no live instance of that ID
+   */
+  public RoleInstance getInstance(String id) {
+    return instancesById.get(id);
+  }
+
+  @Override
+  public String toString() {
+    return "LiveInstancesView{version=" + version +
+           ", instances=" + instances.size() +
+           '}';
+  }
+}
@@ -20,7 +20,12 @@ package org.apache.hoya.yarn.appmaster.state;
 
 /**
  * Information about the state of a role on a specific node instance.
- * No fields are synchronized; sync on the instance to work with it
+ * The state is held in a slot of a {@link NodeEntryTable}; this is a
+ * view onto the slot of a role in the row of a {@link NodeInstance}.
+ * The slot is looked up on every access, so a view of an instance which
+ * has been dropped from its map reads as empty and discards changes,
+ * rather than touching a row since reused by another node.
+ * An entry created on its own has a single slot of its own.
  *
  The two fields `releasing` and `requested` are used to track the ongoing
  state of YARN requests; they do not need to be persisted across freeze/thaw
@@ -33,40 +38,50 @@ package org.apache.hoya.yarn.appmaster.state;
  The `active` counter is only decremented after a container release response
  has been received.
  
- Accesses are synchronized.
+ Accesses are applied by the page of the table holding the entry,
+ under its lock.
  */
 public class NodeEntry {
   
   public final int index;
 
-  public NodeEntry(int index) {
-    this.index = index;
-  }
+  private final NodeInstance node;
+  private final NodeEntryTable.Page page;
+  private final int column;
 
   /**
-   * instance explicitly requested on this node: it's OK if an allocation
-   * comes in that has not been (and when that happens, this count should 
-   * not drop)
+   * Create an entry which is not part of any node instance
+   * @param index role index
    */
-  private int requested;
-  private int starting;
-  private int startFailed;
-  private int failed;
+  public NodeEntry(int index) {
+    this(new NodeInstance(null, 1), index, 0);
+    node.getOrCreate(0);
+  }
+
   /**
-   * Number of live nodes. 
+   * Create a view onto the entry of a role in a node instance
+   * @param node node instance
+   * @param index role index
    */
-  private int live;
-  private int releasing;
-  private long lastUsed;
-  
+  NodeEntry(NodeInstance node, int index) {
+    this(node, index, index);
+  }
+
+  private NodeEntry(NodeInstance node, int index, int column) {
+    this.node = node;
+    this.page = node.getPage();
+    this.index = index;
+    this.column = column;
+  }
+
   /**
    * Is the node available for assignments. This does not track
    * whether or not there are any outstanding requests for this node
    * @return true if there are no role instances here
    * other than some being released.
    */
-  public synchronized boolean isAvailable() {
-    return getActive() == 0 && (requested == 0) && starting == 0;
+  public boolean isAvailable() {
+    return page.isAvailable(node, column);
   }
 
   /**
@@ -74,8 +89,8 @@ public class NodeEntry {
    * are live and not already being released
    * @return a number, possibly 0
    */
-  public synchronized int getActive() {
-    return (live - releasing);
+  public int getActive() {
+    return page.getActive(node, column);
   }
 
   /**
@@ -84,93 +99,91 @@ public class NodeEntry {
    * @param absoluteTime time
    * @return true if the node could be cleaned up
    */
-  public synchronized boolean notUsedSince(long absoluteTime) {
-    return isAvailable() && lastUsed < absoluteTime;
+  public boolean notUsedSince(long absoluteTime) {
+    return page.notUsedSince(node, column, absoluteTime);
   }
 
-  public synchronized int getLive() {
-    return live;
+  public int getLive() {
+    return page.get(node, column, NodeEntryTable.Page.LIVE);
   }
 
   public int getStarting() {
-    return starting;
+    return page.get(node, column, NodeEntryTable.Page.STARTING);
   }
 
   /**
    * Set the live value directly -used on AM restart
    * @param v value
    */
-  public synchronized void setLive(int v) {
-    live = v;
+  public void setLive(int v) {
+    page.set(node, column, NodeEntryTable.Page.LIVE, v);
   }
   
-  private void incLive() {
-    ++live;
+  public void onStarting() {
+    page.update(node, column, 0, NodeEntryTable.Page.STARTING);
   }
 
-  private synchronized void decLive() {
-    live = RoleHistoryUtils.decToFloor(live);
+  public void onStartCompleted() {
+    page.update(node, column,
+                NodeEntryTable.Page.STARTING, NodeEntryTable.Page.LIVE);
   }
   
-  public synchronized void onStarting() {
-    ++starting;
-  }
-
-  private void decStarting() {
-    starting = RoleHistoryUtils.decToFloor(starting);
+  /**
+   * start canceled before it was submitted -decrement the starting flag
+   * without counting it as a failure.
+   * @return true if the node is now available
+   */
+  public boolean onStartCanceled() {
+    return page.update(node, column, NodeEntryTable.Page.STARTING, 0);
   }
 
-  public synchronized void onStartCompleted() {
-    decStarting();
-    incLive();
-  }
-  
-    /**
+  /**
    * start failed -decrement the starting flag.
    * @return true if the node is now available
    */
-  public synchronized boolean onStartFailed() {
-    decStarting();
-    ++startFailed;
-    ++failed;
-    return isAvailable();
+  public boolean onStartFailed() {
+    return page.update(node, column,
+                       NodeEntryTable.Page.STARTING,
+                       NodeEntryTable.Page.START_FAILED
+                       | NodeEntryTable.Page.FAILED);
   }
   
   /**
    * no of requests made of this role of this node. If it goes above
    * 1 there's a problem
    */
-  public synchronized  int getRequested() {
-    return requested;
+  public int getRequested() {
+    return page.get(node, column, NodeEntryTable.Page.REQUESTED);
   }
 
   /**
    * request a node: 
    */
-  public synchronized void request() {
-    ++requested;
+  public void request() {
+    page.update(node, column, 0, NodeEntryTable.Page.REQUESTED);
   }
 
   /**
    * A request made explicitly to this node has completed
    */
-  public synchronized void requestCompleted() {
-    requested = RoleHistoryUtils.decToFloor(requested);
+  public void requestCompleted() {
+    page.update(node, column, NodeEntryTable.Page.REQUESTED, 0);
   }
 
   /**
    * No of instances in release state
    */
-  public synchronized int getReleasing() {
-    return releasing;
+  public int getReleasing() {
+    return page.get(node, column, NodeEntryTable.Page.RELEASING);
   }
 
   /**
    * Release an instance -which is no longer marked as active
    */
-  public synchronized void release() {
-    assert live > 0 : "no live nodes to release";
-    releasing++;
+  public void release() {
+    assert getLive() > 0 || !page.isPresent(node, column) :
+      "no live nodes to release";
+    page.update(node, column, 0, NodeEntryTable.Page.RELEASING);
   }
 
   /**
@@ -180,44 +193,59 @@ public class NodeEntry {
    * @param wasReleased true if this was planned
    * @return true if this node is now available
    */
-  public synchronized boolean containerCompleted(boolean wasReleased) {
+  public boolean containerCompleted(boolean wasReleased) {
     if (wasReleased) {
-      releasing = RoleHistoryUtils.decToFloor(releasing);
+      return page.update(node, column,
+                         NodeEntryTable.Page.RELEASING
+                         | NodeEntryTable.Page.LIVE, 0);
     } else {
-      ++failed;
+      return page.update(node, column,
+                         NodeEntryTable.Page.LIVE, NodeEntryTable.Page.FAILED);
     }
-    decLive();
-    return isAvailable();
   }
 
   /**
    * Time last used.
    */
-  public synchronized long getLastUsed() {
-    return lastUsed;
+  public long getLastUsed() {
+    return page.getLastUsed(node, column);
   }
 
-  public synchronized void setLastUsed(long lastUsed) {
-    this.lastUsed = lastUsed;
+  public void setLastUsed(long lastUsed) {
+    page.setLastUsed(node, column, lastUsed);
   }
 
   public int getStartFailed() {
-    return startFailed;
+    return page.get(node, column, NodeEntryTable.Page.START_FAILED);
+  }
+
+  public int getFailed() {
+    return page.get(node, column, NodeEntryTable.Page.FAILED);
   }
 
-  public synchronized int getFailed() {
-    return failed;
+  /**
+   * Copy the state of this entry into another one, marking the
+   * destination as present. The state is read and written under the
+   * two page locks in turn, never both at once.
+   * @param dest destination entry
+   */
+  void copyTo(NodeEntry dest) {
+    int[] values = new int[NodeEntryTable.Page.COUNTERS.length];
+    long lastUsed = page.read(node, column, values);
+    dest.page.write(dest.node, dest.column, values, lastUsed);
   }
 
   @Override
   public String toString() {
+    int[] values = new int[NodeEntryTable.Page.COUNTERS.length];
+    long lastUsed = page.read(node, column, values);
     final StringBuilder sb = new StringBuilder("NodeEntry{");
-    sb.append("requested=").append(requested);
-    sb.append(", starting=").append(starting);
-    sb.append(", live=").append(live);
-    sb.append(", failed=").append(failed);
-    sb.append(", startFailed=").append(startFailed);
-    sb.append(", releasing=").append(releasing);
+    sb.append("requested=").append(values[0]);
+    sb.append(", starting=").append(values[1]);
+    sb.append(", live=").append(values[4]);
+    sb.append(", failed=").append(values[3]);
+    sb.append(", startFailed=").append(values[2]);
+    sb.append(", releasing=").append(values[5]);
     sb.append(", lastUsed=").append(lastUsed);
     sb.append('}');
     return sb.toString();
@@ -0,0 +1,539 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.appmaster.state;
+
+import java.util.Arrays;
+
+/**
+ * Columnar storage of node entries: one primitive array per field of
+ * {@link NodeEntry}, where each {@link NodeInstance} owns one row and
+ * each role has one column.
+ *
+ * This replaces an object, its header and the list holding it for every
+ * (node, role) pair with a few bytes in each array, which matters once
+ * a history covers thousands of nodes.
+ *
+ * The rows are held in fixed size pages, each with arrays and a lock
+ * of its own, so operations on the entries of nodes in different pages
+ * do not contend, and adding rows never moves existing ones.
+ * The arrays of a page are only accessed by its synchronized methods.
+ * Rows released by purged nodes are reused. The number of columns
+ * grows if a role index beyond the current count is used.
+ *
+ * Lock order: the table, then a page.
+ */
+public class NodeEntryTable {
+
+  /**
+   * Number of rows in a page: {@value}
+   */
+  public static final int PAGE_ROWS = 32;
+
+  private static final int MIN_FREE_ROWS = 4;
+
+  private final int pageRows;
+
+  /**
+   * Pages; replaced with the lock on the table held
+   */
+  private volatile Page[] pages = new Page[0];
+
+  /**
+   * Column count; changed with the lock on the table held
+   */
+  private volatile int columns;
+
+  private int rows;
+  private int[] freeRows = new int[MIN_FREE_ROWS];
+  private int freeCount;
+
+  /**
+   * Create a table
+   * @param columns initial number of roles
+   */
+  public NodeEntryTable(int columns) {
+    this(columns, PAGE_ROWS);
+  }
+
+  /**
+   * Create a table
+   * @param columns initial number of roles
+   * @param pageRows number of rows in a page
+   */
+  NodeEntryTable(int columns, int pageRows) {
+    this.columns = Math.max(columns, 1);
+    this.pageRows = Math.max(pageRows, 1);
+  }
+
+  public int getColumns() {
+    return columns;
+  }
+
+  public int getPageCount() {
+    return pages.length;
+  }
+
+  /**
+   * Get the number of rows in use
+   * @return the number of rows allocated and not released
+   */
+  public synchronized int getRowCount() {
+    return rows - freeCount;
+  }
+
+  /**
+   * Get the page holding a row
+   * @param row an allocated row
+   * @return the page
+   */
+  Page page(int row) {
+    return pages[row / pageRows];
+  }
+
+  /**
+   * Get the position of a row within its page
+   * @param row row
+   * @return the row in the page
+   */
+  int pageRow(int row) {
+    return row % pageRows;
+  }
+
+  /**
+   * Allocate a row, reusing a released one if there is one
+   * @return an empty row
+   */
+  synchronized int allocateRow() {
+    if (freeCount > 0) {
+      return freeRows[--freeCount];
+    }
+    int row = rows++;
+    int index = row / pageRows;
+    if (index == pages.length) {
+      Page[] grown = Arrays.copyOf(pages, index + 1);
+      grown[index] = new Page(pageRows, columns);
+      pages = grown;
+    }
+    return row;
+  }
+
+  /**
+   * Release a row, clearing its slots
+   * @param row row to release
+   */
+  synchronized void releaseRow(int row) {
+    page(row).clearRow(pageRow(row));
+    if (freeCount == freeRows.length) {
+      freeRows = Arrays.copyOf(freeRows, freeCount * 2);
+    }
+    freeRows[freeCount++] = row;
+  }
+
+  /**
+   * Make sure there is a column for a role.
+   * The caller must not hold the lock on any page.
+   * @param role role index
+   * @throws ArrayIndexOutOfBoundsException if the role is negative
+   */
+  void ensureColumn(int role) {
+    if (role < 0) {
+      throw new ArrayIndexOutOfBoundsException(role);
+    }
+    if (role < columns) {
+      return;
+    }
+    synchronized (this) {
+      if (role >= columns) {
+        int newColumns = role + 1;
+        for (Page page : pages) {
+          page.resize(newColumns);
+        }
+        columns = newColumns;
+      }
+    }
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "NodeEntryTable{rows=" + getRowCount() +
+           ", columns=" + columns +
+           ", pages=" + pages.length +
+           '}';
+  }
+
+  /**
+   * A page of rows, indexed by the slot <code>row * columns + role</code>
+   * within the page.
+   *
+   * The arrays are only touched by the synchronized methods here, which
+   * find the slot of a role of a node instance and apply an operation to
+   * it under the lock on the page. A slot holding no entry -including
+   * any slot of an instance detached from the table- reads as zero, and
+   * changes to it are discarded.
+   */
+  static final class Page {
+
+    /**
+     * Counters of an entry. They are flags, so that one
+     * {@link #update(NodeInstance, int, int, int)} can change several.
+     */
+    static final int REQUESTED = 1;
+    static final int STARTING = 2;
+    static final int START_FAILED = 4;
+    static final int FAILED = 8;
+    static final int LIVE = 16;
+    static final int RELEASING = 32;
+
+    /**
+     * All the counters, in the order used by
+     * {@link #read(NodeInstance, int, int[])}
+     */
+    static final int[] COUNTERS = {
+      REQUESTED, STARTING, START_FAILED, FAILED, LIVE, RELEASING
+    };
+
+    private final int rows;
+    private int columns;
+
+    private int[] requested;
+    private int[] starting;
+    private int[] startFailed;
+    private int[] failed;
+    private int[] live;
+    private int[] releasing;
+    private long[] lastUsed;
+    private boolean[] present;
+
+    Page(int rows, int columns) {
+      this.rows = rows;
+      this.columns = columns;
+      allocate(rows * columns);
+    }
+
+    private void allocate(int slots) {
+      requested = new int[slots];
+      starting = new int[slots];
+      startFailed = new int[slots];
+      failed = new int[slots];
+      live = new int[slots];
+      releasing = new int[slots];
+      lastUsed = new long[slots];
+      present = new boolean[slots];
+    }
+
+    synchronized int getColumns() {
+      return columns;
+    }
+
+    /**
+     * Get the slot of a role in a row
+     * @param row row in this page
+     * @param role role index
+     * @return the slot, or -1 if there is no column for the role
+     */
+    int slot(int row, int role) {
+      if (role < 0 || role >= columns) {
+        return -1;
+      }
+      return row * columns + role;
+    }
+
+    /**
+     * Get the slot of the entry of a role of a node
+     * @param node node instance with a row in this page
+     * @param role role index
+     * @return the slot, or -1 if there is no entry
+     */
+    private int entrySlot(NodeInstance node, int role) {
+      int slot = node.slot(role);
+      return slot >= 0 && present[slot] ? slot : -1;
+    }
+
+    private int[] counter(int counter) {
+      switch (counter) {
+        case REQUESTED:
+          return requested;
+        case STARTING:
+          return starting;
+        case START_FAILED:
+          return startFailed;
+        case FAILED:
+          return failed;
+        case LIVE:
+          return live;
+        case RELEASING:
+          return releasing;
+        default:
+          throw new IllegalArgumentException("Unknown counter " + counter);
+      }
+    }
+
+    /**
+     * Is there an entry for a role of a node
+     * @param node node instance
+     * @param role role index
+     * @return true if the entry is present
+     */
+    synchronized boolean isPresent(NodeInstance node, int role) {
+      return entrySlot(node, role) >= 0;
+    }
+
+    /**
+     * Mark the entry for a role of a node as present, if the
+     * node still has a row and there is a column for the role
+     * @param node node instance
+     * @param role role index
+     */
+    synchronized void markPresent(NodeInstance node, int role) {
+      int slot = node.slot(role);
+      if (slot >= 0) {
+        present[slot] = true;
+      }
+    }
+
+    /**
+     * Remove the entry for a role of a node
+     * @param node node instance
+     * @param role role index
+     */
+    synchronized void remove(NodeInstance node, int role) {
+      int slot = entrySlot(node, role);
+      if (slot >= 0) {
+        clear(slot);
+      }
+    }
+
+    /**
+     * Get a counter
+     * @param node node instance
+     * @param role role index
+     * @param counter the counter
+     * @return its value
+     */
+    synchronized int get(NodeInstance node, int role, int counter) {
+      int slot = entrySlot(node, role);
+      return slot < 0 ? 0 : counter(counter)[slot];
+    }
+
+    /**
+     * Set a counter
+     * @param node node instance
+     * @param role role index
+     * @param counter the counter
+     * @param value new value
+     */
+    synchronized void set(NodeInstance node, int role, int counter,
+                          int value) {
+      int slot = entrySlot(node, role);
+      if (slot >= 0) {
+        counter(counter)[slot] = value;
+      }
+    }
+
+    /**
+     * Update counters in one step
+     * @param node node instance
+     * @param role role index
+     * @param decrements counters to decrement, not going below zero
+     * @param increments counters to increment
+     * @return true if the node is then available for the role
+     */
+    synchronized boolean update(NodeInstance node, int role,
+                                int decrements, int increments) {
+      int slot = entrySlot(node, role);
+      if (slot >= 0) {
+        for (int counter : COUNTERS) {
+          if ((decrements & counter) != 0) {
+            int[] values = counter(counter);
+            values[slot] = RoleHistoryUtils.decToFloor(values[slot]);
+          }
+          if ((increments & counter) != 0) {
+            ++counter(counter)[slot];
+          }
+        }
+      }
+      return isAvailable(slot);
+    }
+
+    /**
+     * Get the number of instances which are live and not being released
+     * @param node node instance
+     * @param role role index
+     * @return a number, possibly 0
+     */
+    synchronized int getActive(NodeInstance node, int role) {
+      int slot = entrySlot(node, role);
+      return slot < 0 ? 0 : live[slot] - releasing[slot];
+    }
+
+    synchronized boolean isAvailable(NodeInstance node, int role) {
+      return isAvailable(entrySlot(node, role));
+    }
+
+    private boolean isAvailable(int slot) {
+      return slot < 0
+             || (live[slot] - releasing[slot]) == 0
+                && requested[slot] == 0
+                && starting[slot] == 0;
+    }
+
+    synchronized boolean notUsedSince(NodeInstance node, int role,
+                                      long absoluteTime) {
+      return notUsedSince(entrySlot(node, role), absoluteTime);
+    }
+
+    private boolean notUsedSince(int slot, long absoluteTime) {
+      return isAvailable(slot)
+             && (slot < 0 || lastUsed[slot] < absoluteTime);
+    }
+
+    synchronized long getLastUsed(NodeInstance node, int role) {
+      int slot = entrySlot(node, role);
+      return slot < 0 ? 0 : lastUsed[slot];
+    }
+
+    synchronized void setLastUsed(NodeInstance node, int role, long time) {
+      int slot = entrySlot(node, role);
+      if (slot >= 0) {
+        lastUsed[slot] = time;
+      }
+    }
+
+    /**
+     * Read all the counters of an entry
+     * @param node node instance
+     * @param role role index
+     * @param values array to fill, in the order of {@link #COUNTERS}
+     * @return the time last used
+     */
+    synchronized long read(NodeInstance node, int role, int[] values) {
+      int slot = entrySlot(node, role);
+      for (int i = 0; i < COUNTERS.length; i++) {
+        values[i] = slot < 0 ? 0 : counter(COUNTERS[i])[slot];
+      }
+      return slot < 0 ? 0 : lastUsed[slot];
+    }
+
+    /**
+     * Write all the counters of an entry, marking it as present
+     * @param node node instance
+     * @param role role index
+     * @param values values, in the order of {@link #COUNTERS}
+     * @param time time last used
+     */
+    synchronized void write(NodeInstance node, int role, int[] values,
+                            long time) {
+      int slot = node.slot(role);
+      if (slot < 0) {
+        return;
+      }
+      present[slot] = true;
+      for (int i = 0; i < COUNTERS.length; i++) {
+        counter(COUNTERS[i])[slot] = values[i];
+      }
+      lastUsed[slot] = time;
+    }
+
+    /**
+     * Remove the entries of a node which have not been used since a time
+     * @param node node instance
+     * @param absoluteTime time
+     * @return true if there are still entries left
+     */
+    synchronized boolean purge(NodeInstance node, long absoluteTime) {
+      boolean active = false;
+      for (int role = 0; role < columns; role++) {
+        int slot = entrySlot(node, role);
+        if (slot < 0) {
+          continue;
+        }
+        if (notUsedSince(slot, absoluteTime)) {
+          clear(slot);
+        } else {
+          active = true;
+        }
+      }
+      return active;
+    }
+
+    /**
+     * Clear a single slot
+     * @param slot slot
+     */
+    private void clear(int slot) {
+      requested[slot] = 0;
+      starting[slot] = 0;
+      startFailed[slot] = 0;
+      failed[slot] = 0;
+      live[slot] = 0;
+      releasing[slot] = 0;
+      lastUsed[slot] = 0;
+      present[slot] = false;
+    }
+
+    /**
+     * Clear all slots of a row
+     * @param row row in this page
+     */
+    synchronized void clearRow(int row) {
+      int start = row * columns;
+      int end = start + columns;
+      Arrays.fill(requested, start, end, 0);
+      Arrays.fill(starting, start, end, 0);
+      Arrays.fill(startFailed, start, end, 0);
+      Arrays.fill(failed, start, end, 0);
+      Arrays.fill(live, start, end, 0);
+      Arrays.fill(releasing, start, end, 0);
+      Arrays.fill(lastUsed, start, end, 0L);
+      Arrays.fill(present, start, end, false);
+    }
+
+    /**
+     * Move the contents into arrays with more columns
+     * @param newColumns new column count
+     */
+    synchronized void resize(int newColumns) {
+      if (newColumns <= columns) {
+        return;
+      }
+      int[] oldRequested = requested;
+      int[] oldStarting = starting;
+      int[] oldStartFailed = startFailed;
+      int[] oldFailed = failed;
+      int[] oldLive = live;
+      int[] oldReleasing = releasing;
+      long[] oldLastUsed = lastUsed;
+      boolean[] oldPresent = present;
+      allocate(rows * newColumns);
+      for (int row = 0; row < rows; row++) {
+        int from = row * columns;
+        int to = row * newColumns;
+        System.arraycopy(oldRequested, from, requested, to, columns);
+        System.arraycopy(oldStarting, from, starting, to, columns);
+        System.arraycopy(oldStartFailed, from, startFailed, to, columns);
+        System.arraycopy(oldFailed, from, failed, to, columns);
+        System.arraycopy(oldLive, from, live, to, columns);
+        System.arraycopy(oldReleasing, from, releasing, to, columns);
+        System.arraycopy(oldLastUsed, from, lastUsed, to, columns);
+        System.arraycopy(oldPresent, from, present, to, columns);
+      }
+      columns = newColumns;
+    }
+  }
+}
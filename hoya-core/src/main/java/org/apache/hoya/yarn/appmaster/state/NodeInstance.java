@@ -19,29 +19,69 @@
 package org.apache.hoya.yarn.appmaster.state;
 
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.List;
-import java.util.ListIterator;
 
 /**
  * A node instance -stores information about a node in the cluster.
+ * The entries of the roles are held in a row of a {@link NodeEntryTable},
+ * which is shared by all nodes in a {@link NodeMap}.
  * 
- * Operations on the array/set of roles are synchronized.
+ * Operations on the array/set of roles are applied by the page
+ * of the table holding the row, under its lock.
  */
 public class NodeInstance {
 
   public final String hostname;
 
-  private final List<NodeEntry> nodeEntries;
+  private final NodeEntryTable table;
+  private final NodeEntryTable.Page page;
+  private final int row;
+
+  /**
+   * Row within the page; -1 once the row has been given back.
+   * Guarded by the lock on the page.
+   */
+  private int pageRow;
 
   /**
    * Create an instance and the (empty) array of nodes
    * @param roles role count -the no. of roles
    */
   public NodeInstance(String hostname, int roles) {
+    this(hostname, new NodeEntryTable(roles, 1));
+  }
+
+  /**
+   * Create an instance with a row in a shared table
+   * @param hostname hostname
+   * @param table table to hold the entries
+   */
+  NodeInstance(String hostname, NodeEntryTable table) {
     this.hostname = hostname;
-    nodeEntries = new ArrayList<NodeEntry>(roles);
+    this.table = table;
+    row = table.allocateRow();
+    page = table.page(row);
+    synchronized (page) {
+      pageRow = table.pageRow(row);
+    }
+  }
+
+  /**
+   * Get the page holding the row of this instance
+   * @return the page
+   */
+  NodeEntryTable.Page getPage() {
+    return page;
+  }
+
+  /**
+   * Get the slot of a role. Only called by the page, with its lock held
+   * @param role role index
+   * @return the slot, or -1 if the role is out of range or the
+   * instance has been detached from its table
+   */
+  int slot(int role) {
+    return pageRow < 0 ? -1 : page.slot(pageRow, role);
   }
 
   /**
@@ -50,28 +90,20 @@ public class NodeInstance {
    * @return the entry
    * null if the role is out of range
    */
-  public synchronized NodeEntry get(int role) {
-    for (NodeEntry nodeEntry : nodeEntries) {
-      if (nodeEntry.index == role) {
-        return nodeEntry;
-      }
-    }
-    return null;
+  public NodeEntry get(int role) {
+    return page.isPresent(this, role) ? new NodeEntry(this, role) : null;
   }
   
   /**
-   * Get the entry for a role -if present
+   * Get the entry for a role -creating it if needed
    * @param role role index
    * @return the entry
-   * @throws ArrayIndexOutOfBoundsException if the role is out of range
+   * @throws ArrayIndexOutOfBoundsException if the role is negative
    */
-  public synchronized NodeEntry getOrCreate(int role) {
-    NodeEntry entry = get(role);
-    if (entry == null) {
-      entry = new NodeEntry(role);
-      nodeEntries.add(entry);
-    }
-    return entry;
+  public NodeEntry getOrCreate(int role) {
+    table.ensureColumn(role);
+    page.markPresent(this, role);
+    return new NodeEntry(this, role);
   }
 
   /**
@@ -81,26 +113,43 @@ public class NodeInstance {
    * not being released already.
    */
   public int getActiveRoleInstances(int role) {
-    NodeEntry nodeEntry = get(role);
-    return (nodeEntry != null ) ? nodeEntry.getActive() : 0;
+    return page.getActive(this, role);
+  }
+
+  /**
+   * Get the time a role was last used on this node, without creating
+   * an entry for it
+   * @param role role index
+   * @return the time, or 0 if there is no entry for the role
+   */
+  public long getLastUsed(int role) {
+    return page.getLastUsed(this, role);
   }
 
   /**
    * Get the entry for a role -and remove it if present
    * @param role the role index
-   * @return the entry that WAS there
+   * @return a copy of the entry that WAS there
    */
-  public synchronized NodeEntry remove(int role) {
+  public NodeEntry remove(int role) {
     NodeEntry nodeEntry = get(role);
-    if (nodeEntry != null) {
-      nodeEntries.remove(nodeEntry);
+    if (nodeEntry == null) {
+      return null;
     }
-    return nodeEntry;
+    NodeEntry removed = new NodeEntry(role);
+    nodeEntry.copyTo(removed);
+    page.remove(this, role);
+    return removed;
   }
 
-  public synchronized void set(int role, NodeEntry nodeEntry) {
-    remove(role);
-    nodeEntries.add(nodeEntry);
+  /**
+   * Set the entry for a role. The state of the entry is copied into
+   * this instance; later changes to the entry passed in are not seen.
+   * @param role role index
+   * @param nodeEntry entry
+   */
+  public void set(int role, NodeEntry nodeEntry) {
+    nodeEntry.copyTo(getOrCreate(role));
   }
 
   /**
@@ -108,18 +157,24 @@ public class NodeInstance {
    * @param absoluteTime age in millis
    * @return true if there are still entries left
    */
-  public synchronized boolean purgeUnusedEntries(long absoluteTime) {
-    boolean active = false;
-    ListIterator<NodeEntry> entries = nodeEntries.listIterator();
-    while (entries.hasNext()) {
-      NodeEntry entry = entries.next();
-      if (entry.notUsedSince(absoluteTime)) {
-        entries.remove();
-      } else {
-        active = true;
+  public boolean purgeUnusedEntries(long absoluteTime) {
+    return page.purge(this, absoluteTime);
+  }
+
+  /**
+   * Give the row back to the table. Used when the node is dropped from
+   * its map, so that the row can be reused; anything still referring to
+   * this instance or to one of its entries then sees it as empty, and
+   * changes made through them are discarded.
+   */
+  void detach() {
+    synchronized (page) {
+      if (pageRow < 0) {
+        return;
       }
+      pageRow = -1;
     }
-    return active;
+    table.releaseRow(row);
   }
 
   @Override
@@ -134,10 +189,13 @@ public class NodeInstance {
   public String toFullString() {
     final StringBuilder sb =
       new StringBuilder(toString());
-    int i = 0;
-    for (NodeEntry entry : nodeEntries) {
-      sb.append(String.format("\n  [%02d]  ", i++));
+    int columns = table.getColumns();
+    for (int role = 0; role < columns; role++) {
+      NodeEntry entry = get(role);
+      if (entry != null) {
+        sb.append(String.format("\n  [%02d]  ", role));
         sb.append(entry.toString());
+      }
     }
     return sb.toString();
   }
@@ -181,8 +239,8 @@ public class NodeInstance {
 
     @Override
     public int compare(NodeInstance o1, NodeInstance o2) {
-      long age = o1.getOrCreate(role).getLastUsed();
-      long age2 = o2.getOrCreate(role).getLastUsed();
+      long age = o1.getLastUsed(role);
+      long age2 = o2.getLastUsed(role);
       
       if (age > age2) {
         return -1;
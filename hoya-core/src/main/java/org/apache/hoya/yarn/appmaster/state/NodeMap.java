@@ -19,6 +19,8 @@
 package org.apache.hoya.yarn.appmaster.state;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,6 +36,10 @@ import java.util.Map;
 /**
  * Node map map -and methods to work with it. 
  * Not Synchronized: caller is expected to lock access.
+ *
+ * The entries of all nodes created through the map are held in a single
+ * {@link NodeEntryTable}; hostnames are interned, as the same names
+ * arrive in every container allocation and status report.
  */
 public class NodeMap extends HashMap<String, NodeInstance> {
   protected static final Logger log =
@@ -44,12 +50,32 @@ public class NodeMap extends HashMap<String, NodeInstance> {
    */
   private final int roleSize;
 
+  /**
+   * Hostnames, shared across maps
+   */
+  private static final Interner<String> hostnames =
+    Interners.newWeakInterner();
+
+  /**
+   * Storage of the entries of the nodes
+   */
+  private final NodeEntryTable table;
+
   /**
    * Construct
    * @param roleSize number of roles
    */
   public NodeMap(int roleSize) {
     this.roleSize = roleSize;
+    table = new NodeEntryTable(roleSize);
+  }
+
+  /**
+   * Get the table holding the entries of the nodes created by this map
+   * @return the table
+   */
+  public NodeEntryTable getTable() {
+    return table;
   }
 
   /**
@@ -60,8 +86,9 @@ public class NodeMap extends HashMap<String, NodeInstance> {
   public NodeInstance getOrCreate(String hostname) {
     NodeInstance node = get(hostname);
     if (node == null) {
-      node = new NodeInstance(hostname, roleSize);
-      put(hostname, node);
+      String name = hostnames.intern(hostname);
+      node = new NodeInstance(name, table);
+      put(name, node);
     }
     return node;
   }
@@ -97,6 +124,7 @@ public class NodeMap extends HashMap<String, NodeInstance> {
       NodeInstance ni = entry.getValue();
       if (!ni.purgeUnusedEntries(absoluteTime)) {
         iterator.remove();
+        ni.detach();
         purged ++;
       }
     }
@@ -158,7 +186,8 @@ public class NodeMap extends HashMap<String, NodeInstance> {
 
 
   /**
-   * Clone point
+   * Clone point. The clone shares the node instances and so the table
+   * of their entries; it must not be purged.
    * @return
    */
   @Override
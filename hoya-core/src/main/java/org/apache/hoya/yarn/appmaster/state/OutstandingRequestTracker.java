@@ -116,8 +116,8 @@ public class OutstandingRequestTracker {
       if (role1 > role2) return 1;
 
       NodeInstance o1 = rh.getOrCreateNodeInstance(c1), o2 = rh.getOrCreateNodeInstance(c2);
-      long age = o1.getOrCreate(role1).getLastUsed();
-      long age2 = o2.getOrCreate(role1).getLastUsed();
+      long age = o1.getLastUsed(role1);
+      long age2 = o2.getLastUsed(role1);
 
       if (age > age2) {
         return -1;
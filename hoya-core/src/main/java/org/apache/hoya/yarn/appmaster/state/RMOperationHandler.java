@@ -30,6 +30,20 @@ public abstract class RMOperationHandler {
 
   public abstract void addContainerRequest(AMRMClient.ContainerRequest req);
 
+  /**
+   * Ask for a number of containers matching the same request.
+   * The AMRM client aggregates requests with the same priority, location
+   * and resource into one ask, so this just adds the request repeatedly.
+   * @param req request
+   * @param count number of containers
+   */
+  public void addContainerRequests(AMRMClient.ContainerRequest req,
+                                   int count) {
+    for (int i = 0; i < count; i++) {
+      addContainerRequest(req);
+    }
+  }
+
 
   /**
    * Execute an entire list of operations
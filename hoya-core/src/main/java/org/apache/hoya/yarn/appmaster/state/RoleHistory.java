@@ -24,6 +24,9 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.yarn.api.records.Container;
 import org.apache.hadoop.yarn.api.records.Resource;
 import org.apache.hadoop.yarn.client.api.AMRMClient;
+import org.apache.hoya.api.OptionKeys;
+import org.apache.hoya.avro.NodeEntryRecord;
+import org.apache.hoya.avro.RoleHistoryDeltaWriter;
 import org.apache.hoya.avro.RoleHistoryHeader;
 import org.apache.hoya.avro.RoleHistoryWriter;
 import org.apache.hoya.exceptions.BadConfigException;
@@ -36,9 +39,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -76,18 +77,35 @@ public class RoleHistory {
   private NodeMap nodemap;
   private int roleSize;
   private boolean dirty;
+  /**
+   * Count of changes to the history, used to tag views of it
+   */
+  private long changeCount;
   private FileSystem filesystem;
   private Path historyPath;
   private RoleHistoryWriter historyWriter = new RoleHistoryWriter();
 
+  /**
+   * Number of changes to log before a new snapshot is saved
+   */
+  private int deltasBeforeCompaction =
+    OptionKeys.DEFAULT_ROLE_HISTORY_DELTAS_BEFORE_COMPACTION;
+
+  /**
+   * Background saver; if set, changes are handed to it. Without one,
+   * changes only mark the history as dirty. No event ever writes to
+   * the filesystem in the calling thread.
+   */
+  private RoleHistorySaver saver;
+
   private OutstandingRequestTracker outstandingRequests =
     new OutstandingRequestTracker();
 
   /**
-   * For each role, lists nodes that are available for data-local allocation,
-   ordered by more recently released - To accelerate node selection
+   * For each role, the nodes that are available for data-local allocation,
+   * ordered by more recently released - To accelerate node selection
    */
-  private Map<Integer, LinkedList<NodeInstance>> availableNodes;
+  private Map<Integer, AvailableNodeIndex> availableNodes;
 
   public RoleHistory(List<ProviderRole> providerRoles) throws
                                                        BadConfigException {
@@ -104,10 +122,9 @@ public class RoleHistory {
    * of the history
    */
   protected synchronized void reset() throws BadConfigException {
+    changeCount++;
 
     nodemap = new NodeMap(roleSize);
-    resetAvailableNodeLists();
-
     resetAvailableNodeLists();
     outstandingRequests = new OutstandingRequestTracker();
     Map<Integer, RoleStatus> roleStats = new HashMap<Integer, RoleStatus>();
@@ -156,7 +173,7 @@ public class RoleHistory {
    * Clear the lists of available nodes
    */
   private synchronized void resetAvailableNodeLists() {
-    availableNodes = new HashMap<Integer, LinkedList<NodeInstance>>(roleSize);
+    availableNodes = new HashMap<Integer, AvailableNodeIndex>(roleSize);
   }
 
   /**
@@ -213,6 +230,18 @@ public class RoleHistory {
 
   public synchronized void setDirty(boolean dirty) {
     this.dirty = dirty;
+    if (dirty) {
+      changeCount++;
+    }
+  }
+
+  /**
+   * Get the number of changes made to the history. Any change to the
+   * persistent state of an entry increases it.
+   * @return a count which only increases
+   */
+  public synchronized long getChangeCount() {
+    return changeCount;
   }
 
   /**
@@ -233,6 +262,26 @@ public class RoleHistory {
     return (NodeMap) nodemap.clone();
   }
 
+  /**
+   * Copy the persistent state of every node entry, so that it can be
+   * saved without holding the lock on the history
+   * @return a record of every node entry
+   */
+  public synchronized List<NodeEntryRecord> snapshotEntries() {
+    List<NodeEntryRecord> entries =
+      new ArrayList<NodeEntryRecord>(nodemap.size() * roleSize);
+    for (NodeInstance instance : nodemap.values()) {
+      for (int role = 0; role < roleSize; role++) {
+        NodeEntry nodeEntry = instance.get(role);
+        if (nodeEntry != null) {
+          entries.add(RoleHistoryWriter.build(nodeEntry, role,
+                                              instance.hostname));
+        }
+      }
+    }
+    return entries;
+  }
+
   /**
    * Get the node instance for the specific node -creating it if needed
    * @param nodeAddr node address
@@ -252,6 +301,7 @@ public class RoleHistory {
    */
   @VisibleForTesting
   public synchronized void insert(Collection<NodeInstance> nodes) {
+    changeCount++;
     nodemap.insert(nodes);
   }
   
@@ -285,12 +335,70 @@ public class RoleHistory {
     }
   }
 
+  /**
+   * Set the number of changes to append to the delta log of a snapshot
+   * before the history is compacted into a new snapshot
+   * @param deltasBeforeCompaction count; 0 means always save a snapshot
+   */
+  public synchronized void setDeltasBeforeCompaction(int deltasBeforeCompaction) {
+    this.deltasBeforeCompaction = deltasBeforeCompaction;
+  }
+
+  public synchronized int getDeltasBeforeCompaction() {
+    return deltasBeforeCompaction;
+  }
+
+  /**
+   * Hand all further persistence of changes to a background saver
+   * @param saver saver; null to only mark the history as dirty on changes
+   */
+  public synchronized void setSaver(RoleHistorySaver saver) {
+    this.saver = saver;
+  }
+
+  public synchronized RoleHistorySaver getSaver() {
+    return saver;
+  }
+
+  /**
+   * Get the filesystem used for history files
+   * @return the filesystem; null before the history is started
+   */
+  synchronized FileSystem getFilesystem() {
+    return filesystem;
+  }
+
+  /**
+   * A node entry has changed. If there is a background saver, a copy
+   * of the entry is queued for it; otherwise the history is marked as
+   * dirty, to be written by the next explicit save.
+   * Nothing is written here, so this is safe to call with any locks held.
+   * @param container container whose node entry changed
+   * @param nodeEntry the node entry
+   */
+  protected synchronized void onEntryChanged(Container container,
+                                             NodeEntry nodeEntry) {
+    changeCount++;
+    if (saver == null) {
+      dirty = true;
+      return;
+    }
+    //copy the entry now; it is written later
+    NodeEntryRecord record = RoleHistoryDeltaWriter.buildRecord(
+      RoleHistoryUtils.hostnameOf(container),
+      ContainerPriority.extractRole(container),
+      nodeEntry,
+      now());
+    saver.onEntryChanged(record);
+  }
+
   /**
    * purge the history of
    * all nodes that have been inactive since the absolute time
    * @param absoluteTime time
    */
   public synchronized void purgeUnusedEntries(long absoluteTime) {
+    changeCount++;
     nodemap.purgeUnusedEntries(absoluteTime);
   }
 
@@ -304,16 +412,42 @@ public class RoleHistory {
 
   /**
    * Save the history to its location using the timestamp as part of
-   * the filename. The saveTime and dirty fields are updated
+   * the filename. The saveTime and dirty fields are updated.
+   * The entries are copied under the history lock and written after it
+   * has been released; the caller must not hold any other lock which
+   * the AM's event handling needs, as this blocks on the filesystem.
    * @param time timestamp timestamp to use as the save time
    * @return the path saved to
    * @throws IOException IO problems
    */
   @VisibleForTesting
-  public synchronized Path saveHistory(long time) throws IOException {
-    Path filename = historyWriter.createHistoryFilename(historyPath, time);
-    historyWriter.write(filesystem, filename, true, this, time);
-    saved(time);
+  public Path saveHistory(long time) throws IOException {
+    int roles;
+    List<NodeEntryRecord> entries;
+    FileSystem fs;
+    Path filename;
+    long changes;
+    synchronized (this) {
+      roles = roleSize;
+      entries = snapshotEntries();
+      fs = filesystem;
+      filename = historyWriter.createHistoryFilename(historyPath, time);
+      changes = changeCount;
+    }
+    historyWriter.write(fs.create(filename, true), roles, entries, time);
+    RoleHistorySaver current;
+    synchronized (this) {
+      saveTime = time;
+      //changes made during the write are not in the file
+      if (changeCount == changes) {
+        dirty = false;
+      }
+      current = saver;
+    }
+    if (current != null) {
+      //later changes must not go to the delta log of an older snapshot
+      current.requestSnapshot();
+    }
     return filename;
   }
 
@@ -323,7 +457,7 @@ public class RoleHistory {
    * @return the path or null if the history was not saved
    * @throws IOException failed to save for some reason
    */
-  public synchronized Path saveHistoryIfDirty() throws IOException {
+  public Path saveHistoryIfDirty() throws IOException {
     if (isDirty()) {
       long time = now();
       return saveHistory(time);
@@ -364,6 +498,7 @@ public class RoleHistory {
     assert filesystem != null;
     assert historyPath != null;
     boolean thawSuccessful = false;
+    changeCount++;
     //load in files from data dir
     Path loaded = null;
     try {
@@ -410,53 +545,38 @@ public class RoleHistory {
         }
       }
     }
-    // sort the resulting arrays
-    for (int i = 0; i < roleSize; i++) {
-      sortAvailableNodeList(i);
-    }
   }
 
   /**
    * Get the nodes for an ID -may be null
    * @param id role ID
-   * @return list
+   * @return the index of available nodes
    */
-  private LinkedList<NodeInstance> getNodesForRoleId(int id) {
+  private AvailableNodeIndex getNodesForRoleId(int id) {
     return availableNodes.get(id);
   }
   
   /**
-   * Get the nodes for an ID -may be null
+   * Get the nodes for an ID -creating the index if needed
    * @param id role ID
-   * @return list
+   * @return the index of available nodes
    */
-  private LinkedList<NodeInstance> getOrCreateNodesForRoleId(int id) {
-    LinkedList<NodeInstance> instances = availableNodes.get(id);
+  private AvailableNodeIndex getOrCreateNodesForRoleId(int id) {
+    AvailableNodeIndex instances = availableNodes.get(id);
     if (instances==null) {
-      instances = new LinkedList<NodeInstance>();
+      instances = new AvailableNodeIndex(id);
       availableNodes.put(id, instances);
     }
     return instances;
   }
-  
-  
-  /**
-   * Sort an available node list
-   * @param role role to sort
-   */
-  private void sortAvailableNodeList(int role) {
-    List<NodeInstance> nodesForRoleId = getNodesForRoleId(role);
-    if (nodesForRoleId != null) {
-      Collections.sort(nodesForRoleId, new NodeInstance.newerThan(role));
-    }
-  }
 
   public synchronized void onAMRestart() {
     //TODO once AM restart is implemented and we know what to expect
   }
 
   /**
-   * Find a node for use
+   * Find a node for use. The node is removed from the available list,
+   * which only holds nodes with no active instances of the role.
    * @param role role
    * @return the instance, or null for none
    */
@@ -465,17 +585,11 @@ public class RoleHistory {
     if (role.getNoDataLocality()) {
       return null;
     }
-    int roleKey = role.getKey();
-    NodeInstance nodeInstance = null;
-    
-    List<NodeInstance> targets = getNodesForRoleId(roleKey);
-    while (targets != null && !targets.isEmpty() && nodeInstance == null) {
-      NodeInstance head = targets.remove(0);
-      if (head.getActiveRoleInstances(roleKey) == 0) {
-        nodeInstance = head;
-      }
+    AvailableNodeIndex targets = getNodesForRoleId(role.getKey());
+    if (targets == null) {
+      return null;
     }
-    return nodeInstance;
+    return targets.takeMostRecentInactive();
   }
 
   /**
@@ -512,6 +626,41 @@ public class RoleHistory {
     return requestInstanceOnNode(node, role, resource);
   }
 
+  /**
+   * Request a number of instances of a role, grouping the asks by location.
+   * Each node picked from the history gets its own (tracked) request;
+   * all the instances which can't be placed share a single location-less
+   * request.
+   * @param role role status
+   * @param resource resource capabilities; shared by all the requests
+   * @param count number of instances
+   * @return a list of request operations whose counts add up to
+   * <code>count</code>
+   */
+  public synchronized List<ContainerRequestOperation> requestNodes(
+    RoleStatus role, Resource resource, int count) {
+    List<ContainerRequestOperation> operations =
+      new ArrayList<ContainerRequestOperation>();
+    int placed = 0;
+    while (placed < count) {
+      NodeInstance node = findNodeForNewInstance(role);
+      if (node == null) {
+        // nodes are only removed from the available list, so no
+        // later search will find one either
+        break;
+      }
+      operations.add(new ContainerRequestOperation(
+        requestInstanceOnNode(node, role, resource)));
+      placed++;
+    }
+    int anywhere = count - placed;
+    if (anywhere > 0) {
+      operations.add(new ContainerRequestOperation(
+        requestInstanceOnNode(null, role, resource), anywhere));
+    }
+    return operations;
+  }
+
 
   /**
    * Find a list of node for release; algorithm may make its own
@@ -593,19 +742,38 @@ public class RoleHistory {
       if (!hosts.isEmpty()) {
         //add the list
         getOrCreateNodesForRoleId(role).addAll(hosts);
-        sortAvailableNodeList(role);
       }
     }
     return requestFound;
   }
 
   /**
-   * A container has been assigned to a role instance on a node -update the data structures
+   * A container has been assigned to a role instance on a node -update the data structures.
+   * The node is no longer available for the role.
    * @param container container
    */
-  public void onContainerAssigned(Container container) {
+  public synchronized void onContainerAssigned(Container container) {
     NodeEntry nodeEntry = getOrCreateNodeEntry(container);
     nodeEntry.onStarting();
+    AvailableNodeIndex available =
+      getNodesForRoleId(ContainerPriority.extractRole(container));
+    if (available != null) {
+      available.remove(getOrCreateNodeInstance(container));
+    }
+  }
+
+  /**
+   * Event: the launch of an assigned container was canceled before
+   * its start was submitted
+   * @param container container
+   * @return true if the node is now available
+   */
+  public synchronized boolean onContainerLaunchCanceled(Container container) {
+    NodeEntry nodeEntry = getOrCreateNodeEntry(container);
+    boolean available = nodeEntry.onStartCanceled();
+    maybeQueueNodeForWork(container, nodeEntry, available);
+    onEntryChanged(container, nodeEntry);
+    return available;
   }
 
   /**
@@ -621,13 +789,19 @@ public class RoleHistory {
   }
 
   /**
-   * Container start event
+   * Container start event. The node now has an active instance of the
+   * role, so it is no longer available for it.
    * @param container
    */
-  public void onContainerStarted(Container container) {
+  public synchronized void onContainerStarted(Container container) {
     NodeEntry nodeEntry = getOrCreateNodeEntry(container);
     nodeEntry.onStartCompleted();
-    touch();
+    AvailableNodeIndex available =
+      getNodesForRoleId(ContainerPriority.extractRole(container));
+    if (available != null) {
+      available.remove(getOrCreateNodeInstance(container));
+    }
+    onEntryChanged(container, nodeEntry);
   }
 
   /**
@@ -672,7 +846,7 @@ public class RoleHistory {
 
   /**
    * Mark a container finished; if it was released then that is treated
-   * differently. history is touch()ed
+   * differently. The change is persisted
    *
    *
    * @param container completed container
@@ -683,8 +857,8 @@ public class RoleHistory {
   protected synchronized boolean markContainerFinished(Container container,
                                                        boolean wasReleased,
                                                        boolean shortLived) {
-    NodeEntry nodeEntry = getOrCreateNodeEntry(container);
     boolean available;
+    NodeEntry nodeEntry = getOrCreateNodeEntry(container);
     if (shortLived) {
       nodeEntry.onStartFailed();
       available = false;
@@ -692,7 +866,7 @@ public class RoleHistory {
       available = nodeEntry.containerCompleted(wasReleased);
       maybeQueueNodeForWork(container, nodeEntry, available);
     }
-    touch();
+    onEntryChanged(container, nodeEntry);
     return available;
   }
 
@@ -713,7 +887,7 @@ public class RoleHistory {
       NodeInstance ni = getOrCreateNodeInstance(container);
       int roleId = ContainerPriority.extractRole(container);
       log.debug("Node {} is now available for role id {}", ni, roleId);
-      getOrCreateNodesForRoleId(roleId).addFirst(ni);
+      getOrCreateNodesForRoleId(roleId).add(ni);
     }
     return available;
   }
@@ -725,7 +899,7 @@ public class RoleHistory {
     for (ProviderRole role : providerRoles) {
       log.info(role.toString());
       List<NodeInstance> instances =
-        getOrCreateNodesForRoleId(role.id);
+        getOrCreateNodesForRoleId(role.id).toList();
       log.info("  available: " + instances.size()
                + " " + HoyaUtils.joinWithInnerSeparator(", ", instances));
     }
@@ -742,8 +916,8 @@ public class RoleHistory {
    * @return a clone of the list
    */
   @VisibleForTesting
-  public List<NodeInstance> cloneAvailableList(int role) {
-    return new LinkedList<NodeInstance>(getOrCreateNodesForRoleId(role));
+  public synchronized List<NodeInstance> cloneAvailableList(int role) {
+    return getOrCreateNodesForRoleId(role).toList();
   }
 
   /**
@@ -0,0 +1,363 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.appmaster.state;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.service.AbstractService;
+import org.apache.hoya.api.StatusKeys;
+import org.apache.hoya.avro.NodeEntryRecord;
+import org.apache.hoya.avro.RoleHistoryDeltaWriter;
+import org.apache.hoya.avro.RoleHistoryWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A service which saves the role history in a background thread,
+ * so that filesystem IO is never done while holding the history lock.
+ *
+ * Changes to node entries are copied and queued by the {@link RoleHistory};
+ * the saver thread drains the queue and appends the changes to the delta
+ * log of the last snapshot as a single block. Repeated changes to the same
+ * entry between writes are coalesced into one record, and writes are
+ * at least the save interval apart.
+ *
+ * When there is no snapshot, or the delta log has reached the compaction
+ * limit, a copy of the whole history is taken under its lock and
+ * written out as a new snapshot; older history files are then purged.
+ * A failed write also triggers a new snapshot on the next attempt.
+ *
+ * Pending changes are written when the service is stopped.
+ */
+public class RoleHistorySaver extends AbstractService
+    implements Runnable, StatisticsSource {
+  protected static final Logger log =
+    LoggerFactory.getLogger(RoleHistorySaver.class);
+
+  /**
+   * How long to wait for the saver thread to finish on shutdown: {@value}
+   */
+  public static final int SAVER_THREAD_SHUTDOWN_TIME = 10000;
+
+  private final RoleHistory history;
+  private final RoleHistoryWriter historyWriter = new RoleHistoryWriter();
+  private final long saveInterval;
+
+  /**
+   * Lock for the queue state; may be acquired while holding the
+   * history lock, never the other way around
+   */
+  private final Object queueLock = new Object();
+
+  /**
+   * Changes awaiting writing, keyed by host and role so that only the
+   * last change to an entry is written
+   */
+  private Map<String, NodeEntryRecord> pending =
+    new LinkedHashMap<String, NodeEntryRecord>();
+  private boolean snapshotRequested = true;
+  private boolean stopping;
+
+  // state only used in the saver thread
+  private Path snapshotPath;
+  private long snapshotTime;
+  private RoleHistoryDeltaWriter deltaWriter;
+  private long lastWriteTime;
+
+  private Thread saverThread;
+
+  // metrics
+  private final AtomicLong snapshotsWritten = new AtomicLong();
+  private final AtomicLong deltaBatchesWritten = new AtomicLong();
+  private final AtomicLong deltaRecordsWritten = new AtomicLong();
+  private final AtomicLong changesQueued = new AtomicLong();
+  private final AtomicLong saveFailures = new AtomicLong();
+  private volatile long lastSaveDuration;
+  private volatile long maxSaveDuration;
+
+  /**
+   * Create a saver
+   * @param history history to save; it must have been started
+   * @param saveInterval minimum time in millis between writes
+   */
+  public RoleHistorySaver(RoleHistory history, long saveInterval) {
+    super("RoleHistorySaver");
+    this.history = history;
+    this.saveInterval = saveInterval;
+  }
+
+  @Override
+  protected void serviceStart() throws Exception {
+    super.serviceStart();
+    history.setSaver(this);
+    saverThread = new Thread(this, "RoleHistorySaver");
+    saverThread.setDaemon(true);
+    saverThread.start();
+  }
+
+  @Override
+  protected void serviceStop() throws Exception {
+    synchronized (queueLock) {
+      stopping = true;
+      queueLock.notifyAll();
+    }
+    if (saverThread != null) {
+      saverThread.join(SAVER_THREAD_SHUTDOWN_TIME);
+      if (saverThread.isAlive()) {
+        log.warn("Role history saver thread did not finish");
+      }
+    }
+    if (history.getSaver() == this) {
+      history.setSaver(null);
+    }
+    super.serviceStop();
+  }
+
+  /**
+   * A node entry has changed. This is called with the history locked,
+   * and only queues the change
+   * @param record copy of the changed entry
+   */
+  void onEntryChanged(NodeEntryRecord record) {
+    changesQueued.incrementAndGet();
+    synchronized (queueLock) {
+      String key = record.getHost() + "/" + record.getRole();
+      pending.remove(key);
+      pending.put(key, record);
+      queueLock.notifyAll();
+    }
+  }
+
+  /**
+   * Request that the next write is a full snapshot
+   */
+  public void requestSnapshot() {
+    synchronized (queueLock) {
+      snapshotRequested = true;
+      queueLock.notifyAll();
+    }
+  }
+
+  private boolean hasWork() {
+    return !pending.isEmpty() || snapshotRequested;
+  }
+
+  @Override
+  public void run() {
+    try {
+      boolean finalSave = false;
+      while (!finalSave) {
+        synchronized (queueLock) {
+          while (!stopping && !hasWork()) {
+            queueLock.wait();
+          }
+          // bound the write rate; changes arriving meanwhile are coalesced
+          long delay;
+          while (!stopping &&
+                 (delay = lastWriteTime + saveInterval - now()) > 0) {
+            queueLock.wait(delay);
+          }
+          if (!hasWork()) {
+            // stopping with nothing left to write
+            break;
+          }
+          // when stopping, make one last attempt, even if it fails
+          finalSave = stopping;
+        }
+        save();
+      }
+    } catch (InterruptedException e) {
+      log.info("Role history saver interrupted");
+    } finally {
+      closeDeltaWriter();
+    }
+  }
+
+  /**
+   * Write out any pending work: either a snapshot or a block of deltas.
+   * This is normally only called from the saver thread.
+   * @return true if the write succeeded
+   */
+  @VisibleForTesting
+  public boolean save() {
+    Map<String, NodeEntryRecord> batch;
+    List<NodeEntryRecord> entries = null;
+    long time;
+    int roles;
+    FileSystem fs;
+    Path historyPath;
+    // take the history lock first, so no change can be queued
+    // between draining the queue and copying the history
+    synchronized (history) {
+      roles = history.getRoleSize();
+      fs = history.getFilesystem();
+      historyPath = history.getHistoryPath();
+      time = now();
+      synchronized (queueLock) {
+        boolean snapshot = snapshotRequested
+                           || snapshotPath == null
+                           || deltaWriter != null &&
+                              deltaWriter.getCount() + pending.size() >
+                              history.getDeltasBeforeCompaction();
+        batch = pending;
+        pending = new LinkedHashMap<String, NodeEntryRecord>();
+        snapshotRequested = false;
+        if (snapshot) {
+          entries = history.snapshotEntries();
+        }
+      }
+    }
+    if (fs == null || historyPath == null) {
+      //history not started
+      return false;
+    }
+    long start = now();
+    lastWriteTime = start;
+    try {
+      if (entries != null) {
+        writeSnapshot(fs, historyPath, roles, entries, time);
+      } else if (!batch.isEmpty()) {
+        if (deltaWriter == null) {
+          deltaWriter = historyWriter.createDeltaWriter(fs, snapshotPath,
+                                                        roles, snapshotTime);
+        }
+        deltaWriter.appendAll(batch.values());
+        deltaBatchesWritten.incrementAndGet();
+        deltaRecordsWritten.addAndGet(batch.size());
+      }
+      long duration = now() - start;
+      lastSaveDuration = duration;
+      if (duration > maxSaveDuration) {
+        maxSaveDuration = duration;
+      }
+      return true;
+    } catch (IOException e) {
+      log.warn("Failed to save role history", e);
+      saveFailures.incrementAndGet();
+      closeDeltaWriter();
+      snapshotPath = null;
+      requestSnapshot();
+      return false;
+    }
+  }
+
+  private void writeSnapshot(FileSystem fs,
+                             Path historyPath,
+                             int roles,
+                             List<NodeEntryRecord> entries,
+                             long time) throws IOException {
+    closeDeltaWriter();
+    Path path = historyWriter.createHistoryFilename(historyPath, time);
+    historyWriter.write(fs.create(path, true), roles, entries, time);
+    snapshotPath = path;
+    snapshotTime = time;
+    history.saved(time);
+    snapshotsWritten.incrementAndGet();
+    int count = historyWriter.purgeOlderHistoryEntries(fs, path);
+    log.debug("Saved history to {}; deleted {} old entries", path, count);
+  }
+
+  /**
+   * Close any open delta log. Only to be called by the thread doing
+   * the writes, or once it has finished
+   */
+  void closeDeltaWriter() {
+    if (deltaWriter != null) {
+      try {
+        deltaWriter.close();
+      } catch (IOException e) {
+        log.debug("Failed to close {}", deltaWriter, e);
+      }
+      deltaWriter = null;
+    }
+  }
+
+  /**
+   * Get the number of changes waiting to be written
+   * @return the queue length
+   */
+  public int getQueueLength() {
+    synchronized (queueLock) {
+      return pending.size();
+    }
+  }
+
+  public long getSnapshotsWritten() {
+    return snapshotsWritten.get();
+  }
+
+  public long getDeltaRecordsWritten() {
+    return deltaRecordsWritten.get();
+  }
+
+  public long getChangesQueued() {
+    return changesQueued.get();
+  }
+
+  public long getSaveFailures() {
+    return saveFailures.get();
+  }
+
+  public long getLastSaveDuration() {
+    return lastSaveDuration;
+  }
+
+  @Override
+  public Map<String, Integer> buildStatistics() {
+    Map<String, Integer> stats = new HashMap<String, Integer>();
+    stats.put(StatusKeys.STATISTICS_HISTORY_SNAPSHOTS,
+              (int) snapshotsWritten.get());
+    stats.put(StatusKeys.STATISTICS_HISTORY_DELTA_BATCHES,
+              (int) deltaBatchesWritten.get());
+    stats.put(StatusKeys.STATISTICS_HISTORY_DELTA_RECORDS,
+              (int) deltaRecordsWritten.get());
+    stats.put(StatusKeys.STATISTICS_HISTORY_CHANGES, (int) changesQueued.get());
+    stats.put(StatusKeys.STATISTICS_HISTORY_SAVE_FAILURES,
+              (int) saveFailures.get());
+    stats.put(StatusKeys.STATISTICS_HISTORY_QUEUE_LENGTH, getQueueLength());
+    stats.put(StatusKeys.STATISTICS_HISTORY_LAST_SAVE_MILLIS,
+              (int) lastSaveDuration);
+    stats.put(StatusKeys.STATISTICS_HISTORY_MAX_SAVE_MILLIS,
+              (int) maxSaveDuration);
+    return stats;
+  }
+
+  protected long now() {
+    return System.currentTimeMillis();
+  }
+
+  @Override
+  public String toString() {
+    return "RoleHistorySaver{" +
+           "snapshot=" + snapshotPath +
+           ", queued=" + getQueueLength() +
+           ", snapshots=" + snapshotsWritten +
+           ", deltas=" + deltaRecordsWritten +
+           ", failures=" + saveFailures +
+           '}';
+  }
+}
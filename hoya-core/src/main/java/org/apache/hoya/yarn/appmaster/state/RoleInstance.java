@@ -81,6 +81,22 @@ public final class RoleInstance implements Cloneable {
   public String host;
   public String hostURL;
 
+  /**
+   * Time in milliseconds the last successful health probe took;
+   * -1 if the instance has not been probed successfully
+   */
+  public volatile long probeLatency = -1;
+
+  /**
+   * Time of the last health probe; 0 if it has not been probed
+   */
+  public volatile long lastProbeTime;
+
+  /**
+   * Number of consecutive failed health probes
+   */
+  public volatile int probeFailures;
+
   public RoleInstance(Container container) {
     this.container = container;
     if (container == null) {
@@ -119,6 +135,8 @@ public final class RoleInstance implements Cloneable {
     sb.append(", roleId=").append(roleId);
     sb.append(", host=").append(host);
     sb.append(", hostURL=").append(hostURL);
+    sb.append(", probeLatency=").append(probeLatency);
+    sb.append(", probeFailures=").append(probeFailures);
     sb.append(", state=").append(state);
     sb.append(", exitCode=").append(exitCode);
     sb.append(", command='").append(command).append('\'');
@@ -170,6 +188,9 @@ public final class RoleInstance implements Cloneable {
     builder.setStartTime(startTime);
     builder.setHost(host);
     builder.setHostURL(hostURL);
+    builder.setProbeLatency(probeLatency);
+    builder.setLastProbeTime(lastProbeTime);
+    builder.setProbeFailures(probeFailures);
     return builder.build();
   }
 
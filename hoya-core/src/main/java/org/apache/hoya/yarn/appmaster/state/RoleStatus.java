@@ -19,6 +19,7 @@
 package org.apache.hoya.yarn.appmaster.state;
 
 import org.apache.hoya.api.StatusKeys;
+import org.apache.hoya.api.proto.Messages;
 import org.apache.hoya.providers.PlacementPolicy;
 import org.apache.hoya.providers.ProviderRole;
 
@@ -44,11 +45,47 @@ public final class RoleStatus implements Cloneable {
 
   private final ProviderRole providerRole;
 
-  private int desired, actual, requested, releasing;
+  /**
+   * Desired and actual counts; volatile as they are read
+   * for the progress report without any lock
+   */
+  private volatile int desired, actual;
+  private int requested, releasing;
   private int failed, started, startFailed, completed, totalRequested;
 
+  /**
+   * Containers submitted for launch but not yet started
+   */
+  private int starting;
+
+  /**
+   * Containers allocated and queued for launch but not yet submitted
+   */
+  private int queued;
+
+  /**
+   * Ramp limits; 0 means unlimited
+   */
+  private int rampMaxOutstanding, rampMaxLaunching;
+  private long rampStepInterval;
+
+  /**
+   * Time of the last container request of the ramp
+   */
+  private long lastRampStep;
+
+  /**
+   * Number of containers held back by the ramp limits at the last review
+   */
+  private int rampDeferred;
+
   private String failureMessage = "";
 
+  /**
+   * Health probing policy of the role's instances
+   */
+  private volatile InstanceProbePolicy probePolicy = InstanceProbePolicy.NONE;
+
   public RoleStatus(ProviderRole providerRole) {
     this.providerRole = providerRole;
     this.name = providerRole.name;
@@ -116,6 +153,12 @@ public final class RoleStatus implements Cloneable {
     return ++requested;
   }
 
+  public synchronized int incRequested(int count) {
+    totalRequested += count;
+    requested += count;
+    return requested;
+  }
+
   public synchronized int decRequested() {
     if (0 > --requested) {
       requested = 0;
@@ -190,6 +233,123 @@ public final class RoleStatus implements Cloneable {
     return totalRequested;
   }
 
+  public synchronized int getStarting() {
+    return starting;
+  }
+
+  public synchronized int incStarting() {
+    return ++starting;
+  }
+
+  public synchronized int decStarting() {
+    if (0 > --starting) {
+      starting = 0;
+    }
+    return starting;
+  }
+
+  public synchronized int getQueued() {
+    return queued;
+  }
+
+  public synchronized int incQueued() {
+    return ++queued;
+  }
+
+  public synchronized int decQueued() {
+    if (0 > --queued) {
+      queued = 0;
+    }
+    return queued;
+  }
+
+  /**
+   * Set the ramp policy of the role
+   * @param maxOutstanding max outstanding requests; 0 for no limit
+   * @param maxLaunching max containers requested, queued or starting;
+   * 0 for no limit
+   * @param stepInterval min millis between requests; 0 for no limit
+   */
+  public synchronized void setRampPolicy(int maxOutstanding,
+                                         int maxLaunching,
+                                         long stepInterval) {
+    rampMaxOutstanding = maxOutstanding;
+    rampMaxLaunching = maxLaunching;
+    rampStepInterval = stepInterval;
+  }
+
+  public InstanceProbePolicy getProbePolicy() {
+    return probePolicy;
+  }
+
+  public void setProbePolicy(InstanceProbePolicy probePolicy) {
+    this.probePolicy = probePolicy;
+  }
+
+  public synchronized int getRampMaxOutstanding() {
+    return rampMaxOutstanding;
+  }
+
+  public synchronized int getRampMaxLaunching() {
+    return rampMaxLaunching;
+  }
+
+  public synchronized long getRampStepInterval() {
+    return rampStepInterval;
+  }
+
+  public synchronized int getRampDeferred() {
+    return rampDeferred;
+  }
+
+  /**
+   * Apply the ramp policy to the number of containers to request.
+   * Each limit which is set caps the number of requests:
+   * <ol>
+   *   <li>outstanding requests may not exceed the maximum outstanding</li>
+   *   <li>outstanding requests plus queued and starting containers
+   *   may not exceed the maximum launching</li>
+   *   <li>no requests are made until the step interval has passed
+   *   since the last request</li>
+   * </ol>
+   * The number held back is recorded for the statistics.
+   * @param delta the number of containers the role is short of
+   * @param now current time
+   * @return the number of containers to request now
+   */
+  public synchronized int rampLimit(int delta, long now) {
+    int allowed = delta;
+    if (rampMaxOutstanding > 0) {
+      allowed = Math.min(allowed, rampMaxOutstanding - requested);
+    }
+    if (rampMaxLaunching > 0) {
+      allowed = Math.min(allowed, rampMaxLaunching - requested - queued - starting);
+    }
+    if (rampStepInterval > 0 && now < lastRampStep + rampStepInterval) {
+      allowed = 0;
+    }
+    allowed = Math.max(allowed, 0);
+    if (allowed > 0) {
+      lastRampStep = now;
+    }
+    rampDeferred = Math.max(delta, 0) - allowed;
+    return allowed;
+  }
+
+  /**
+   * Get the time until the ramp step interval next permits requests,
+   * if requests are being held back by it
+   * @param now current time
+   * @return the delay in millis, or 0 if no requests are held back
+   * by the step interval
+   */
+  public synchronized long getRampStepDelay(long now) {
+    if (rampDeferred <= 0 || rampStepInterval <= 0) {
+      return 0;
+    }
+    return Math.max(lastRampStep + rampStepInterval - now, 1);
+  }
+
   /**
    * Get the number of roles we are short of.
    * nodes released are ignored.
@@ -223,6 +383,9 @@ public final class RoleStatus implements Cloneable {
            ", started=" + started +
            ", startFailed=" + startFailed +
            ", completed=" + completed +
+           ", queued=" + queued +
+           ", starting=" + starting +
+           ", rampDeferred=" + rampDeferred +
            ", failureMessage='" + failureMessage + '\'' +
            
            '}';
@@ -255,6 +418,28 @@ public final class RoleStatus implements Cloneable {
     stats.put(StatusKeys.STATISTICS_CONTAINERS_REQUESTED, getTotalRequested());
     stats.put(StatusKeys.STATISTICS_CONTAINERS_STARTED, getStarted());
     stats.put(StatusKeys.STATISTICS_CONTAINERS_START_FAILED, getStartFailed());
+    stats.put(StatusKeys.STATISTICS_CONTAINERS_QUEUED, getQueued());
+    stats.put(StatusKeys.STATISTICS_CONTAINERS_STARTING, getStarting());
+    stats.put(StatusKeys.STATISTICS_CONTAINERS_RAMP_DEFERRED, getRampDeferred());
     return stats;
   }
+
+  /**
+   * Build the wire form of the role's counters
+   * @return the role state
+   */
+  public Messages.RoleStatusState toProtobuf() {
+    return Messages.RoleStatusState.newBuilder()
+                   .setName(name)
+                   .setRoleId(key)
+                   .setDesired(getDesired())
+                   .setActual(getActual())
+                   .setRequested(getRequested())
+                   .setReleasing(getReleasing())
+                   .setFailed(getFailed())
+                   .setStarted(getStarted())
+                   .setStartFailed(getStartFailed())
+                   .setCompleted(getCompleted())
+                   .build();
+  }
 }
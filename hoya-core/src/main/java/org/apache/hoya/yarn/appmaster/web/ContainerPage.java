@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hoya.yarn.appmaster.web;
+
+import org.apache.hoya.yarn.appmaster.state.LiveInstancesView;
+import org.apache.hoya.yarn.appmaster.state.RoleInstance;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A page of live containers, selected from a {@link LiveInstancesView}
+ * with optional role and host filters.
+ *
+ * The view is already sorted by ID and indexed by role, so a page in ID
+ * order of all containers or of a role is a sublist of the view. Other
+ * orders and the host filter need a pass over the candidates, but only
+ * the containers up to the end of the page are kept and sorted.
+ */
+public final class ContainerPage {
+
+  /**
+   * The orders a page can be sorted in
+   */
+  public enum SortOrder {
+    ID,
+    HOST,
+    STATE,
+    CREATED;
+
+    /**
+     * Parse an order, case insensitively
+     * @param name name, may be null
+     * @return the order, or ID if the name is null or unknown
+     */
+    public static SortOrder parse(String name) {
+      if (name != null) {
+        for (SortOrder order : values()) {
+          if (order.name().equalsIgnoreCase(name)) {
+            return order;
+          }
+        }
+      }
+      return ID;
+    }
+
+    Comparator<RoleInstance> comparator() {
+      switch (this) {
+        case HOST:
+          return BY_HOST;
+        case STATE:
+          return BY_STATE;
+        case CREATED:
+          return BY_CREATE_TIME;
+        default:
+          return BY_ID;
+      }
+    }
+  }
+
+  private static final Comparator<RoleInstance> BY_ID =
+    new Comparator<RoleInstance>() {
+      @Override
+      public int compare(RoleInstance i1, RoleInstance i2) {
+        return i1.id.compareTo(i2.id);
+      }
+    };
+
+  private static final Comparator<RoleInstance> BY_HOST =
+    new Comparator<RoleInstance>() {
+      @Override
+      public int compare(RoleInstance i1, RoleInstance i2) {
+        String h1 = i1.host == null ? "" : i1.host;
+        String h2 = i2.host == null ? "" : i2.host;
+        int result = h1.compareTo(h2);
+        return result != 0 ? result : BY_ID.compare(i1, i2);
+      }
+    };
+
+  private static final Comparator<RoleInstance> BY_STATE =
+    new Comparator<RoleInstance>() {
+      @Override
+      public int compare(RoleInstance i1, RoleInstance i2) {
+        int result = i1.state < i2.state ? -1
+                     : (i1.state == i2.state ? 0 : 1);
+        return result != 0 ? result : BY_ID.compare(i1, i2);
+      }
+    };
+
+  private static final Comparator<RoleInstance> BY_CREATE_TIME =
+    new Comparator<RoleInstance>() {
+      @Override
+      public int compare(RoleInstance i1, RoleInstance i2) {
+        int result = i1.createTime < i2.createTime ? -1
+                     : (i1.createTime == i2.createTime ? 0 : 1);
+        return result != 0 ? result : BY_ID.compare(i1, i2);
+      }
+    };
+
+  private final List<RoleInstance> instances;
+  private final int offset;
+  private final int limit;
+  private final int total;
+
+  public ContainerPage(List<RoleInstance> instances,
+                       int offset,
+                       int limit,
+                       int total) {
+    this.instances = instances;
+    this.offset = offset;
+    this.limit = limit;
+    this.total = total;
+  }
+
+  /**
+   * The containers in the page
+   * @return an unmodifiable list
+   */
+  public List<RoleInstance> getInstances() {
+    return instances;
+  }
+
+  public int getOffset() {
+    return offset;
+  }
+
+  public int getLimit() {
+    return limit;
+  }
+
+  /**
+   * The number of containers matching the filters, across all pages
+   * @return the total
+   */
+  public int getTotal() {
+    return total;
+  }
+
+  public boolean hasPrevious() {
+    return offset > 0;
+  }
+
+  public boolean hasNext() {
+    return offset + instances.size() < total;
+  }
+
+  /**
+   * Select a page of containers
+   * @param view view of the live containers
+   * @param role role, or "" or null for all roles
+   * @param host host, or "" or null for all hosts
+   * @param order sort order
+   * @param offset offset of the first container in the page
+   * @param limit maximum number of containers in the page
+   * @return the page
+   */
+  public static ContainerPage select(LiveInstancesView view,
+                                     String role,
+                                     String host,
+                                     SortOrder order,
+                                     int offset,
+                                     int limit) {
+    offset = Math.max(offset, 0);
+    limit = Math.max(limit, 0);
+    List<RoleInstance> candidates = role == null || role.isEmpty()
+                                    ? view.getInstances()
+                                    : view.getInstancesInRole(role);
+    boolean anyHost = host == null || host.isEmpty();
+    if (order == null) {
+      order = SortOrder.ID;
+    }
+    if (anyHost && order == SortOrder.ID) {
+      int total = candidates.size();
+      int start = Math.min(offset, total);
+      int end = (int) Math.min((long) start + limit, total);
+      return new ContainerPage(candidates.subList(start, end), offset, limit,
+                               total);
+    }
+
+    // keep the first (offset + limit) matches in the order, evicting
+    // the greatest whenever the queue is full
+    final Comparator<RoleInstance> comparator = order.comparator();
+    int keep = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+    PriorityQueue<RoleInstance> heap = new PriorityQueue<RoleInstance>(
+      Math.max(1, Math.min(keep, candidates.size())),
+      Collections.reverseOrder(comparator));
+    int total = 0;
+    for (RoleInstance instance : candidates) {
+      if (!anyHost && !host.equals(instance.host)) {
+        continue;
+      }
+      total++;
+      if (keep == 0) {
+        continue;
+      }
+      if (heap.size() < keep) {
+        heap.add(instance);
+      } else if (comparator.compare(instance, heap.peek()) < 0) {
+        heap.poll();
+        heap.add(instance);
+      }
+    }
+    List<RoleInstance> sorted = new ArrayList<RoleInstance>(heap);
+    Collections.sort(sorted, comparator);
+    List<RoleInstance> page = offset < sorted.size()
+                              ? sorted.subList(offset, sorted.size())
+                              : Collections.<RoleInstance>emptyList();
+    return new ContainerPage(Collections.unmodifiableList(page), offset, limit,
+                             total);
+  }
+}
@@ -18,7 +18,6 @@ package org.apache.hoya.yarn.appmaster.web;
 
 import org.apache.hoya.yarn.appmaster.web.layout.ClusterSpecificationView;
 
-import java.util.Map;
 import org.apache.hadoop.yarn.webapp.Controller;
 import org.apache.hoya.yarn.appmaster.web.layout.AppLayout;
 import org.apache.hoya.yarn.appmaster.web.layout.ContainerStatsView;
@@ -44,16 +43,12 @@ public class HoyaAMController extends Controller {
   public void index() {
     setTitle("Hoya App Master");
     
-    updateAppState();
-    
     render(AppLayout.class);
   }
   
   public void containerStats() {
     setTitle("Hoya Container Statistics");
     
-    updateAppState();
-    
     render(ContainerStatsView.class);
   }
   
@@ -62,16 +57,4 @@ public class HoyaAMController extends Controller {
     
     render(ClusterSpecificationView.class);
   }
-
-  private void updateAppState() {
-    //TODO don't do this on every request?
-    Map<String,String> providerStatus = hoya.getProviderService().buildProviderStatus();
-    
-    if (null != providerStatus) {
-      log.info("Updating AppState with status from provider: {}", providerStatus.toString());
-      
-      hoya.getAppState().refreshClusterStatus(providerStatus);
-    }
-  }
-  
 }
@@ -18,6 +18,7 @@ package org.apache.hoya.yarn.appmaster.web;
 
 import org.apache.hadoop.yarn.webapp.GenericExceptionHandler;
 import org.apache.hadoop.yarn.webapp.WebApp;
+import org.apache.hoya.yarn.appmaster.web.rest.HoyaAMRestServlet;
 
 /**
  * 
@@ -36,6 +37,9 @@ public class HoyaAMWebApp extends WebApp {
     // Get exceptions printed to the screen
     bind(GenericExceptionHandler.class);
 
+    // The JSON resources are served directly, ahead of the HTML dispatcher
+    serve(HoyaAMRestServlet.PATH + "/*").with(HoyaAMRestServlet.class);
+
     route("/", HoyaAMController.class);
     route(CONTAINER_STATS, HoyaAMController.class, "containerStats");
     route(CLUSTER_SPEC, HoyaAMController.class, "specification");
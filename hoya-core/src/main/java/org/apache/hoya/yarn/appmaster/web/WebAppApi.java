@@ -16,11 +16,14 @@
  */
 package org.apache.hoya.yarn.appmaster.web;
 
+import java.io.IOException;
 import java.util.Map;
 
+import org.apache.hoya.api.ClusterDescription;
 import org.apache.hoya.api.HoyaClusterProtocol;
 import org.apache.hoya.providers.ProviderService;
 import org.apache.hoya.yarn.appmaster.state.AppState;
+import org.apache.hoya.yarn.appmaster.state.ClusterStatusSnapshot;
 import org.apache.hoya.yarn.appmaster.state.RoleStatus;
 
 /**
@@ -48,4 +51,28 @@ public interface WebAppApi {
    * is a computed value and not just a getter
    */
   public Map<String,RoleStatus> getRoleStatusByName();
+
+  /**
+   * A current {@link ClusterStatusSnapshot}; this is only rebuilt when
+   * the {@link AppState} has changed since the last one was published
+   */
+  public ClusterStatusSnapshot getClusterStatusSnapshot() throws IOException;
+
+  /**
+   * The cluster status from the current snapshot. The result is
+   * shared and must not be modified.
+   */
+  public ClusterDescription getClusterStatus();
+
+  /**
+   * A page of the live containers, read directly from the current
+   * view of the {@link AppState}
+   * @param role role, or "" or null for all roles
+   * @param host host, or "" or null for all hosts
+   * @param order sort order
+   * @param offset offset of the first container in the page
+   * @param limit maximum number of containers in the page
+   */
+  public ContainerPage getContainerPage(String role, String host,
+      ContainerPage.SortOrder order, int offset, int limit);
 }
@@ -18,6 +18,7 @@ package org.apache.hoya.yarn.appmaster.web;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -25,10 +26,12 @@ import java.util.Map.Entry;
 import java.util.TreeMap;
 
 import org.apache.hoya.HoyaKeys;
+import org.apache.hoya.api.ClusterDescription;
 import org.apache.hoya.api.HoyaClusterProtocol;
 import org.apache.hoya.providers.ProviderRole;
 import org.apache.hoya.providers.ProviderService;
 import org.apache.hoya.yarn.appmaster.state.AppState;
+import org.apache.hoya.yarn.appmaster.state.ClusterStatusSnapshot;
 import org.apache.hoya.yarn.appmaster.state.RoleStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -89,7 +92,38 @@ public class WebAppApiImpl implements WebAppApi {
     
     return getRoleStatusesByName(rolesById, status);
   }
+
+  /* (non-Javadoc)
+   * @see org.apache.hoya.yarn.appmaster.web.WebAppApi#getClusterStatusSnapshot()
+   */
+  @Override
+  public ClusterStatusSnapshot getClusterStatusSnapshot() throws IOException {
+    return appState.getStatusSnapshot(provider);
+  }
+
+  /* (non-Javadoc)
+   * @see org.apache.hoya.yarn.appmaster.web.WebAppApi#getClusterStatus()
+   */
+  @Override
+  public ClusterDescription getClusterStatus() {
+    try {
+      return getClusterStatusSnapshot().getStatus();
+    } catch (IOException e) {
+      log.error("Could not build the cluster status snapshot", e);
+      return appState.getClusterDescription();
+    }
+  }
   
+  /* (non-Javadoc)
+   * @see org.apache.hoya.yarn.appmaster.web.WebAppApi#getContainerPage(java.lang.String, java.lang.String, org.apache.hoya.yarn.appmaster.web.ContainerPage.SortOrder, int, int)
+   */
+  @Override
+  public ContainerPage getContainerPage(String role, String host,
+      ContainerPage.SortOrder order, int offset, int limit) {
+    return ContainerPage.select(appState.getLiveInstancesView(), role, host,
+        order, offset, limit);
+  }
+
   /**
    * Get the ProviderRoles by their index
    * @param roles
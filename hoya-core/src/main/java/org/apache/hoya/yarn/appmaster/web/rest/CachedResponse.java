@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hoya.yarn.appmaster.web.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The body of a REST response and its entity tag. The gzipped form of
+ * the body is built on first use and kept, so a body is compressed at
+ * most once however many clients fetch it.
+ */
+public final class CachedResponse {
+
+  private final String etag;
+  private final byte[] body;
+  private volatile byte[] gzipped;
+
+  public CachedResponse(String etag, byte[] body) {
+    this.etag = etag;
+    this.body = body;
+  }
+
+  public String getETag() {
+    return etag;
+  }
+
+  /**
+   * Get the body. The array is shared: do not modify it.
+   * @return the body
+   */
+  public byte[] getBody() {
+    return body;
+  }
+
+  /**
+   * Get the gzipped body. The array is shared: do not modify it.
+   * @return the body, gzipped
+   * @throws IOException if the compression fails
+   */
+  public byte[] getGzippedBody() throws IOException {
+    byte[] result = gzipped;
+    if (result == null) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+        Math.max(64, body.length / 4));
+      GZIPOutputStream out = new GZIPOutputStream(bytes);
+      try {
+        out.write(body);
+      } finally {
+        out.close();
+      }
+      result = bytes.toByteArray();
+      gzipped = result;
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "CachedResponse{etag=" + etag + ", size=" + body.length + '}';
+  }
+}
@@ -0,0 +1,373 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hoya.yarn.appmaster.web.rest;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.hadoop.util.StringUtils;
+import org.apache.hoya.avro.NodeEntryRecord;
+import org.apache.hoya.tools.HoyaUtils;
+import org.apache.hoya.yarn.appmaster.state.ClusterStatusSnapshot;
+import org.apache.hoya.yarn.appmaster.state.LiveInstancesView;
+import org.apache.hoya.yarn.appmaster.state.RoleHistory;
+import org.apache.hoya.yarn.appmaster.state.RoleInstance;
+import org.apache.hoya.yarn.appmaster.web.ContainerPage;
+import org.apache.hoya.yarn.appmaster.web.WebAppApi;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * JSON resources of the AM, served under {@link #PATH}:
+ * <ul>
+ *   <li>{@link #STATUS}: the cluster status</li>
+ *   <li>{@link #ROLES}: the statistics of each role</li>
+ *   <li>{@link #CONTAINERS}: the live containers, taking the same role, host,
+ *   sort, offset and limit parameters as the container statistics page</li>
+ *   <li>{@link #HISTORY}: the entries of the role history</li>
+ * </ul>
+ * Every response carries an ETag derived from the version of the state it
+ * was built from, so a request whose If-None-Match matches is answered
+ * with 304 before anything is serialized. The ETag of a page of containers
+ * also carries a digest of its canonical query. The last body of each
+ * resource, and of the most recently used container queries, is kept with
+ * its ETag, and is gzipped if the client accepts it.
+ */
+@Singleton
+public class HoyaAMRestServlet extends HttpServlet {
+  private static final Logger log = LoggerFactory.getLogger(HoyaAMRestServlet.class);
+
+  public static final String PATH = "/ws/v1/hoya";
+  public static final String STATUS = "/status", ROLES = "/roles", CONTAINERS = "/containers",
+      HISTORY = "/history";
+
+  public static final String PARAM_ROLE = "role", PARAM_HOST = "host", PARAM_SORT = "sort", PARAM_OFFSET = "offset",
+      PARAM_LIMIT = "limit";
+
+  private static final String CONTENT_TYPE = "application/json; charset=UTF-8";
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /**
+   * Bodies smaller than this are not worth compressing
+   */
+  private static final int GZIP_MIN_SIZE = 1024;
+
+  /**
+   * Maximum number of responses kept, across all resources and queries
+   */
+  private static final int MAX_CACHED_RESPONSES = 32;
+
+  private final WebAppApi hoya;
+
+  /**
+   * Distinguishes the ETags of this AM from those of any earlier attempt,
+   * whose state versions will have started from the same values
+   */
+  private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+  /**
+   * Last response of each resource or container query, least recently used first
+   */
+  private final Map<String,CachedResponse> responses = Collections.synchronizedMap(
+      new LinkedHashMap<String,CachedResponse>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,CachedResponse> eldest) {
+          return size() > MAX_CACHED_RESPONSES;
+        }
+      });
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  /**
+   * Builds the body of a response, only called if the cached one is out of date
+   */
+  private interface Body {
+    byte[] build() throws IOException;
+  }
+
+  @Inject
+  public HoyaAMRestServlet(WebAppApi hoya) {
+    this.hoya = hoya;
+  }
+
+  @Override
+  protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String path = request.getPathInfo();
+    try {
+      if (STATUS.equals(path)) {
+        final ClusterStatusSnapshot snapshot = hoya.getClusterStatusSnapshot();
+        respond(request, response, STATUS, etag(STATUS, snapshot.getVersion() + "." + snapshot.getTimestamp()),
+            new Body() {
+              @Override
+              public byte[] build() throws IOException {
+                return snapshot.getJsonBytes();
+              }
+            });
+      } else if (ROLES.equals(path)) {
+        final ClusterStatusSnapshot snapshot = hoya.getClusterStatusSnapshot();
+        respond(request, response, ROLES, etag(ROLES, snapshot.getVersion() + "." + snapshot.getTimestamp()),
+            new Body() {
+              @Override
+              public byte[] build() throws IOException {
+                return toBytes(snapshot.getStatus().statistics);
+              }
+            });
+      } else if (CONTAINERS.equals(path)) {
+        // read before the view, so that any change after it gives a new tag
+        long stateVersion = hoya.getAppState().getStateVersion();
+        final LiveInstancesView view = hoya.getAppState().getLiveInstancesView();
+        final String role = request.getParameter(PARAM_ROLE);
+        final String host = request.getParameter(PARAM_HOST);
+        final ContainerPage.SortOrder order = ContainerPage.SortOrder.parse(request.getParameter(PARAM_SORT));
+        final int offset = parseInt(request.getParameter(PARAM_OFFSET), 0);
+        final int limit = parseInt(request.getParameter(PARAM_LIMIT), Integer.MAX_VALUE);
+        String query = digest(canonicalQuery(role, host, order, offset, limit));
+        // the page is selected from the same view whose version is in the tag
+        respond(request, response, CONTAINERS + "?" + query,
+            etag(CONTAINERS, containersVersion(stateVersion, view, query)), new Body() {
+              @Override
+              public byte[] build() throws IOException {
+                return toBytes(toJson(ContainerPage.select(view, role, host, order, offset, limit)));
+              }
+            });
+      } else if (HISTORY.equals(path)) {
+        final RoleHistory history = hoya.getAppState().getRoleHistory();
+        respond(request, response, HISTORY, etag(HISTORY, Long.toString(history.getChangeCount())), new Body() {
+          @Override
+          public byte[] build() throws IOException {
+            return toBytes(toJson(history.snapshotEntries()));
+          }
+        });
+      } else {
+        response.sendError(HttpServletResponse.SC_NOT_FOUND, "Unknown resource " + path);
+      }
+    } catch (IOException e) {
+      log.error("Failed to build the response to {}", path, e);
+      response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.toString());
+    }
+  }
+
+  /**
+   * Send a response, or 304 if the client has the current version
+   * @param request request
+   * @param response response
+   * @param resource key of the resource in the response cache
+   * @param etag current ETag of the resource
+   * @param body builder of the body
+   * @throws IOException if the body cannot be built or written
+   */
+  private void respond(HttpServletRequest request, HttpServletResponse response, String resource, String etag,
+      Body body) throws IOException {
+    response.setHeader("ETag", etag);
+    response.setHeader("Cache-Control", "no-cache");
+    response.setHeader("Vary", "Accept-Encoding");
+    if (matches(request.getHeader("If-None-Match"), etag)) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+    CachedResponse cached = responses.get(resource);
+    if (cached == null || !cached.getETag().equals(etag)) {
+      cached = new CachedResponse(etag, body.build());
+      responses.put(resource, cached);
+    }
+    byte[] bytes = cached.getBody();
+    if (bytes.length >= GZIP_MIN_SIZE && acceptsGzip(request.getHeader("Accept-Encoding"))) {
+      bytes = cached.getGzippedBody();
+      response.setHeader("Content-Encoding", "gzip");
+    }
+    response.setContentType(CONTENT_TYPE);
+    response.setContentLength(bytes.length);
+    response.getOutputStream().write(bytes);
+  }
+
+  private byte[] toBytes(Object value) throws IOException {
+    return mapper.writeValueAsString(value).getBytes(UTF8);
+  }
+
+  private String etag(String resource, String version) {
+    return "\"" + epoch + "-" + resource.substring(1) + "-" + version + "\"";
+  }
+
+  /**
+   * Does an If-None-Match header match an ETag
+   * @param ifNoneMatch header, may be null
+   * @param etag ETag
+   * @return true if the header is "*" or lists the tag, weak or strong
+   */
+  static boolean matches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String tag : ifNoneMatch.split(",")) {
+      tag = tag.trim();
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+      if (tag.equals("*") || tag.equals(etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Does an Accept-Encoding header accept gzip
+   * @param acceptEncoding header, may be null
+   * @return true if gzip is listed and not refused with q=0
+   */
+  static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parts = coding.trim().split(";");
+      if (parts[0].trim().equalsIgnoreCase("gzip")) {
+        for (int i = 1; i < parts.length; i++) {
+          String param = parts[i].replace(" ", "");
+          if (param.matches("q=0(\\.0*)?")) {
+            return false;
+          }
+        }
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Build the version of a page of containers for its ETag. The live
+   * instances view only changes version when containers are added or
+   * removed, while releases and other changes update the instances in
+   * place, so the version of the application state is included too.
+   * @param stateVersion version of the application state, read before the view
+   * @param view view the page is selected from
+   * @param query digest of the canonical query
+   * @return the version
+   */
+  static String containersVersion(long stateVersion, LiveInstancesView view, String query) {
+    return view.getVersion() + "." + stateVersion + "." + query;
+  }
+
+  /**
+   * Build the canonical form of a container query, in which every
+   * parameter is present, escaped, and in a fixed order
+   * @param role role, may be null
+   * @param host host, may be null
+   * @param order sort order
+   * @param offset offset
+   * @param limit limit
+   * @return the query
+   */
+  static String canonicalQuery(String role, String host, ContainerPage.SortOrder order, int offset, int limit)
+      throws IOException {
+    return PARAM_ROLE + "=" + encode(role) + "&" + PARAM_HOST + "=" + encode(host) + "&" + PARAM_SORT + "=" + order
+        + "&" + PARAM_OFFSET + "=" + offset + "&" + PARAM_LIMIT + "=" + limit;
+  }
+
+  private static String encode(String value) throws IOException {
+    return value == null ? "" : URLEncoder.encode(value, "UTF-8");
+  }
+
+  /**
+   * Digest a string
+   * @param text text
+   * @return the SHA-1 digest of the text in hex
+   */
+  static String digest(String text) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      return StringUtils.byteToHexString(digest.digest(text.getBytes(UTF8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static int parseInt(String value, int defaultValue) {
+    if (value == null || value.isEmpty()) {
+      return defaultValue;
+    }
+    try {
+      return Math.max(Integer.parseInt(value), 0);
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Build the JSON document of a page of containers
+   * @param page page
+   * @return a map to serialize
+   */
+  static Map<String,Object> toJson(ContainerPage page) {
+    List<Map<String,Object>> containers = new ArrayList<Map<String,Object>>(page.getInstances().size());
+    for (RoleInstance instance : page.getInstances()) {
+      Map<String,Object> container = new LinkedHashMap<String,Object>();
+      container.put("id", instance.id);
+      container.put("role", instance.role);
+      container.put("roleId", instance.roleId);
+      container.put("host", instance.host);
+      container.put("hostURL", instance.hostURL);
+      container.put("state", instance.state);
+      container.put("createTime", instance.createTime);
+      container.put("startTime", instance.startTime);
+      container.put("released", instance.released);
+      containers.add(container);
+    }
+    Map<String,Object> doc = new LinkedHashMap<String,Object>();
+    doc.put("total", page.getTotal());
+    doc.put("offset", page.getOffset());
+    doc.put("containers", containers);
+    return doc;
+  }
+
+  /**
+   * Build the JSON document of the role history
+   * @param entries the entries of the history
+   * @return a map to serialize
+   */
+  static Map<String,Object> toJson(List<NodeEntryRecord> entries) {
+    List<Map<String,Object>> records = new ArrayList<Map<String,Object>>(entries.size());
+    for (NodeEntryRecord entry : entries) {
+      Map<String,Object> record = new LinkedHashMap<String,Object>();
+      record.put("host", HoyaUtils.sequenceToString(entry.getHost()));
+      record.put("role", entry.getRole());
+      record.put("active", entry.getActive());
+      record.put("lastUsed", entry.getLastUsed());
+      records.add(record);
+    }
+    Map<String,Object> doc = new LinkedHashMap<String,Object>();
+    doc.put("entries", records);
+    return doc;
+  }
+}
@@ -19,7 +19,6 @@ package org.apache.hoya.yarn.appmaster.web.view;
 import com.google.inject.Inject;
 import org.apache.hadoop.yarn.webapp.hamlet.Hamlet;
 import org.apache.hadoop.yarn.webapp.view.HtmlBlock;
-import org.apache.hoya.yarn.appmaster.state.AppState;
 import org.apache.hoya.yarn.appmaster.web.WebAppApi;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,11 +29,11 @@ import org.slf4j.LoggerFactory;
 public class ClusterSpecificationBlock extends HtmlBlock {
   private static final Logger log = LoggerFactory.getLogger(ClusterSpecificationBlock.class);
 
-  private AppState appState;
+  private WebAppApi hoya;
 
   @Inject
   public ClusterSpecificationBlock(WebAppApi hoya) {
-    this.appState = hoya.getAppState();
+    this.hoya = hoya;
   }
 
   @Override
@@ -57,7 +56,7 @@ public class ClusterSpecificationBlock extends HtmlBlock {
    */
   private String getJson() {
     try {
-      return appState.clusterDescription.toJsonString();
+      return hoya.getClusterStatusSnapshot().getJson();
     } catch (Exception e) {
       log.error("Could not create JSON from cluster description", e);
       return "Could not create JSON. See logs for more details.";
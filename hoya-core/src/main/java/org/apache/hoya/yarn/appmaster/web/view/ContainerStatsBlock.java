@@ -16,9 +16,12 @@
  */
 package org.apache.hoya.yarn.appmaster.web.view;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -33,8 +36,9 @@ import org.apache.hoya.api.ClusterDescription;
 import org.apache.hoya.api.ClusterNode;
 import org.apache.hoya.yarn.appmaster.state.RoleInstance;
 import org.apache.hoya.yarn.appmaster.state.RoleStatus;
+import org.apache.hoya.yarn.appmaster.web.ContainerPage;
+import org.apache.hoya.yarn.appmaster.web.HoyaAMWebApp;
 import org.apache.hoya.yarn.appmaster.web.WebAppApi;
-import org.apache.hoya.yarn.client.HoyaClusterOperations;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,13 +59,17 @@ public class ContainerStatsBlock extends HtmlBlock {
   protected static final Function<Entry<String,Integer>,Entry<TableContent,Integer>> stringIntPairFunc = toTableContentFunction();
   protected static final Function<Entry<String,String>,Entry<TableContent,String>> stringStringPairFunc = toTableContentFunction();
 
+  // Query parameters of the page
+  public static final String PARAM_ROLE = "role", PARAM_HOST = "host", PARAM_SORT = "sort", PARAM_OFFSET = "offset",
+      PARAM_LIMIT = "limit";
+
+  protected static final int DEFAULT_PAGE_SIZE = 100, MAX_PAGE_SIZE = 1000;
+
   private WebAppApi hoya;
-  private HoyaClusterOperations clusterOps;
 
   @Inject
   public ContainerStatsBlock(WebAppApi hoya) {
     this.hoya = hoya;
-    clusterOps = new HoyaClusterOperations(hoya.getClusterProtocol());
   }
 
   /**
@@ -95,23 +103,27 @@ public class ContainerStatsBlock extends HtmlBlock {
 
   @Override
   protected void render(Block html) {
-    // TODO Probably better to just get a copy of this list for us to avoid the repeated synchronization?
-    // does this change if we have 50 node, 100node, 500 node hoya clusters?
-    final Map<String,RoleInstance> containerInstances = getContainerInstances(hoya.getAppState().cloneActiveContainerList());
+    final ClusterDescription desc = hoya.getClusterStatus();
+
+    // Only a selected role is paged through; otherwise each role shows its first page
+    final String selectedRole = $(PARAM_ROLE);
+    final String host = $(PARAM_HOST);
+    final ContainerPage.SortOrder order = ContainerPage.SortOrder.parse($(PARAM_SORT));
+    final int limit = parseInt($(PARAM_LIMIT), DEFAULT_PAGE_SIZE, MAX_PAGE_SIZE);
+    final int offset = selectedRole.isEmpty() ? 0 : parseInt($(PARAM_OFFSET), 0, Integer.MAX_VALUE);
 
     for (Entry<String,RoleStatus> entry : hoya.getRoleStatusByName().entrySet()) {
       final String name = entry.getKey();
       final RoleStatus roleStatus = entry.getValue();
 
+      if (!selectedRole.isEmpty() && !selectedRole.equals(name)) {
+        continue;
+      }
+
       DIV<Hamlet> div = html.div("role-info ui-widget-content ui-corner-all");
 
-      List<ClusterNode> nodesInRole;
-      try {
-        nodesInRole = clusterOps.listClusterNodesInRole(name);
-      } catch (Exception e) {
-        log.error("Could not fetch containers for role: " + name, e);
-        nodesInRole = Collections.emptyList();
-      }
+      // Read straight from the current view of the live containers
+      ContainerPage page = hoya.getContainerPage(name, host, order, offset, limit);
 
       div.h2(BOLD, StringUtils.capitalize(name));
 
@@ -119,30 +131,24 @@ public class ContainerStatsBlock extends HtmlBlock {
       Iterable<Entry<String,Integer>> stats = roleStatus.buildStatistics().entrySet();
       generateRoleDetails(div,"role-stats-wrap", "Specifications", Iterables.transform(stats, stringIntPairFunc));
 
-      // Sort the ClusterNodes by their name (containerid)
-      Collections.sort(nodesInRole, new ClusterNodeNameComparator());
-
       // Generate the containers running this role
       generateRoleDetails(div, "role-stats-containers", "Containers",
-          Iterables.transform(nodesInRole, new Function<ClusterNode,Entry<TableContent,String>>() {
+          Iterables.transform(page.getInstances(), new Function<RoleInstance,Entry<TableContent,String>>() {
 
             @Override
-            public Entry<TableContent,String> apply(ClusterNode input) {
-              final String containerId = input.name;
-              
-              if (containerInstances.containsKey(containerId)) {
-                RoleInstance roleInst = containerInstances.get(containerId);
-                if (roleInst.container.getNodeHttpAddress() != null) {
-                  return Maps.<TableContent,String> immutableEntry(
-                    new TableAnchorContent(containerId, buildNodeUrlForContainer(roleInst.container.getNodeHttpAddress(), containerId)), null);
-                }
+            public Entry<TableContent,String> apply(RoleInstance roleInst) {
+              final String containerId = roleInst.id;
+
+              if (roleInst.container != null && roleInst.container.getNodeHttpAddress() != null) {
+                return Maps.<TableContent,String> immutableEntry(
+                  new TableAnchorContent(containerId, buildNodeUrlForContainer(roleInst.container.getNodeHttpAddress(), containerId)), null);
               }
-              return Maps.immutableEntry(new TableContent(input.name), null);
+              return Maps.immutableEntry(new TableContent(containerId), null);
             }
 
           }));
+      generatePager(div, name, host, order, page);
 
-      ClusterDescription desc = hoya.getAppState().clusterDescription;
       Map<String,String> options = desc.getRole(name);
       Iterable<Entry<TableContent,String>> tableContent;
       
@@ -162,6 +168,81 @@ public class ContainerStatsBlock extends HtmlBlock {
     }
   }
 
+  /**
+   * Parse a non-negative integer parameter
+   * @param value value, may be empty
+   * @param defaultValue value to use if it is empty or invalid
+   * @param max upper bound
+   * @return the value
+   */
+  protected static int parseInt(String value, int defaultValue, int max) {
+    if (StringUtils.isEmpty(value)) {
+      return defaultValue;
+    }
+    try {
+      return Math.min(Math.max(Integer.parseInt(value), 0), max);
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Add the position in the list of containers and links to the previous and next pages,
+   * if there is more than one page
+   * @param parent
+   * @param role
+   * @param host
+   * @param order
+   * @param page
+   */
+  protected void generatePager(DIV<Hamlet> parent, String role, String host, ContainerPage.SortOrder order,
+      ContainerPage page) {
+    if (!page.hasPrevious() && !page.hasNext()) {
+      return;
+    }
+    final DIV<DIV<Hamlet>> div = parent.div("role-stats-pager");
+    int first = page.getInstances().isEmpty() ? page.getOffset() : page.getOffset() + 1;
+    div._(String.format("Containers %d-%d of %d", first, page.getOffset() + page.getInstances().size(),
+        page.getTotal()));
+    if (page.hasPrevious()) {
+      div._(" ").a(buildPageUrl(role, host, order, Math.max(0, page.getOffset() - page.getLimit()), page.getLimit()),
+          "Previous");
+    }
+    if (page.hasNext()) {
+      div._(" ").a(buildPageUrl(role, host, order, page.getOffset() + page.getLimit(), page.getLimit()), "Next");
+    }
+    div._();
+  }
+
+  /**
+   * Build the URL of a page of the containers of a role
+   * @param role
+   * @param host
+   * @param order
+   * @param offset
+   * @param limit
+   * @return
+   */
+  protected String buildPageUrl(String role, String host, ContainerPage.SortOrder order, int offset, int limit) {
+    StringBuilder sb = new StringBuilder(prefix()).append(HoyaAMWebApp.CONTAINER_STATS);
+    sb.append('?').append(PARAM_ROLE).append('=').append(encode(role));
+    if (!StringUtils.isEmpty(host)) {
+      sb.append('&').append(PARAM_HOST).append('=').append(encode(host));
+    }
+    sb.append('&').append(PARAM_SORT).append('=').append(order.name().toLowerCase(Locale.ENGLISH));
+    sb.append('&').append(PARAM_OFFSET).append('=').append(offset);
+    sb.append('&').append(PARAM_LIMIT).append('=').append(limit);
+    return sb.toString();
+  }
+
+  private static String encode(String value) {
+    try {
+      return URLEncoder.encode(value, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
   protected static <T> Function<Entry<String,T>,Entry<TableContent,T>> toTableContentFunction() {
     return new Function<Entry<String,T>,Entry<TableContent,T>>() {
       @Override
@@ -26,6 +26,7 @@ import org.apache.hadoop.yarn.webapp.hamlet.Hamlet;
 import org.apache.hadoop.yarn.webapp.hamlet.Hamlet.DIV;
 import org.apache.hadoop.yarn.webapp.hamlet.Hamlet.UL;
 import org.apache.hadoop.yarn.webapp.view.HtmlBlock;
+import org.apache.hoya.api.ClusterDescription;
 import org.apache.hoya.api.StatusKeys;
 import org.apache.hoya.providers.ProviderService;
 import org.apache.hoya.yarn.appmaster.state.AppState;
@@ -40,11 +41,13 @@ public class IndexBlock extends HtmlBlock {
   private static final String HBASE = "HBase";
   private static final Logger log = LoggerFactory.getLogger(IndexBlock.class);
 
+  private WebAppApi hoya;
   private AppState appState;
   private ProviderService providerService;
 
   @Inject
   public IndexBlock(WebAppApi hoya) {
+    this.hoya = hoya;
     this.appState = hoya.getAppState();
     this.providerService = hoya.getProviderService();
   }
@@ -58,22 +61,23 @@ public class IndexBlock extends HtmlBlock {
 
   // An extra method to make testing easier since you can't make an instance of Block
   protected void doIndex(Hamlet html, String providerName) {
-    DIV<Hamlet> div = html.div("general_info").h1("index_header", providerName + " cluster: '" + appState.clusterDescription.name + "'");
+    ClusterDescription status = hoya.getClusterStatus();
+    DIV<Hamlet> div = html.div("general_info").h1("index_header", providerName + " cluster: '" + status.name + "'");
 
     UL<DIV<Hamlet>> ul = div.ul();
 
     ul.li("Total number of containers for cluster: " + appState.getNumActiveContainers());
-    ul.li("Cluster created: " + getInfoAvoidingNulls(StatusKeys.INFO_CREATE_TIME_HUMAN));
-    ul.li("Cluster last flexed: " + getInfoAvoidingNulls(StatusKeys.INFO_FLEX_TIME_HUMAN));
-    ul.li("Cluster running since: " + getInfoAvoidingNulls(StatusKeys.INFO_LIVE_TIME_HUMAN));
-    ul.li("Cluster HDFS storage path: " + appState.clusterDescription.dataPath);
-    ul.li("Cluster configuration path: " + appState.clusterDescription.originConfigurationPath);
+    ul.li("Cluster created: " + getInfoAvoidingNulls(status, StatusKeys.INFO_CREATE_TIME_HUMAN));
+    ul.li("Cluster last flexed: " + getInfoAvoidingNulls(status, StatusKeys.INFO_FLEX_TIME_HUMAN));
+    ul.li("Cluster running since: " + getInfoAvoidingNulls(status, StatusKeys.INFO_LIVE_TIME_HUMAN));
+    ul.li("Cluster HDFS storage path: " + status.dataPath);
+    ul.li("Cluster configuration path: " + status.originConfigurationPath);
 
     ul._()._();
 
     html.div("provider_info").h3(providerName + " specific information");
     ul = div.ul();
-    addProviderServiceOptions(providerService, ul);
+    addProviderServiceOptions(providerService, status, ul);
     ul._()._();
   }
 
@@ -88,14 +92,16 @@ public class IndexBlock extends HtmlBlock {
     return StringUtils.capitalize(providerServiceName);
   }
 
-  private String getInfoAvoidingNulls(String key) {
-    String createTime = appState.clusterDescription.getInfo(key);
+  private String getInfoAvoidingNulls(ClusterDescription status, String key) {
+    String createTime = status.getInfo(key);
 
     return null == createTime ? "N/A" : createTime;
   }
 
-  protected void addProviderServiceOptions(ProviderService providerService, UL<DIV<Hamlet>> ul) {
-    Map<String,URL> details = providerService.buildMonitorDetails(appState.clusterDescription);
+  protected void addProviderServiceOptions(ProviderService providerService,
+                                           ClusterDescription status,
+                                           UL<DIV<Hamlet>> ul) {
+    Map<String,URL> details = providerService.buildMonitorDetails(status);
     if (null == details) {
       return;
     }
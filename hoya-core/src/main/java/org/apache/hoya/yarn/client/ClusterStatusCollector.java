@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.client;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.hadoop.yarn.api.records.ApplicationReport;
+import org.apache.hoya.api.ClusterDescription;
+import org.apache.hoya.api.HoyaClusterProtocol;
+import org.apache.hoya.exceptions.HoyaException;
+import org.apache.hoya.yarn.appmaster.rpc.RpcBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetch the status of many clusters at once.
+ *
+ * The statuses are fetched by a bounded pool of threads, and handed to
+ * a listener in the calling thread in the order they arrive. A fetch
+ * which takes longer than the timeout -including connecting to the AM-
+ * is abandoned and reported as a failure.
+ *
+ * The RPC proxies to the AMs are kept between calls, and only replaced
+ * if an AM moves or a call to it fails.
+ */
+public class ClusterStatusCollector implements Closeable {
+  protected static final Logger log =
+    LoggerFactory.getLogger(ClusterStatusCollector.class);
+
+  /**
+   * Interval in millis at which outstanding fetches are checked
+   * for timeouts: {@value}
+   */
+  public static final int TIMEOUT_CHECK_INTERVAL = 100;
+
+  /**
+   * Receiver of the outcome of each fetch
+   */
+  public interface StatusListener {
+
+    /**
+     * The status of a cluster has been fetched
+     * @param app application report of the cluster
+     * @param status its status
+     */
+    void statusReceived(ApplicationReport app, ClusterDescription status);
+
+    /**
+     * The status of a cluster could not be fetched
+     * @param app application report of the cluster
+     * @param failure the reason
+     */
+    void statusFailed(ApplicationReport app, Exception failure);
+  }
+
+  private final Configuration conf;
+  private final int timeout;
+  private final ExecutorService executor;
+  private final ConcurrentMap<ApplicationId, BondedProxy> proxies =
+    new ConcurrentHashMap<ApplicationId, BondedProxy>();
+
+  /**
+   * Create a collector
+   * @param conf configuration for the RPC proxies
+   * @param parallelism number of statuses to fetch at the same time
+   * @param timeout time in millis allowed for each fetch
+   */
+  public ClusterStatusCollector(Configuration conf, int parallelism, int timeout) {
+    this.conf = conf;
+    this.timeout = timeout;
+    final AtomicInteger threadCount = new AtomicInteger();
+    executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "cluster status " +
+                                      threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Fetch the status of every cluster, returning once every one has
+   * been received, has failed or has timed out
+   * @param apps application reports of the clusters
+   * @param listener listener for the outcomes; called in this thread
+   * @return the number of statuses received
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public int collect(Collection<ApplicationReport> apps,
+                     StatusListener listener) throws InterruptedException {
+    CompletionService<ClusterDescription> completion =
+      new ExecutorCompletionService<ClusterDescription>(executor);
+    Map<Future<ClusterDescription>, Fetch> outstanding =
+      new HashMap<Future<ClusterDescription>, Fetch>(apps.size() * 2);
+    for (ApplicationReport app : apps) {
+      Fetch fetch = new Fetch(app);
+      outstanding.put(completion.submit(fetch), fetch);
+    }
+    int received = 0;
+    while (!outstanding.isEmpty()) {
+      Future<ClusterDescription> done =
+        completion.poll(TIMEOUT_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+      if (done != null) {
+        Fetch fetch = outstanding.remove(done);
+        //a fetch which timed out has already been reported
+        if (fetch != null) {
+          try {
+            listener.statusReceived(fetch.app, done.get());
+            received++;
+          } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            listener.statusFailed(fetch.app, cause instanceof Exception
+                                             ? (Exception) cause
+                                             : e);
+          }
+        }
+      }
+      expireFetches(outstanding, listener);
+    }
+    return received;
+  }
+
+  /**
+   * Cancel and report every fetch which has been running for
+   * longer than the timeout
+   */
+  private void expireFetches(Map<Future<ClusterDescription>, Fetch> outstanding,
+                             StatusListener listener) {
+    long now = System.currentTimeMillis();
+    Iterator<Map.Entry<Future<ClusterDescription>, Fetch>> it =
+      outstanding.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<Future<ClusterDescription>, Fetch> entry = it.next();
+      Fetch fetch = entry.getValue();
+      long started = fetch.started;
+      if (started > 0 && now - started > timeout) {
+        it.remove();
+        entry.getKey().cancel(true);
+        discardProxy(fetch.app.getApplicationId());
+        listener.statusFailed(fetch.app, new SocketTimeoutException(
+          "No status from " + fetch.app.getName() + " after " + timeout
+          + " millis"));
+      }
+    }
+  }
+
+  /**
+   * Get a proxy to the AM of an application, reusing any bonded to
+   * the AM's current address
+   */
+  private HoyaClusterProtocol getProxy(ApplicationReport app) throws
+                                                               IOException,
+                                                               HoyaException,
+                                                               InterruptedException {
+    ApplicationId appId = app.getApplicationId();
+    String address = app.getHost() + ":" + app.getRpcPort();
+    BondedProxy bonded = proxies.get(appId);
+    if (bonded != null && bonded.address.equals(address)) {
+      return bonded.proxy;
+    }
+    HoyaClusterProtocol proxy = RpcBinder.getProxy(conf, app, timeout);
+    BondedProxy previous = proxies.put(appId, new BondedProxy(address, proxy));
+    if (previous != null) {
+      stopProxy(previous.proxy);
+    }
+    return proxy;
+  }
+
+  private void discardProxy(ApplicationId appId) {
+    BondedProxy bonded = proxies.remove(appId);
+    if (bonded != null) {
+      stopProxy(bonded.proxy);
+    }
+  }
+
+  private static void stopProxy(HoyaClusterProtocol proxy) {
+    if (proxy instanceof Closeable) {
+      try {
+        ((Closeable) proxy).close();
+      } catch (IOException e) {
+        log.debug("Closing proxy: {}", e.toString());
+      }
+    }
+  }
+
+  /**
+   * Stop the fetching threads and all proxies
+   */
+  @Override
+  public void close() {
+    executor.shutdownNow();
+    for (ApplicationId appId : proxies.keySet()) {
+      discardProxy(appId);
+    }
+  }
+
+  /**
+   * A proxy and the AM address it is bonded to
+   */
+  private static final class BondedProxy {
+    private final String address;
+    private final HoyaClusterProtocol proxy;
+
+    private BondedProxy(String address, HoyaClusterProtocol proxy) {
+      this.address = address;
+      this.proxy = proxy;
+    }
+  }
+
+  /**
+   * Fetch the status of one cluster
+   */
+  private final class Fetch implements Callable<ClusterDescription> {
+    private final ApplicationReport app;
+
+    /**
+     * Time the fetch started; 0 while it is queued
+     */
+    private volatile long started;
+
+    private Fetch(ApplicationReport app) {
+      this.app = app;
+    }
+
+    @Override
+    public ClusterDescription call() throws Exception {
+      started = System.currentTimeMillis();
+      try {
+        HoyaClusterProtocol proxy = getProxy(app);
+        return new HoyaClusterOperations(proxy).getClusterDescription();
+      } catch (InterruptedException e) {
+        throw (IOException) new InterruptedIOException(
+          "Interrupted fetching the status of " + app.getName()).initCause(e);
+      } catch (IOException e) {
+        log.debug("Failed to get the status of {}: {}", app.getName(), e);
+        discardProxy(app.getApplicationId());
+        throw e;
+      }
+    }
+  }
+}
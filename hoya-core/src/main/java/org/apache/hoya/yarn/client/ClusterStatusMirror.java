@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.client;
+
+import org.apache.hoya.api.ClusterNode;
+import org.apache.hoya.api.proto.Messages;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A client-side copy of the live role instances and role counters of a
+ * cluster, kept up to date by applying the changes returned by
+ * {@link HoyaClusterOperations#updateStatusMirror(ClusterStatusMirror)}.
+ *
+ * This is not thread safe.
+ */
+public class ClusterStatusMirror {
+
+  private long epoch;
+  private long sequence;
+  private final Map<String, ClusterNode> nodes =
+    new HashMap<String, ClusterNode>();
+  private final Map<String, Messages.RoleStatusState> roles =
+    new HashMap<String, Messages.RoleStatusState>();
+
+  /**
+   * Get the epoch of the AM the mirror was last updated from
+   * @return the epoch, or 0 if the mirror has never been updated
+   */
+  public long getEpoch() {
+    return epoch;
+  }
+
+  /**
+   * Get the sequence number of the last update applied
+   * @return the sequence number
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * Apply the changes from the AM
+   * @param delta changes
+   * @return true if anything changed
+   */
+  public boolean apply(Messages.GetClusterStatusDeltaResponseProto delta) {
+    boolean changed = delta.getFull()
+                      || delta.getUpdatedCount() > 0
+                      || delta.getRemovedCount() > 0
+                      || delta.getRolesCount() > 0;
+    if (delta.getFull()) {
+      nodes.clear();
+      roles.clear();
+    }
+    for (Messages.RoleInstanceState state : delta.getUpdatedList()) {
+      nodes.put(state.getName(), ClusterNode.fromProtobuf(state));
+    }
+    for (String name : delta.getRemovedList()) {
+      nodes.remove(name);
+    }
+    for (Messages.RoleStatusState state : delta.getRolesList()) {
+      roles.put(state.getName(), state);
+    }
+    epoch = delta.getEpoch();
+    sequence = delta.getSequence();
+    return changed;
+  }
+
+  /**
+   * Get the live nodes, by container name
+   * @return an unmodifiable map
+   */
+  public Map<String, ClusterNode> getNodes() {
+    return Collections.unmodifiableMap(nodes);
+  }
+
+  /**
+   * Get the live nodes in a role
+   * @param role role name
+   * @return a possibly empty list
+   */
+  public List<ClusterNode> getNodesInRole(String role) {
+    List<ClusterNode> inRole = new ArrayList<ClusterNode>();
+    for (ClusterNode node : nodes.values()) {
+      if (role.equals(node.role)) {
+        inRole.add(node);
+      }
+    }
+    return inRole;
+  }
+
+  /**
+   * Get the role counters, by role name
+   * @return an unmodifiable map
+   */
+  public Map<String, Messages.RoleStatusState> getRoles() {
+    return Collections.unmodifiableMap(roles);
+  }
+
+  @Override
+  public String toString() {
+    return "ClusterStatusMirror{epoch=" + epoch +
+           ", sequence=" + sequence +
+           ", nodes=" + nodes.size() +
+           ", roles=" + roles.size() +
+           '}';
+  }
+}
@@ -73,6 +73,8 @@ import org.apache.hoya.tools.Duration;
 import org.apache.hoya.tools.HoyaFileSystem;
 import org.apache.hoya.tools.HoyaUtils;
 import org.apache.hoya.tools.HoyaVersionInfo;
+import org.apache.hoya.tools.JarCache;
+import org.apache.hoya.tools.LaunchFingerprint;
 import org.apache.hoya.yarn.Arguments;
 import org.apache.hoya.yarn.HoyaActions;
 import org.apache.hoya.yarn.appmaster.rpc.RpcBinder;
@@ -104,11 +106,13 @@ import java.net.URI;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Client service for Hoya
@@ -143,6 +147,11 @@ public class HoyaClient extends CompoundLaunchedService implements RunService,
   private HoyaYarnClientImpl yarnClient;
   private URI filesystemURL;
 
+  /**
+   * Collector of the status of many clusters; created on demand
+   */
+  private ClusterStatusCollector statusCollector;
+
   /**
    * Constructor
    */
@@ -193,6 +202,17 @@ public class HoyaClient extends CompoundLaunchedService implements RunService,
 
   }
 
+  @Override
+  protected void serviceStop() throws Exception {
+    synchronized (this) {
+      if (statusCollector != null) {
+        statusCollector.close();
+        statusCollector = null;
+      }
+    }
+    super.serviceStop();
+  }
+
   /**
    * this is where the work is done.
    * @return the exit code
@@ -244,7 +264,8 @@ public class HoyaClient extends CompoundLaunchedService implements RunService,
       if (!isUnset(clusterName)) {
         HoyaUtils.validateClusterName(clusterName);
       }
-      exitCode = actionList(clusterName);
+      exitCode = actionList(clusterName,
+                            serviceArgs.getActionListArgs().status);
     } else if (HoyaActions.ACTION_STATUS.equals(action)) {
       
       exitCode = actionStatus(clusterName,
@@ -634,42 +655,93 @@ public class HoyaClient extends CompoundLaunchedService implements RunService,
                                  ClusterDescription clusterSpec,
                                  LaunchArgsAccessor launchArgs)
       throws YarnException, IOException {
+    return executeClusterStart(clusterDirectory, clusterSpec, launchArgs,
+                               false, System.currentTimeMillis());
+  }
+
+  /**
+   * Create a cluster to the specification.
+   *
+   * When thawing a cluster whose specification, client configuration
+   * and configuration directories are unchanged since its last full
+   * launch, the launch takes a fast path: the validation of the
+   * specification and its paths, the copy of the configuration
+   * directory and the preflight checks were all done by that launch,
+   * so they are skipped.
+   *
+   * @param clusterSpec cluster specification
+   * @param launchArgs
+   * @param thawing is this a thaw of a cluster whose liveness has
+   * already been checked
+   * @param started time the operation started, for the launch timings
+   * @return the exit code from the operation
+   */
+  private int executeClusterStart(Path clusterDirectory,
+                                  ClusterDescription clusterSpec,
+                                  LaunchArgsAccessor launchArgs,
+                                  boolean thawing,
+                                  long started)
+      throws YarnException, IOException {
 
     // verify that a live cluster isn't there;
     String clustername = clusterSpec.name;
     deployedClusterName = clustername;
     HoyaUtils.validateClusterName(clustername);
-    verifyNoLiveClusters(clustername);
+    if (!thawing) {
+      verifyNoLiveClusters(clustername);
+    }
     Configuration config = getConfig();
     boolean clusterSecure = HoyaUtils.isClusterSecure(config);
+
+    // fingerprint the launch before anything is patched or generated
+    String inputDigest = LaunchFingerprint.digestOf(clusterSpec, config);
+    boolean fastPath = false;
+    if (thawing && config.getBoolean(HoyaXmlConfKeys.KEY_THAW_FAST_PATH,
+                                     HoyaXmlConfKeys.DEFAULT_THAW_FAST_PATH)) {
+      String fingerprint = LaunchFingerprint.build(
+        hoyaFileSystem.getFileSystem(), clusterSpec, inputDigest);
+      fastPath = fingerprint.equals(
+        hoyaFileSystem.loadLaunchFingerprint(clusterDirectory));
+      log.debug("Launch fingerprint {}; fast path={}", fingerprint, fastPath);
+    }
     
     //create the Hoya AM provider -this helps set up the AM
     HoyaAMClientProvider hoyaAM = new HoyaAMClientProvider(config);
     // cluster Provider
     ClientProvider provider = createClientProvider(clusterSpec);
-    // make sure the conf dir is valid;
 
-    Path generatedConfDirPath =
-      createPathThatMustExist(clusterSpec.generatedConfigurationPath);
-    Path snapshotConfPath =
-      createPathThatMustExist(clusterSpec.originConfigurationPath);
-
-    // now build up the image path
-    // TODO: consider supporting apps that don't have an image path
+    Path generatedConfDirPath;
+    Path snapshotConfPath;
     Path imagePath;
     String csip = clusterSpec.getImagePath();
-    if (!isUnset(csip)) {
-      imagePath = createPathThatMustExist(csip);
+    if (fastPath) {
+      log.info("Cluster {} is unchanged since its last launch:"
+               + " skipping validation", clustername);
+      generatedConfDirPath = new Path(clusterSpec.generatedConfigurationPath);
+      snapshotConfPath = new Path(clusterSpec.originConfigurationPath);
+      imagePath = isUnset(csip) ? null : new Path(csip);
     } else {
-      imagePath = null;
-      if (isUnset(clusterSpec.getApplicationHome())) {
-        throw new BadClusterStateException(NO_IMAGE_OR_HOME_DIR_SPECIFIED);
+      // make sure the conf dir is valid;
+      generatedConfDirPath =
+        createPathThatMustExist(clusterSpec.generatedConfigurationPath);
+      snapshotConfPath =
+        createPathThatMustExist(clusterSpec.originConfigurationPath);
+
+      // now build up the image path
+      // TODO: consider supporting apps that don't have an image path
+      if (!isUnset(csip)) {
+        imagePath = createPathThatMustExist(csip);
+      } else {
+        imagePath = null;
+        if (isUnset(clusterSpec.getApplicationHome())) {
+          throw new BadClusterStateException(NO_IMAGE_OR_HOME_DIR_SPECIFIED);
+        }
       }
-    }
 
-    // final specification review
-    hoyaAM.validateClusterSpec(clusterSpec);
-    provider.validateClusterSpec(clusterSpec);
+      // final specification review
+      hoyaAM.validateClusterSpec(clusterSpec);
+      provider.validateClusterSpec(clusterSpec);
+    }
 
     // do a quick dump of the values first
     if (log.isDebugEnabled()) {
@@ -693,6 +765,12 @@ public class HoyaClient extends CompoundLaunchedService implements RunService,
     }
 
     hoyaFileSystem.purgeHoyaAppInstanceTempFiles(clustername);
+    try {
+      hoyaFileSystem.pruneJarCache();
+    } catch (IOException e) {
+      log.warn("Failed to prune the JAR cache: {}", e.toString());
+      log.debug("JAR cache pruning failure", e);
+    }
     Path tempPath = hoyaFileSystem.createHoyaAppInstanceTempPath(
             clustername,
             appId.toString()+"/am");
@@ -764,9 +842,11 @@ public class HoyaClient extends CompoundLaunchedService implements RunService,
     Configuration clientConfExtras = new Configuration(false);
 
     // then build up the generated path.
-    FsPermission clusterPerms = getClusterDirectoryPermissions(config);
-    HoyaUtils.copyDirectory(config, snapshotConfPath, generatedConfDirPath,
-                            clusterPerms);
+    if (!fastPath) {
+      FsPermission clusterPerms = getClusterDirectoryPermissions(config);
+      HoyaUtils.copyDirectory(config, snapshotConfPath, generatedConfDirPath,
+                              clusterPerms);
+    }
 
 
     // add AM and provider specific artifacts to the resource map
@@ -795,22 +875,24 @@ public class HoyaClient extends CompoundLaunchedService implements RunService,
 
     // now that the site config is fully generated, the provider gets
     // to do a quick review of them.
-    log.debug("Preflight validation of cluster configuration");
+    if (!fastPath) {
+      log.debug("Preflight validation of cluster configuration");
 
-    hoyaAM.preflightValidateClusterConfiguration(hoyaFileSystem, clustername, config,
-                                                 clusterSpec,
-                                                 clusterDirectory,
-                                                 generatedConfDirPath,
-                                                 clusterSecure
-                                                );
-
-    provider.preflightValidateClusterConfiguration(hoyaFileSystem, clustername, config,
+      hoyaAM.preflightValidateClusterConfiguration(hoyaFileSystem, clustername, config,
                                                    clusterSpec,
                                                    clusterDirectory,
                                                    generatedConfDirPath,
                                                    clusterSecure
                                                   );
 
+      provider.preflightValidateClusterConfiguration(hoyaFileSystem, clustername, config,
+                                                     clusterSpec,
+                                                     clusterDirectory,
+                                                     generatedConfDirPath,
+                                                     clusterSecure
+                                                    );
+    }
+
 
     // now add the image if it was set
     if (hoyaFileSystem.maybeAddImagePath(localResources, imagePath)) {
@@ -932,6 +1014,19 @@ public class HoyaClient extends CompoundLaunchedService implements RunService,
     log.info("Completed setting up app master command {}", cmdStr);
 
     amContainer.setCommands(commands);
+    // pass down the launch timings
+    long now = System.currentTimeMillis();
+    env.put(ENV_LAUNCH_PREPARE_MILLIS, Long.toString(now - started));
+    env.put(ENV_LAUNCH_SUBMIT_TIME, Long.toString(now));
+    env.put(ENV_LAUNCH_FAST_PATH, Boolean.toString(fastPath));
+    //the AM keeps its cached JARs from being pruned while it runs
+    JarCache jarCache = hoyaFileSystem.getJarCache();
+    if (jarCache != null) {
+      List<Path> cacheEntries = jarCache.getEntries(localResources.values());
+      if (!cacheEntries.isEmpty()) {
+        env.put(ENV_JAR_CACHE_ENTRIES, HoyaUtils.join(cacheEntries, ","));
+      }
+    }
     //fix the env variables
     amContainer.setEnvironment(env);
     // Set up resource type requirements
@@ -977,6 +1072,14 @@ public class HoyaClient extends CompoundLaunchedService implements RunService,
     // submit the application
     applicationId = yarnClient.submitApplication(submissionContext);
 
+    if (!fastPath) {
+      // record what was launched, so an unchanged cluster can be
+      // thawed without repeating the work
+      hoyaFileSystem.saveLaunchFingerprint(clusterDirectory,
+        LaunchFingerprint.build(hoyaFileSystem.getFileSystem(), clusterSpec,
+                                inputDigest));
+    }
+
     int exitCode;
     // wait for the submit state to be reached
     ApplicationReport report = monitorAppToState(new Duration(ACCEPT_TIME),
@@ -1245,9 +1348,25 @@ public class HoyaClient extends CompoundLaunchedService implements RunService,
    */
   @VisibleForTesting
   public int actionList(String clustername) throws IOException, YarnException {
+    return actionList(clustername, false);
+  }
+
+  /**
+   * Implement the list action: list all nodes, optionally fetching
+   * the status of every running cluster
+   * @param clustername cluster to list; null or "" for all of them
+   * @param status fetch the status of every running cluster
+   * @return exit code of 0 if a list was created
+   */
+  public int actionList(String clustername, boolean status) throws
+                                                           IOException,
+                                                           YarnException {
     verifyManagerSet();
 
     String user = UserGroupInformation.getCurrentUser().getUserName();
+    if (status && isUnset(clustername)) {
+      return listClusterStatus(user);
+    }
     List<ApplicationReport> instances = listHoyaInstances(user);
 
     if (clustername == null || clustername.isEmpty()) {
@@ -1272,6 +1391,78 @@ public class HoyaClient extends CompoundLaunchedService implements RunService,
     }
   }
 
+  /**
+   * Log the status of every running cluster of a user as it arrives
+   * @param user user: "" means all users
+   * @return exit code of 0 if every status was fetched
+   */
+  private int listClusterStatus(String user) throws IOException,
+                                                    YarnException {
+    List<ApplicationReport> instances =
+      yarnClient.listHoyaInstances(user,
+                                   EnumSet.of(YarnApplicationState.RUNNING));
+    log.info("Running Hoya instances for {}: {}",
+             (user != null ? user : "all users"),
+             instances.size());
+    final AtomicInteger failures = new AtomicInteger();
+    collectClusterStatus(instances,
+                         new ClusterStatusCollector.StatusListener() {
+      @Override
+      public void statusReceived(ApplicationReport app,
+                                 ClusterDescription status) {
+        StringBuilder roles = new StringBuilder();
+        for (String role : status.getRoleNames()) {
+          roles.append(' ').append(role).append('=')
+               .append(status.getActualInstanceCount(role)).append('/')
+               .append(status.getDesiredInstanceCount(role, 0));
+        }
+        log.info("{} {}{}", app.getName(), app.getApplicationId(), roles);
+      }
+
+      @Override
+      public void statusFailed(ApplicationReport app, Exception failure) {
+        failures.incrementAndGet();
+        log.warn("{} {} no status: {}", app.getName(), app.getApplicationId(),
+                 failure.toString());
+        log.debug("Status failure", failure);
+      }
+    });
+    return failures.get() == 0 ? EXIT_SUCCESS : EXIT_CONNECTIVITY_PROBLEM;
+  }
+
+  /**
+   * Fetch the status of many clusters in parallel, handing each to the
+   * listener as it arrives. The proxies to the AMs are retained for
+   * the next call.
+   * @param instances application reports of the clusters
+   * @param listener listener for the statuses
+   * @return the number of statuses received
+   * @throws HoyaException if interrupted
+   */
+  public int collectClusterStatus(Collection<ApplicationReport> instances,
+                                  ClusterStatusCollector.StatusListener listener)
+    throws HoyaException {
+    ClusterStatusCollector collector;
+    synchronized (this) {
+      if (statusCollector == null) {
+        Configuration conf = getConfig();
+        statusCollector = new ClusterStatusCollector(conf,
+          conf.getInt(HoyaXmlConfKeys.KEY_CLIENT_STATUS_PARALLELISM,
+                      HoyaXmlConfKeys.DEFAULT_CLIENT_STATUS_PARALLELISM),
+          conf.getInt(HoyaXmlConfKeys.KEY_CLIENT_STATUS_TIMEOUT,
+                      HoyaXmlConfKeys.DEFAULT_CLIENT_STATUS_TIMEOUT));
+      }
+      collector = statusCollector;
+    }
+    try {
+      return collector.collect(instances, listener);
+    } catch (InterruptedException e) {
+      throw new HoyaException(HoyaExitCodes.EXIT_TIMED_OUT,
+                              e,
+                              "Interrupted collecting cluster status");
+    }
+  }
+
   /**
    * Log the application report at INFO
    * @param report report to log
@@ -1690,11 +1881,12 @@ public class HoyaClient extends CompoundLaunchedService implements RunService,
     HoyaUtils.validateClusterName(clustername);
     // see if it is actually running and bail out;
     verifyManagerSet();
+    long started = System.currentTimeMillis();
     verifyNoLiveClusters(clustername);
 
 
     //start the cluster
-    return startCluster(clustername, thaw);
+    return startCluster(clustername, thaw, true, started);
   }
 
   /**
@@ -1711,12 +1903,30 @@ public class HoyaClient extends CompoundLaunchedService implements RunService,
   private int startCluster(String clustername, LaunchArgsAccessor launchArgs) throws
                                                YarnException,
                                                IOException {
+    return startCluster(clustername, launchArgs, false,
+                        System.currentTimeMillis());
+  }
+
+  /**
+   * Load and start a cluster specification.
+   * @param clustername name of the cluster.
+   * @param launchArgs
+   * @param thawing is this a thaw which has already checked that
+   * the cluster is not live
+   * @param started time the operation started
+   * @return the exit code
+   */
+  private int startCluster(String clustername,
+                           LaunchArgsAccessor launchArgs,
+                           boolean thawing,
+                           long started) throws YarnException, IOException {
     Path clusterSpecPath = locateClusterSpecification(clustername);
 
     ClusterDescription clusterSpec = hoyaFileSystem.loadAndValidateClusterSpec(clusterSpecPath);
     Path clusterDirectory = hoyaFileSystem.buildHoyaClusterDirPath(clustername);
 
-    return executeClusterStart(clusterDirectory, clusterSpec, launchArgs);
+    return executeClusterStart(clusterDirectory, clusterSpec, launchArgs,
+                               thawing, started);
   }
 
   /**
@@ -1867,8 +2077,7 @@ public class HoyaClient extends CompoundLaunchedService implements RunService,
   }
 
   /**
-   * List all nodes in a role. This is a double round trip: once to list
-   * the nodes in a role, another to get their details
+   * List all nodes in a role
    * @param role
    * @return an array of ContainerNode instances
    * @throws IOException
@@ -119,6 +119,41 @@ public class HoyaClusterOperations {
     }
   }
 
+  /**
+   * Get the changes to the live nodes and role counters since a previous
+   * call
+   * @param epoch epoch of the previous response; 0 for none
+   * @param since sequence number of the previous response
+   * @return the changes, or the full status if the AM cannot
+   * work out the changes
+   * @throws YarnException
+   * @throws IOException
+   */
+  public Messages.GetClusterStatusDeltaResponseProto getClusterStatusDelta(
+      long epoch, long since) throws YarnException, IOException {
+    Messages.GetClusterStatusDeltaRequestProto req =
+      Messages.GetClusterStatusDeltaRequestProto.newBuilder()
+              .setEpoch(epoch)
+              .setSince(since)
+              .build();
+    return appMaster.getClusterStatusDelta(req);
+  }
+
+  /**
+   * Bring a mirror of the cluster status up to date, fetching only
+   * what has changed since its last update
+   * @param mirror mirror to update
+   * @return true if anything changed
+   * @throws YarnException
+   * @throws IOException
+   */
+  public boolean updateStatusMirror(ClusterStatusMirror mirror) throws
+                                                                YarnException,
+                                                                IOException {
+    return mirror.apply(
+      getClusterStatusDelta(mirror.getEpoch(), mirror.getSequence()));
+  }
+
   /**
    * Kill a container
    * @param id container ID
@@ -168,27 +203,52 @@ public class HoyaClusterOperations {
   }
 
   /**
-   * List all nodes in a role. This is a double round trip: once to list
-   * the nodes in a role, another to get their details
-   * @param role
-   * @return an array of ContainerNode instances
+   * List all nodes in a role, in a single round trip
+   * @param role role name or "" for all
+   * @return a list of ContainerNode instances, in order of their UUIDs
    * @throws IOException
    * @throws YarnException
    */
   public List<ClusterNode> listClusterNodesInRole(String role) throws
                                                                IOException,
                                                                YarnException {
-
-    Collection<String> uuidList = innerListNodeUUIDSByRole(role);
-    Messages.GetClusterNodesRequestProto req =
-      Messages.GetClusterNodesRequestProto
-              .newBuilder()
-              .addAllUuid(uuidList)
-              .build();
-    Messages.GetClusterNodesResponseProto resp = appMaster.getClusterNodes(req);
+    Messages.ListClusterNodesResponseProto resp =
+      listClusterNodes(role, -1, null, 0, 0);
     return convertNodeWireToClusterNodes(resp.getClusterNodeList());
   }
 
+  /**
+   * List a page of the live nodes matching a filter, in order of their UUIDs
+   * @param role role name; "" or null for all
+   * @param state state to match; -1 for any
+   * @param host host to match; null for any
+   * @param offset index of the first match to return
+   * @param limit maximum number of nodes to return; 0 for no limit
+   * @return the page of nodes and the total number of matches
+   * @throws IOException
+   * @throws YarnException
+   */
+  public Messages.ListClusterNodesResponseProto listClusterNodes(String role,
+                                                                 int state,
+                                                                 String host,
+                                                                 int offset,
+                                                                 int limit) throws
+                                                                            IOException,
+                                                                            YarnException {
+    Messages.ListClusterNodesRequestProto.Builder builder =
+      Messages.ListClusterNodesRequestProto.newBuilder()
+              .setState(state)
+              .setOffset(offset)
+              .setLimit(limit);
+    if (role != null) {
+      builder.setRole(role);
+    }
+    if (host != null) {
+      builder.setHost(host);
+    }
+    return appMaster.listClusterNodes(builder.build());
+  }
+
   /**
    * Get the details on a list of uuids
    * @param uuids
@@ -210,13 +270,38 @@ public class HoyaClusterOperations {
     return convertNodeWireToClusterNodes(resp.getClusterNodeList());
   }
 
+  /**
+   * Block in the AM until a role has a number of live instances, the
+   * application state changes from a version, or a timeout
+   * @param role role to count; null to wait only for a state change
+   * @param count number of live instances to wait for
+   * @param stateVersion state version to wait for a change from; -1 for none
+   * @param timeout time to wait in millis. The AM may return earlier.
+   * @return the response
+   * @throws IOException
+   * @throws YarnException
+   */
+  public Messages.WaitForClusterStateResponseProto waitForClusterState(
+      String role, int count, long stateVersion, long timeout) throws
+                                                               IOException,
+                                                               YarnException {
+    Messages.WaitForClusterStateRequestProto.Builder builder =
+      Messages.WaitForClusterStateRequestProto.newBuilder()
+              .setCount(count)
+              .setStateVersion(stateVersion)
+              .setTimeout((int) Math.min(timeout, Integer.MAX_VALUE));
+    if (role != null) {
+      builder.setRole(role);
+    }
+    return appMaster.waitForClusterState(builder.build());
+  }
+
   /**
    * Wait for an instance of a named role to be live (or past it in the lifecycle)
-   * @param clustername cluster
    * @param role role to look for
    * @param timeout time to wait
-   * @return the state. If still in CREATED, the cluster didn't come up
-   * in the time period. If LIVE, all is well. If >LIVE, it has shut for a reason
+   * @return the state of the instance. If LIVE, all is well.
+   * If >LIVE, it has shut for a reason
    * @throws IOException IO
    * @throws HoyaException Hoya
    * @throws WaitTimeoutException if the wait timed out
@@ -224,49 +309,62 @@ public class HoyaClusterOperations {
   @VisibleForTesting
   public int waitForRoleInstanceLive(String role, long timeout)
     throws WaitTimeoutException, IOException, YarnException {
-    Duration duration = new Duration(timeout).start();
-    boolean live = false;
-    int state = ClusterDescription.STATE_CREATED;
-
-    log.info("Waiting {} millis for a live node in role {}", timeout, role);
-    while (!live) {
-      // see if there is a node in that role yet
-      List<String> uuids = innerListNodeUUIDSByRole(role);
-      String[] containers = uuids.toArray(new String[uuids.size()]);
-      int roleCount = containers.length;
-      ClusterNode roleInstance = null;
-      if (roleCount != 0) {
-
-        // if there is, get the node
-        roleInstance = getNode(containers[0]);
-        if (roleInstance != null) {
-          state = roleInstance.state;
-          live = state >= ClusterDescription.STATE_LIVE;
+    waitForRoleInstances(role, 1, timeout);
+    int state = ClusterDescription.STATE_DESTROYED;
+    List<String> uuids = innerListNodeUUIDSByRole(role);
+    if (!uuids.isEmpty()) {
+      try {
+        ClusterNode instance = getNode(uuids.get(0));
+        if (instance != null) {
+          state = instance.state;
         }
+      } catch (NoSuchNodeException e) {
+        //it has gone since it was listed
+        log.debug("Instance {} has gone", uuids.get(0));
       }
-      if (!live) {
-        if (duration.getLimitExceeded()) {
-          throw new WaitTimeoutException(
-            String.format("Timeout after %d millis" +
-                          " waiting for a live instance of type %s; " +
-                          "instances found %d %s",
-                          timeout, role, roleCount,
-                          (roleInstance != null
-                           ? (" instance -\n" + roleInstance.toString())
-                           : "")
-                         ));
-        } else {
-          try {
-            Thread.sleep(1000);
-          } catch (InterruptedException ignored) {
-            // ignored
-          }
+    }
+    return state;
+  }
+
+  /**
+   * Wait for a role to have a number of live instances. The wait is
+   * done in the AM, which replies as soon as the instances are live.
+   * @param role role to look for
+   * @param count number of live instances to wait for
+   * @param timeout time to wait
+   * @return the number of live instances
+   * @throws IOException IO
+   * @throws WaitTimeoutException if the wait timed out
+   */
+  public int waitForRoleInstances(String role, int count, long timeout)
+    throws WaitTimeoutException, IOException, YarnException {
+    Duration duration = new Duration(timeout).start();
+    log.info("Waiting {} millis for {} live node(s) in role {}",
+             timeout, count, role);
+    while (true) {
+      Messages.WaitForClusterStateResponseProto response =
+        waitForClusterState(role, count, -1, duration.getRemaining());
+      if (response.getSatisfied()) {
+        return response.getLive();
+      }
+      if (duration.getLimitExceeded()) {
+        throw new WaitTimeoutException(
+          String.format("Timeout after %d millis" +
+                        " waiting for %d live instance(s) of type %s; " +
+                        "instances found %d",
+                        timeout, count, role, response.getLive()));
+      }
+      if (response.getBusy()) {
+        //the AM is not accepting any more waiting callers; poll instead
+        try {
+          Thread.sleep(Math.min(1000, duration.getRemaining()));
+        } catch (InterruptedException ignored) {
+          // ignored
         }
       }
     }
-    return state;
   }
-  
+
   public boolean flex(ClusterDescription clusterSpec) throws IOException, YarnException {
     Messages.FlexClusterRequestProto request =
       Messages.FlexClusterRequestProto.newBuilder()
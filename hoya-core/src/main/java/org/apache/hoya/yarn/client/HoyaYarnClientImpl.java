@@ -41,6 +41,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -54,6 +55,24 @@ public class HoyaYarnClientImpl extends YarnClientImpl {
   protected static final Logger
     log = LoggerFactory.getLogger(HoyaYarnClientImpl.class);
 
+  /**
+   * First interval between application reports when monitoring an
+   * application: {@value}
+   */
+  public static final int MONITOR_INITIAL_INTERVAL = 50;
+
+  /**
+   * Longest interval between application reports when monitoring an
+   * application: {@value}
+   */
+  public static final int MONITOR_MAX_INTERVAL = 1000;
+
+  /**
+   * The application states in which an application is considered live
+   */
+  public static final EnumSet<YarnApplicationState> LIVE_STATES =
+    EnumSet.range(YarnApplicationState.NEW, YarnApplicationState.RUNNING);
+
   /**
    * Get the RM Client RPC interface
    * @return an RPC interface valid after initialization and authentication
@@ -70,9 +89,24 @@ public class HoyaYarnClientImpl extends YarnClientImpl {
    */
   public List<ApplicationReport> listHoyaInstances(String user)
     throws YarnException, IOException {
+    return listHoyaInstances(user, null);
+  }
+
+  /**
+   * List Hoya instances belonging to a specific user in any of a set of
+   * states. The application type and states are filtered on in the RM.
+   * @param user user: "" means all users
+   * @param states states to match; null for all
+   * @return a possibly empty list of Hoya AMs
+   */
+  public List<ApplicationReport> listHoyaInstances(String user,
+                                                   EnumSet<YarnApplicationState> states)
+    throws YarnException, IOException {
     Set<String> types = new HashSet<String>(1);
     types.add(HoyaKeys.APP_TYPE);
-    List<ApplicationReport> allApps = getApplications(types);
+    List<ApplicationReport> allApps = states != null
+                                      ? getApplications(types, states)
+                                      : getApplications(types);
     List<ApplicationReport> results = new ArrayList<ApplicationReport>();
     for (ApplicationReport report : allApps) {
       if (user == null || user.equals(report.getUser())) {
@@ -195,6 +229,9 @@ public class HoyaYarnClientImpl extends YarnClientImpl {
               duration.limit,
               desiredState);
     duration.start();
+    //the RM has no way to wait for a state change, so poll it; state
+    //changes often come quickly, so start with short intervals and back off
+    long interval = MONITOR_INITIAL_INTERVAL;
     while (true) {
 
       // Get application report for the appId we are interested in
@@ -218,12 +255,12 @@ public class HoyaYarnClientImpl extends YarnClientImpl {
         return null;
       }
 
-      // sleep 1s.
       try {
-        Thread.sleep(1000);
+        Thread.sleep(Math.min(interval, Math.max(1, duration.getRemaining())));
       } catch (InterruptedException ignored) {
         log.debug("Thread sleep in monitoring loop interrupted");
       }
+      interval = Math.min(interval * 2, MONITOR_MAX_INTERVAL);
     }
   }
 
@@ -238,7 +275,7 @@ public class HoyaYarnClientImpl extends YarnClientImpl {
                                                       String appname) throws
                                                                       YarnException,
                                                                       IOException {
-    List<ApplicationReport> instances = listHoyaInstances(user);
+    List<ApplicationReport> instances = listHoyaInstances(user, LIVE_STATES);
     List<ApplicationReport> results =
       new ArrayList<ApplicationReport>(instances.size());
     for (ApplicationReport app : instances) {
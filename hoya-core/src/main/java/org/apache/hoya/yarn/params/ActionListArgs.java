@@ -18,6 +18,7 @@
 
 package org.apache.hoya.yarn.params;
 
+import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
 import org.apache.hoya.yarn.HoyaActions;
 
@@ -26,6 +27,10 @@ import org.apache.hoya.yarn.HoyaActions;
 
 public class ActionListArgs extends AbstractActionArgs {
 
+  @Parameter(names = {ARG_STATUS},
+             description = "fetch the status of every running cluster")
+  public boolean status;
+
   /**
    * Get the min #of params expected
    * @return the min number of params in the {@link #parameters} field
@@ -23,6 +23,7 @@ import org.apache.hadoop.service.AbstractService;
 import org.apache.hadoop.service.ServiceStateException;
 import org.apache.hadoop.yarn.service.launcher.ExitCodeProvider;
 import org.apache.hadoop.yarn.service.launcher.ServiceLaunchException;
+import org.apache.hoya.HoyaXmlConfKeys;
 import org.apache.hoya.exceptions.HoyaException;
 import org.apache.hoya.exec.ApplicationEventHandler;
 import org.apache.hoya.exec.RunLongLivedApp;
@@ -123,6 +124,15 @@ public class ForkedProcessService extends AbstractService implements
     this.environment = environment;
     process = new RunLongLivedApp(log, commands);
     process.setApplicationEventHandler(this);
+    Configuration conf = getConfig();
+    if (conf != null) {
+      process.setRecentLineLimit(
+        conf.getInt(HoyaXmlConfKeys.KEY_PROCESS_RECENT_LINE_LIMIT,
+                    RunLongLivedApp.RECENT_LINE_LOG_LIMIT));
+      process.setLineLengthLimit(
+        conf.getInt(HoyaXmlConfKeys.KEY_PROCESS_LINE_LENGTH_LIMIT,
+                    RunLongLivedApp.LINE_LENGTH_LIMIT));
+    }
     //set the env variable mapping
     process.putEnvMap(environment);
   }
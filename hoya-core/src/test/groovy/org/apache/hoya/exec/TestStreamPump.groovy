@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.hoya.exec
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hoya.yarn.HoyaTestBase
+import org.junit.Test
+import org.slf4j.helpers.NOPLogger
+
+/**
+ * Test the pumping of process output, and measure its throughput
+ */
+@CompileStatic
+@Slf4j
+class TestStreamPump extends HoyaTestBase {
+
+  public static final long BENCHMARK_BYTES = 100L * 1024 * 1024
+  public static final String SYNTHETIC_LINE =
+      "synthetic process output 0123456789 abcdefghijklmnopqrstuvwxyz\n"
+
+  /**
+   * A stream of the same line repeated until a byte limit is reached
+   */
+  static class SyntheticOutput extends InputStream {
+    final byte[] block
+    final long limit
+    long position
+
+    SyntheticOutput(String line, int linesPerBlock, long limit) {
+      StringBuilder builder = new StringBuilder()
+      linesPerBlock.times { builder.append(line) }
+      block = builder.toString().getBytes("UTF-8")
+      this.limit = limit
+    }
+
+    @Override
+    int read() throws IOException {
+      if (position >= limit) {
+        return -1
+      }
+      return block[(int) (position++ % block.length)] & 0xff
+    }
+
+    @Override
+    int read(byte[] b, int off, int len) throws IOException {
+      if (position >= limit) {
+        return -1
+      }
+      int offset = (int) (position % block.length)
+      int count = (int) Math.min(Math.min((long) len, limit - position),
+                                 (long) (block.length - offset))
+      System.arraycopy(block, offset, b, off, count)
+      position += count
+      return count
+    }
+  }
+
+  StreamPump pump(String text, RecentLineBuffer recent, int lineLimit) {
+    StreamPump pump = new StreamPump(
+        new ByteArrayInputStream(text.getBytes("UTF-8")),
+        NOPLogger.NOP_LOGGER, false, recent, lineLimit)
+    pump.run()
+    return pump
+  }
+
+  @Test
+  public void testLinesAndPartialLines() throws Throwable {
+    RecentLineBuffer recent = new RecentLineBuffer(10)
+    StreamPump pump = pump("one\ntwo\nthree", recent, 256)
+    assert pump.linesPumped == 3
+    assert recent.lines == ["[OUT] one", "[OUT] two", "[OUT] three"]
+  }
+
+  @Test
+  public void testLongLinesAreSplit() throws Throwable {
+    RecentLineBuffer recent = new RecentLineBuffer(10)
+    pump("abcdefghij\n", recent, 4)
+    assert recent.lines == ["[OUT] abcd", "[OUT] efgh", "[OUT] ij"]
+  }
+
+  @Test
+  public void testLineAtTheLimitIsNotSplit() throws Throwable {
+    RecentLineBuffer recent = new RecentLineBuffer(10)
+    StreamPump pump = pump("abcd\nefgh", recent, 4)
+    assert pump.linesPumped == 2
+    assert recent.lines == ["[OUT] abcd", "[OUT] efgh"]
+  }
+
+  @Test
+  public void testRecentLinesAreBounded() throws Throwable {
+    RecentLineBuffer recent = new RecentLineBuffer(3)
+    StringBuilder text = new StringBuilder()
+    (1..10).each { int i -> text.append("line $i\n") }
+    pump(text.toString(), recent, 256)
+    assert recent.size() == 3
+    assert recent.total == 10
+    assert recent.lines == ["[OUT] line 8", "[OUT] line 9", "[OUT] line 10"]
+  }
+
+  @Test
+  public void testThroughput() throws Throwable {
+    RecentLineBuffer recent = new RecentLineBuffer(
+        RunLongLivedApp.RECENT_LINE_LOG_LIMIT)
+    StreamPump pump = new StreamPump(
+        new SyntheticOutput(SYNTHETIC_LINE, 128, BENCHMARK_BYTES),
+        NOPLogger.NOP_LOGGER, false, recent,
+        RunLongLivedApp.LINE_LENGTH_LIMIT)
+    long start = System.nanoTime()
+    pump.run()
+    long millis = Math.max(1L, (long) ((System.nanoTime() - start) / 1000000))
+    long mb = (long) (BENCHMARK_BYTES / (1024 * 1024))
+    log.info("Pumped $mb MB in ${pump.linesPumped} lines in $millis ms:" +
+             " ${(long) (mb * 1000 / millis)} MB/s")
+    assert pump.charsPumped == BENCHMARK_BYTES
+    long expectedLines = (long) (BENCHMARK_BYTES / SYNTHETIC_LINE.length())
+    assert pump.linesPumped == expectedLines ||
+           pump.linesPumped == expectedLines + 1
+    assert recent.size() == RunLongLivedApp.RECENT_LINE_LOG_LIMIT
+  }
+}
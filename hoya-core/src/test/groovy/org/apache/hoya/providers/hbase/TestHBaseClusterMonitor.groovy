@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hoya.providers.hbase
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hadoop.hbase.ServerName
+import org.apache.hoya.HostAndPort
+import org.junit.Test
+
+/**
+ * Test the parts of the HBase cluster monitor which need no cluster
+ */
+@CompileStatic
+@Slf4j
+class TestHBaseClusterMonitor {
+
+  @Test
+  public void testToHostAndPorts() throws Throwable {
+    assert HBaseClusterMonitor.toHostAndPorts(null).empty
+    assert HBaseClusterMonitor.toHostAndPorts([]).empty
+
+    List<ServerName> servers = [
+        ServerName.valueOf("host1", 60020, 1L),
+        ServerName.valueOf("host2", 60021, 2L)
+    ]
+    Collection<HostAndPort> addresses =
+        HBaseClusterMonitor.toHostAndPorts(servers)
+    assert addresses.size() == 2
+    List<HostAndPort> list = new ArrayList<HostAndPort>(addresses)
+    assert list[0].hostname == "host1"
+    assert list[0].port == 60020
+    assert list[1].hostname == "host2"
+    assert list[1].port == 60021
+    try {
+      addresses.clear()
+      assert false: "collection is modifiable"
+    } catch (UnsupportedOperationException expected) {
+    }
+  }
+
+  @Test
+  public void testDeadServersCached() throws Throwable {
+    HBaseClusterMonitor.DeadServers cache = new HBaseClusterMonitor.DeadServers()
+    assert cache.get() == null
+    Collection<HostAndPort> servers = [new HostAndPort("host1", 60020)]
+    assert cache.store(cache.getGeneration(), servers)
+    assert cache.get().is(servers)
+
+    cache.invalidate()
+    assert cache.get() == null
+  }
+
+  @Test
+  public void testStaleFetchIsNotStored() throws Throwable {
+    HBaseClusterMonitor.DeadServers cache = new HBaseClusterMonitor.DeadServers()
+    long generation = cache.getGeneration()
+    // the cluster changes while the list is being fetched
+    cache.invalidate()
+    assert !cache.store(generation, [new HostAndPort("host1", 60020)])
+    assert cache.get() == null
+
+    // a fetch begun after the change is stored
+    Collection<HostAndPort> current = [new HostAndPort("host2", 60020)]
+    assert cache.store(cache.getGeneration(), current)
+    assert cache.get().is(current)
+  }
+}
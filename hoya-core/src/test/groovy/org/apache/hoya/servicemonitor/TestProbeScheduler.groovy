@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.servicemonitor
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hadoop.conf.Configuration
+import org.apache.hoya.yarn.HoyaTestBase
+import org.junit.After
+import org.junit.Test
+
+import java.lang.management.ManagementFactory
+import java.nio.ByteBuffer
+import java.nio.channels.SelectionKey
+import java.nio.channels.Selector
+import java.nio.channels.ServerSocketChannel
+import java.nio.channels.SocketChannel
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Run the probe scheduler against many local endpoints, logging the
+ * time a cycle of them all takes, and verify that a hung endpoint
+ * does not hold up the others.
+ */
+@CompileStatic
+@Slf4j
+class TestProbeScheduler extends HoyaTestBase {
+
+  public static final int ENDPOINTS = 1000
+  public static final int CYCLES = 3
+  public static final String RESPONSE =
+    "HTTP/1.1 200 OK\r\nContent-Length: 0\r\nConnection: close\r\n\r\n"
+
+  Configuration conf = new Configuration()
+  StandInEndpoints endpoints
+  ProbeScheduler scheduler
+
+  @After
+  public void teardown() {
+    scheduler?.setMustExit()
+    endpoints?.close()
+  }
+
+  /**
+   * Endpoints served by one thread, which answers every connection
+   * with a 200 response and closes it
+   */
+  static class StandInEndpoints implements Runnable, Closeable {
+    final Selector selector = Selector.open()
+    final List<Integer> ports = []
+    final AtomicInteger accepted = new AtomicInteger()
+    final ByteBuffer response = ByteBuffer.wrap(RESPONSE.getBytes("ISO-8859-1"))
+    volatile boolean finished
+    Thread thread
+
+    StandInEndpoints(int count) {
+      count.times {
+        ServerSocketChannel server = ServerSocketChannel.open()
+        server.configureBlocking(false)
+        server.socket().bind(new InetSocketAddress("127.0.0.1", 0), 128)
+        server.register(selector, SelectionKey.OP_ACCEPT)
+        ports << server.socket().localPort
+      }
+      thread = new Thread(this, "stand-in endpoints")
+      thread.daemon = true
+      thread.start()
+    }
+
+    @Override
+    void run() {
+      while (!finished) {
+        selector.select(100)
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator()
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next()
+          keys.remove()
+          SocketChannel channel = ((ServerSocketChannel) key.channel()).accept()
+          if (channel != null) {
+            accepted.incrementAndGet()
+            try {
+              channel.write(response.duplicate())
+            } catch (IOException ignored) {
+              // the port probes close the connection at once
+            } finally {
+              channel.close()
+            }
+          }
+        }
+      }
+      selector.keys().each { SelectionKey key -> key.channel().close() }
+      selector.close()
+    }
+
+    @Override
+    void close() {
+      finished = true
+      thread.join(10000)
+    }
+  }
+
+  /**
+   * Report handler which counts events
+   */
+  static class RecordingReportHandler implements ProbeReportHandler {
+    final AtomicInteger results = new AtomicInteger()
+    final AtomicInteger failures = new AtomicInteger()
+    final AtomicInteger timeouts = new AtomicInteger()
+    final List<Long> cycleTimes = Collections.synchronizedList(new ArrayList<Long>())
+    final CountDownLatch cyclesLatch
+    final CountDownLatch failureLatch = new CountDownLatch(1)
+    final long started = System.currentTimeMillis()
+
+    RecordingReportHandler(int cycles) {
+      cyclesLatch = new CountDownLatch(cycles)
+    }
+
+    void probeProcessStateChange(ProbePhase probePhase) {}
+
+    void probeResult(ProbePhase phase, ProbeStatus status) {
+      results.incrementAndGet()
+    }
+
+    void probeFailure(ProbeFailedException exception) {
+      failures.incrementAndGet()
+      failureLatch.countDown()
+    }
+
+    void probeBooted(ProbeStatus status) {}
+
+    boolean commence(String name, String description) {
+      return true
+    }
+
+    void unregister() {}
+
+    void heartbeat(ProbeStatus status) {}
+
+    void probeTimedOut(ProbePhase currentPhase,
+                       Probe probe,
+                       ProbeStatus lastStatus,
+                       long currentTime) {
+      timeouts.incrementAndGet()
+    }
+
+    void liveProbeCycleCompleted() {
+      cycleTimes << System.currentTimeMillis() - started
+      cyclesLatch.countDown()
+    }
+  }
+
+  void assumeEnoughFileDescriptors(int needed) {
+    def os = ManagementFactory.operatingSystemMXBean
+    if (os instanceof com.sun.management.UnixOperatingSystemMXBean) {
+      long max = ((com.sun.management.UnixOperatingSystemMXBean) os).maxFileDescriptorCount
+      assume(max >= needed, "Only $max file descriptors available")
+    }
+  }
+
+  ProbeScheduler startScheduler(List<Probe> probes,
+                                int interval,
+                                int timeout,
+                                ProbeReportHandler handler) {
+    scheduler = new ProbeScheduler(probes, null, interval, timeout, -1)
+    scheduler.reportHandler = handler
+    scheduler.init()
+    Thread thread = new Thread(scheduler, "probe scheduler")
+    thread.daemon = true
+    thread.start()
+    return scheduler
+  }
+
+  @Test
+  public void testManyEndpoints() throws Throwable {
+    assumeEnoughFileDescriptors(ENDPOINTS * 4)
+    endpoints = new StandInEndpoints(ENDPOINTS)
+    List<Probe> probes = []
+    endpoints.ports.eachWithIndex { Integer port, int i ->
+      if (i % 2 == 0) {
+        probes << new PortProbe("127.0.0.1", port, 5000, "$i", conf)
+      } else {
+        probes << new HttpProbe(new URL("http://127.0.0.1:$port/"), 5000,
+                                200, 200, conf)
+      }
+    }
+
+    // time a sequential pass, as the probe worker makes
+    long start = System.currentTimeMillis()
+    probes.each { Probe probe ->
+      assert probe.ping(true).success
+    }
+    long sequential = System.currentTimeMillis() - start
+
+    RecordingReportHandler handler = new RecordingReportHandler(CYCLES)
+    int interval = 200
+    startScheduler(probes, interval, 5000, handler)
+    assert handler.cyclesLatch.await(60, TimeUnit.SECONDS)
+    List<Long> times = new ArrayList<Long>(handler.cycleTimes)
+    log.info("Sequential pass of $ENDPOINTS endpoints: $sequential ms")
+    log.info("Scheduled cycles of $ENDPOINTS endpoints with an interval" +
+             " of $interval ms completed at $times ms")
+    assert handler.failures.get() == 0
+    assert handler.timeouts.get() == 0
+    assert handler.results.get() >= ENDPOINTS * CYCLES
+  }
+
+  @Test
+  public void testHungEndpointDoesNotBlockOthers() throws Throwable {
+    endpoints = new StandInEndpoints(1)
+    // a listening socket which is never accepted from: connections
+    // complete, but no response ever comes
+    ServerSocket hung = new ServerSocket(0, 10, InetAddress.getByName("127.0.0.1"))
+    try {
+      PortProbe live = new PortProbe("127.0.0.1", endpoints.ports[0], 1000,
+                                     "live", conf)
+      HttpProbe stuck = new HttpProbe(
+          new URL("http://127.0.0.1:${hung.localPort}/"), 500, 200, 200, conf)
+      live.withSchedule(50, 1000, 0)
+      RecordingReportHandler handler = new RecordingReportHandler(1)
+      startScheduler([live, stuck] as List<Probe>, 100, 500, handler)
+      assert handler.failureLatch.await(10, TimeUnit.SECONDS)
+      // the live probe has carried on while the other was hung
+      assert live.successCount > 2
+      assert stuck.failureCount > 0
+      assert scheduler.probePhase == ProbePhase.LIVE
+    } finally {
+      hung.close()
+    }
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.appmaster
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hadoop.conf.Configuration
+import org.apache.hoya.yarn.appmaster.state.NodeEntry
+import org.apache.hoya.yarn.appmaster.state.RoleInstance
+import org.apache.hoya.yarn.model.mock.BaseMockAppStateTest
+import org.junit.After
+import org.junit.Test
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * Test that stopping the event loop applies the events already queued
+ */
+@CompileStatic
+@Slf4j
+class TestAppStateEventLoop extends BaseMockAppStateTest {
+
+  CountDownLatch release = new CountDownLatch(1)
+  AppStateEventLoop eventLoop
+
+  @Override
+  String getTestName() {
+    return "TestAppStateEventLoop"
+  }
+
+  @After
+  void stopEventLoop() {
+    release.countDown()
+    eventLoop?.stop()
+  }
+
+  @Test
+  public void testQueuedEventsAppliedOnStop() throws Throwable {
+    eventLoop = new AppStateEventLoop()
+    eventLoop.init(new Configuration(false))
+    eventLoop.start()
+
+    role0Status.desired = 4
+    List<RoleInstance> instances = createAndSubmitNodes()
+    assert instances.size() == 4
+    for (RoleInstance instance : instances) {
+      assert nodeEntry(instance).starting == 1
+    }
+
+    // hold the event thread so the start events stay queued
+    eventLoop.post("block", new Runnable() {
+      @Override
+      void run() {
+        release.await(30, TimeUnit.SECONDS)
+      }
+    })
+    for (RoleInstance instance : instances) {
+      final RoleInstance started = instance
+      assert eventLoop.post("container started", new Runnable() {
+        @Override
+        void run() {
+          appState.onNodeManagerContainerStarted(started.containerId)
+        }
+      })
+    }
+
+    Thread stopper = new Thread(new Runnable() {
+      @Override
+      void run() {
+        eventLoop.stop()
+      }
+    }, "stopper")
+    stopper.start()
+    // wait for the stop to refuse new events
+    Runnable late = new Runnable() {
+      @Override
+      void run() {
+      }
+    }
+    while (eventLoop.post("late", late)) {
+      Thread.sleep(10)
+    }
+    release.countDown()
+    stopper.join(30000)
+    assert !stopper.alive
+
+    for (RoleInstance instance : instances) {
+      NodeEntry entry = nodeEntry(instance)
+      assert entry.starting == 0
+      assert entry.live == 1
+    }
+    assert !eventLoop.post("after stop", late)
+  }
+
+  NodeEntry nodeEntry(RoleInstance instance) {
+    return appState.roleHistory
+                   .getOrCreateNodeInstance(instance.container)
+                   .get(instance.roleId)
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.appmaster
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.fs.Path
+import org.apache.hadoop.yarn.api.records.Container
+import org.apache.hadoop.yarn.api.records.ContainerLaunchContext
+import org.apache.hoya.api.StatusKeys
+import org.apache.hoya.yarn.appmaster.state.RoleInstance
+import org.apache.hoya.yarn.model.mock.BaseMockAppStateTest
+import org.apache.hoya.yarn.model.mock.MockProviderService
+import org.junit.After
+import org.junit.Test
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Test the queueing of launches in the role launch service
+ */
+@CompileStatic
+@Slf4j
+class TestRoleLaunchService extends BaseMockAppStateTest
+    implements ContainerStartOperation {
+
+  public static final int LAUNCHER_THREADS = 2
+  public static final int LAUNCHES = 10
+
+  CountDownLatch releaseLaunches = new CountDownLatch(1)
+  AtomicInteger started = new AtomicInteger()
+  List<Container> canceled = Collections.synchronizedList([])
+  RoleLaunchService launchService
+
+  @Override
+  String getTestName() {
+    return "TestRoleLaunchService"
+  }
+
+  @Override
+  void startContainer(Container container,
+                      ContainerLaunchContext ctx,
+                      RoleInstance instance) {
+    releaseLaunches.await(30, TimeUnit.SECONDS)
+    started.incrementAndGet()
+  }
+
+  @Override
+  void containerLaunchCanceled(Container container) {
+    canceled << container
+  }
+
+  @After
+  void stopLaunchService() {
+    releaseLaunches.countDown()
+    launchService?.stop()
+  }
+
+  RoleLaunchService createLaunchService() {
+    MockProviderService provider = new MockProviderService() {
+      @Override
+      boolean isSupportedRole(String role) {
+        return true
+      }
+    }
+    Path tmp = new Path(historyPath, "tmp")
+    RoleLaunchService service = new RoleLaunchService(this, provider,
+        hoyaFileSystem, tmp, [:], tmp, LAUNCHER_THREADS)
+    service.init(new Configuration(false))
+    service.start()
+    return service
+  }
+
+  List<Container> allocateContainers(int count) {
+    role0Status.desired = count
+    List<Container> containers =
+        engine.execute(appState.reviewRequestAndReleaseNodes())
+    assert containers.size() == count
+    return containers
+  }
+
+  void launchAll(List<Container> containers) {
+    containers.each { Container container ->
+      launchService.launchRole(container, role0Status, appState.clusterSpec)
+    }
+  }
+
+  void waitForActiveLaunches(int count) {
+    long end = System.currentTimeMillis() + 10000
+    while (launchService.activeLaunches < count) {
+      assert System.currentTimeMillis() < end
+      Thread.sleep(10)
+    }
+  }
+
+  @Test
+  public void testLaunchesAreQueued() throws Throwable {
+    launchService = createLaunchService()
+    launchAll(allocateContainers(LAUNCHES))
+    waitForActiveLaunches(LAUNCHER_THREADS)
+    assert launchService.activeLaunches == LAUNCHER_THREADS
+    assert launchService.queueLength == LAUNCHES - LAUNCHER_THREADS
+    Map<String, Integer> stats = launchService.buildStatistics()
+    assert stats[StatusKeys.STATISTICS_LAUNCHER_QUEUE_LENGTH] ==
+           LAUNCHES - LAUNCHER_THREADS
+
+    releaseLaunches.countDown()
+    long end = System.currentTimeMillis() + 10000
+    while (launchService.buildStatistics()[
+        StatusKeys.STATISTICS_LAUNCHER_COMPLETED] < LAUNCHES) {
+      assert System.currentTimeMillis() < end
+      Thread.sleep(10)
+    }
+    assert started.get() == LAUNCHES
+    assert launchService.queueLength == 0
+    long total = 0
+    for (long count : launchService.latencyHistogram) {
+      total += count
+    }
+    assert total == LAUNCHES
+  }
+
+  @Test
+  public void testStopCancelsQueuedLaunches() throws Throwable {
+    launchService = createLaunchService()
+    List<Container> containers = allocateContainers(LAUNCHES + 1)
+    launchAll(containers.subList(0, LAUNCHES))
+    waitForActiveLaunches(LAUNCHER_THREADS)
+
+    // let the active launches finish once the stop has begun
+    Thread.start {
+      Thread.sleep(500)
+      releaseLaunches.countDown()
+    }
+    launchService.stop()
+    Map<String, Integer> stats = launchService.buildStatistics()
+    assert stats[StatusKeys.STATISTICS_LAUNCHER_CANCELED] ==
+           LAUNCHES - LAUNCHER_THREADS
+    assert stats[StatusKeys.STATISTICS_LAUNCHER_COMPLETED] == LAUNCHER_THREADS
+    assert started.get() == LAUNCHER_THREADS
+    // the containers of the canceled launches are handed back
+    assert canceled.size() == LAUNCHES - LAUNCHER_THREADS
+    assert canceled as Set ==
+           containers.subList(LAUNCHER_THREADS, LAUNCHES) as Set
+
+    // launches after the stop are not run
+    launchService.launchRole(containers[LAUNCHES], role0Status,
+                             appState.clusterSpec)
+    assert launchService.buildStatistics()[
+        StatusKeys.STATISTICS_LAUNCHER_CANCELED] == LAUNCHES - 1
+    assert canceled.contains(containers[LAUNCHES])
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hoya.yarn.appmaster.web
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hoya.yarn.appmaster.state.LiveInstancesView
+import org.apache.hoya.yarn.appmaster.state.RoleInstance
+import org.apache.hoya.yarn.appmaster.web.ContainerPage.SortOrder
+import org.apache.hoya.yarn.model.mock.MockContainer
+import org.apache.hoya.yarn.model.mock.MockContainerId
+import org.junit.Before
+import org.junit.Test
+
+@Slf4j
+@CompileStatic
+public class TestContainerPage {
+
+  private LiveInstancesView view
+
+  @Before
+  public void setup() {
+    List<RoleInstance> instances = []
+    for (int i = 0; i < 30; i++) {
+      MockContainer container = new MockContainer()
+      container.id = new MockContainerId(i)
+      RoleInstance instance = new RoleInstance(container)
+      instance.role = (i % 3 == 0) ? "master" : "worker"
+      instance.host = "host" + (i % 5)
+      instance.state = i % 2
+      // created in the reverse order of their IDs
+      instance.createTime = 1000 - i
+      instances << instance
+    }
+    view = new LiveInstancesView(1, instances)
+  }
+
+  @Test
+  public void testPagesInIdOrder() {
+    ContainerPage first = ContainerPage.select(view, null, null, SortOrder.ID, 0, 12)
+    assert first.total == 30
+    assert first.instances == view.instances.subList(0, 12)
+    assert !first.hasPrevious()
+    assert first.hasNext()
+
+    ContainerPage last = ContainerPage.select(view, null, null, SortOrder.ID, 24, 12)
+    assert last.instances == view.instances.subList(24, 30)
+    assert last.hasPrevious()
+    assert !last.hasNext()
+
+    assert ContainerPage.select(view, null, null, SortOrder.ID, 40, 12).instances.empty
+  }
+
+  @Test
+  public void testRoleFilter() {
+    ContainerPage page = ContainerPage.select(view, "master", "", SortOrder.ID, 0, 100)
+    assert page.total == 10
+    assert page.instances == view.getInstancesInRole("master")
+    assert ContainerPage.select(view, "unknown", null, SortOrder.ID, 0, 100).total == 0
+  }
+
+  @Test
+  public void testHostFilter() {
+    ContainerPage page = ContainerPage.select(view, "worker", "host1", SortOrder.ID, 0, 3)
+    List<RoleInstance> expected = view.getInstancesInRole("worker").findAll {
+      RoleInstance instance -> instance.host == "host1"
+    }
+    assert page.total == expected.size()
+    assert page.instances == expected.subList(0, 3)
+    assert page.hasNext()
+  }
+
+  @Test
+  public void testSortOrders() {
+    ContainerPage byCreation = ContainerPage.select(view, null, null, SortOrder.CREATED, 5, 10)
+    assert byCreation.total == 30
+    List<RoleInstance> created = new ArrayList<RoleInstance>(view.instances)
+    created.sort { RoleInstance instance -> instance.createTime }
+    assert byCreation.instances == created.subList(5, 15)
+
+    ContainerPage byState = ContainerPage.select(view, null, null, SortOrder.STATE, 0, 15)
+    assert byState.instances.every { RoleInstance instance -> instance.state == 0 }
+
+    ContainerPage byHost = ContainerPage.select(view, null, null, SortOrder.HOST, 0, 6)
+    assert byHost.instances.every { RoleInstance instance -> instance.host == "host0" }
+  }
+
+  @Test
+  public void testParseSortOrder() {
+    assert SortOrder.parse("host") == SortOrder.HOST
+    assert SortOrder.parse("Created") == SortOrder.CREATED
+    assert SortOrder.parse("unknown") == SortOrder.ID
+    assert SortOrder.parse(null) == SortOrder.ID
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hoya.yarn.appmaster.web.rest
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hoya.avro.NodeEntryRecord
+import org.apache.hoya.yarn.appmaster.state.LiveInstancesView
+import org.apache.hoya.yarn.appmaster.state.RoleInstance
+import org.apache.hoya.yarn.appmaster.web.ContainerPage
+import org.apache.hoya.yarn.model.mock.MockContainer
+import org.apache.hoya.yarn.model.mock.MockContainerId
+import org.junit.Test
+
+import java.util.zip.GZIPInputStream
+
+@Slf4j
+@CompileStatic
+public class TestHoyaAMRestServlet {
+
+  @Test
+  public void testETagMatching() {
+    String etag = '"abc-status-1.2"'
+    assert HoyaAMRestServlet.matches(etag, etag)
+    assert HoyaAMRestServlet.matches('W/' + etag, etag)
+    assert HoyaAMRestServlet.matches('"other", ' + etag, etag)
+    assert HoyaAMRestServlet.matches('*', etag)
+    assert !HoyaAMRestServlet.matches('"abc-status-1.3"', etag)
+    assert !HoyaAMRestServlet.matches(null, etag)
+  }
+
+  @Test
+  public void testAcceptsGzip() {
+    assert HoyaAMRestServlet.acceptsGzip("gzip")
+    assert HoyaAMRestServlet.acceptsGzip("deflate, GZIP;q=0.5")
+    assert !HoyaAMRestServlet.acceptsGzip("gzip;q=0")
+    assert !HoyaAMRestServlet.acceptsGzip("gzip; q=0.0")
+    assert !HoyaAMRestServlet.acceptsGzip("deflate")
+    assert !HoyaAMRestServlet.acceptsGzip(null)
+  }
+
+  @Test
+  public void testCanonicalQuery() {
+    // same String.hashCode()
+    assert "Aa".hashCode() == "BB".hashCode()
+    String aa = HoyaAMRestServlet.canonicalQuery("Aa", null,
+        ContainerPage.SortOrder.ID, 0, 10)
+    String bb = HoyaAMRestServlet.canonicalQuery("BB", null,
+        ContainerPage.SortOrder.ID, 0, 10)
+    assert aa != bb
+    assert HoyaAMRestServlet.digest(aa) != HoyaAMRestServlet.digest(bb)
+    assert HoyaAMRestServlet.digest(aa) == HoyaAMRestServlet.digest(aa)
+
+    // escaping keeps a value from spilling into the next parameter
+    assert HoyaAMRestServlet.canonicalQuery("a&host=b", null,
+        ContainerPage.SortOrder.ID, 0, 10) !=
+           HoyaAMRestServlet.canonicalQuery("a", "b",
+               ContainerPage.SortOrder.ID, 0, 10)
+    // no value and an empty one select the same containers
+    assert HoyaAMRestServlet.canonicalQuery(null, null,
+        ContainerPage.SortOrder.HOST, 5, 10) ==
+           HoyaAMRestServlet.canonicalQuery("", "",
+               ContainerPage.SortOrder.HOST, 5, 10)
+  }
+
+  @Test
+  public void testGzippedBody() {
+    byte[] body = ("{\"key\":\"" + ("value" * 500) + "\"}").getBytes("UTF-8")
+    CachedResponse cached = new CachedResponse('"tag"', body)
+    byte[] gzipped = cached.gzippedBody
+    assert gzipped.length < body.length
+    // built once
+    assert gzipped.is(cached.gzippedBody)
+    byte[] unzipped = new GZIPInputStream(new ByteArrayInputStream(gzipped)).bytes
+    assert Arrays.equals(body, unzipped)
+  }
+
+  @Test
+  public void testContainersDocument() {
+    MockContainer container = new MockContainer()
+    container.id = new MockContainerId(1)
+    RoleInstance instance = new RoleInstance(container)
+    instance.role = "worker"
+    instance.host = "host1"
+    LiveInstancesView view = new LiveInstancesView(1, [instance])
+    ContainerPage page = ContainerPage.select(view, null, null,
+        ContainerPage.SortOrder.ID, 0, 10)
+
+    Map<String, Object> doc = HoyaAMRestServlet.toJson(page)
+    assert doc["total"] == 1
+    List<Map<String, Object>> containers = (List<Map<String, Object>>) doc["containers"]
+    assert containers.size() == 1
+    assert containers[0]["id"] == instance.id
+    assert containers[0]["role"] == "worker"
+    assert containers[0]["host"] == "host1"
+  }
+
+  @Test
+  public void testHistoryDocument() {
+    List<NodeEntryRecord> entries = [
+        new NodeEntryRecord("host1", 1, true, 100L)
+    ]
+    Map<String, Object> doc = HoyaAMRestServlet.toJson(entries)
+    List<Map<String, Object>> records = (List<Map<String, Object>>) doc["entries"]
+    assert records.size() == 1
+    assert records[0]["host"] == "host1"
+    assert records[0]["role"] == 1
+    assert records[0]["active"] == true
+    assert records[0]["lastUsed"] == 100L
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hoya.yarn.appmaster.web.rest
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hoya.yarn.appmaster.state.LiveInstancesView
+import org.apache.hoya.yarn.appmaster.state.RoleInstance
+import org.apache.hoya.yarn.appmaster.web.ContainerPage
+import org.apache.hoya.yarn.model.mock.BaseMockAppStateTest
+import org.junit.Test
+
+/**
+ * Test that the ETag of the containers resource follows the changes
+ * made to the containers it lists
+ */
+@CompileStatic
+@Slf4j
+class TestHoyaAMRestServletETags extends BaseMockAppStateTest {
+
+  @Override
+  String getTestName() {
+    return "TestHoyaAMRestServletETags"
+  }
+
+  String containersVersion() {
+    String query = HoyaAMRestServlet.digest(
+        HoyaAMRestServlet.canonicalQuery(null, null,
+                                         ContainerPage.SortOrder.ID, 0, 10))
+    long stateVersion = appState.stateVersion
+    LiveInstancesView view = appState.liveInstancesView
+    return HoyaAMRestServlet.containersVersion(stateVersion, view, query)
+  }
+
+  @Test
+  public void testReleaseChangesETag() throws Throwable {
+    role0Status.desired = 2
+    List<RoleInstance> instances = createAndStartNodes()
+    assert instances.size() == 2
+    String before = containersVersion()
+    assert before == containersVersion()
+    long viewVersion = appState.liveInstancesView.version
+
+    appState.containerReleaseSubmitted(instances[0].container)
+    // the instance is still live, so the view keeps its version...
+    assert appState.liveInstancesView.version == viewVersion
+    assert appState.liveInstancesView.getInstance(instances[0].id).released
+    // ...but the tag changes
+    assert containersVersion() != before
+  }
+}
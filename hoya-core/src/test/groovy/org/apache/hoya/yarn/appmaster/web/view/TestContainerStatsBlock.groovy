@@ -231,4 +231,13 @@ public class TestContainerStatsBlock {
     tr._();
     assert prevLevel == hamlet.nestLevel();
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testParseInt() {
+    assert 10 == ContainerStatsBlock.parseInt("", 10, 100);
+    assert 10 == ContainerStatsBlock.parseInt("ten", 10, 100);
+    assert 0 == ContainerStatsBlock.parseInt("-5", 10, 100);
+    assert 100 == ContainerStatsBlock.parseInt("500", 10, 100);
+    assert 50 == ContainerStatsBlock.parseInt("50", 10, 100);
+  }
+}
@@ -109,6 +109,16 @@ class TestActionList extends HBaseMiniClusterTestBase {
         ]
     )
 
+    //and fetch the status of every running cluster
+    launcher = launchHoyaClientAgainstMiniMR(
+        //config includes RM binding info
+        new YarnConfiguration(miniCluster.config),
+        //varargs list of command line params
+        [
+            HoyaActions.ACTION_LIST, Arguments.ARG_STATUS
+        ]
+    )
+    assert launcher.serviceExitCode == 0
   }
 
 
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.model.appstate
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hadoop.yarn.api.records.ContainerId
+import org.apache.hoya.yarn.appmaster.state.AbstractRMOperation
+import org.apache.hoya.yarn.appmaster.state.RoleInstance
+import org.apache.hoya.yarn.model.mock.BaseMockAppStateTest
+import org.apache.hoya.yarn.model.mock.MockRoles
+import org.apache.hoya.yarn.model.mock.MockYarnEngine
+import org.junit.Test
+
+/**
+ * Flex a large role down and verify that the containers to release
+ * are picked from the host index, and that the index tracks the
+ * containers as they are released.
+ */
+@CompileStatic
+@Slf4j
+class TestAppStateFlexDownAtScale extends BaseMockAppStateTest
+    implements MockRoles {
+
+  public static final int HOSTS = 250
+  public static final int CONTAINERS_PER_HOST = 20
+  public static final int CONTAINERS = HOSTS * CONTAINERS_PER_HOST
+
+  @Override
+  String getTestName() {
+    return "TestAppStateFlexDownAtScale"
+  }
+
+  @Override
+  MockYarnEngine createYarnEngine() {
+    return new MockYarnEngine(HOSTS, CONTAINERS_PER_HOST)
+  }
+
+  @Test
+  public void testFlexDown5000Containers() throws Throwable {
+    role0Status.desired = CONTAINERS
+    List<RoleInstance> instances = createAndStartNodes()
+    assert instances.size() == CONTAINERS
+    assert appState.numActiveContainers == CONTAINERS
+    assert releasableInstanceCount() == CONTAINERS
+
+    // release half of them
+    int remaining = CONTAINERS.intdiv(2)
+    role0Status.desired = remaining
+    long start = System.currentTimeMillis()
+    List<AbstractRMOperation> ops = appState.reviewRequestAndReleaseNodes()
+    long duration = System.currentTimeMillis() - start
+    log.info("Selected ${ops.size()} of $CONTAINERS containers" +
+             " for release in $duration millis")
+    assert ops.size() == CONTAINERS - remaining
+    assert role0Status.releasing == CONTAINERS - remaining
+    assert releasableInstanceCount() == remaining
+    // a second review must not select any more
+    assert appState.reviewRequestAndReleaseNodes().empty
+
+    List<ContainerId> released = []
+    engine.execute(ops, released)
+    released.each { ContainerId cid ->
+      assert appState.onCompletedNode(containerStatus(cid)).roleInstance
+    }
+    assert role0Status.releasing == 0
+    assert role0Status.actual == remaining
+    assert releasableInstanceCount() == remaining
+
+    // now release everything
+    role0Status.desired = 0
+    start = System.currentTimeMillis()
+    ops = appState.reviewRequestAndReleaseNodes()
+    duration = System.currentTimeMillis() - start
+    log.info("Selected ${ops.size()} containers for release in $duration millis")
+    assert ops.size() == remaining
+    assert releasableInstanceCount() == 0
+  }
+
+  /**
+   * Count all releasable role 0 instances across the cluster
+   * @return the total in the index
+   */
+  int releasableInstanceCount() {
+    int count = 0
+    for (int i = 0; i < HOSTS; i++) {
+      String hostname = engine.cluster.nodeAt(i).hostname
+      count += appState.getReleasableInstanceCount(hostname, 0)
+    }
+    return count
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.model.appstate
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hadoop.yarn.api.records.Container
+import org.apache.hadoop.yarn.api.records.ContainerId
+import org.apache.hoya.yarn.appmaster.state.AbstractRMOperation
+import org.apache.hoya.yarn.appmaster.state.ContainerAssignment
+import org.apache.hoya.yarn.appmaster.state.ContainerRequestOperation
+import org.apache.hoya.yarn.appmaster.state.RoleInstance
+import org.apache.hoya.yarn.model.mock.BaseMockAppStateTest
+import org.apache.hoya.yarn.model.mock.MockRMOperationHandler
+import org.apache.hoya.yarn.model.mock.MockRoles
+import org.apache.hoya.yarn.model.mock.MockYarnEngine
+import org.junit.Test
+
+/**
+ * Flex a role up by a large number of instances, and verify that the
+ * container asks are grouped by location rather than raised one by one.
+ */
+@CompileStatic
+@Slf4j
+class TestAppStateFlexUpAtScale extends BaseMockAppStateTest
+    implements MockRoles {
+
+  public static final int HOSTS = 100
+  public static final int CONTAINERS_PER_HOST = 20
+  public static final int INSTANCES = 1000
+
+  @Override
+  String getTestName() {
+    return "TestAppStateFlexUpAtScale"
+  }
+
+  @Override
+  MockYarnEngine createYarnEngine() {
+    return new MockYarnEngine(HOSTS, CONTAINERS_PER_HOST)
+  }
+
+  @Test
+  public void testFlexUpWithoutHistory() throws Throwable {
+    role0Status.desired = INSTANCES
+    List<AbstractRMOperation> ops = timedReview()
+    // nothing known about the cluster: one ask for everything
+    assert ops.size() == 1
+    assert requestCount(ops) == INSTANCES
+    assert role0Status.requested == INSTANCES
+
+    MockRMOperationHandler handler = new MockRMOperationHandler()
+    handler.execute(ops)
+    assert handler.operations.size() == INSTANCES
+
+    List<RoleInstance> instances = createAndStartFromOps(ops)
+    assert instances.size() == INSTANCES
+    assert role0Status.requested == 0
+    assert role0Status.actual == INSTANCES
+  }
+
+  @Test
+  public void testFlexUpWithHistory() throws Throwable {
+    role0Status.desired = INSTANCES
+    List<RoleInstance> instances = createAndStartNodes()
+    assert instances.size() == INSTANCES
+
+    // release everything, so every host is in the history
+    role0Status.desired = 0
+    List<AbstractRMOperation> ops = appState.reviewRequestAndReleaseNodes()
+    List<ContainerId> released = []
+    engine.execute(ops, released)
+    released.each { ContainerId cid ->
+      assert appState.onCompletedNode(containerStatus(cid)).roleInstance
+    }
+    assert role0Status.actual == 0
+
+    // flex back up: one placed ask per known host, the rest in one ask
+    role0Status.desired = INSTANCES
+    ops = timedReview()
+    assert ops.size() == HOSTS + 1
+    assert requestCount(ops) == INSTANCES
+    ContainerRequestOperation anywhere = (ContainerRequestOperation) ops[HOSTS]
+    assert anywhere.count == INSTANCES - HOSTS
+    assert anywhere.request.nodes == null
+    assert role0Status.requested == INSTANCES
+    ops[0..<HOSTS].each { AbstractRMOperation op ->
+      ContainerRequestOperation placed = (ContainerRequestOperation) op
+      assert placed.count == 1
+      assert placed.request.nodes.size() == 1
+    }
+    assert appState.roleHistory.outstandingRequestList.size() == HOSTS
+
+    instances = createAndStartFromOps(ops)
+    assert instances.size() == INSTANCES
+    assert role0Status.requested == 0
+    assert appState.roleHistory.outstandingRequestList.empty
+  }
+
+  List<AbstractRMOperation> timedReview() {
+    long start = System.nanoTime()
+    List<AbstractRMOperation> ops = appState.reviewRequestAndReleaseNodes()
+    long duration = System.nanoTime() - start
+    log.info("Flex of $INSTANCES instances:" +
+             " ${ops.size()} request operations" +
+             " in ${duration.intdiv(1000)} micros")
+    return ops
+  }
+
+  int requestCount(List<AbstractRMOperation> ops) {
+    int count = 0
+    ops.each { AbstractRMOperation op ->
+      count += ((ContainerRequestOperation) op).count
+    }
+    return count
+  }
+
+  List<RoleInstance> createAndStartFromOps(List<AbstractRMOperation> ops) {
+    List<Container> allocated = engine.execute(ops)
+    assert allocated.size() == INSTANCES
+    List<ContainerAssignment> assignments = []
+    List<AbstractRMOperation> releases = []
+    appState.onContainersAllocated(allocated, assignments, releases)
+    assert releases.empty
+    List<RoleInstance> instances = []
+    assignments.each { ContainerAssignment assigned ->
+      RoleInstance ri = roleInstance(assigned)
+      instances << ri
+      appState.containerStartSubmitted(assigned.container, ri)
+      assert appState.onNodeManagerContainerStarted(ri.containerId)
+    }
+    return instances
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.model.appstate
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.yarn.api.records.ContainerId
+import org.apache.hoya.api.ClusterDescription
+import org.apache.hoya.api.RoleKeys
+import org.apache.hoya.api.StatusKeys
+import org.apache.hoya.yarn.appmaster.InstanceHealthMonitor
+import org.apache.hoya.yarn.appmaster.state.AbstractRMOperation
+import org.apache.hoya.yarn.appmaster.state.ContainerReleaseOperation
+import org.apache.hoya.yarn.appmaster.state.ContainerRequestOperation
+import org.apache.hoya.yarn.appmaster.state.InstanceProbePolicy
+import org.apache.hoya.yarn.appmaster.state.RoleInstance
+import org.apache.hoya.yarn.model.mock.BaseMockAppStateTest
+import org.apache.hoya.yarn.model.mock.MockRoles
+import org.junit.Test
+
+/**
+ * Test the health probing of role instances, and the replacement of
+ * instances which fail their probes
+ */
+@CompileStatic
+@Slf4j
+class TestAppStateInstanceProbes extends BaseMockAppStateTest
+    implements MockRoles {
+
+  @Override
+  String getTestName() {
+    return "TestAppStateInstanceProbes"
+  }
+
+  @Test
+  public void testProbePolicyFromRoleOptions() throws Throwable {
+    ClusterDescription spec = factory.newClusterSpec(1, 0, 0)
+    InstanceProbePolicy policy = InstanceProbePolicy.fromRoleOptions(spec,
+                                                                     ROLE0)
+    assert !policy.enabled
+    spec.setRoleOpt(ROLE0, RoleKeys.ROLE_PROBE_HTTP_PORT, "60030")
+    spec.setRoleOpt(ROLE0, RoleKeys.ROLE_PROBE_HTTP_PATH, "status")
+    spec.setRoleOpt(ROLE0, RoleKeys.ROLE_PROBE_FAILURE_THRESHOLD, "5")
+    appState.updateClusterSpec(spec)
+    policy = role0Status.probePolicy
+    assert policy.enabled
+    assert policy.httpPort == 60030
+    assert policy.httpPath == "/status"
+    assert policy.failureThreshold == 5
+    assert policy.interval == RoleKeys.DEFAULT_ROLE_PROBE_INTERVAL
+    assert !role1Status.probePolicy.enabled
+
+    // rebuilding the policy from unchanged options gives an equal one
+    appState.updateClusterSpec(spec)
+    assert !role0Status.probePolicy.is(policy)
+    assert role0Status.probePolicy == policy
+    assert role0Status.probePolicy.hashCode() == policy.hashCode()
+    spec.setRoleOpt(ROLE0, RoleKeys.ROLE_PROBE_FAILURE_THRESHOLD, "6")
+    appState.updateClusterSpec(spec)
+    assert role0Status.probePolicy != policy
+  }
+
+  @Test
+  public void testUnhealthyInstanceIsReplaced() throws Throwable {
+    role0Status.desired = 2
+    List<RoleInstance> instances = createAndStartNodes()
+    assert instances.size() == 2
+    ContainerId cid = instances[0].containerId
+
+    List<AbstractRMOperation> ops = appState.onInstanceUnhealthy(cid, "hung")
+    assert ops.size() == 1
+    assert ((ContainerReleaseOperation) ops[0]).containerId == cid
+    assert role0Status.failed == 1
+    assert role0Status.releasing == 1
+    assert instances[0].diagnostics == "hung"
+
+    // a second report is ignored
+    assert appState.onInstanceUnhealthy(cid, "hung").empty
+
+    List<ContainerId> released = []
+    engine.execute(ops, released)
+    assert released == [cid]
+    appState.onCompletedNode(containerStatus(cid))
+    assert role0Status.actual == 1
+
+    // the review asks for a replacement
+    List<AbstractRMOperation> review = appState.reviewRequestAndReleaseNodes()
+    assert review.size() == 1
+    assert review[0] instanceof ContainerRequestOperation
+  }
+
+  @Test
+  public void testMonitorProbesInstances() throws Throwable {
+    role0Status.desired = 4
+    List<RoleInstance> instances = createAndStartNodes()
+    assert instances.size() == 4
+    ServerSocket server = new ServerSocket(0, 50,
+                                           InetAddress.getByName("127.0.0.1"))
+    // nothing listens on the port at the other loopback address
+    List<RoleInstance> healthy = instances.subList(0, 2)
+    List<RoleInstance> hung = instances.subList(2, 4)
+    healthy.each { RoleInstance instance -> instance.host = "127.0.0.1" }
+    hung.each { RoleInstance instance -> instance.host = "127.0.0.2" }
+    role0Status.probePolicy = new InstanceProbePolicy(server.localPort, 0,
+                                                      "/", 100, 1000, 0, 2)
+
+    List<String> unhealthy = Collections.synchronizedList([])
+    InstanceHealthMonitor monitor = new InstanceHealthMonitor(appState,
+        new InstanceHealthMonitor.UnhealthyInstanceHandler() {
+          @Override
+          void instanceUnhealthy(RoleInstance instance, String message) {
+            unhealthy << instance.id
+          }
+        }, 2)
+    monitor.init(new Configuration(false))
+    monitor.start()
+    try {
+      long end = System.currentTimeMillis() + 10000
+      while (unhealthy.size() < 2 && System.currentTimeMillis() < end) {
+        Thread.sleep(50)
+      }
+      assert unhealthy.sort() == hung*.id.sort()
+      healthy.each { RoleInstance instance ->
+        assert instance.probeLatency >= 0
+        assert instance.probeFailures == 0
+        assert instance.lastProbeTime > 0
+      }
+      hung.each { RoleInstance instance ->
+        assert instance.probeLatency == -1
+        assert instance.probeFailures >= 2
+      }
+      Map<String, Integer> stats = monitor.buildStatistics()
+      assert stats[StatusKeys.STATISTICS_PROBES_UNHEALTHY] == 2
+      assert stats[StatusKeys.STATISTICS_PROBES_SUCCEEDED] >= 2
+    } finally {
+      monitor.stop()
+      server.close()
+    }
+  }
+}
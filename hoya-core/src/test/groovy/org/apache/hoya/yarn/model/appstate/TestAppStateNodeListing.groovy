@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.model.appstate
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hoya.api.ClusterDescription
+import org.apache.hoya.exceptions.NoSuchNodeException
+import org.apache.hoya.yarn.appmaster.state.LiveInstancesView
+import org.apache.hoya.yarn.appmaster.state.RoleInstance
+import org.apache.hoya.yarn.model.mock.BaseMockAppStateTest
+import org.apache.hoya.yarn.model.mock.MockRoles
+import org.junit.Test
+
+/**
+ * Test the lookup and listing of live instances through the UUID index
+ * and filters of the live instances view
+ */
+@CompileStatic
+@Slf4j
+class TestAppStateNodeListing extends BaseMockAppStateTest
+    implements MockRoles {
+
+  @Override
+  String getTestName() {
+    return "TestAppStateNodeListing"
+  }
+
+  List<RoleInstance> startNodes() {
+    role0Status.desired = 4
+    role1Status.desired = 2
+    List<RoleInstance> instances = createAndSubmitNodes()
+    instances.each { RoleInstance instance ->
+      instance.role = instance.roleId == role0Status.key ? ROLE0 : ROLE1
+      assert appState.onNodeManagerContainerStarted(instance.containerId)
+    }
+    return instances
+  }
+
+  @Test
+  public void testLookupByUUID() throws Throwable {
+    List<RoleInstance> instances = startNodes()
+    assert instances.size() == 6
+    instances.each { RoleInstance instance ->
+      assert appState.getLiveInstanceByUUID(instance.id).is(instance)
+    }
+    List<String> uuids = [instances[0].id, instances[1].id,
+                          instances[0].id, "unknown"]
+    List<RoleInstance> found = appState.getLiveContainerInfosByUUID(uuids)
+    assert found*.id.sort() == [instances[0].id, instances[1].id].sort()
+    try {
+      appState.getLiveInstanceByUUID("unknown")
+      fail("expected a NoSuchNodeException")
+    } catch (NoSuchNodeException expected) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testViewIsSortedById() throws Throwable {
+    startNodes()
+    LiveInstancesView view = appState.liveInstancesView
+    List<String> ids = view.instances*.id
+    assert ids == new ArrayList<String>(ids).sort()
+    List<String> role0Ids = view.getInstancesInRole(ROLE0)*.id
+    assert role0Ids == new ArrayList<String>(role0Ids).sort()
+  }
+
+  @Test
+  public void testFilters() throws Throwable {
+    List<RoleInstance> instances = startNodes()
+    assert appState.findLiveInstances("", -1, null).size() == 6
+    assert appState.findLiveInstances(null, -1, "").size() == 6
+    assert appState.findLiveInstances(ROLE0, -1, null).size() == 4
+    assert appState.findLiveInstances(ROLE1, -1, null).size() == 2
+    assert appState.findLiveInstances(ROLE2, -1, null).empty
+    assert appState.findLiveInstances("", ClusterDescription.STATE_LIVE,
+                                      null).size() == 6
+    assert appState.findLiveInstances("", ClusterDescription.STATE_STOPPED,
+                                      null).empty
+
+    String host = instances[0].host
+    int onHost = instances.findAll { RoleInstance i -> i.host == host }.size()
+    assert appState.findLiveInstances("", -1, host).size() == onHost
+    assert appState.findLiveInstances("", -1, "no-such-host").empty
+  }
+}
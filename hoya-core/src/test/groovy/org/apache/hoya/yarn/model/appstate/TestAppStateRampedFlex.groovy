@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.model.appstate
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hadoop.yarn.api.records.Container
+import org.apache.hoya.api.ClusterDescription
+import org.apache.hoya.api.RoleKeys
+import org.apache.hoya.api.StatusKeys
+import org.apache.hoya.yarn.appmaster.state.AbstractRMOperation
+import org.apache.hoya.yarn.appmaster.state.ContainerAssignment
+import org.apache.hoya.yarn.appmaster.state.ContainerRequestOperation
+import org.apache.hoya.yarn.appmaster.state.RoleInstance
+import org.apache.hoya.yarn.model.mock.BaseMockAppStateTest
+import org.apache.hoya.yarn.model.mock.MockRoles
+import org.junit.Test
+
+/**
+ * Test that the ramp limits of a role hold back container requests
+ * while it is flexed up
+ */
+@CompileStatic
+@Slf4j
+class TestAppStateRampedFlex extends BaseMockAppStateTest
+    implements MockRoles {
+
+  @Override
+  String getTestName() {
+    return "TestAppStateRampedFlex"
+  }
+
+  void rampRole0(String option, int value) {
+    ClusterDescription clusterSpec = factory.newClusterSpec(0, 0, 0)
+    clusterSpec.setRoleOpt(ROLE0, option, value)
+    appState.updateClusterSpec(clusterSpec)
+  }
+
+  int requestCount(List<AbstractRMOperation> ops) {
+    int count = 0
+    ops.each { AbstractRMOperation op ->
+      count += ((ContainerRequestOperation) op).count
+    }
+    return count
+  }
+
+  /**
+   * Allocate containers for the requests and submit them for launch
+   * @param ops request operations
+   * @return the submitted instances
+   */
+  List<RoleInstance> allocateAndSubmit(List<AbstractRMOperation> ops) {
+    List<Container> allocated = engine.execute(ops)
+    List<ContainerAssignment> assignments = []
+    List<AbstractRMOperation> releases = []
+    appState.onContainersAllocated(allocated, assignments, releases)
+    List<RoleInstance> instances = []
+    assignments.each { ContainerAssignment assigned ->
+      RoleInstance ri = roleInstance(assigned)
+      appState.containerStartSubmitted(assigned.container, ri)
+      instances << ri
+    }
+    return instances
+  }
+
+  @Test
+  public void testNoRampLimits() throws Throwable {
+    role0Status.desired = 20
+    assert requestCount(appState.reviewRequestAndReleaseNodes()) == 20
+    assert role0Status.rampDeferred == 0
+    assert !appState.hasRampDeferredRequests()
+    assert appState.rampReviewDelay == 0
+  }
+
+  @Test
+  public void testMaxOutstanding() throws Throwable {
+    rampRole0(RoleKeys.ROLE_RAMP_MAX_OUTSTANDING, 10)
+    role0Status.desired = 25
+    List<AbstractRMOperation> ops = appState.reviewRequestAndReleaseNodes()
+    assert requestCount(ops) == 10
+    assert role0Status.requested == 10
+    assert role0Status.rampDeferred == 15
+    assert appState.hasRampDeferredRequests()
+    // no more until some requests are satisfied
+    assert appState.reviewRequestAndReleaseNodes().empty
+
+    allocateAndSubmit(ops)
+    assert role0Status.requested == 0
+    ops = appState.reviewRequestAndReleaseNodes()
+    assert requestCount(ops) == 10
+    allocateAndSubmit(ops)
+    ops = appState.reviewRequestAndReleaseNodes()
+    assert requestCount(ops) == 5
+    assert role0Status.rampDeferred == 0
+    allocateAndSubmit(ops)
+    assert role0Status.actual == 25
+    assert appState.reviewRequestAndReleaseNodes().empty
+    assert !appState.hasRampDeferredRequests()
+  }
+
+  @Test
+  public void testMaxLaunching() throws Throwable {
+    rampRole0(RoleKeys.ROLE_RAMP_MAX_LAUNCHING, 5)
+    role0Status.desired = 12
+    List<AbstractRMOperation> ops = appState.reviewRequestAndReleaseNodes()
+    assert requestCount(ops) == 5
+    List<RoleInstance> instances = allocateAndSubmit(ops)
+    assert role0Status.starting == 5
+    // all in flight: nothing more until they start
+    assert appState.reviewRequestAndReleaseNodes().empty
+    assert role0Status.rampDeferred == 7
+
+    instances[0..1].each { RoleInstance ri ->
+      assert appState.onNodeManagerContainerStarted(ri.containerId)
+    }
+    assert role0Status.starting == 3
+    ops = appState.reviewRequestAndReleaseNodes()
+    assert requestCount(ops) == 2
+
+    Map<String, Integer> stats = role0Status.buildStatistics()
+    assert stats[StatusKeys.STATISTICS_CONTAINERS_STARTING] == 3
+    assert stats[StatusKeys.STATISTICS_CONTAINERS_RAMP_DEFERRED] == 5
+  }
+
+  @Test
+  public void testQueuedLaunchesCountAsLaunching() throws Throwable {
+    rampRole0(RoleKeys.ROLE_RAMP_MAX_LAUNCHING, 3)
+    role0Status.desired = 6
+    List<AbstractRMOperation> ops = appState.reviewRequestAndReleaseNodes()
+    assert requestCount(ops) == 3
+    // allocated but still queued in the launcher pool
+    List<Container> allocated = engine.execute(ops)
+    List<ContainerAssignment> assignments = []
+    appState.onContainersAllocated(allocated, assignments, [])
+    assert role0Status.requested == 0
+    assert role0Status.queued == 3
+    assert role0Status.buildStatistics()[
+        StatusKeys.STATISTICS_CONTAINERS_QUEUED] == 3
+    assert appState.reviewRequestAndReleaseNodes().empty
+
+    // submission moves the launch from queued to starting
+    ContainerAssignment assigned = assignments[0]
+    appState.containerStartSubmitted(assigned.container,
+                                     roleInstance(assigned))
+    assert role0Status.queued == 2
+    assert role0Status.starting == 1
+    assert appState.reviewRequestAndReleaseNodes().empty
+  }
+
+  @Test
+  public void testCanceledLaunchFreesLaunchSlot() throws Throwable {
+    rampRole0(RoleKeys.ROLE_RAMP_MAX_LAUNCHING, 2)
+    role0Status.desired = 2
+    List<Container> allocated =
+        engine.execute(appState.reviewRequestAndReleaseNodes())
+    List<ContainerAssignment> assignments = []
+    appState.onContainersAllocated(allocated, assignments, [])
+    assert role0Status.actual == 2
+
+    appState.onContainerLaunchCanceled(assignments[0].container)
+    assert role0Status.queued == 1
+    assert role0Status.actual == 1
+    // the role is short of a container again
+    assert requestCount(appState.reviewRequestAndReleaseNodes()) == 1
+  }
+
+  @Test
+  public void testStartFailureFreesLaunchSlot() throws Throwable {
+    rampRole0(RoleKeys.ROLE_RAMP_MAX_LAUNCHING, 2)
+    role0Status.desired = 4
+    List<RoleInstance> instances =
+        allocateAndSubmit(appState.reviewRequestAndReleaseNodes())
+    assert instances.size() == 2
+    assert appState.reviewRequestAndReleaseNodes().empty
+    appState.onNodeManagerContainerStartFailed(instances[0].containerId,
+                                               new Exception("start failed"))
+    assert role0Status.starting == 1
+    assert requestCount(appState.reviewRequestAndReleaseNodes()) == 1
+  }
+
+  @Test
+  public void testStepInterval() throws Throwable {
+    rampRole0(RoleKeys.ROLE_RAMP_STEP_INTERVAL, 60000)
+    role0Status.desired = 4
+    List<AbstractRMOperation> ops = appState.reviewRequestAndReleaseNodes()
+    assert requestCount(ops) == 4
+    assert appState.rampReviewDelay == 0
+    allocateAndSubmit(ops)
+
+    role0Status.desired = 8
+    assert appState.reviewRequestAndReleaseNodes().empty
+    assert role0Status.rampDeferred == 4
+    long delay = appState.rampReviewDelay
+    assert delay > 0 && delay <= 60000
+
+    // flexing back down clears the deferral
+    role0Status.desired = 4
+    appState.reviewRequestAndReleaseNodes()
+    assert role0Status.rampDeferred == 0
+    assert appState.rampReviewDelay == 0
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.model.appstate
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hadoop.yarn.api.records.ContainerId
+import org.apache.hoya.exceptions.NoSuchNodeException
+import org.apache.hoya.yarn.appmaster.state.AbstractRMOperation
+import org.apache.hoya.yarn.appmaster.state.LiveInstancesView
+import org.apache.hoya.yarn.appmaster.state.RoleInstance
+import org.apache.hoya.yarn.model.mock.BaseMockAppStateTest
+import org.apache.hoya.yarn.model.mock.MockRoles
+import org.apache.hoya.yarn.model.mock.MockYarnEngine
+import org.junit.Test
+
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Measure the throughput of a mix of container events and status queries,
+ * with the queries served from the published views and with them
+ * holding the app state lock, as they used to.
+ *
+ * The numbers are logged rather than asserted on; the test verifies
+ * that the views stay consistent with the app state.
+ */
+@CompileStatic
+@Slf4j
+class TestAppStateReadContention extends BaseMockAppStateTest
+    implements MockRoles {
+
+  public static final int INSTANCES = 200
+  public static final int READERS = 5
+  public static final long DURATION = 2000
+
+  @Override
+  String getTestName() {
+    return "TestAppStateReadContention"
+  }
+
+  @Override
+  MockYarnEngine createYarnEngine() {
+    return new MockYarnEngine(INSTANCES, 1)
+  }
+
+  /**
+   * One flex cycle: bring up all the instances, then release them
+   */
+  void flexCycle() {
+    role0Status.desired = INSTANCES
+    createAndStartNodes()
+    role0Status.desired = 0
+    List<AbstractRMOperation> ops = appState.reviewRequestAndReleaseNodes()
+    List<ContainerId> released = []
+    engine.execute(ops, released)
+    released.each { ContainerId cid ->
+      appState.onCompletedNode(containerStatus(cid))
+    }
+  }
+
+  /**
+   * The status queries made by the RPC handlers and the RM heartbeat
+   */
+  void query() {
+    List<RoleInstance> live = appState.enumLiveNodesInRole("")
+    if (!live.empty) {
+      try {
+        appState.getLiveInstanceByUUID(live[0].id)
+      } catch (NoSuchNodeException ignored) {
+        // released since the list was built
+      }
+    }
+    appState.applicationProgressPercentage
+  }
+
+  /**
+   * Run the writer and readers for the test duration
+   * @param locked should the readers hold the app state lock
+   * @return the number of flex cycles and of queries
+   */
+  List<Long> run(boolean locked) {
+    AtomicBoolean finished = new AtomicBoolean()
+    AtomicLong queries = new AtomicLong()
+    List<Thread> readers = []
+    READERS.times {
+      readers << Thread.start {
+        while (!finished.get()) {
+          if (locked) {
+            synchronized (appState) {
+              query()
+            }
+          } else {
+            query()
+          }
+          queries.incrementAndGet()
+        }
+      }
+    }
+    long cycles = 0
+    long end = System.currentTimeMillis() + DURATION
+    while (System.currentTimeMillis() < end) {
+      flexCycle()
+      cycles++
+    }
+    finished.set(true)
+    readers.each { Thread t -> t.join() }
+    return [cycles, queries.get()]
+  }
+
+  @Test
+  public void testMixedEventsAndQueries() throws Throwable {
+    List<Long> lockedResults = run(true)
+    List<Long> viewResults = run(false)
+    log.info("Locked queries: ${lockedResults[0]} flex cycles of" +
+             " $INSTANCES instances and ${lockedResults[1]} queries" +
+             " in $DURATION ms")
+    log.info("View queries: ${viewResults[0]} flex cycles of" +
+             " $INSTANCES instances and ${viewResults[1]} queries" +
+             " in $DURATION ms")
+    assert lockedResults[0] > 0
+    assert viewResults[0] > 0
+
+    // the view is in step with the app state once the events stop
+    role0Status.desired = INSTANCES
+    List<RoleInstance> instances = createAndStartNodes()
+    LiveInstancesView view = appState.liveInstancesView
+    assert view.instances.size() == INSTANCES
+    assert appState.getLiveInstanceByUUID(instances[0].id).is(instances[0])
+    assert appState.applicationProgressPercentage == 1.0f
+  }
+}
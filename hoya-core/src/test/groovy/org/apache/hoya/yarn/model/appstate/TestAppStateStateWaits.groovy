@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.model.appstate
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hoya.yarn.appmaster.state.RoleInstance
+import org.apache.hoya.yarn.model.mock.BaseMockAppStateTest
+import org.apache.hoya.yarn.model.mock.MockRoles
+import org.junit.Test
+
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+
+/**
+ * Test that callers waiting for the app state to change are woken by
+ * container events
+ */
+@CompileStatic
+@Slf4j
+class TestAppStateStateWaits extends BaseMockAppStateTest
+    implements MockRoles {
+
+  ExecutorService executor = Executors.newSingleThreadExecutor()
+
+  @Override
+  String getTestName() {
+    return "TestAppStateStateWaits"
+  }
+
+  Future<Long> await(String role, int count, long version, long timeout) {
+    return executor.submit(new Callable<Long>() {
+      @Override
+      Long call() throws Exception {
+        return appState.awaitStateChange(role, count, version, timeout)
+      }
+    })
+  }
+
+  @Test
+  public void testWaitEndsWhenInstancesAreLive() throws Throwable {
+    try {
+      role0Status.desired = 2
+      List<RoleInstance> instances = createAndSubmitNodes()
+      instances.each { RoleInstance instance -> instance.role = ROLE0 }
+      Future<Long> wait = await(ROLE0, 2, -1, 30000)
+      Thread.sleep(100)
+      assert !wait.done
+      appState.onNodeManagerContainerStarted(instances[0].containerId)
+      Thread.sleep(100)
+      assert !wait.done
+      long start = System.currentTimeMillis()
+      appState.onNodeManagerContainerStarted(instances[1].containerId)
+      wait.get(5, TimeUnit.SECONDS)
+      long duration = System.currentTimeMillis() - start
+      log.info("Waiter woken {} ms after the container started", duration)
+      assert appState.liveInstancesView.getInstancesInRole(ROLE0).size() == 2
+    } finally {
+      executor.shutdownNow()
+    }
+  }
+
+  @Test
+  public void testWaitEndsOnStateChange() throws Throwable {
+    try {
+      long version = appState.stateVersion
+      Future<Long> wait = await(null, 0, version, 30000)
+      Thread.sleep(100)
+      assert !wait.done
+      appState.incStateVersion()
+      assert wait.get(5, TimeUnit.SECONDS) > version
+    } finally {
+      executor.shutdownNow()
+    }
+  }
+
+  @Test
+  public void testWaitTimesOut() throws Throwable {
+    long version = appState.stateVersion
+    long start = System.currentTimeMillis()
+    assert appState.awaitStateChange(ROLE0, 1, version, 200) == version
+    assert System.currentTimeMillis() - start >= 200
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.model.appstate
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hoya.api.proto.Messages
+import org.apache.hoya.yarn.appmaster.state.ClusterStatusJournal
+import org.apache.hoya.yarn.appmaster.state.RoleInstance
+import org.apache.hoya.yarn.client.ClusterStatusMirror
+import org.apache.hoya.yarn.model.mock.BaseMockAppStateTest
+import org.apache.hoya.yarn.model.mock.MockRoles
+import org.junit.Test
+
+/**
+ * Test that status deltas only contain what has changed, and that a
+ * client mirror built from them tracks the live instances
+ */
+@CompileStatic
+@Slf4j
+class TestAppStateStatusDelta extends BaseMockAppStateTest
+    implements MockRoles {
+
+  @Override
+  String getTestName() {
+    return "TestAppStateStatusDelta"
+  }
+
+  List<RoleInstance> startNodes(int desired) {
+    role0Status.desired = desired
+    List<RoleInstance> instances = createAndStartNodes()
+    instances.each { RoleInstance instance -> instance.role = ROLE0 }
+    return instances
+  }
+
+  @Test
+  public void testDeltasFollowChanges() throws Throwable {
+    List<RoleInstance> instances = startNodes(3)
+    assert instances.size() == 3
+
+    Messages.GetClusterStatusDeltaResponseProto full =
+      appState.getStatusDelta(0, 0)
+    assert full.full
+    assert full.updatedCount == 3
+    assert full.rolesCount == appState.roleStatusMap.size()
+    long epoch = full.epoch
+    long since = full.sequence
+
+    // nothing has changed
+    Messages.GetClusterStatusDeltaResponseProto delta =
+      appState.getStatusDelta(epoch, since)
+    assert !delta.full
+    assert delta.sequence == since
+    assert delta.updatedCount == 0
+    assert delta.removedCount == 0
+    assert delta.rolesCount == 0
+
+    // probe timings alone are not a change
+    instances[1].probeLatency = 10
+    instances[1].lastProbeTime = 1000
+    appState.incStateVersion()
+    assert appState.getStatusDelta(epoch, since).updatedCount == 0
+
+    // one instance goes
+    RoleInstance completed = instances[0]
+    appState.onCompletedNode(containerStatus(completed.containerId))
+    delta = appState.getStatusDelta(epoch, since)
+    assert !delta.full
+    assert delta.sequence > since
+    assert delta.updatedCount == 0
+    assert delta.removedList == [completed.containerId.toString()]
+    assert delta.rolesList*.name == [ROLE0]
+    assert delta.rolesList[0].actual == 2
+
+    // a failing probe is a change
+    since = delta.sequence
+    instances[2].probeFailures = 1
+    appState.incStateVersion()
+    delta = appState.getStatusDelta(epoch, since)
+    assert delta.updatedList*.name == [instances[2].containerId.toString()]
+    assert delta.updatedList[0].probeFailures == 1
+  }
+
+  @Test
+  public void testUnknownHistoryGetsFullStatus() throws Throwable {
+    startNodes(2)
+    Messages.GetClusterStatusDeltaResponseProto full =
+      appState.getStatusDelta(0, 0)
+    // another AM's epoch
+    assert appState.getStatusDelta(full.epoch + 1, full.sequence).full
+    // a sequence number from the future
+    assert appState.getStatusDelta(full.epoch, full.sequence + 1).full
+  }
+
+  @Test
+  public void testDiscardedRemovalsForceFullStatus() throws Throwable {
+    ClusterStatusJournal journal = new ClusterStatusJournal(1, 2)
+    List<RoleInstance> instances = startNodes(4)
+    journal.refresh(1, 0, instances, [role0Status])
+    long since = journal.sequence
+    journal.refresh(2, 0, instances.subList(1, 4), [role0Status])
+    Messages.GetClusterStatusDeltaResponseProto delta =
+      journal.buildDelta(1, since)
+    assert !delta.full
+    assert delta.removedCount == 1
+    // two more removals push the first one out
+    journal.refresh(3, 0, instances.subList(3, 4), [role0Status])
+    assert journal.buildDelta(1, since).full
+    delta = journal.buildDelta(1, journal.sequence - 1)
+    assert !delta.full
+    assert delta.removedCount == 2
+  }
+
+  @Test
+  public void testMirrorTracksDeltas() throws Throwable {
+    List<RoleInstance> instances = startNodes(3)
+    ClusterStatusMirror mirror = new ClusterStatusMirror()
+    assert mirror.apply(appState.getStatusDelta(mirror.epoch, mirror.sequence))
+    assert mirror.nodes.size() == 3
+    assert mirror.getNodesInRole(ROLE0).size() == 3
+    assert mirror.roles[ROLE0].actual == 3
+    assert !mirror.apply(appState.getStatusDelta(mirror.epoch,
+                                                 mirror.sequence))
+
+    appState.onCompletedNode(containerStatus(instances[0].containerId))
+    assert mirror.apply(appState.getStatusDelta(mirror.epoch, mirror.sequence))
+    assert mirror.nodes.size() == 2
+    assert !mirror.nodes.containsKey(instances[0].containerId.toString())
+    assert mirror.roles[ROLE0].actual == 2
+    log.info("Mirror: {}", mirror)
+  }
+}
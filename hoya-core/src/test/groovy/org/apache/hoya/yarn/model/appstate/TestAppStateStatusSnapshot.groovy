@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.model.appstate
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hoya.api.ClusterDescription
+import org.apache.hoya.yarn.appmaster.state.ClusterStatusSnapshot
+import org.apache.hoya.yarn.appmaster.state.RoleInstance
+import org.apache.hoya.yarn.model.mock.BaseMockAppStateTest
+import org.apache.hoya.yarn.model.mock.MockRoles
+import org.junit.Test
+
+/**
+ * Test that status snapshots are only rebuilt when the app state changes
+ */
+@CompileStatic
+@Slf4j
+class TestAppStateStatusSnapshot extends BaseMockAppStateTest
+    implements MockRoles {
+
+  @Override
+  String getTestName() {
+    return "TestAppStateStatusSnapshot"
+  }
+
+  @Test
+  public void testSnapshotReusedUntilStateChanges() throws Throwable {
+    ClusterStatusSnapshot first = appState.getStatusSnapshot(null)
+    assert first.version == appState.stateVersion
+    assert appState.currentStatusSnapshot.is(first)
+    assert appState.getStatusSnapshot(null).is(first)
+    assert first.jsonBytes.length > 0
+    assert ClusterDescription.fromJson(first.json).name == first.status.name
+
+    role0Status.desired = 2
+    List<RoleInstance> instances = createAndStartNodes()
+    assert instances.size() == 2
+    assert appState.stateVersion > first.version
+    assert appState.currentStatusSnapshot == null
+
+    ClusterStatusSnapshot second = appState.getStatusSnapshot(null)
+    assert !second.is(first)
+    assert second.status.getActualInstanceCount(ROLE0) == 2
+    assert appState.getStatusSnapshot(null).is(second)
+  }
+
+  @Test
+  public void testSnapshotIsolatedFromLiveModel() throws Throwable {
+    ClusterStatusSnapshot snapshot = appState.getStatusSnapshot(null)
+    String json = snapshot.json
+    appState.clusterDescription.setInfo("test.key", "changed")
+    assert snapshot.status.getInfo("test.key") == null
+    assert snapshot.json == json
+  }
+
+  @Test
+  public void testSnapshotCopiesNestedMaps() throws Throwable {
+    ClusterDescription live = appState.clusterDescription
+    live.statistics.put("test.role", ["count": 1])
+    live.status = ["nested": ["value"]] as Map<String, Object>
+    ClusterStatusSnapshot snapshot = appState.publishStatusSnapshot(null)
+    live.statistics["test.role"]["count"] = 2
+    ((List<String>) live.status["nested"]) << "added"
+    assert snapshot.status.statistics["test.role"]["count"] == 1
+    assert snapshot.status.status["nested"] == ["value"]
+    // the JSON was built when the snapshot was published
+    assert ClusterDescription.fromJson(snapshot.json)
+        .statistics["test.role"]["count"] == 1
+  }
+
+  @Test
+  public void testSnapshotExpiry() throws Throwable {
+    ClusterStatusSnapshot snapshot = appState.getStatusSnapshot(null)
+    long version = snapshot.version
+    assert snapshot.isCurrent(version, snapshot.timestamp, 0)
+    assert snapshot.isCurrent(version, snapshot.timestamp + 999, 1000)
+    assert !snapshot.isCurrent(version, snapshot.timestamp + 1000, 1000)
+    assert !snapshot.isCurrent(version + 1, snapshot.timestamp, 1000)
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.model.history
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hoya.yarn.appmaster.state.AvailableNodeIndex
+import org.apache.hoya.yarn.appmaster.state.NodeInstance
+import org.apache.hoya.yarn.model.mock.BaseMockAppStateTest
+import org.junit.Test
+
+/**
+ * Test the index of nodes available for a role
+ */
+@CompileStatic
+@Slf4j
+class TestAvailableNodeIndex extends BaseMockAppStateTest {
+
+  NodeInstance age1 = nodeInstance(1000, 0)
+  NodeInstance age2 = nodeInstance(1001, 0)
+  NodeInstance age3 = nodeInstance(1002, 0)
+
+  @Override
+  String getTestName() {
+    return "TestAvailableNodeIndex"
+  }
+
+  @Test
+  public void testMostRecentFirst() throws Throwable {
+    AvailableNodeIndex index = new AvailableNodeIndex(0)
+    index.addAll([age1, age3, age2])
+    assertListEquals(index.toList(), [age3, age2, age1])
+    assert index.takeMostRecentInactive().is(age3)
+    assert index.takeMostRecentInactive().is(age2)
+    assert index.takeMostRecentInactive().is(age1)
+    assert index.takeMostRecentInactive() == null
+    assert index.empty
+  }
+
+  @Test
+  public void testActiveNodesNotAdded() throws Throwable {
+    AvailableNodeIndex index = new AvailableNodeIndex(0)
+    assert !index.add(nodeInstance(1003, 1))
+    assert index.add(age1)
+    assert index.size() == 1
+  }
+
+  @Test
+  public void testActiveNodesSkippedNotDiscarded() throws Throwable {
+    AvailableNodeIndex index = new AvailableNodeIndex(0)
+    index.addAll([age1, age2, age3])
+
+    // an instance starts on the newest node without it being removed
+    age3.get(0).live = 1
+    assert index.takeMostRecentInactive().is(age2)
+    assert index.contains(age3)
+    assert !index.contains(age2)
+    assert index.size() == 2
+
+    // once the instance has gone, the node is eligible again
+    age3.get(0).live = 0
+    assert index.takeMostRecentInactive().is(age3)
+    assert index.takeMostRecentInactive().is(age1)
+    assert index.empty
+  }
+}
@@ -20,8 +20,10 @@ package org.apache.hoya.yarn.model.history
 
 import groovy.transform.CompileStatic
 import groovy.util.logging.Slf4j
+import org.apache.hadoop.fs.FSDataInputStream
 import org.apache.hadoop.fs.FSDataOutputStream
 import org.apache.hadoop.fs.Path
+import org.apache.hoya.avro.RoleHistoryDeltaWriter
 import org.apache.hoya.avro.RoleHistoryWriter
 import org.apache.hoya.yarn.appmaster.state.NodeEntry
 import org.apache.hoya.yarn.appmaster.state.NodeInstance
@@ -255,4 +257,120 @@ class TestHistoryRW extends BaseMockAppStateTest {
     assert fs.exists(badfile )
   }
 
+
+  @Test
+  public void testReadJsonHistory() throws Throwable {
+    describe "verify that histories saved as JSON are still loaded"
+    RoleHistory roleHistory = new RoleHistory(MockFactory.ROLES)
+    roleHistory.onStart(fs, historyPath)
+    String addr = "localhost"
+    NodeInstance instance = roleHistory.getOrCreateNodeInstance(addr)
+    NodeEntry ne1 = instance.getOrCreate(0)
+    ne1.lastUsed = 0xf00d
+
+    RoleHistoryWriter historyWriter = new RoleHistoryWriter();
+    long savetime = time++
+    Path history = new Path(historyPath,
+        String.format(Locale.ENGLISH, "rolehistory-%016x.json", savetime))
+    assert 1 == historyWriter.writeJson(fs.create(history), roleHistory,
+                                        savetime)
+
+    RoleHistory rh2 = new RoleHistory(MockFactory.ROLES)
+    assert rh2.onStart(fs, historyPath)
+    NodeInstance ni2 = rh2.getExistingNodeInstance(addr)
+    assert ni2 != null
+    assert ni2.get(0).lastUsed == ne1.lastUsed
+    assert rh2.thawedDataTime == savetime
+  }
+
+  @Test
+  public void testReplayDeltas() throws Throwable {
+    describe "verify that the delta log of a snapshot is replayed on thaw"
+    RoleHistory roleHistory = new RoleHistory(MockFactory.ROLES)
+    roleHistory.onStart(fs, historyPath)
+    NodeInstance localhost = roleHistory.getOrCreateNodeInstance("localhost")
+    localhost.getOrCreate(0).lastUsed = 0x10
+    long savetime = 0x1000
+    Path history = roleHistory.saveHistory(savetime)
+
+    RoleHistoryWriter historyWriter = new RoleHistoryWriter();
+    RoleHistoryDeltaWriter deltas = historyWriter.createDeltaWriter(
+        fs, history, roleHistory.roleSize, savetime)
+    NodeEntry updated = localhost.get(0)
+    updated.lastUsed = 0x20
+    deltas.append("localhost", 0, updated, 0x2000)
+    NodeEntry added = new NodeEntry(1)
+    added.lastUsed = 0x30
+    deltas.append("rack1server5", 1, added, 0x2000)
+    NodeEntry live = new NodeEntry(2)
+    live.live = 1
+    deltas.append("rack1server5", 2, live, 0x2000)
+    deltas.close()
+    assert deltas.count == 3
+
+    RoleHistory rh2 = new RoleHistory(MockFactory.ROLES)
+    assert rh2.onStart(fs, historyPath)
+    assert rh2.clusterSize == 2
+    assert rh2.getExistingNodeInstance("localhost").get(0).lastUsed == 0x20
+    NodeInstance rack1server5 = rh2.getExistingNodeInstance("rack1server5")
+    assert rack1server5.get(1).lastUsed == 0x30
+    // an entry in use is logged with the time of the change
+    assert rack1server5.get(2).lastUsed == 0x2000
+    assert fs.exists(historyWriter.deltaPathOf(history))
+  }
+
+  @Test
+  public void testReplayTruncatedDeltas() throws Throwable {
+    describe "verify that records before the end of a truncated delta log are replayed"
+    RoleHistory roleHistory = new RoleHistory(MockFactory.ROLES)
+    roleHistory.onStart(fs, historyPath)
+    long savetime = 0x1000
+    Path history = roleHistory.saveHistory(savetime)
+
+    RoleHistoryWriter historyWriter = new RoleHistoryWriter();
+    RoleHistoryDeltaWriter deltas = historyWriter.createDeltaWriter(
+        fs, history, roleHistory.roleSize, savetime)
+    NodeEntry first = new NodeEntry(0)
+    first.lastUsed = 0x10
+    deltas.append("host1", 0, first, 0x2000)
+    NodeEntry second = new NodeEntry(0)
+    second.lastUsed = 0x20
+    deltas.append("host2", 0, second, 0x2000)
+    deltas.close()
+
+    // chop the end off the last record
+    Path deltaPath = deltas.path
+    byte[] data = new byte[(int) fs.getFileStatus(deltaPath).len]
+    FSDataInputStream input = fs.open(deltaPath)
+    input.readFully(data)
+    input.close()
+    FSDataOutputStream out = fs.create(deltaPath, true)
+    out.write(data, 0, data.length - 4)
+    out.close()
+
+    RoleHistory rh2 = new RoleHistory(MockFactory.ROLES)
+    describe("IGNORE STACK TRACE BELOW")
+    assert rh2.onStart(fs, historyPath)
+    describe("IGNORE STACK TRACE ABOVE")
+    assert rh2.getExistingNodeInstance("host1").get(0).lastUsed == 0x10
+    assert rh2.getExistingNodeInstance("host2") == null
+  }
+
+  @Test
+  public void testContainerEventsLogDeltas() throws Throwable {
+    describe "verify that container events are appended to a delta log"
+    role0Status.desired = 4
+    createAndStartNodes()
+    RoleHistoryWriter historyWriter = new RoleHistoryWriter();
+    List<Path> snapshots =
+        historyWriter.findAllHistoryEntries(fs, historyPath, false)
+    assert snapshots.size() == 1
+    assert fs.isFile(historyWriter.deltaPathOf(snapshots[0]))
+    assert !appState.roleHistory.dirty
+
+    RoleHistory rh2 = new RoleHistory(MockFactory.ROLES)
+    assert rh2.onStart(fs, historyPath)
+    assert rh2.clusterSize > 0
+  }
+
 }
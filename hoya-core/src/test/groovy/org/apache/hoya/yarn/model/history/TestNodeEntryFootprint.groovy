@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.model.history
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hoya.yarn.appmaster.state.NodeEntry
+import org.apache.hoya.yarn.appmaster.state.NodeEntryTable
+import org.apache.hoya.yarn.appmaster.state.NodeInstance
+import org.apache.hoya.yarn.appmaster.state.NodeMap
+import org.apache.hoya.yarn.model.mock.BaseMockAppStateTest
+import org.apache.hoya.yarn.model.mock.MockFactory
+import org.junit.Test
+
+/**
+ * Test the columnar storage of node entries, and log its heap
+ * footprint next to that of an object per entry, the layout it replaced.
+ */
+@CompileStatic
+@Slf4j
+class TestNodeEntryFootprint extends BaseMockAppStateTest {
+
+  @Override
+  String getTestName() {
+    return "TestNodeEntryFootprint"
+  }
+
+  /**
+   * The object per entry layout: a list of entries for each node
+   */
+  static class ObjectNode {
+    final String hostname
+    final List<ObjectEntry> entries
+    ObjectNode(String hostname, int roles) {
+      this.hostname = hostname
+      entries = new ArrayList<ObjectEntry>(roles)
+    }
+  }
+
+  static class ObjectEntry {
+    final int index
+    int requested, starting, startFailed, failed, live, releasing
+    long lastUsed
+    ObjectEntry(int index) {
+      this.index = index
+    }
+  }
+
+  @Test
+  public void testFootprint20000() throws Throwable {
+    compareLayouts(20000)
+  }
+
+  @Test
+  public void testPurgeReusesRows() throws Throwable {
+    NodeMap nodemap = new NodeMap(MockFactory.ROLE_COUNT)
+    NodeInstance host1 = nodemap.getOrCreate("host1")
+    NodeInstance host2 = nodemap.getOrCreate("host2")
+    host1.getOrCreate(0).lastUsed = 1
+    host2.getOrCreate(1).lastUsed = 10
+    assert nodemap.getTable().rowCount == 2
+
+    assert nodemap.purgeUnusedEntries(5) == 1
+    assert nodemap.getTable().rowCount == 1
+    // anything still holding the purged instance sees it as empty
+    assert host1.get(0) == null
+
+    NodeInstance host3 = nodemap.getOrCreate("host3")
+    assert nodemap.getTable().rowCount == 2
+    assert host3.get(0) == null
+    assert host2.get(1).lastUsed == 10
+  }
+
+  @Test
+  public void testStaleViewDoesNotTouchReusedRow() throws Throwable {
+    NodeMap nodemap = new NodeMap(MockFactory.ROLE_COUNT)
+    NodeInstance host1 = nodemap.getOrCreate("host1")
+    NodeEntry stale = host1.getOrCreate(0)
+    stale.lastUsed = 1
+    assert nodemap.purgeUnusedEntries(5) == 1
+
+    // host2 takes over the row of host1
+    NodeInstance host2 = nodemap.getOrCreate("host2")
+    assert nodemap.getTable().rowCount == 1
+    host2.getOrCreate(0).lastUsed = 10
+    stale.lastUsed = 20
+    stale.onStarting()
+    assert stale.lastUsed == 0
+    assert stale.starting == 0
+    assert host2.get(0).lastUsed == 10
+    assert host2.get(0).starting == 0
+  }
+
+  @Test
+  public void testRowsAcrossPages() throws Throwable {
+    NodeMap nodemap = new NodeMap(1)
+    int size = NodeEntryTable.PAGE_ROWS * 3 + 1
+    for (int i = 0; i < size; i++) {
+      nodemap.getOrCreate("host" + i).getOrCreate(0).lastUsed = i
+    }
+    assert nodemap.getTable().pageCount == 4
+    nodemap.getOrCreate("host0").getOrCreate(2).lastUsed = 100
+    assert nodemap.getTable().columns == 3
+    for (int i = 0; i < size; i++) {
+      NodeInstance node = nodemap.get("host" + i)
+      assert node.getLastUsed(0) == i
+      assert node.get(1) == null
+    }
+    assert nodemap.get("host0").getLastUsed(2) == 100
+  }
+
+  @Test
+  public void testAccessorsDoNotCreateEntries() throws Throwable {
+    NodeInstance node = new NodeInstance("host1", MockFactory.ROLE_COUNT)
+    assert node.getLastUsed(1) == 0
+    assert node.getActiveRoleInstances(1) == 0
+    assert node.getLastUsed(MockFactory.ROLE_COUNT + 1) == 0
+    assert node.get(1) == null
+  }
+
+  @Test
+  public void testRoleBeyondColumns() throws Throwable {
+    NodeMap nodemap = new NodeMap(1)
+    NodeInstance host1 = nodemap.getOrCreate("host1")
+    NodeInstance host2 = nodemap.getOrCreate("host2")
+    host1.getOrCreate(0).lastUsed = 1
+    host2.getOrCreate(0).live = 2
+    assert host1.get(3) == null
+
+    host2.getOrCreate(3).lastUsed = 3
+    assert nodemap.getTable().columns == 4
+    assert host1.get(0).lastUsed == 1
+    assert host2.get(0).live == 2
+    assert host2.get(3).lastUsed == 3
+    assert host1.get(3) == null
+  }
+
+  @Test
+  public void testSetCopiesEntry() throws Throwable {
+    NodeInstance node = new NodeInstance("host1", MockFactory.ROLE_COUNT)
+    NodeEntry entry = new NodeEntry(2)
+    entry.lastUsed = 5
+    entry.live = 1
+    node.set(2, entry)
+    entry.lastUsed = 6
+    assert node.get(2).lastUsed == 5
+    assert node.get(2).live == 1
+
+    NodeEntry removed = node.remove(2)
+    assert removed.lastUsed == 5
+    assert node.get(2) == null
+  }
+
+  @Test
+  public void testRemovedEntryDiscardsChanges() throws Throwable {
+    NodeInstance node = new NodeInstance("host1", MockFactory.ROLE_COUNT)
+    NodeEntry entry = node.getOrCreate(1)
+    entry.onStarting()
+    node.remove(1)
+    entry.onStartCompleted()
+    entry.lastUsed = 5
+    assert entry.live == 0
+    assert entry.lastUsed == 0
+    assert node.get(1) == null
+    assert node.getOrCreate(1).starting == 0
+  }
+
+  @Test
+  public void testHostnamesInterned() throws Throwable {
+    String name = "host1"
+    NodeInstance first = new NodeMap(1).getOrCreate(new String(name))
+    NodeInstance second = new NodeMap(1).getOrCreate(new String(name))
+    assert first.hostname.is(second.hostname)
+  }
+
+  /**
+   * Fill both layouts with an entry for every role on every node
+   * and measure the heap each takes
+   * @param size number of nodes
+   */
+  void compareLayouts(int size) {
+    int roles = MockFactory.ROLE_COUNT
+    List<String> hostnames = new ArrayList<String>(size)
+    for (int i = 0; i < size; i++) {
+      hostnames.add("host-" + i)
+    }
+
+    long base = usedHeap()
+    List<ObjectNode> objects = new ArrayList<ObjectNode>(size)
+    for (String hostname : hostnames) {
+      ObjectNode node = new ObjectNode(hostname, roles)
+      for (int role = 0; role < roles; role++) {
+        ObjectEntry entry = new ObjectEntry(role)
+        entry.lastUsed = role
+        node.entries.add(entry)
+      }
+      objects.add(node)
+    }
+    long objectBytes = usedHeap() - base
+    assert objects.size() == size
+    objects = null
+
+    base = usedHeap()
+    NodeMap nodemap = new NodeMap(roles)
+    for (String hostname : hostnames) {
+      NodeInstance node = nodemap.getOrCreate(hostname)
+      for (int role = 0; role < roles; role++) {
+        node.getOrCreate(role).lastUsed = role
+      }
+    }
+    long columnarBytes = usedHeap() - base
+    assert nodemap.size() == size
+
+    int entries = size * roles
+    log.info("Heap used by $size nodes, $entries entries:")
+    log.info("  object per entry: $objectBytes bytes," +
+             " ${objectBytes.intdiv(entries)} bytes/entry")
+    log.info("  columnar:         $columnarBytes bytes," +
+             " ${columnarBytes.intdiv(entries)} bytes/entry;" +
+             " ${nodemap.getTable()}")
+    // heap deltas around System.gc() are only indicative, so they are
+    // logged, not asserted; the layout itself is checked exactly
+    NodeEntryTable table = nodemap.getTable()
+    assert table.rowCount == size
+    assert table.columns == roles
+    assert table.pageCount ==
+           (size + NodeEntryTable.PAGE_ROWS - 1).intdiv(NodeEntryTable.PAGE_ROWS)
+  }
+
+  /**
+   * Get the heap in use after trying to collect all garbage
+   * @return bytes used
+   */
+  long usedHeap() {
+    Runtime runtime = Runtime.runtime
+    for (int i = 0; i < 4; i++) {
+      System.gc()
+      Thread.sleep(50)
+    }
+    return runtime.totalMemory() - runtime.freeMemory()
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.model.history
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hoya.avro.RoleHistoryWriter
+import org.apache.hoya.yarn.appmaster.state.NodeInstance
+import org.apache.hoya.yarn.appmaster.state.RoleHistory
+import org.apache.hoya.yarn.model.mock.BaseMockAppStateTest
+import org.apache.hoya.yarn.model.mock.MockFactory
+import org.apache.hoya.yarn.model.mock.MockYarnCluster
+import org.junit.Test
+
+/**
+ * Compare the size and save/load time of the binary and JSON
+ * history formats for histories of different sizes.
+ */
+@CompileStatic
+@Slf4j
+class TestRoleHistoryPersistenceAtScale extends BaseMockAppStateTest {
+
+  @Override
+  String getTestName() {
+    return "TestRoleHistoryPersistenceAtScale"
+  }
+
+  @Test
+  public void testPersistence1000() throws Throwable {
+    compareFormats(1000)
+  }
+
+  @Test
+  public void testPersistence10000() throws Throwable {
+    compareFormats(10000)
+  }
+
+  /**
+   * Build a history with an entry for every role on every node,
+   * then save and load it in both formats
+   * @param size number of nodes in the cluster
+   */
+  void compareFormats(int size) {
+    MockYarnCluster cluster = new MockYarnCluster(size, 1)
+    RoleHistory roleHistory = new RoleHistory(MockFactory.ROLES)
+    int roles = roleHistory.roleSize
+    for (int i = 0; i < size; i++) {
+      NodeInstance ni =
+          roleHistory.getOrCreateNodeInstance(cluster.nodeAt(i).hostname)
+      for (int role = 0; role < roles; role++) {
+        ni.getOrCreate(role).lastUsed = System.currentTimeMillis() - i
+      }
+    }
+    int entries = size * roles
+    RoleHistoryWriter historyWriter = new RoleHistoryWriter()
+    long savetime = System.currentTimeMillis()
+
+    ByteArrayOutputStream json = new ByteArrayOutputStream()
+    long start = System.nanoTime()
+    assert entries == historyWriter.writeJson(json, roleHistory, savetime)
+    long jsonWrite = System.nanoTime() - start
+
+    ByteArrayOutputStream binary = new ByteArrayOutputStream()
+    start = System.nanoTime()
+    assert entries == historyWriter.write(binary, roleHistory, savetime)
+    long binaryWrite = System.nanoTime() - start
+
+    RoleHistory jsonHistory = new RoleHistory(MockFactory.ROLES)
+    start = System.nanoTime()
+    assert entries == historyWriter.read(
+        new ByteArrayInputStream(json.toByteArray()), jsonHistory)
+    long jsonRead = System.nanoTime() - start
+
+    RoleHistory binaryHistory = new RoleHistory(MockFactory.ROLES)
+    start = System.nanoTime()
+    assert entries == historyWriter.read(
+        new ByteArrayInputStream(binary.toByteArray()), binaryHistory)
+    long binaryRead = System.nanoTime() - start
+
+    log.info("History of $size nodes, $entries entries:")
+    log.info("  JSON:   ${json.size()} bytes;" +
+             " save ${jsonWrite.intdiv(1000000)} ms;" +
+             " load ${jsonRead.intdiv(1000000)} ms")
+    log.info("  binary: ${binary.size()} bytes;" +
+             " save ${binaryWrite.intdiv(1000000)} ms;" +
+             " load ${binaryRead.intdiv(1000000)} ms")
+
+    assert binary.size() < json.size()
+    assert binaryHistory.clusterSize == size
+    assert jsonHistory.clusterSize == size
+    String host = cluster.nodeAt(size - 1).hostname
+    assert binaryHistory.getExistingNodeInstance(host).get(0).lastUsed ==
+           jsonHistory.getExistingNodeInstance(host).get(0).lastUsed
+  }
+}
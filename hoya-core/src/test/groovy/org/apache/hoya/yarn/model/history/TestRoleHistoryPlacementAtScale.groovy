@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.model.history
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hadoop.yarn.api.records.Resource
+import org.apache.hadoop.yarn.client.api.AMRMClient
+import org.apache.hoya.providers.ProviderRole
+import org.apache.hoya.yarn.appmaster.state.NodeInstance
+import org.apache.hoya.yarn.appmaster.state.RoleHistory
+import org.apache.hoya.yarn.appmaster.state.RoleStatus
+import org.apache.hoya.yarn.appmaster.state.ContainerPriority
+import org.apache.hoya.yarn.model.mock.BaseMockAppStateTest
+import org.apache.hoya.yarn.model.mock.MockContainer
+import org.apache.hoya.yarn.model.mock.MockFactory
+import org.apache.hoya.yarn.model.mock.MockNodeId
+import org.apache.hoya.yarn.model.mock.MockYarnCluster
+import org.junit.Test
+
+/**
+ * Measure the cost of placing requests against histories of
+ * different sizes, and verify that nodes which are dropped from the
+ * available list because they are in use come back when released.
+ */
+@CompileStatic
+@Slf4j
+class TestRoleHistoryPlacementAtScale extends BaseMockAppStateTest {
+
+  /**
+   * Every Nth node is marked as in use
+   */
+  public static final int ACTIVE_NODE_INTERVAL = 10
+
+  Resource resource = Resource.newInstance(1, 1)
+  RoleStatus roleStatus = new RoleStatus(new ProviderRole("test", 0))
+
+  @Override
+  String getTestName() {
+    return "TestRoleHistoryPlacementAtScale"
+  }
+
+  @Test
+  public void testPlacement100() throws Throwable {
+    placeAllRequests(100)
+  }
+
+  @Test
+  public void testPlacement1000() throws Throwable {
+    placeAllRequests(1000)
+  }
+
+  @Test
+  public void testPlacement10000() throws Throwable {
+    placeAllRequests(10000)
+  }
+
+  /**
+   * Build a history from a mock cluster of the given size, then
+   * request one instance per node.
+   * @param size number of nodes in the cluster
+   */
+  void placeAllRequests(int size) {
+    MockYarnCluster cluster = new MockYarnCluster(size, 1)
+    RoleHistory roleHistory = new RoleHistory(MockFactory.ROLES)
+    List<NodeInstance> busy = []
+    for (int i = 0; i < size; i++) {
+      NodeInstance ni =
+          roleHistory.getOrCreateNodeInstance(cluster.nodeAt(i).hostname)
+      ni.getOrCreate(0).lastUsed = i + 1
+      if (i % ACTIVE_NODE_INTERVAL == 0) {
+        busy << ni
+      }
+    }
+    roleHistory.buildAvailableNodeLists()
+    assert roleHistory.cloneAvailableList(0).size() == size
+    // mark nodes as busy after the lists are built, so they must be dropped
+    busy.each { NodeInstance ni -> ni.get(0).live = 1 }
+
+    Set<String> placed = new HashSet<String>()
+    long start = System.nanoTime()
+    for (int i = 0; i < size; i++) {
+      AMRMClient.ContainerRequest request =
+          roleHistory.requestNode(roleStatus, resource)
+      if (request.nodes) {
+        assert placed.add(request.nodes[0])
+      }
+    }
+    long duration = System.nanoTime() - start
+    log.info("Placement of $size requests against $size nodes:" +
+             " ${duration.intdiv(1000 * size)} microseconds per request")
+    assert placed.size() == size - busy.size()
+
+    // the busy nodes are available again once their instances are released
+    assert roleHistory.cloneAvailableList(0).empty
+    busy.each { NodeInstance ni -> release(roleHistory, ni) }
+    assert roleHistory.cloneAvailableList(0).size() == busy.size()
+    Set<NodeInstance> found = new HashSet<NodeInstance>()
+    for (int i = 0; i < busy.size(); i++) {
+      found << roleHistory.findNodeForNewInstance(roleStatus)
+    }
+    assert found == new HashSet<NodeInstance>(busy)
+    assert roleHistory.findNodeForNewInstance(roleStatus) == null
+  }
+
+  /**
+   * Release the instance of role 0 on a node
+   * @param roleHistory history
+   * @param ni node
+   */
+  void release(RoleHistory roleHistory, NodeInstance ni) {
+    MockContainer container = factory.newContainer()
+    container.nodeId = new MockNodeId(ni.hostname, 0)
+    container.priority = ContainerPriority.createPriority(0, false)
+    roleHistory.onContainerReleaseSubmitted(container)
+    assert roleHistory.onReleaseCompleted(container)
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.model.history
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.fs.Path
+import org.apache.hoya.api.StatusKeys
+import org.apache.hoya.avro.RoleHistoryWriter
+import org.apache.hoya.yarn.appmaster.state.RoleHistory
+import org.apache.hoya.yarn.appmaster.state.RoleHistorySaver
+import org.apache.hoya.yarn.model.mock.BaseMockAppStateTest
+import org.apache.hoya.yarn.model.mock.MockFactory
+import org.junit.Test
+
+/**
+ * Test the background saving of the role history
+ */
+@CompileStatic
+@Slf4j
+class TestRoleHistorySaver extends BaseMockAppStateTest {
+
+  @Override
+  String getTestName() {
+    return "TestRoleHistorySaver"
+  }
+
+  @Test
+  public void testSaveSnapshotThenDeltas() throws Throwable {
+    RoleHistory roleHistory = appState.roleHistory
+    RoleHistorySaver saver = new RoleHistorySaver(roleHistory, 0)
+    roleHistory.saver = saver
+    assert saver.save()
+    assert saver.snapshotsWritten == 1
+
+    role0Status.desired = 4
+    createAndStartNodes()
+    assert saver.queueLength > 0
+    assert !roleHistory.dirty
+    long queued = saver.changesQueued
+    int pending = saver.queueLength
+    assert pending <= queued
+
+    assert saver.save()
+    assert saver.queueLength == 0
+    assert saver.snapshotsWritten == 1
+    assert saver.deltaRecordsWritten == pending
+    assert saver.saveFailures == 0
+
+    RoleHistoryWriter historyWriter = new RoleHistoryWriter();
+    List<Path> snapshots =
+        historyWriter.findAllHistoryEntries(fs, historyPath, false)
+    assert snapshots.size() == 1
+    assert fs.isFile(historyWriter.deltaPathOf(snapshots[0]))
+    roleHistory.saver = null
+
+    RoleHistory rh2 = new RoleHistory(MockFactory.ROLES)
+    assert rh2.onStart(fs, historyPath)
+    assert rh2.clusterSize == roleHistory.clusterSize
+  }
+
+  @Test
+  public void testEventsDoNotWriteWithoutSaver() throws Throwable {
+    RoleHistory roleHistory = appState.roleHistory
+    RoleHistoryWriter historyWriter = new RoleHistoryWriter();
+    int files = historyWriter.findAllHistoryEntries(fs, historyPath, false).size()
+    roleHistory.saved(0)
+
+    role0Status.desired = 4
+    createAndStartNodes()
+    // only marked dirty: nothing is written in the event thread
+    assert roleHistory.dirty
+    assert historyWriter.findAllHistoryEntries(fs, historyPath, false).size() ==
+           files
+
+    assert roleHistory.saveHistoryIfDirty() != null
+    assert !roleHistory.dirty
+  }
+
+  @Test
+  public void testSaverService() throws Throwable {
+    RoleHistory roleHistory = appState.roleHistory
+    RoleHistorySaver saver = new RoleHistorySaver(roleHistory, 100)
+    saver.init(new Configuration(false))
+    saver.start()
+    assert roleHistory.saver.is(saver)
+    role0Status.desired = 4
+    createAndStartNodes()
+    saver.stop()
+    assert roleHistory.saver == null
+    assert saver.queueLength == 0
+    assert saver.snapshotsWritten >= 1
+    assert saver.deltaRecordsWritten <= saver.changesQueued
+
+    Map<String, Integer> stats = saver.buildStatistics()
+    assert stats[StatusKeys.STATISTICS_HISTORY_SNAPSHOTS] >= 1
+    assert stats[StatusKeys.STATISTICS_HISTORY_SAVE_FAILURES] == 0
+    assert stats[StatusKeys.STATISTICS_HISTORY_QUEUE_LENGTH] == 0
+
+    RoleHistory rh2 = new RoleHistory(MockFactory.ROLES)
+    assert rh2.onStart(fs, historyPath)
+    assert rh2.clusterSize == roleHistory.clusterSize
+  }
+}
@@ -27,16 +27,22 @@ import org.apache.hoya.api.proto.Messages.FlexClusterRequestProto;
 import org.apache.hoya.api.proto.Messages.FlexClusterResponseProto;
 import org.apache.hoya.api.proto.Messages.GetClusterNodesRequestProto;
 import org.apache.hoya.api.proto.Messages.GetClusterNodesResponseProto;
+import org.apache.hoya.api.proto.Messages.GetClusterStatusDeltaRequestProto;
+import org.apache.hoya.api.proto.Messages.GetClusterStatusDeltaResponseProto;
 import org.apache.hoya.api.proto.Messages.GetJSONClusterStatusRequestProto;
 import org.apache.hoya.api.proto.Messages.GetJSONClusterStatusResponseProto;
 import org.apache.hoya.api.proto.Messages.GetNodeRequestProto;
 import org.apache.hoya.api.proto.Messages.GetNodeResponseProto;
 import org.apache.hoya.api.proto.Messages.KillContainerRequestProto;
 import org.apache.hoya.api.proto.Messages.KillContainerResponseProto;
+import org.apache.hoya.api.proto.Messages.ListClusterNodesRequestProto;
+import org.apache.hoya.api.proto.Messages.ListClusterNodesResponseProto;
 import org.apache.hoya.api.proto.Messages.ListNodeUUIDsByRoleRequestProto;
 import org.apache.hoya.api.proto.Messages.ListNodeUUIDsByRoleResponseProto;
 import org.apache.hoya.api.proto.Messages.StopClusterRequestProto;
 import org.apache.hoya.api.proto.Messages.StopClusterResponseProto;
+import org.apache.hoya.api.proto.Messages.WaitForClusterStateRequestProto;
+import org.apache.hoya.api.proto.Messages.WaitForClusterStateResponseProto;
 import org.apache.hoya.api.HoyaClusterProtocol;
 
 /**
@@ -84,6 +90,21 @@ class MockHoyaClusterProtocol implements HoyaClusterProtocol {
     return null;
   }
 
+  @Override
+  public ListClusterNodesResponseProto listClusterNodes(ListClusterNodesRequestProto request) throws IOException, YarnException {
+    return null;
+  }
+
+  @Override
+  public GetClusterStatusDeltaResponseProto getClusterStatusDelta(GetClusterStatusDeltaRequestProto request) throws IOException, YarnException {
+    return null;
+  }
+
+  @Override
+  public WaitForClusterStateResponseProto waitForClusterState(WaitForClusterStateRequestProto request) throws IOException, YarnException {
+    return null;
+  }
+
   @Override
   public EchoResponseProto echo(EchoRequestProto request) throws IOException, YarnException {
     return null;
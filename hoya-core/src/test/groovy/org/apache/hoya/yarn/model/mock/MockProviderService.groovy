@@ -24,6 +24,7 @@ import org.apache.hadoop.service.LifecycleEvent
 import org.apache.hadoop.service.ServiceStateChangeListener
 import org.apache.hadoop.service.Service.STATE
 import org.apache.hadoop.yarn.api.records.Container
+import org.apache.hadoop.yarn.api.records.ContainerId
 import org.apache.hadoop.yarn.api.records.ContainerLaunchContext
 import org.apache.hoya.api.ClusterDescription
 import org.apache.hoya.exceptions.BadCommandArgumentsException
@@ -181,6 +182,14 @@ class MockProviderService implements ProviderService {
   throws IOException, HoyaException {
   }
 
+  @Override
+  void invalidateLaunchTemplates() {
+  }
+
+  @Override
+  void notifyContainerCompleted(ContainerId containerId) {
+  }
+
   @Override
   public Map<String, URL> buildMonitorDetails(ClusterDescription clusterSpec) {
     return null;
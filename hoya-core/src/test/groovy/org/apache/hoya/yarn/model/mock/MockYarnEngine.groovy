@@ -110,12 +110,19 @@ class MockYarnEngine {
         released.add(cid)
       } else {
         ContainerRequestOperation req = (ContainerRequestOperation) op
-        Container container = allocateContainer(req.request)
-        if (container != null) {
+        int satisfied = 0
+        for (int i = 0; i < req.count; i++) {
+          Container container = allocateContainer(req.request)
+          if (container == null) {
+            break
+          }
           allocation.add(container)
-        } else {
+          satisfied++
+        }
+        if (satisfied < req.count) {
           log.debug("Unsatisfied allocation $req")
-          pending.add(req)
+          pending.add(new ContainerRequestOperation(req.request,
+                                                    req.count - satisfied))
         }
       }
     }
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.providers
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.fs.FileSystem as HadoopFS
+import org.apache.hadoop.fs.Path
+import org.apache.hadoop.yarn.api.records.LocalResource
+import org.apache.hoya.HoyaKeys
+import org.apache.hoya.api.ClusterDescription
+import org.apache.hoya.api.OptionKeys
+import org.apache.hoya.providers.hbase.HBaseProviderService
+import org.apache.hoya.tools.HoyaFileSystem
+import org.apache.hoya.yarn.HoyaTestBase
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * Test the caching of the local resources of role launches
+ */
+@CompileStatic
+@Slf4j
+class TestProviderLaunchTemplates extends HoyaTestBase {
+
+  public static final String ROLE = "worker"
+
+  HoyaFileSystem hoyaFileSystem
+  Path confPath
+  File confDir = new File("target/testProviderLaunchTemplates/conf")
+  TemplateProvider provider = new TemplateProvider()
+
+  static class TemplateProvider extends HBaseProviderService {
+    Map<String, LocalResource> resources(String role,
+                                         HoyaFileSystem hoyaFileSystem,
+                                         Path generatedConfPath,
+                                         ClusterDescription clusterSpec) {
+      return buildRoleLocalResources(role, hoyaFileSystem,
+                                     generatedConfPath, clusterSpec)
+    }
+  }
+
+  @Before
+  public void setup() {
+    Configuration conf = new Configuration()
+    HadoopFS fs = HadoopFS.get(new URI("file:///"), conf)
+    hoyaFileSystem = new HoyaFileSystem(fs, conf)
+    confDir.deleteDir()
+    confDir.mkdirs()
+    ["hbase-site.xml", "log4j.properties"].each { String name ->
+      new File(confDir, name).text = name
+    }
+    confPath = new Path(confDir.absoluteFile.toURI())
+  }
+
+  Map<String, LocalResource> resources(ClusterDescription clusterSpec) {
+    return provider.resources(ROLE, hoyaFileSystem, confPath, clusterSpec)
+  }
+
+  @Test
+  public void testTemplateIsBuiltOnce() throws Throwable {
+    ClusterDescription clusterSpec = new ClusterDescription()
+    Map<String, LocalResource> first = resources(clusterSpec)
+    Map<String, LocalResource> second = resources(clusterSpec)
+    assert provider.launchTemplatesBuilt == 1
+    assert first.size() == 2
+    assert first.containsKey(
+        HoyaKeys.PROPAGATED_CONF_DIR_NAME + "/hbase-site.xml")
+    assert first == second
+
+    // every launch gets its own copy
+    String key = first.keySet().iterator().next()
+    assert !first[key].is(second[key])
+    assert !first[key].resource.is(second[key].resource)
+    assert first[key].resource == second[key].resource
+    first.clear()
+    assert resources(clusterSpec).size() == 2
+    assert provider.launchTemplatesBuilt == 1
+  }
+
+  @Test
+  public void testConcurrentLaunchesBuildOnce() throws Throwable {
+    ClusterDescription clusterSpec = new ClusterDescription()
+    List<Map<String, LocalResource>> results =
+        Collections.synchronizedList([])
+    List<Thread> threads = (1..8).collect { int i ->
+      Thread.start {
+        results << resources(clusterSpec)
+      }
+    }
+    threads.each { Thread t -> t.join(10000) }
+    assert results.size() == 8
+    assert provider.launchTemplatesBuilt == 1
+    results.each { Map<String, LocalResource> r -> assert r.size() == 2 }
+  }
+
+  @Test
+  public void testInvalidation() throws Throwable {
+    ClusterDescription clusterSpec = new ClusterDescription()
+    resources(clusterSpec)
+    new File(confDir, "extra.xml").text = "extra"
+    assert resources(clusterSpec).size() == 2
+
+    provider.invalidateLaunchTemplates()
+    assert resources(clusterSpec).size() == 3
+    assert provider.launchTemplatesBuilt == 2
+  }
+
+  @Test
+  public void testImageChangeRebuildsTemplate() throws Throwable {
+    ClusterDescription clusterSpec = new ClusterDescription()
+    resources(clusterSpec)
+    File image = new File(confDir.parentFile, "image.tar.gz")
+    image.text = "image"
+    clusterSpec.setOption(OptionKeys.APPLICATION_IMAGE_PATH,
+                          image.absoluteFile.toURI().toString())
+    Map<String, LocalResource> withImage = resources(clusterSpec)
+    assert provider.launchTemplatesBuilt == 2
+    assert withImage.containsKey(HoyaKeys.LOCAL_TARBALL_INSTALL_SUBDIR)
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hoya.yarn.providers.agent
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.fs.FileSystem as HadoopFS
+import org.apache.hadoop.fs.Path
+import org.apache.hadoop.yarn.api.records.Container
+import org.apache.hadoop.yarn.api.records.ContainerLaunchContext
+import org.apache.hadoop.yarn.api.records.LocalResource
+import org.apache.hadoop.yarn.util.ConverterUtils
+import org.apache.hadoop.yarn.util.Records
+import org.apache.hoya.HoyaKeys
+import org.apache.hoya.api.ClusterDescription
+import org.apache.hoya.providers.agent.AgentKeys
+import org.apache.hoya.providers.agent.AgentProviderService
+import org.apache.hoya.tools.HoyaFileSystem
+import org.apache.hoya.yarn.HoyaTestBase
+import org.apache.hoya.yarn.model.mock.MockContainer
+import org.apache.hoya.yarn.model.mock.MockContainerId
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * Test the staging of the configuration files patched for a single
+ * agent container
+ */
+@CompileStatic
+@Slf4j
+class TestAgentContainerConf extends HoyaTestBase {
+
+  public static final String ROLE = "echo"
+  public static final String PATCHED = "agent.xml"
+  public static final String SHARED = "log4j.properties"
+
+  HoyaFileSystem hoyaFileSystem
+  Path confPath
+  File testDir = new File("target/testAgentContainerConf")
+  File confDir = new File(testDir, "conf")
+  ClusterDescription clusterSpec = new ClusterDescription()
+  PatchingProvider provider = new PatchingProvider()
+
+  static class PatchingProvider extends AgentProviderService {
+    Map<String, String> patches = [:]
+
+    @Override
+    protected Map<String, String> buildContainerConfPatches(
+        Container container,
+        String role,
+        ClusterDescription clusterSpec) {
+      return patches
+    }
+  }
+
+  @Before
+  public void setup() {
+    Configuration conf = new Configuration()
+    HadoopFS fs = HadoopFS.get(new URI("file:///"), conf)
+    hoyaFileSystem = new HoyaFileSystem(fs, conf)
+    testDir.deleteDir()
+    confDir.mkdirs()
+    [PATCHED, SHARED].each { String name ->
+      new File(confDir, name).text = name
+    }
+    confPath = new Path(confDir.absoluteFile.toURI())
+
+    File packageDir = new File(testDir, "package")
+    packageDir.mkdirs()
+    new File(packageDir, "main.py").text = ""
+    clusterSpec.setRoleOpt(ROLE, AgentKeys.PACKAGE_PATH,
+                           packageDir.absolutePath)
+    clusterSpec.setRoleOpt(ROLE, AgentKeys.SCRIPT_PATH, "main.py")
+    clusterSpec.setRoleOpt(ROLE, AgentKeys.APP_HOME, "/dev/null")
+  }
+
+  ContainerLaunchContext launch(Container container, Path containerTmpDir) {
+    ContainerLaunchContext ctx = Records.newRecord(ContainerLaunchContext)
+    provider.buildContainerLaunchContext(ctx, container, ROLE,
+                                         hoyaFileSystem, confPath,
+                                         clusterSpec, [:],
+                                         containerTmpDir)
+    return ctx
+  }
+
+  Container container(int id) {
+    MockContainer container = new MockContainer()
+    container.id = new MockContainerId(id)
+    return container
+  }
+
+  File localFile(LocalResource resource) {
+    return new File(ConverterUtils.getPathFromYarnURL(resource.resource)
+                        .toUri().path)
+  }
+
+  @Test
+  public void testUnpatchedContainerIsNotStaged() throws Throwable {
+    File tmpDir = new File(testDir, "container1")
+    ContainerLaunchContext ctx = launch(container(1),
+                                        new Path(tmpDir.absoluteFile.toURI()))
+    Map<String, LocalResource> resources = ctx.localResources
+    assert resources.size() == 2
+    assert !tmpDir.exists()
+  }
+
+  @Test
+  public void testPatchedFilesAreStagedAndDeleted() throws Throwable {
+    provider.patches[PATCHED] = "patched"
+    Container container = container(2)
+    File tmpDir = new File(testDir, "container2")
+    ContainerLaunchContext ctx = launch(container,
+                                        new Path(tmpDir.absoluteFile.toURI()))
+
+    // only the patched file is staged for the container
+    List<String> staged = (tmpDir.list() as List<String>).findAll {
+      String name -> !name.endsWith(".crc")
+    }
+    assert staged == [PATCHED]
+    assert new File(tmpDir, PATCHED).text == "patched"
+
+    // and replaces the entry of the shared configuration
+    Map<String, LocalResource> resources = ctx.localResources
+    assert resources.size() == 2
+    String patchedKey = HoyaKeys.PROPAGATED_CONF_DIR_NAME + "/" + PATCHED
+    String sharedKey = HoyaKeys.PROPAGATED_CONF_DIR_NAME + "/" + SHARED
+    assert localFile(resources[patchedKey]).canonicalFile ==
+           new File(tmpDir, PATCHED).canonicalFile
+    assert localFile(resources[sharedKey]).parentFile.canonicalFile ==
+           confDir.canonicalFile
+
+    // the next launch still gets the shared template
+    provider.patches.clear()
+    Map<String, LocalResource> next =
+        launch(container(3), new Path(new File(testDir, "container3")
+                                          .absoluteFile.toURI()))
+        .localResources
+    assert localFile(next[patchedKey]).parentFile.canonicalFile ==
+           confDir.canonicalFile
+
+    provider.notifyContainerCompleted(container.id)
+    assert !tmpDir.exists()
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.utils
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.fs.FileSystem
+import org.apache.hadoop.fs.Path
+import org.apache.hadoop.yarn.api.records.LocalResource
+import org.apache.hadoop.yarn.api.records.LocalResourceVisibility
+import org.apache.hadoop.yarn.util.ConverterUtils
+import org.apache.hoya.tools.JarCache
+import org.apache.hoya.yarn.HoyaTestBase
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * Test that JARs are only uploaded to the JAR cache once, and that
+ * unused ones are pruned
+ */
+@CompileStatic
+@Slf4j
+class TestJarCache extends HoyaTestBase {
+
+  FileSystem fs
+  Path cacheDir
+  JarCache cache
+
+  @Before
+  public void setup() {
+    fs = FileSystem.getLocal(new Configuration())
+    File dir = new File("target/testJarCache")
+    fs.delete(new Path(dir.absolutePath), true)
+    cacheDir = new Path(new File(dir, "cache").absolutePath)
+    cache = new JarCache(fs, cacheDir, LocalResourceVisibility.APPLICATION)
+  }
+
+  File localFile(String name, String contents) {
+    File file = new File("target/testJarCache/local/" + name)
+    file.parentFile.mkdirs()
+    file.text = contents
+    return file
+  }
+
+  @Test
+  public void testUploadedOnce() throws Throwable {
+    File jar = localFile("one.jar", "first")
+    LocalResource first = cache.submit(jar, "one.jar")
+    assert first.size == jar.length()
+    assert first.visibility == LocalResourceVisibility.APPLICATION
+    Path cached = ConverterUtils.getPathFromYarnURL(first.resource)
+    assert fs.exists(cached)
+    assert cached.parent.name == JarCache.hashOf(jar)
+
+    LocalResource second = cache.submit(jar, "one.jar")
+    assert second.resource == first.resource
+    assert second.timestamp == first.timestamp
+
+    // the same contents elsewhere share the entry
+    File copy = localFile("copy.jar", "first")
+    assert cache.submit(copy, "one.jar").resource == first.resource
+
+    // different contents get their own entry
+    File other = localFile("other.jar", "second")
+    assert cache.submit(other, "one.jar").resource != first.resource
+    assert fs.listStatus(cacheDir).length == 2
+  }
+
+  @Test
+  public void testPrune() throws Throwable {
+    cache.submit(localFile("one.jar", "first"), "one.jar")
+    cache.submit(localFile("two.jar", "second"), "two.jar")
+    assert cache.prune(60000) == 0
+    Thread.sleep(1100)
+    assert cache.prune(1000) == 2
+    assert fs.listStatus(cacheDir).length == 0
+  }
+
+  @Test
+  public void testEntriesInUseAreNotPruned() throws Throwable {
+    LocalResource one = cache.submit(localFile("one.jar", "first"), "one.jar")
+    LocalResource two = cache.submit(localFile("two.jar", "second"), "two.jar")
+    LocalResource outside = LocalResource.newInstance(
+        ConverterUtils.getYarnUrlFromPath(
+            fs.makeQualified(new Path("target/testJarCache/other.jar"))),
+        one.type, one.visibility, 1, 1)
+    List<Path> entries = cache.getEntries([one, two, outside])
+    assert entries.size() == 2
+    Path oneEntry = ConverterUtils.getPathFromYarnURL(one.resource).parent
+    assert entries[0] == oneEntry
+
+    Thread.sleep(1100)
+    assert JarCache.markInUse(fs, [oneEntry]) == 1
+    assert cache.prune(1000) == 1
+    assert fs.exists(oneEntry)
+
+    // deleted entries are not recreated
+    fs.delete(oneEntry, true)
+    assert JarCache.markInUse(fs, [oneEntry]) == 0
+    assert !fs.exists(oneEntry)
+  }
+}
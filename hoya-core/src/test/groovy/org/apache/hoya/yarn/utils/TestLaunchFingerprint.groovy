@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.utils
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.fs.FileSystem
+import org.apache.hadoop.fs.Path
+import org.apache.hoya.api.ClusterDescription
+import org.apache.hoya.tools.HoyaFileSystem
+import org.apache.hoya.tools.LaunchFingerprint
+import org.apache.hoya.yarn.HoyaTestBase
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * Test that the launch fingerprint changes with the specification,
+ * configuration and original configuration directory, but not with the
+ * rewriting of the generated configuration
+ */
+@CompileStatic
+@Slf4j
+class TestLaunchFingerprint extends HoyaTestBase {
+
+  FileSystem fs
+  HoyaFileSystem hoyaFileSystem
+  Path clusterDir
+  Path originDir
+  Path generatedDir
+  ClusterDescription clusterSpec
+  Configuration conf
+
+  @Before
+  public void setup() {
+    conf = new Configuration(false)
+    conf.set("hoya.test", "1")
+    fs = FileSystem.getLocal(new Configuration())
+    hoyaFileSystem = new HoyaFileSystem(fs, conf)
+    clusterDir = new Path(new File("target/testLaunchFingerprint").absolutePath)
+    fs.delete(clusterDir, true)
+    originDir = new Path(clusterDir, "snapshot")
+    generatedDir = new Path(clusterDir, "generated")
+    write(new Path(originDir, "site.xml"), "<configuration/>")
+    write(new Path(generatedDir, "site.xml"), "<configuration/>")
+    clusterSpec = new ClusterDescription()
+    clusterSpec.name = "testLaunchFingerprint"
+    clusterSpec.originConfigurationPath = originDir.toString()
+    clusterSpec.generatedConfigurationPath = generatedDir.toString()
+  }
+
+  void write(Path path, String text) {
+    hoyaFileSystem.cat(path, text)
+  }
+
+  String fingerprint() {
+    return LaunchFingerprint.build(fs, clusterSpec,
+                                   LaunchFingerprint.digestOf(clusterSpec,
+                                                              conf))
+  }
+
+  @Test
+  public void testUnchanged() throws Throwable {
+    String original = fingerprint()
+    assert original == fingerprint()
+    hoyaFileSystem.saveLaunchFingerprint(clusterDir, original)
+    assert original == hoyaFileSystem.loadLaunchFingerprint(clusterDir)
+
+    // regenerating the same configuration is not a change
+    Thread.sleep(1100)
+    write(new Path(generatedDir, "site.xml"), "<configuration/>")
+    assert original == fingerprint()
+  }
+
+  @Test
+  public void testChanges() throws Throwable {
+    String original = fingerprint()
+
+    clusterSpec.setDesiredInstanceCount("worker", 2)
+    String flexed = fingerprint()
+    assert original != flexed
+
+    conf.set("hoya.test", "2")
+    String reconfigured = fingerprint()
+    assert flexed != reconfigured
+
+    write(new Path(originDir, "extra.xml"), "<configuration/>")
+    assert reconfigured != fingerprint()
+  }
+
+  @Test
+  public void testFinish() throws Throwable {
+    LaunchFingerprint fingerprint = new LaunchFingerprint().add("text")
+    String unfinished = fingerprint.toString()
+    assert unfinished == fingerprint.toString()
+    String finished = fingerprint.finish()
+    assert finished == fingerprint.finish()
+    assert finished == new LaunchFingerprint().add("text").finish()
+    assert fingerprint.toString().contains(finished)
+    try {
+      fingerprint.add("more")
+      assert false : "added to a finished fingerprint"
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+  @Test
+  public void testNoFingerprint() throws Throwable {
+    assert hoyaFileSystem.loadLaunchFingerprint(clusterDir) == null
+  }
+}